@@ -0,0 +1,181 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.collect;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Binary max-heap of the integers 0 to capacity-1, each with a double priority.
+ * <p>
+ * Because the heap knows where each index is, the priority of an index that is already
+ * in the heap can be changed in logarithmic time. All storage is allocated by the
+ * constructor, and no operation allocates.
+ */
+public class IndexedDoubleMaxHeap
+{
+	private final int [] _heap;			// Indices, in heap order
+	private final int [] _positions;		// Position of each index in _heap, or -1 if absent
+	private final double [] _priorities;
+	private int _size = 0;
+
+	public IndexedDoubleMaxHeap(int capacity)
+	{
+		_heap = new int[capacity];
+		_positions = new int[capacity];
+		_priorities = new double[capacity];
+		for (int i = 0; i < capacity; i++)
+			_positions[i] = -1;
+	}
+
+	public int size()
+	{
+		return _size;
+	}
+
+	public boolean isEmpty()
+	{
+		return _size == 0;
+	}
+
+	public boolean contains(int index)
+	{
+		return _positions[index] >= 0;
+	}
+
+	// Priority of the given index, which must be in the heap
+	public double getPriority(int index)
+	{
+		if (_positions[index] < 0)
+			throw new NoSuchElementException();
+		return _priorities[index];
+	}
+
+	public int peek()
+	{
+		if (_size == 0)
+			throw new NoSuchElementException();
+		return _heap[0];
+	}
+
+	public double peekPriority()
+	{
+		return _priorities[peek()];
+	}
+
+	// Adds the index with the given priority, or changes its priority if already present
+	public void set(int index, double priority)
+	{
+		int position = _positions[index];
+		if (position < 0)
+		{
+			position = _size++;
+			_heap[position] = index;
+			_positions[index] = position;
+			_priorities[index] = priority;
+			siftUp(position);
+		}
+		else
+		{
+			double previous = _priorities[index];
+			_priorities[index] = priority;
+			if (priority > previous)
+				siftUp(position);
+			else
+				siftDown(position);
+		}
+	}
+
+	// Adds the index, or raises its priority if it is present with a lower one
+	public void raise(int index, double priority)
+	{
+		if (_positions[index] < 0 || priority > _priorities[index])
+			set(index, priority);
+	}
+
+	// Removes and returns the index with the highest priority
+	public int poll()
+	{
+		int top = peek();
+		remove(top);
+		return top;
+	}
+
+	public boolean remove(int index)
+	{
+		int position = _positions[index];
+		if (position < 0)
+			return false;
+
+		_positions[index] = -1;
+		int last = _heap[--_size];
+		if (position < _size)
+		{
+			_heap[position] = last;
+			_positions[last] = position;
+			siftUp(position);
+			siftDown(_positions[last]);
+		}
+		return true;
+	}
+
+	public void clear()
+	{
+		for (int i = 0; i < _size; i++)
+			_positions[_heap[i]] = -1;
+		_size = 0;
+	}
+
+	private void siftUp(int position)
+	{
+		int index = _heap[position];
+		double priority = _priorities[index];
+		while (position > 0)
+		{
+			int parent = (position - 1) >>> 1;
+			int parentIndex = _heap[parent];
+			if (_priorities[parentIndex] >= priority)
+				break;
+			_heap[position] = parentIndex;
+			_positions[parentIndex] = position;
+			position = parent;
+		}
+		_heap[position] = index;
+		_positions[index] = position;
+	}
+
+	private void siftDown(int position)
+	{
+		int index = _heap[position];
+		double priority = _priorities[index];
+		int half = _size >>> 1;
+		while (position < half)
+		{
+			int child = 2 * position + 1;
+			int right = child + 1;
+			if (right < _size && _priorities[_heap[right]] > _priorities[_heap[child]])
+				child = right;
+			int childIndex = _heap[child];
+			if (priority >= _priorities[childIndex])
+				break;
+			_heap[position] = childIndex;
+			_positions[childIndex] = position;
+			position = child;
+		}
+		_heap[position] = index;
+		_positions[index] = position;
+	}
+}
@@ -0,0 +1,185 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.collect;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from primitive long keys to primitive int values using open addressing
+ * with linear probing, so that neither lookups nor insertions into a map with
+ * spare capacity allocate.
+ * <p>
+ * {@link Long#MIN_VALUE} is reserved to mark empty slots and cannot be used as a key.
+ * Lookups of missing keys return the missing value given at construction.
+ */
+public class LongIntHashMap
+{
+	/*
+	 * State
+	 */
+	
+	private static final long EMPTY = Long.MIN_VALUE;
+	private static final int MIN_CAPACITY = 8;
+	
+	private final int _missingValue;
+	private long[] _keys;
+	private int[] _values;
+	private int _mask;
+	private int _size = 0;
+	
+	/*
+	 * Construction
+	 */
+	
+	/**
+	 * @param expectedSize is the number of entries the map should hold without resizing.
+	 * @param missingValue is the value returned by {@link #get} for keys not in the map.
+	 */
+	public LongIntHashMap(int expectedSize, int missingValue)
+	{
+		_missingValue = missingValue;
+		allocate(capacityFor(expectedSize));
+	}
+	
+	/*
+	 * LongIntHashMap methods
+	 */
+	
+	public int size()
+	{
+		return _size;
+	}
+	
+	public int getMissingValue()
+	{
+		return _missingValue;
+	}
+	
+	/**
+	 * Returns the value for the key, or the missing value if the key is not in the map.
+	 */
+	public int get(long key)
+	{
+		long[] keys = _keys;
+		int mask = _mask;
+		for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask)
+		{
+			long slotKey = keys[slot];
+			if (slotKey == key)
+				return _values[slot];
+			if (slotKey == EMPTY)
+				return _missingValue;
+		}
+	}
+	
+	public boolean containsKey(long key)
+	{
+		long[] keys = _keys;
+		int mask = _mask;
+		for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask)
+		{
+			long slotKey = keys[slot];
+			if (slotKey == key)
+				return true;
+			if (slotKey == EMPTY)
+				return false;
+		}
+	}
+	
+	/**
+	 * Sets the value for the key, returning the previous value or the missing value
+	 * if the key was not in the map.
+	 */
+	public int put(long key, int value)
+	{
+		if (key == EMPTY)
+			throw new IllegalArgumentException("Long.MIN_VALUE cannot be used as a key");
+		
+		long[] keys = _keys;
+		int mask = _mask;
+		int slot = hash(key) & mask;
+		for (; keys[slot] != EMPTY; slot = (slot + 1) & mask)
+		{
+			if (keys[slot] == key)
+			{
+				int previous = _values[slot];
+				_values[slot] = value;
+				return previous;
+			}
+		}
+		
+		keys[slot] = key;
+		_values[slot] = value;
+		if (++_size * 2 > keys.length)
+			rehash(keys.length * 2);
+		return _missingValue;
+	}
+	
+	/*
+	 * Private methods
+	 */
+	
+	// Keep the load factor at or below one half
+	private static int capacityFor(int expectedSize)
+	{
+		int capacity = MIN_CAPACITY;
+		while (capacity < 2 * (long)expectedSize + 1)
+		{
+			capacity <<= 1;
+			if (capacity <= 0)
+				throw new IllegalArgumentException("Expected size too large: " + expectedSize);
+		}
+		return capacity;
+	}
+	
+	private void allocate(int capacity)
+	{
+		_keys = new long[capacity];
+		Arrays.fill(_keys, EMPTY);
+		_values = new int[capacity];
+		_mask = capacity - 1;
+	}
+	
+	private void rehash(int capacity)
+	{
+		long[] oldKeys = _keys;
+		int[] oldValues = _values;
+		allocate(capacity);
+		
+		long[] keys = _keys;
+		int mask = _mask;
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			long key = oldKeys[i];
+			if (key != EMPTY)
+			{
+				int slot = hash(key) & mask;
+				while (keys[slot] != EMPTY)
+					slot = (slot + 1) & mask;
+				keys[slot] = key;
+				_values[slot] = oldValues[i];
+			}
+		}
+	}
+	
+	// Mix the bits of the key so that keys with regular strides spread over the table
+	private static int hash(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	}
+}
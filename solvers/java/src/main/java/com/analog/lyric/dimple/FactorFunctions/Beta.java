@@ -59,56 +59,69 @@ public class Beta extends FactorFunction
 	@Override
 	public double evalEnergy(Object... arguments)
 	{
-		int index = 0;
+		return evalEnergy(unboxArguments(arguments), 0, arguments.length);
+	}
+
+	@Override
+	public boolean hasPrimitiveEvalEnergy() {return true;}
+	@Override
+	public double evalEnergy(double[] arguments, int offset, int length)
+	{
+		double alpha = _alpha;
+		double beta = _beta;
+		double alphaMinusOne = _alphaMinusOne;
+		double betaMinusOne = _betaMinusOne;
+		double logBetaAlphaBeta = _logBetaAlphaBeta;
+		int index = offset;
 		if (!_parametersConstant)
 		{
-			_alpha = FactorFunctionUtilities.toDouble(arguments[index++]);	// First input is alpha parameter (must be non-negative)
-			_beta = FactorFunctionUtilities.toDouble(arguments[index++]);	// Second input is beta parameter (must be non-negative)
-			_alphaMinusOne = _alpha - 1;
-			_betaMinusOne = _beta - 1;
-			_logBetaAlphaBeta = org.apache.commons.math.special.Beta.logBeta(_alpha, _beta);
-			if (_alpha < 0) throw new DimpleException("Negative alpha parameter. Domain must be restricted to non-negative values.");
-			if (_beta < 0) throw new DimpleException("Negative alpha parameter. Domain must be restricted to non-negative values.");
+			alpha = arguments[index++];	// First input is alpha parameter (must be non-negative)
+			beta = arguments[index++];	// Second input is beta parameter (must be non-negative)
+			alphaMinusOne = alpha - 1;
+			betaMinusOne = beta - 1;
+			logBetaAlphaBeta = org.apache.commons.math.special.Beta.logBeta(alpha, beta);
+			if (alpha < 0) throw new DimpleException("Negative alpha parameter. Domain must be restricted to non-negative values.");
+			if (beta < 0) throw new DimpleException("Negative alpha parameter. Domain must be restricted to non-negative values.");
 		}
-    	int length = arguments.length;
-    	int N = length - index;			// Number of non-parameter variables
+    	int end = offset + length;
+    	int N = end - index;			// Number of non-parameter variables
     	double sum = 0;
-    	if (_alpha == 1 && _beta == 1)
+    	if (alpha == 1 && beta == 1)
     	{
-    		for (; index < length; index++)
+    		for (; index < end; index++)
     		{
-    			double x = FactorFunctionUtilities.toDouble(arguments[index]);				// Remaining inputs are Beta variables
+    			double x = arguments[index];				// Remaining inputs are Beta variables
         		if (x < 0 || x > 1)
         			return Double.POSITIVE_INFINITY;
     		}
     		return 0;	// Uniform within 0 <= x <= 1
     	}
-    	else if (_alpha == 1)
+    	else if (alpha == 1)
     	{
-    		for (; index < length; index++)
+    		for (; index < end; index++)
     		{
-    			double x = FactorFunctionUtilities.toDouble(arguments[index]);				// Remaining inputs are Beta variables
+    			double x = arguments[index];				// Remaining inputs are Beta variables
     			sum += Math.log(1 - x);
     		}
-    		return N * _logBetaAlphaBeta - sum * _betaMinusOne;
+    		return N * logBetaAlphaBeta - sum * betaMinusOne;
     	}
-		else if (_beta == 1)
+		else if (beta == 1)
 		{
-    		for (; index < length; index++)
+    		for (; index < end; index++)
     		{
-    			double x = FactorFunctionUtilities.toDouble(arguments[index]);				// Remaining inputs are Beta variables
+    			double x = arguments[index];				// Remaining inputs are Beta variables
     			sum += Math.log(x);
     		}
-    		return N * _logBetaAlphaBeta - sum * _alphaMinusOne;
+    		return N * logBetaAlphaBeta - sum * alphaMinusOne;
 		}
 		else
 		{
-    		for (; index < length; index++)
+    		for (; index < end; index++)
     		{
-    			double x = FactorFunctionUtilities.toDouble(arguments[index]);				// Remaining inputs are Beta variables
-    			sum += _alphaMinusOne * Math.log(x) + _betaMinusOne * Math.log(1 - x);
+    			double x = arguments[index];				// Remaining inputs are Beta variables
+    			sum += alphaMinusOne * Math.log(x) + betaMinusOne * Math.log(1 - x);
     		}
-    		return N * _logBetaAlphaBeta - sum;
+    		return N * logBetaAlphaBeta - sum;
 		}
 	}
 
@@ -41,7 +41,6 @@ import com.analog.lyric.dimple.model.DimpleException;
 public class Categorical extends FactorFunction
 {
 	protected int _dimension;
-	protected double[] _alpha;
 	int _firstDirectedToIndex;
 
 	public Categorical(int dimension)
@@ -49,7 +48,6 @@ public class Categorical extends FactorFunction
 		super();
 		_dimension = dimension;
 		_firstDirectedToIndex = dimension;
-		_alpha = new double[dimension];
 	}
 	
     @Override
@@ -58,22 +56,19 @@ public class Categorical extends FactorFunction
     	if (arguments.length <= _dimension)
     		throw new DimpleException("Insufficient number of arguments.");
     	
-    	int index = 0;
-    	for (int i = 0; i < _dimension; i++)
-    		_alpha[i] = FactorFunctionUtilities.toDouble(arguments[index++]);	// First _dimension arguments are vector of Alpha parameters
-    	
-    	// Get the normalization value
+    	// Get the normalization value; first _dimension arguments are vector of Alpha parameters
     	double normalizationValue = 0;
     	for (int i = 0; i < _dimension; i++)
-    		normalizationValue += Math.exp(-_alpha[i]);
+    		normalizationValue += Math.exp(-FactorFunctionUtilities.toDouble(arguments[i]));
     	
+    	int index = _dimension;
     	int length = arguments.length;
     	int N = length - index;			// Number of non-parameter variables
     	double sum = 0;
     	for (; index < length; index++)
     	{
     		int x = FactorFunctionUtilities.toInteger(arguments[index]);		// Remaining inputs are Categorical variables
-    		sum += _alpha[x];
+    		sum += FactorFunctionUtilities.toDouble(arguments[x]);
     	}    	
     	return sum + N * Math.log(normalizationValue);
 	}
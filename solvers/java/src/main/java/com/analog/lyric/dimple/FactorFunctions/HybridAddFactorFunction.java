@@ -50,4 +50,30 @@ public class HybridAddFactorFunction extends HybridSampledBPFactorFunction
 		}
 	}
 
+	@Override
+	public boolean hasPrimitiveSampling() {return true;}
+
+	@Override
+	public void acceptanceRatios(int portIndex, double[][] inputs, int numCandidates, double[] ratios)
+	{
+		for (int n = 0; n < numCandidates; n++)
+			ratios[n] = 1;
+	}
+
+	@Override
+	public double generateSample(int portIndex, double[] inputs)
+	{
+		double sum = inputs[0];
+		if (portIndex == 0)
+		{
+			for (int i = 1; i < inputs.length; i++)
+				sum += inputs[i];
+		}
+		else
+		{
+			for (int i = 1; i < inputs.length; i++)
+				sum -= inputs[i];
+		}
+		return sum;
+	}
 }
@@ -81,4 +81,37 @@ public class HybridRealFixedPower extends HybridSampledBPFactorFunction
 		}
 	}
 
+	@Override
+	public boolean hasPrimitiveSampling() {return true;}
+
+	@Override
+	public void acceptanceRatios(int outPortIndex, double[][] inputs, int numCandidates, double[] ratios)
+	{
+		if (inputs.length != 1)
+			throw new DimpleException("expect two edges");
+
+		double[] values = inputs[0];
+		boolean rejectNegative = (outPortIndex != 0 && _power%2 == 0);
+		for (int n = 0; n < numCandidates; n++)
+			ratios[n] = (rejectNegative && values[n] < 0) ? 0 : 1;
+	}
+
+	@Override
+	public double generateSample(int outPortIndex, double[] inputs)
+	{
+		if (inputs.length != 1)
+			throw new DimpleException("expect two edges");
+
+		double input = inputs[0];
+		if (outPortIndex == 1)
+		{
+			double tmp = Math.signum(input)*Math.pow(Math.abs(input),1.0/_power);
+			if (_power%2 == 0 && _random.nextBoolean())
+				tmp = -tmp;
+			return tmp;
+		}
+		else
+			return Math.pow(input, _power);
+	}
+
 }
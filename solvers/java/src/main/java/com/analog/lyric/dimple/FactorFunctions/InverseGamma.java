@@ -58,28 +58,40 @@ public class InverseGamma extends FactorFunction
     @Override
 	public double evalEnergy(Object... arguments)
     {
-    	int index = 0;
+    	return evalEnergy(unboxArguments(arguments), 0, arguments.length);
+    }
+
+    @Override
+    public boolean hasPrimitiveEvalEnergy() {return true;}
+    @Override
+	public double evalEnergy(double[] arguments, int offset, int length)
+    {
+    	double alpha = _alpha;
+    	double beta = _beta;
+    	double alphaPlusOne = _alphaPlusOne;
+    	double logGammaAlphaMinusAlphaLogBeta = _logGammaAlphaMinusAlphaLogBeta;
+    	int index = offset;
     	if (!_parametersConstant)
     	{
-    		_alpha = FactorFunctionUtilities.toDouble(arguments[index++]);	// First input is alpha parameter (must be non-negative)
-    		_beta = FactorFunctionUtilities.toDouble(arguments[index++]);	// Second input is beta parameter (must be non-negative)
-    		_alphaPlusOne = _alpha + 1;
-    		_logGammaAlphaMinusAlphaLogBeta = org.apache.commons.math.special.Gamma.logGamma(_alpha) - _alpha * Math.log(_beta);
-    		if (_alpha < 0) throw new DimpleException("Negative alpha parameter. Domain must be restricted to non-negative values.");
-    		if (_beta < 0) throw new DimpleException("Negative beta parameter. Domain must be restricted to non-negative values.");
+    		alpha = arguments[index++];	// First input is alpha parameter (must be non-negative)
+    		beta = arguments[index++];	// Second input is beta parameter (must be non-negative)
+    		alphaPlusOne = alpha + 1;
+    		logGammaAlphaMinusAlphaLogBeta = org.apache.commons.math.special.Gamma.logGamma(alpha) - alpha * Math.log(beta);
+    		if (alpha < 0) throw new DimpleException("Negative alpha parameter. Domain must be restricted to non-negative values.");
+    		if (beta < 0) throw new DimpleException("Negative beta parameter. Domain must be restricted to non-negative values.");
     	}
-    	int length = arguments.length;
-    	int N = length - index;			// Number of non-parameter variables
+    	int end = offset + length;
+    	int N = end - index;			// Number of non-parameter variables
     	double sum = 0;
-    	for (; index < length; index++)
+    	for (; index < end; index++)
     	{
-    		double x = FactorFunctionUtilities.toDouble(arguments[index]);				// Remaining inputs are Inverse Gamma variables
+    		double x = arguments[index];				// Remaining inputs are Inverse Gamma variables
         	if (x < 0)
         		return Double.POSITIVE_INFINITY;
         	else
-        		sum += _beta/x - _alphaPlusOne * Math.log(x);
+        		sum += beta/x - alphaPlusOne * Math.log(x);
     	}
-		return sum + N * _logGammaAlphaMinusAlphaLogBeta;
+		return sum + N * logGammaAlphaMinusAlphaLogBeta;
 	}
     
     @Override
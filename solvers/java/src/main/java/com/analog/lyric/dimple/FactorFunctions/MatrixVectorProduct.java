@@ -43,10 +43,6 @@ public class MatrixVectorProduct extends FactorFunction
 {
 	protected int _inLength;
 	protected int _outLength;
-	protected double[][] _matrix;
-	protected double[] _inVector;
-	protected double[] _outVector;
-	protected double[] _expectedOutVector;
 	protected double _beta = 0;
 	protected boolean _smoothingSpecified = false;
 	
@@ -56,10 +52,6 @@ public class MatrixVectorProduct extends FactorFunction
 		super();
 		_inLength = inLength;
 		_outLength = outLength;
-    	_matrix = new double[_outLength][_inLength];
-    	_inVector = new double[_inLength];
-    	_outVector = new double[_outLength];
-    	_expectedOutVector = new double[_outLength];
 
 		if (smoothing > 0)
 		{
@@ -71,45 +63,11 @@ public class MatrixVectorProduct extends FactorFunction
     @Override
     public double evalEnergy(Object ... arguments)
     {
-    	int argIndex = 0;
-    	
-    	// Get the output vector values
-    	for (int i = 0; i < _outLength; i++)
-    		_outVector[i] = FactorFunctionUtilities.toDouble(arguments[argIndex++]);
-
-		// Get the matrix values
-    	if (arguments[argIndex] instanceof double[][])	// Constant matrix is passed as a single argument
-    		_matrix = (double[][])arguments[argIndex++];
-    	else
-    	{
-    		for (int col = 0; col < _inLength; col++)
-    			for (int row = 0; row < _outLength; row++)
-    				_matrix[row][col] = FactorFunctionUtilities.toDouble(arguments[argIndex++]);
-    	}
-    	
-    	// Get the input vector values
-    	if (arguments[argIndex] instanceof double[])	// Constant matrix is passed as a single argument
-    		_inVector = (double[])arguments[argIndex++];
-    	else
-    	{
-    		for (int i = 0; i < _inLength; i++)
-    			_inVector[i] = FactorFunctionUtilities.toDouble(arguments[argIndex++]);
-    	}
-    	
-    	// Compute the expected output
-    	for (int row = 0; row < _outLength; row++)
-    	{
-    		double sum = 0;
-    		for (int col = 0; col < _inLength; col++)
-    			sum += _matrix[row][col] * _inVector[col];
-    		_expectedOutVector[row] = sum;
-    	}
-
-    	// Compute the total squared error
+    	// Compute the total squared error between the output values and the expected output
     	double error = 0;
-    	for (int i = 0; i < _outLength; i++)
+    	for (int row = 0; row < _outLength; row++)
     	{
-    		double diff = _outVector[i] - _expectedOutVector[i];
+    		double diff = FactorFunctionUtilities.toDouble(arguments[row]) - expectedOutput(row, arguments);
     		error += diff*diff;
     	}
     	
@@ -119,6 +77,26 @@ public class MatrixVectorProduct extends FactorFunction
     		return (error == 0) ? 0 : Double.POSITIVE_INFINITY;
     }
     
+    // Row of the matrix times the input vector, read straight from the arguments: outputs,
+    // then the matrix (either constant or column by column), then the input vector (either
+    // constant or element by element)
+    private double expectedOutput(int row, Object[] arguments)
+    {
+    	int matrixIndex = _outLength;
+    	double[][] matrix = (arguments[matrixIndex] instanceof double[][]) ? (double[][])arguments[matrixIndex] : null;
+    	int inIndex = (matrix != null) ? matrixIndex + 1 : matrixIndex + _inLength*_outLength;
+    	double[] inVector = (arguments[inIndex] instanceof double[]) ? (double[])arguments[inIndex] : null;
+    	
+    	double sum = 0;
+    	for (int col = 0; col < _inLength; col++)
+    	{
+    		double m = (matrix != null) ? matrix[row][col] : FactorFunctionUtilities.toDouble(arguments[matrixIndex + col*_outLength + row]);
+    		double x = (inVector != null) ? inVector[col] : FactorFunctionUtilities.toDouble(arguments[inIndex + col]);
+    		sum += m * x;
+    	}
+    	return sum;
+    }
+    
     
     @Override
     public final boolean isDirected() {return true;}
@@ -135,39 +113,8 @@ public class MatrixVectorProduct extends FactorFunction
     @Override
 	public final void evalDeterministicFunction(Object... arguments)
     {
-    	int argIndex = _outLength;	// Skip the outputs
-    	
-		// Get the matrix values
-    	if (arguments[argIndex] instanceof double[][])	// Constant matrix is passed as a single argument
-    		_matrix = (double[][])arguments[argIndex++];
-    	else
-    	{
-    		for (int col = 0; col < _inLength; col++)
-    			for (int row = 0; row < _outLength; row++)
-    				_matrix[row][col] = FactorFunctionUtilities.toDouble(arguments[argIndex++]);
-    	}
-    	
-    	// Get the input vector values
-    	if (arguments[argIndex] instanceof double[])	// Constant matrix is passed as a single argument
-    		_inVector = (double[])arguments[argIndex++];
-    	else
-    	{
-    		for (int i = 0; i < _inLength; i++)
-    			_inVector[i] = FactorFunctionUtilities.toDouble(arguments[argIndex++]);
-    	}
-    	
-    	// Compute the output
+    	// Replace the output values; the outputs come first, so none of the inputs are overwritten
     	for (int row = 0; row < _outLength; row++)
-    	{
-    		double sum = 0;
-    		for (int col = 0; col < _inLength; col++)
-    			sum += _matrix[row][col] * _inVector[col];
-    		_outVector[row] = sum;
-    	}
-    	
-    	// Replace the output values
-    	int outIndex = 0;
-    	for (int i = 0; i < _outLength; i++)
-    		arguments[outIndex++] = _outVector[i];
+    		arguments[row] = expectedOutput(row, arguments);
     }
 }
@@ -60,24 +60,36 @@ public class Normal extends FactorFunction
     @Override
 	public double evalEnergy(Object ... arguments)
 	{
-    	int index = 0;
+		return evalEnergy(unboxArguments(arguments), 0, arguments.length);
+	}
+
+    @Override
+    public boolean hasPrimitiveEvalEnergy() {return true;}
+    @Override
+	public double evalEnergy(double[] arguments, int offset, int length)
+	{
+    	double mean = _mean;
+    	double precision = _precision;
+    	double logPrecisionOverTwo = _logPrecisionOverTwo;
+    	double precisionOverTwo = _precisionOverTwo;
+    	int index = offset;
     	if (!_parametersConstant)
     	{
-    		_mean = FactorFunctionUtilities.toDouble(arguments[index++]);				// First variable is mean parameter
-    		_precision = FactorFunctionUtilities.toDouble(arguments[index++]);			// Second variable is precision (must be non-negative)
-    		_logPrecisionOverTwo = Math.log(_precision)*0.5;
-    		_precisionOverTwo = _precision*0.5;
-    		if (_precision < 0) throw new DimpleException("Negative precision value. Domain must be restricted to non-negative values.");
+    		mean = arguments[index++];				// First variable is mean parameter
+    		precision = arguments[index++];			// Second variable is precision (must be non-negative)
+    		logPrecisionOverTwo = Math.log(precision)*0.5;
+    		precisionOverTwo = precision*0.5;
+    		if (precision < 0) throw new DimpleException("Negative precision value. Domain must be restricted to non-negative values.");
     	}
-    	int length = arguments.length;
-    	int N = length - index;			// Number of non-parameter variables
+    	int end = offset + length;
+    	int N = end - index;			// Number of non-parameter variables
     	double sum = 0;
-    	for (; index < length; index++)
+    	for (; index < end; index++)
     	{
-    		double relInput = FactorFunctionUtilities.toDouble(arguments[index]) - _mean;	// Remaining inputs are Normal variables
+    		double relInput = arguments[index] - mean;	// Remaining inputs are Normal variables
     		sum += relInput*relInput;
     	}
-    	return sum * _precisionOverTwo - N * _logPrecisionOverTwo;
+    	return sum * precisionOverTwo - N * logPrecisionOverTwo;
 	}
     
     
@@ -54,23 +54,34 @@ public class Rayleigh extends FactorFunction
     @Override
 	public double evalEnergy(Object... arguments)
     {
-    	int index = 0;
+    	return evalEnergy(unboxArguments(arguments), 0, arguments.length);
+    }
+
+    @Override
+    public boolean hasPrimitiveEvalEnergy() {return true;}
+    @Override
+	public double evalEnergy(double[] arguments, int offset, int length)
+    {
+    	double sigma = _sigma;
+    	double inverseSigmaSquared = _inverseSigmaSquared;
+    	double halfInverseSigmaSquared = _halfInverseSigmaSquared;
+    	int index = offset;
     	if (!_parametersConstant)
     	{
-    		_sigma = FactorFunctionUtilities.toDouble(arguments[index++]);				// First variable is sigma
-    		_inverseSigmaSquared = 1/(_sigma*_sigma);
-    		_halfInverseSigmaSquared = _inverseSigmaSquared * 0.5;
-    		if (_sigma < 0) throw new DimpleException("Negative sigma value. Domain must be restricted to non-negative values.");
+    		sigma = arguments[index++];				// First variable is sigma
+    		inverseSigmaSquared = 1/(sigma*sigma);
+    		halfInverseSigmaSquared = inverseSigmaSquared * 0.5;
+    		if (sigma < 0) throw new DimpleException("Negative sigma value. Domain must be restricted to non-negative values.");
     	}
-    	int length = arguments.length;
+    	int end = offset + length;
     	double sum = 0;
-    	for (; index < length; index++)
+    	for (; index < end; index++)
     	{
-    		double x = FactorFunctionUtilities.toDouble(arguments[index]);				// Remaining inputs are Rayleigh variables
+    		double x = arguments[index];				// Remaining inputs are Rayleigh variables
         	if (x < 0)
         		return Double.POSITIVE_INFINITY;
         	else
-        		sum += x*x*_halfInverseSigmaSquared - Math.log(x*_inverseSigmaSquared);
+        		sum += x*x*halfInverseSigmaSquared - Math.log(x*inverseSigmaSquared);
     	}
     	return sum;
 	}
@@ -54,13 +54,21 @@ public class Subtract extends FactorFunction
     @Override
     public double evalEnergy(Object ... arguments)
     {
-    	int length = arguments.length;
-    	double out = FactorFunctionUtilities.toDouble(arguments[0]);
-    	double posIn = FactorFunctionUtilities.toDouble(arguments[1]);
+    	return evalEnergy(unboxArguments(arguments), 0, arguments.length);
+    }
+
+    @Override
+    public boolean hasPrimitiveEvalEnergy() {return true;}
+    @Override
+    public double evalEnergy(double[] arguments, int offset, int length)
+    {
+    	int end = offset + length;
+    	double out = arguments[offset];
+    	double posIn = arguments[offset + 1];
 
     	double sum = posIn;
-    	for (int i = 2; i < length; i++)
-    		sum -= FactorFunctionUtilities.toDouble(arguments[i]);
+    	for (int i = offset + 2; i < end; i++)
+    		sum -= arguments[i];
     	
     	if (_smoothingSpecified)
     	{
@@ -53,12 +53,20 @@ public class Sum extends FactorFunction
     @Override
     public double evalEnergy(Object ... arguments)
     {
-    	int length = arguments.length;
-    	double out = FactorFunctionUtilities.toDouble(arguments[0]);
+    	return evalEnergy(unboxArguments(arguments), 0, arguments.length);
+    }
+
+    @Override
+    public boolean hasPrimitiveEvalEnergy() {return true;}
+    @Override
+    public double evalEnergy(double[] arguments, int offset, int length)
+    {
+    	int end = offset + length;
+    	double out = arguments[offset];
 
     	double sum = 0;
-    	for (int i = 1; i < length; i++)
-    		sum += FactorFunctionUtilities.toDouble(arguments[i]);
+    	for (int i = offset + 1; i < end; i++)
+    		sum += arguments[i];
     	
     	if (_smoothingSpecified)
     	{
@@ -59,25 +59,36 @@ public class VonMises extends FactorFunction
     @Override
 	public double evalEnergy(Object... arguments)
     {
-    	int index = 0;
+    	return evalEnergy(unboxArguments(arguments), 0, arguments.length);
+    }
+
+    @Override
+    public boolean hasPrimitiveEvalEnergy() {return true;}
+    @Override
+	public double evalEnergy(double[] arguments, int offset, int length)
+    {
+    	double mean = _mean;
+    	double precision = _precision;
+    	double logBesseli0Precision = _logBesseli0Precision;
+    	int index = offset;
     	if (!_parametersConstant)
     	{
-    		_mean = FactorFunctionUtilities.toDouble(arguments[index++]);				// First variable is mean parameter
-    		_precision = FactorFunctionUtilities.toDouble(arguments[index++]);			// Second variable is precision (must be non-negative)
-    		_logBesseli0Precision = Math.log(Bessel.i0(_precision));
-    		if (_precision < 0) throw new DimpleException("Negative precision value. Domain must be restricted to non-negative values.");
+    		mean = arguments[index++];				// First variable is mean parameter
+    		precision = arguments[index++];			// Second variable is precision (must be non-negative)
+    		logBesseli0Precision = Math.log(Bessel.i0(precision));
+    		if (precision < 0) throw new DimpleException("Negative precision value. Domain must be restricted to non-negative values.");
     	}
-    	int length = arguments.length;
-    	int N = length - index;			// Number of non-parameter variables
+    	int end = offset + length;
+    	int N = end - index;			// Number of non-parameter variables
     	double sum = 0;
-    	for (; index < length; index++)
+    	for (; index < end; index++)
     	{
-    		double x = FactorFunctionUtilities.toDouble(arguments[index]);				// Remaining inputs are VonMises variables
+    		double x = arguments[index];				// Remaining inputs are VonMises variables
     		if (x < MINUS_PI || x > PI)
     			return Double.POSITIVE_INFINITY;
-        	sum -= Math.cos(x - _mean);
+        	sum -= Math.cos(x - mean);
     	}
-    	return sum * _precision + N * _logBesseli0Precision;
+    	return sum * precision + N * logBesseli0Precision;
 	}
     
     @Override
@@ -36,7 +36,8 @@ public abstract class FactorFunction extends FactorFunctionBase
 		super(name);
 	}
 
-	public boolean factorTableExists(Domain [] domainList)
+	// The table cache is synchronized, since factors sharing this function may create their solver objects on different threads
+	public synchronized boolean factorTableExists(Domain [] domainList)
 	{
     	//first step, convert domains to DiscreteDOmains
 		if (_factory == null)
@@ -54,7 +55,7 @@ public abstract class FactorFunction extends FactorFunctionBase
     	return _factory.tableExists(this, dds);
 	}
 	
-    public FactorTable getFactorTable(Domain [] domainList)
+    public synchronized FactorTable getFactorTable(Domain [] domainList)
     {
     	//first step, convert domains to DiscreteDOmains
     	
@@ -41,6 +41,8 @@ public abstract class FactorFunctionBase
 	// At least one or the other of these must be overridden in a derived class.
 	// SHOULD override evalEnergy instead of eval, but for now can override one or the other.
 	// TODO: Eventually eval should be made final and so that only evalEnergy can be overridden.
+	// A function may be shared by factors that are evaluated on several threads at once (e.g. parallel Gibbs chains),
+	// so evaluation should not store per-call state in fields.
 	public double eval(Object... arguments)
 	{
 		return Math.exp(-evalEnergy(arguments));
@@ -49,7 +51,61 @@ public abstract class FactorFunctionBase
 	{
 		return -Math.log(eval(arguments));
 	}
-	
+
+	// Primitive versions of evalEnergy for the case where all arguments are real values, which avoid boxing each argument.
+	// Factor functions that can evaluate these directly should override evalEnergy(double[], int, int)
+	// and hasPrimitiveEvalEnergy; otherwise the arguments are boxed and passed to evalEnergy(Object...).
+	public boolean hasPrimitiveEvalEnergy() {return false;}
+	public double evalEnergy(double[] arguments)
+	{
+		return evalEnergy(arguments, 0, arguments.length);
+	}
+	public double evalEnergy(double[] arguments, int offset, int length)
+	{
+		Object[] boxedArguments = new Object[length];
+		for (int i = 0; i < length; i++)
+			boxedArguments[i] = arguments[offset + i];
+		return evalEnergy(boxedArguments);
+	}
+
+	// Versions of eval and evalEnergy that use a scratch array from the caller, at least
+	// getScratchLength(number of arguments) long, to unbox or expand the arguments.  Solver factors
+	// keep a scratch array each and pass it down, so that no temporary array is allocated per call.
+	public int getScratchLength(int numArguments)
+	{
+		return numArguments;
+	}
+	public double evalWithScratch(Object[] arguments, double[] scratch)
+	{
+		if (hasPrimitiveEvalEnergy())
+			return Math.exp(-evalEnergyWithScratch(arguments, scratch));
+		return eval(arguments);
+	}
+	public double evalEnergyWithScratch(Object[] arguments, double[] scratch)
+	{
+		if (!hasPrimitiveEvalEnergy())
+			return evalEnergy(arguments);
+		int length = arguments.length;
+		for (int i = 0; i < length; i++)
+			scratch[i] = FactorFunctionUtilities.toDouble(arguments[i]);
+		return evalEnergy(scratch, 0, length);
+	}
+	public double evalEnergyWithScratch(double[] arguments, double[] scratch)
+	{
+		return evalEnergy(arguments, 0, arguments.length);
+	}
+
+	// Factor functions with a primitive evalEnergy can implement evalEnergy(Object...) as
+	// evalEnergy(unboxArguments(arguments), 0, arguments.length), so that the math is only written once
+	protected final double[] unboxArguments(Object[] arguments)
+	{
+		int length = arguments.length;
+		double[] unboxedArguments = new double[length];
+		for (int i = 0; i < length; i++)
+			unboxedArguments[i] = FactorFunctionUtilities.toDouble(arguments[i]);
+		return unboxedArguments;
+	}
+
 	
 	public abstract FactorTable getFactorTable(Domain [] domainList);
 	
@@ -27,6 +27,7 @@ public class FactorFunctionWithConstants extends FactorFunction
 	private FactorFunctionBase _factorFunction;
 	private Object [] _constants;
 	private int [] _constantIndices;
+	private double [] _realConstants;	// Null unless all constants are numeric
 	
 	public FactorFunctionWithConstants(FactorFunctionBase factorFunction,
 			Object [] constants, int [] constantIndices) 
@@ -45,6 +46,19 @@ public class FactorFunctionWithConstants extends FactorFunction
 		
 		if (_constantIndices.length != _constants.length)
 			throw new DimpleException("need to specify the constants and their locations");
+		
+		_realConstants = new double[_constants.length];
+		for (int i = 0; i < _constants.length; i++)
+		{
+			Object constant = _constants[i];
+			if (constant instanceof Double || constant instanceof Integer || constant instanceof Boolean)
+				_realConstants[i] = FactorFunctionUtilities.toDouble(constant);
+			else
+			{
+				_realConstants = null;
+				break;
+			}
+		}
 	}
 	
 
@@ -68,6 +82,84 @@ public class FactorFunctionWithConstants extends FactorFunction
 		return _factorFunction.evalEnergy(expandInputList(arguments));
 	}
 	
+	@Override
+	public boolean hasPrimitiveEvalEnergy()
+	{
+		return _realConstants != null && _factorFunction.hasPrimitiveEvalEnergy();
+	}
+	
+	@Override
+	public double evalEnergy(double[] arguments, int offset, int length)
+	{
+		if (_realConstants == null)
+			return super.evalEnergy(arguments, offset, length);
+		
+		return evalExpandedEnergy(arguments, offset, length, new double[length + _constantIndices.length]);
+	}
+	
+	@Override
+	public int getScratchLength(int numArguments)
+	{
+		return numArguments + _constantIndices.length;
+	}
+	
+	@Override
+	public double evalWithScratch(Object[] arguments, double[] scratch)
+	{
+		return Math.exp(-evalEnergyWithScratch(arguments, scratch));
+	}
+	
+	@Override
+	public double evalEnergyWithScratch(Object[] arguments, double[] scratch)
+	{
+		if (!hasPrimitiveEvalEnergy())
+			return _factorFunction.evalEnergyWithScratch(expandInputList(arguments), scratch);
+		
+		// Unbox the inputs straight into their places in the expanded list
+		int numConstants = _constantIndices.length;
+		int expandedLength = arguments.length + numConstants;
+		for (int i = 0, iConst = 0, iInput = 0; i < expandedLength; i++)
+		{
+			if (iConst < numConstants && _constantIndices[iConst] == i)
+				scratch[i] = _realConstants[iConst++];
+			else
+			{
+				if (iInput >= arguments.length)
+					throw new DimpleException("incorrect number of arguments");
+				scratch[i] = FactorFunctionUtilities.toDouble(arguments[iInput++]);
+			}
+		}
+		return _factorFunction.evalEnergy(scratch, 0, expandedLength);
+	}
+	
+	@Override
+	public double evalEnergyWithScratch(double[] arguments, double[] scratch)
+	{
+		if (_realConstants == null)
+			return super.evalEnergyWithScratch(arguments, scratch);
+		
+		return evalExpandedEnergy(arguments, 0, arguments.length, scratch);
+	}
+	
+	// Expand list of inputs to include the constants, into an array that may be longer than needed
+	private double evalExpandedEnergy(double[] arguments, int offset, int length, double[] expandedInputs)
+	{
+		int numConstants = _constantIndices.length;
+		int expandedLength = length + numConstants;
+		for (int i = 0, iConst = 0, iInput = offset; i < expandedLength; i++)
+		{
+			if (iConst < numConstants && _constantIndices[iConst] == i)
+				expandedInputs[i] = _realConstants[iConst++];
+			else
+			{
+				if (iInput >= offset + length)
+					throw new DimpleException("incorrect number of arguments");
+				expandedInputs[i] = arguments[iInput++];
+			}
+		}
+		return _factorFunction.evalEnergy(expandedInputs, 0, expandedLength);
+	}
+	
 	@Override
 	public boolean isDirected()
 	{
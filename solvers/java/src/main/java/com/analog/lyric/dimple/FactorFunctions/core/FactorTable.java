@@ -17,8 +17,10 @@
 package com.analog.lyric.dimple.FactorFunctions.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import com.analog.lyric.collect.LongIntHashMap;
 import com.analog.lyric.dimple.model.Discrete;
 import com.analog.lyric.dimple.model.DiscreteDomain;
 import com.analog.lyric.dimple.model.DimpleException;
@@ -29,9 +31,63 @@ public class FactorTable extends FactorTableBase
 {
 	private DiscreteDomain [] _domains;
 
-	// Used for converting indices into weights
-	private int [] _indices2weightIndex;
-	private int [] _offsets;
+	// Used for converting indices into weights.  The joint index of a set of table indices is
+	// the dot product of the indices and the offsets.  Only one of the dense and sparse maps from
+	// joint index to weight index is used.
+	// The lazily built caches are immutable once built and are published through a single volatile
+	// field each, since solver objects sharing the table may be created on several threads at once.
+	private static final class JointIndex
+	{
+		final long [] offsets;
+		final int [] indices2weightIndex;
+		final LongIntHashMap sparseIndices2weightIndex;
+		
+		JointIndex(long [] offsets, int [] indices2weightIndex, LongIntHashMap sparseIndices2weightIndex)
+		{
+			this.offsets = offsets;
+			this.indices2weightIndex = indices2weightIndex;
+			this.sparseIndices2weightIndex = sparseIndices2weightIndex;
+		}
+	}
+	private volatile JointIndex _jointIndex;
+	
+	// Tables whose Cartesian product is no larger than this always use the dense index
+	private static final long MIN_SPARSE_INDEX_SIZE = 1 << 16;
+	// Minimum ratio of rows to Cartesian product size for larger tables to use the dense index
+	private static final double MIN_DENSE_INDEX_DENSITY = 1.0 / 16;
+	private static long _maxDenseIndexSize = 1 << 24;
+	
+	// Potentials laid out over the full Cartesian product of the domains, infinite where there is no table entry
+	private static final class DensePotentials
+	{
+		final double [] potentials;
+		final double [] source;		// The potentials array the dense potentials were built from
+		final JointIndex index;
+		
+		DensePotentials(double [] potentials, double [] source, JointIndex index)
+		{
+			this.potentials = potentials;
+			this.source = source;
+			this.index = index;
+		}
+	}
+	private volatile DensePotentials _densePotentials;
+	
+	// Single-precision copies of the weights and potentials, for solvers that keep float messages
+	private static final class FloatCopies
+	{
+		final float [] weights;
+		final float [] potentials;
+		final double [] source;		// The potentials array the float copies were built from
+		
+		FloatCopies(float [] weights, float [] potentials, double [] source)
+		{
+			this.weights = weights;
+			this.potentials = potentials;
+			this.source = source;
+		}
+	}
+	private volatile FloatCopies _floatCopies;
 
 	// Used for evaluating as FactorFunction
 	private ArrayList<HashSet<Object>> _domainSets = null;
@@ -134,21 +190,21 @@ public class FactorTable extends FactorTableBase
 	public void change(int [][] indices, double [] weights, boolean check)
 	{
 		super.change(indices,weights,check);
-		_indices2weightIndex = null;
+		invalidateIndices2weightIndex();
 		_checkedIfDeterministicDirected = false;
 	}
 	@Override
 	public void change(int [][] indices, double [] weights)
 	{
 		super.change(indices, weights);
-		_indices2weightIndex = null;
+		invalidateIndices2weightIndex();
 		_checkedIfDeterministicDirected = false;
 	}
 	@Override
 	public void changeIndices(int [][] indices) 
 	{
 		super.changeIndices(indices);
-		_indices2weightIndex = null;
+		invalidateIndices2weightIndex();
 		_checkedIfDeterministicDirected = false;
 	}
 	@Override
@@ -168,6 +224,8 @@ public class FactorTable extends FactorTableBase
 	{
 		super.set(indices, value);
 		_checkedIfDeterministicDirected = false;
+		_densePotentials = null;		// The potentials are modified in place
+		_floatCopies = null;
 	}
 	
 
@@ -597,57 +655,201 @@ public class FactorTable extends FactorTableBase
 	
 	// This method provides the ability to get the weight index from the table
 	// indices.  The weight index can be used to either retrieve the weight
-	// or the potential.
+	// or the potential.  Returns -1 if the indices are not in the table.
 	public int getWeightIndexFromTableIndices(int [] indices)
 	{
+		return getWeightIndexFromJointIndex(getJointIndexFromTableIndices(indices));
+	}
+	
+	// Returns the index into the Cartesian product of the domains (the joint index) for the given table indices.
+	public long getJointIndexFromTableIndices(int [] indices)
+	{
+		long [] offsets = getJointIndex().offsets;
+		long jointIndex = 0;
+		for (int i = 0; i < indices.length; i++)
+			jointIndex += indices[i] * offsets[i];
+		return jointIndex;
+	}
+	
+	// Slice access, for reading all of the values of one port with the other ports held at fixed indices.
+	// The joint index of value k of the port is getJointIndexSliceBase(indices, port) + k * getJointIndexStride(port),
+	// where the entry of indices for the port itself is ignored.
+	public long getJointIndexSliceBase(int [] indices, int port)
+	{
+		long [] offsets = getJointIndex().offsets;
+		long jointIndex = 0;
+		for (int i = 0; i < indices.length; i++)
+			if (i != port)
+				jointIndex += indices[i] * offsets[i];
+		return jointIndex;
+	}
+	
+	public long getJointIndexStride(int port)
+	{
+		return getJointIndex().offsets[port];
+	}
+	
+	// Returns the weight index for a joint index, or -1 if there is no table entry for it
+	public int getWeightIndexFromJointIndex(long jointIndex)
+	{
+		JointIndex index = getJointIndex();
+		if (index.indices2weightIndex != null)
+			return index.indices2weightIndex[(int)jointIndex];
+		else
+			return index.sparseIndices2weightIndex.get(jointIndex);
+	}
+	
+	// Returns true if the joint index is mapped to weight indices with an array covering the whole
+	// Cartesian product of the domains, in which case getDensePotentials may be used
+	public boolean hasDenseIndex()
+	{
+		return getJointIndex().indices2weightIndex != null;
+	}
+	
+	// Returns the potentials indexed by joint index rather than weight index, with infinite
+	// potential for entries not in the table.  This avoids looking up the weight index when
+	// reading slices.  The array must not be modified.  Only available if hasDenseIndex is true.
+	public double [] getDensePotentials()
+	{
+		JointIndex index = getJointIndex();
+		if (index.indices2weightIndex == null)
+			throw new DimpleException("Dense potentials are not available for sparse factor tables");
 		
-		if (_indices2weightIndex == null)
-			initIndices2weightIndex();
-
-		int tmp = 0;
-		for (int i = 0; i < indices.length ;i++)
-			tmp += indices[i] * _offsets[i];
-		
-		int weightIndex = _indices2weightIndex[tmp];
-		
-		return weightIndex;
-		
+		double [] potentials = getPotentials();
+		DensePotentials dense = _densePotentials;
+		if (dense == null || dense.source != potentials || dense.index != index)
+		{
+			int [] indices2weightIndex = index.indices2weightIndex;
+			double [] densePotentials = new double[indices2weightIndex.length];
+			for (int i = 0; i < densePotentials.length; i++)
+			{
+				int weightIndex = indices2weightIndex[i];
+				densePotentials[i] = weightIndex >= 0 ? potentials[weightIndex] : Double.POSITIVE_INFINITY;
+			}
+			dense = new DensePotentials(densePotentials, potentials, index);
+			_densePotentials = dense;
+		}
+		return dense.potentials;
+	}
+	
+	// Single-precision copies of the weights and potentials, rebuilt whenever the table changes.
+	// The arrays must not be modified.
+	public float [] getFloatWeights()
+	{
+		return getFloatCopies().weights;
+	}
+	
+	public float [] getFloatPotentials()
+	{
+		return getFloatCopies().potentials;
+	}
+	
+	private FloatCopies getFloatCopies()
+	{
+		double [] potentials = getPotentials();
+		FloatCopies copies = _floatCopies;
+		if (copies == null || copies.source != potentials)
+		{
+			double [] weights = getWeights();
+			float [] floatWeights = new float[weights.length];
+			float [] floatPotentials = new float[potentials.length];
+			for (int i = 0; i < weights.length; i++)
+			{
+				floatWeights[i] = (float)weights[i];
+				floatPotentials[i] = (float)potentials[i];
+			}
+			copies = new FloatCopies(floatWeights, floatPotentials, potentials);
+			_floatCopies = copies;
+		}
+		return copies;
+	}
+	
+	// The largest Cartesian product for which a dense index may be used
+	public static long getMaxDenseIndexSize()
+	{
+		return _maxDenseIndexSize;
+	}
+	
+	public static void setMaxDenseIndexSize(long size)
+	{
+		_maxDenseIndexSize = size;
+	}
+	
+	// Returns true if the dense index should be used for a table with the given number of
+	// rows and Cartesian product size.  Small tables are always dense; larger ones must also
+	// have enough rows to justify an array entry per element of the product.
+	public static boolean useDenseIndex(int rows, long jointSize)
+	{
+		if (jointSize > _maxDenseIndexSize)
+			return false;
+		if (jointSize <= MIN_SPARSE_INDEX_SIZE)
+			return true;
+		return rows >= jointSize * MIN_DENSE_INDEX_DENSITY;
+	}
+	
+	private void invalidateIndices2weightIndex()
+	{
+		_jointIndex = null;
+	}
+	
+	private JointIndex getJointIndex()
+	{
+		JointIndex index = _jointIndex;
+		if (index == null)
+		{
+			index = buildIndices2weightIndex();
+			_jointIndex = index;
+		}
+		return index;
 	}
 	
 	 // This method sets up the data structures to make
 	 // getWeightIndex... possible.
-	 // This routine creates an array that is as long as the full
-	 // Cartesian product of the variables connected to this factor
-	 // table.  
-	private void initIndices2weightIndex()
+	 // If the table is dense enough, this creates an array that is as long
+	 // as the full Cartesian product of the variables connected to this factor
+	 // table.  Otherwise it creates a hash table with an entry per row.
+	private JointIndex buildIndices2weightIndex()
 	{
-		_offsets = new int[_domains.length];
-		int prod = 1;
-		_offsets[0] = 1;
+		long [] offsets = new long[_domains.length];
+		long prod = 1;
 		
 		//Create the indices into the array
-		for (int i = 1; i < _domains.length; i++)
+		for (int i = 0; i < _domains.length; i++)
 		{
-			prod = prod*_domains[i-1].size();
-			_offsets[i] = prod;
+			offsets[i] = prod;
+			int size = _domains[i].size();
+			if (prod > Long.MAX_VALUE / size)
+				throw new DimpleException("Factor table domains are too large to index");
+			prod = prod*size;
 		}
-		prod = prod*_domains[_domains.length-1].size();
-		_indices2weightIndex = new int[prod];
 		
-		//Initialize the array to -1.
-		for (int i = 0; i < _indices2weightIndex.length; i++)
+		int [][] indices = getIndices();
+		if (useDenseIndex(indices.length, prod))
 		{
-			_indices2weightIndex[i] = -1;
+			int [] indices2weightIndex = new int[(int)prod];
+			Arrays.fill(indices2weightIndex, -1);
+			
+			//Now, go through the factor table and initialize
+			for (int i = 0; i < indices.length; i++)
+			{
+				long tmp = 0;
+				for (int j = 0; j < indices[i].length ;j++)
+					tmp += indices[i][j] * offsets[j];
+				indices2weightIndex[(int)tmp] = i;			
+			}
+			return new JointIndex(offsets, indices2weightIndex, null);
 		}
-		
-		//Now, go through the factor table and initialize
-		int [][] indices = getIndices();
-		for (int i = 0; i < indices.length; i++)
+		else
 		{
-			int tmp = 0;
-			for (int j = 0; j < indices[i].length ;j++)
-				tmp += indices[i][j] * _offsets[j];
-			_indices2weightIndex[tmp] = i;			
+			LongIntHashMap sparseIndices2weightIndex = new LongIntHashMap(indices.length, -1);
+			for (int i = 0; i < indices.length; i++)
+			{
+				long tmp = 0;
+				for (int j = 0; j < indices[i].length ;j++)
+					tmp += indices[i][j] * offsets[j];
+				sparseIndices2weightIndex.put(tmp, i);
+			}
+			return new JointIndex(offsets, null, sparseIndices2weightIndex);
 		}
 	}
 	
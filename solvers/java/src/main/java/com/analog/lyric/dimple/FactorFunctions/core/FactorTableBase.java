@@ -19,6 +19,7 @@ package com.analog.lyric.dimple.FactorFunctions.core;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 public class FactorTableBase
@@ -31,7 +32,15 @@ public class FactorTableBase
 	 * Must be changed when values in weights changed or nulled out to force
 	 * recomputation.
 	 */
-	private double [] _potentials = null;
+	private volatile double [] _potentials = null;
+	
+	/**
+	 * Incremented by every method that changes the indices or weights, so that values
+	 * computed from the table can tell whether they are stale.  Changes made directly to
+	 * the arrays returned by {@link #getIndices} or {@link #getWeights} are not counted.
+	 */
+	private int _version = 0;
+	private static final AtomicLong _changeCount = new AtomicLong();	// Changes to all tables
 	
 	public FactorTableBase()
 	{
@@ -44,6 +53,7 @@ public class FactorTableBase
 		_weights = copy._weights.clone();
 		//maybe clone potentials if they're not null
 		_potentials = null;
+		changed();
 		
 	}
 	
@@ -57,6 +67,7 @@ public class FactorTableBase
 		_weights[index] = weight;
 		//TODO: maybe just recompute potential if it exists.
 		_potentials = null;
+		changed();
 	}
 	
 	public FactorTableBase(int [][] table, double [] probs)
@@ -75,6 +86,23 @@ public class FactorTableBase
 		_weights = probs;
 	}
 	
+	public int getVersion()
+	{
+		return _version;
+	}
+	
+	// Number of changes made to all tables so far, for sums over many factors that can't check each table
+	public static long getChangeCount()
+	{
+		return _changeCount.get();
+	}
+	
+	private void changed()
+	{
+		_version++;
+		_changeCount.incrementAndGet();
+	}
+	
 	public int [][] getIndices()
 	{
 		return _indices;
@@ -114,6 +142,7 @@ public class FactorTableBase
 	{
 		check(indices,_weights);
 		_indices = indices;
+		changed();
 	}
 	
 	public void changeWeights(double [] probs)
@@ -121,6 +150,7 @@ public class FactorTableBase
 		check(_indices,probs);
 		_weights = probs;
 		_potentials = null;
+		changed();
 		
 	}
 	
@@ -160,6 +190,7 @@ public class FactorTableBase
 	{
 		int loc = findLocationFromIndices(indices);
 		_weights[loc] = value;
+		changed();
 		if (_potentials != null)
 		{
 			_potentials[loc] = -Math.log(value);
@@ -179,6 +210,7 @@ public class FactorTableBase
 		_indices = indices;
 		_weights = weights;
 		_potentials = null;
+		changed();
 		
 	}
 
@@ -192,17 +224,20 @@ public class FactorTableBase
 	
 	public double [] getPotentials()
 	{
-		if (_potentials == null)
+		double [] potentials = _potentials;
+		if (potentials == null)
 		{
-			_potentials = new double[_weights.length];
+			// Filled in before it is published, as solver objects sharing the table may be created concurrently
+			potentials = new double[_weights.length];
 			for (int i = 0; i < _weights.length; i++)
 			{
 				double potential = -Math.log(_weights[i]);
-				_potentials[i] = potential;
+				potentials[i] = potential;
 			}
+			_potentials = potentials;
 		}
 		
-		return _potentials;
+		return potentials;
 	}
 	
 	
@@ -235,6 +270,7 @@ public class FactorTableBase
 	public void randomizeWeights(Random r)
 	{
 		_potentials = null;
+		changed();
 		
 		for (int i = 0; i < _weights.length; i++)
 			_weights[i] = r.nextDouble();
@@ -38,4 +38,28 @@ public abstract class HybridSampledBPFactorFunction extends FactorFunction
 
 	public abstract double acceptanceRatio(int outPortIndex, Object ... inputs);
 	public abstract Object generateSample(int outPortIndex, Object ... inputs);
+
+	// Primitive versions for the case where all of the values are real, which avoid boxing each candidate sample.
+	// Factor functions that can evaluate these directly should override them and hasPrimitiveSampling;
+	// otherwise the values are boxed and passed to the methods above.
+	public boolean hasPrimitiveSampling() {return false;}
+
+	// Acceptance ratios for a block of candidates, where inputs[i][n] is the value of the i-th input in the n-th candidate
+	public void acceptanceRatios(int outPortIndex, double[][] inputs, int numCandidates, double[] ratios)
+	{
+		Object[] arguments = new Object[inputs.length];
+		for (int n = 0; n < numCandidates; n++)
+		{
+			for (int i = 0; i < inputs.length; i++)
+				arguments[i] = inputs[i][n];
+			ratios[n] = acceptanceRatio(outPortIndex, arguments);
+		}
+	}
+	public double generateSample(int outPortIndex, double[] inputs)
+	{
+		Object[] arguments = new Object[inputs.length];
+		for (int i = 0; i < inputs.length; i++)
+			arguments[i] = inputs[i];
+		return FactorFunctionUtilities.toDouble(generateSample(outPortIndex, arguments));
+	}
 }
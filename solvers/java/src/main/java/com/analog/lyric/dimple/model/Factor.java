@@ -107,6 +107,7 @@ public class Factor extends FactorBase implements Cloneable
 		_factorFunction = function;
 		if (_factorFunction.isDirected())	// Automatically set direction if inherent in factor function
 			setDirectedTo(_factorFunction.getDirectedToIndices((_variables == null) ? 0 : _variables.size()));
+		markMessagesChanged();
 	}
 	
 	protected void addVariable(VariableBase variable)
@@ -158,13 +159,22 @@ public class Factor extends FactorBase implements Cloneable
 		{
 			_solverFactor = null;
 		}
+		if (getParentGraph() != null)
+			getParentGraph().invalidateAdjacency();
 	}
 	
-	public void replace(VariableBase oldVariable, VariableBase newVariable)
+	@Override
+	protected void siblingsChanged()
 	{
+		super.siblingsChanged();
 		_variables = null;
+	}
+	
+	public void replace(VariableBase oldVariable, VariableBase newVariable)
+	{
 		int index = _siblings.indexOf(oldVariable);
 		_siblings.set(index, newVariable);
+		siblingsChanged();
 	}
 	
 	public Domain [] getDomains()
@@ -206,6 +216,7 @@ public class Factor extends FactorBase implements Cloneable
 	{
 		if (_solverFactor != null)
 			_solverFactor.resetEdgeMessages(portNum);
+		markMessagesChanged();
 	}
     
 	
@@ -214,6 +225,7 @@ public class Factor extends FactorBase implements Cloneable
 	{
 		if (_solverFactor != null)
 			_solverFactor.initialize();
+		markMessagesChanged();
 		if (_factorFunction.isDirected())	// Automatically set direction if inherent in factor function
 			setDirectedTo(_factorFunction.getDirectedToIndices((_variables == null) ? 0 : _variables.size()));
 	}
@@ -236,6 +248,7 @@ public class Factor extends FactorBase implements Cloneable
 	{
 		checkSolverNotNull();
 		_solverFactor.update();
+		markMessagesChanged();
 	}
 
 	@Override
@@ -243,6 +256,7 @@ public class Factor extends FactorBase implements Cloneable
 	{
 		checkSolverNotNull();
 		_solverFactor.updateEdge(outPortNum);
+		markMessagesChanged();
 	}
 	
 	private void checkSolverNotNull()
@@ -18,9 +18,12 @@ package com.analog.lyric.dimple.model;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -41,8 +44,13 @@ import com.analog.lyric.dimple.model.repeated.FactorGraphStream;
 import com.analog.lyric.dimple.model.repeated.IVariableStreamSlice;
 import com.analog.lyric.dimple.model.repeated.VariableStreamBase;
 import com.analog.lyric.dimple.schedulers.DefaultScheduler;
+import com.analog.lyric.dimple.schedulers.FloodingScheduler;
 import com.analog.lyric.dimple.schedulers.IScheduler;
+import com.analog.lyric.dimple.schedulers.schedule.IDynamicSchedule;
 import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
+import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
+import com.analog.lyric.dimple.solvers.core.multithreading.IRangeTask;
+import com.analog.lyric.dimple.solvers.core.multithreading.SolverThreadPool;
 import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.util.misc.FactorGraphDiffs;
@@ -62,6 +70,7 @@ public class FactorGraph extends FactorBase
 	private long _versionId = 0;
 	private long _scheduleVersionId = 0;
 	private long _scheduleAssociatedGraphVerisionId = -1;
+	private long _structureVersionId = 0;		// Changes when nodes are added to or removed from this graph or any nested graph
 	private IFactorGraphFactory _solverFactory;
 	private ISolverFactorGraph _solverFactorGraph;
 	private JointFactorCache _jointFactorCache = new JointFactorCache();
@@ -69,6 +78,9 @@ public class FactorGraph extends FactorBase
 	private ArrayList<FactorGraphStream> _factorGraphStreams = new ArrayList<FactorGraphStream>();
 	private int _numSteps = 1;
 	private boolean _numStepsInfinite = true;
+	private boolean _streamRingBuffer = false;
+	private boolean _hasAdvanced = false;
+	private ArrayList<VariableBase> _deferredVariables = null;	// Set by addFactors while solver objects are deferred
 	
 	//new identity related members
 	private HashMap<String, Object> _name2object = new HashMap<String, Object>();
@@ -177,6 +189,9 @@ public class FactorGraph extends FactorBase
 
 	private void setSolverFactorySubGraph(IFactorGraphFactory factory)
 	{
+		if (_solverFactorGraph != null)
+			_solverFactorGraph.dispose();
+		
 		_solverFactory = factory;
 		_solverFactorGraph = factory != null ? factory.createFactorGraph(this) : null;
 
@@ -285,18 +300,55 @@ public class FactorGraph extends FactorBase
 	}
 	
 	
+	/*
+	 * In ring buffer mode, advancing doesn't shift messages and inputs down the whole buffer.
+	 * Instead the oldest nested graph and the oldest stream variables are rewired to the newest
+	 * end, so each step only touches one slice of the graph; see FactorGraphStream.advanceRingBuffer.
+	 * The mode has to be chosen before the first advance.
+	 */
+	public void setStreamRingBuffer(boolean ringBuffer)
+	{
+		if (_hasAdvanced && ringBuffer != _streamRingBuffer)
+			throw new DimpleException("The ring buffer mode of streams can't be changed once the graph has advanced");
+		_streamRingBuffer = ringBuffer;
+	}
+	public boolean getStreamRingBuffer()
+	{
+		return _streamRingBuffer;
+	}
+	
 	public void advance()
 	{
-		
-		for (VariableStreamBase vs : _variableStreams)
-			vs.advanceState();
-		for (FactorGraphStream s : _factorGraphStreams)
-			s.advance();
+		if (_streamRingBuffer)
+		{
+			FactorGraphStream.advanceRingBuffer(this, _variableStreams, _factorGraphStreams);
+			edgesChanged();
+		}
+		else
+		{
+			for (VariableStreamBase vs : _variableStreams)
+				vs.advanceState();
+			for (FactorGraphStream s : _factorGraphStreams)
+				s.advance();
+		}
+		_hasAdvanced = true;
 		
 		getSolver().postAdvance();
 		
 	}
 	
+	// Called when edges have been rewired in place, without adding or removing nodes
+	private void edgesChanged()
+	{
+		// A flooding schedule only refers to nodes, so it is still valid.  Any other schedule
+		// may refer to edges by port number, so it is rebuilt.
+		boolean keepSchedule = isUpToDateSchedulePresent() && getAssociatedScheduler() instanceof FloodingScheduler;
+		_versionId++;
+		if (keepSchedule)
+			_scheduleAssociatedGraphVerisionId = _versionId;
+		invalidateAdjacency();
+	}
+	
 	public boolean hasNext()
 	{
 		if (_factorGraphStreams.size() == 0)
@@ -386,7 +438,7 @@ public class FactorGraph extends FactorBase
 
 		addFactor(f,vars);
 
-		if (_solverFactorGraph != null)
+		if (_solverFactorGraph != null && _deferredVariables == null)
 		{
 			f.createSolverObject(_solverFactorGraph);
 			_solverFactorGraph.postAddFactor(f);
@@ -398,6 +450,153 @@ public class FactorGraph extends FactorBase
 
 	}
 
+	/*
+	 * Adds a factor with the given function for each row of arguments, which may include constants
+	 * as for addFactor.  Solver objects are only created once all of the factors have been added,
+	 * on the solver's thread pool if it is set to use more than one thread.
+	 */
+	public Factor[] addFactors(FactorFunction factorFunction, Object[][] arguments)
+	{
+		Factor[] factors = new Factor[arguments.length];
+		int numAdded = 0;
+		_deferredVariables = new ArrayList<VariableBase>();
+		try
+		{
+			for (; numAdded < arguments.length; numAdded++)
+				factors[numAdded] = addFactor(factorFunction, arguments[numAdded]);
+		}
+		finally
+		{
+			// Even if adding a factor failed, the ones already added get their solver objects
+			VariableBase[] variables = _deferredVariables.toArray(new VariableBase[_deferredVariables.size()]);
+			_deferredVariables = null;
+			createSolverObjects(variables);
+			createSolverObjects(numAdded < factors.length ? Arrays.copyOf(factors, numAdded) : factors);
+		}
+		return factors;
+	}
+
+	private void createSolverObjects(final VariableBase[] variables)
+	{
+		final ISolverFactorGraph solverGraph = _solverFactorGraph;
+		if (solverGraph == null)
+			return;
+
+		forkJoin(variables.length, new IRangeTask()
+		{
+			@Override
+			public void run(int start, int end)
+			{
+				for (int i = start; i < end; i++)
+					variables[i].createSolverObject(solverGraph);
+			}
+		});
+	}
+
+	private void createSolverObjects(Factor[] factors)
+	{
+		final ISolverFactorGraph solverGraph = _solverFactorGraph;
+		if (solverGraph == null)
+			return;
+
+		if (getSolverThreadPool() == null)
+		{
+			for (Factor f : factors)
+				f.createSolverObject(solverGraph);
+		}
+		else
+		{
+			// Creating a factor's messages adds to the solver state of its variables, so only factors
+			// that share no variables are created at the same time
+			final Factor[] ordered = new Factor[factors.length];
+			int[] colorStarts = colorFactors(factors, ordered);
+			for (int color = 0; color < colorStarts.length - 1; color++)
+			{
+				final int offset = colorStarts[color];
+				forkJoin(colorStarts[color + 1] - offset, new IRangeTask()
+				{
+					@Override
+					public void run(int start, int end)
+					{
+						for (int i = start; i < end; i++)
+							ordered[offset + i].createSolverObject(solverGraph);
+					}
+				});
+			}
+		}
+
+		for (Factor f : factors)
+			solverGraph.postAddFactor(f);
+	}
+
+	// Greedily colors the factors so that no two of the same color share a variable.  Fills in the
+	// factors ordered by color, and returns the start of each color, followed by the total.
+	private int[] colorFactors(Factor[] factors, Factor[] ordered)
+	{
+		IdentityHashMap<INode, long[]> usedColors = new IdentityHashMap<INode, long[]>();
+		int[] colors = new int[factors.length];
+		int numColors = 0;
+		for (int i = 0; i < factors.length; i++)
+		{
+			ArrayList<INode> siblings = factors[i].getSiblings();
+			int color = 0;
+			for (boolean free = false; !free; )
+			{
+				free = true;
+				for (INode v : siblings)
+				{
+					long[] used = usedColors.get(v);
+					if (used != null && (color >> 6) < used.length && (used[color >> 6] & (1L << color)) != 0)
+					{
+						free = false;
+						color++;
+						break;
+					}
+				}
+			}
+			for (INode v : siblings)
+			{
+				long[] used = usedColors.get(v);
+				if (used == null || (color >> 6) >= used.length)
+				{
+					long[] grown = new long[(color >> 6) + 1];
+					if (used != null)
+						System.arraycopy(used, 0, grown, 0, used.length);
+					usedColors.put(v, used = grown);
+				}
+				used[color >> 6] |= 1L << color;
+			}
+			colors[i] = color;
+			numColors = Math.max(numColors, color + 1);
+		}
+
+		int[] colorStarts = new int[numColors + 1];
+		for (int color : colors)
+			colorStarts[color + 1]++;
+		for (int color = 0; color < numColors; color++)
+			colorStarts[color + 1] += colorStarts[color];
+		int[] next = Arrays.copyOf(colorStarts, numColors);
+		for (int i = 0; i < factors.length; i++)
+			ordered[next[colors[i]]++] = factors[i];
+		return colorStarts;
+	}
+
+	private SolverThreadPool getSolverThreadPool()
+	{
+		if (_solverFactorGraph instanceof SFactorGraphBase)
+			return ((SFactorGraphBase)_solverFactorGraph).getThreadPool();
+		return null;
+	}
+
+	private void forkJoin(int size, IRangeTask task)
+	{
+		SolverThreadPool pool = getSolverThreadPool();
+		if (pool != null && size > 1)
+			pool.forkJoin(size, task);
+		else
+			task.run(0, size);
+	}
+
 
 	private void setVariableSolver(VariableBase v)
 	{
@@ -409,7 +608,10 @@ public class FactorGraph extends FactorBase
 				if (v.getSiblings().size() > 0)
 					throw new DimpleException("Can't connect a variable to multiple graphs");
 
-				v.createSolverObject(_solverFactorGraph);
+				if (_deferredVariables != null)
+					_deferredVariables.add(v);
+				else
+					v.createSolverObject(_solverFactorGraph);
 			}
 		}
 	}
@@ -445,6 +647,7 @@ public class FactorGraph extends FactorBase
 		if (!_ownedVariables.contains(v))
 			throw new DimpleException("can only currently remove variables that are owned");
 		_ownedVariables.remove(v);
+		structureChanged();
 		if (_ownedVariables.contains(v))
 			throw new DimpleException("eh?");
 		v.createSolverObject(null);
@@ -486,6 +689,7 @@ public class FactorGraph extends FactorBase
 			current = current.join(factors[i]);
 		
 		_versionId++;
+		structureChanged();
 
 		return current;
 	}
@@ -598,6 +802,7 @@ public class FactorGraph extends FactorBase
 
 		//update the version Id so that we can recalculate the schedule
 		_versionId++;
+		structureChanged();
 
 		return currentJoint;
 	}
@@ -638,6 +843,7 @@ public class FactorGraph extends FactorBase
 		function.setParentGraph(this);
 		
 		_ownedFactors.add(function);
+		structureChanged();
 		_versionId++;							// The graph has changed
 		return function;
 	}
@@ -758,6 +964,7 @@ public class FactorGraph extends FactorBase
 		//tell us about it
 		addNameAndUUID(subGraphCopy);
 		_ownedFactors.add(subGraphCopy);
+		structureChanged();
 		_ownedSubGraphs.add(subGraphCopy);
 
 		//tell us about it and it about us
@@ -810,10 +1017,11 @@ public class FactorGraph extends FactorBase
 				templateGraph,
 				parentGraph,
 				false,
-				new HashMap<Object, Object>());
+				null);
 			}
 
-	// Copy constructor -- create a graph incorporating all of the variables, functions, and sub-graphs of the template graph
+	// Copy constructor -- create a graph incorporating all of the variables, functions, and sub-graphs of the template graph.
+	// The map from template objects to their copies is only filled in if given, or if needed to copy the template's schedule.
 	private FactorGraph(VariableBase[] boundaryVariables,
 			FactorGraph templateGraph,
 			FactorGraph parentGraph,
@@ -824,13 +1032,19 @@ public class FactorGraph extends FactorBase
 				templateGraph.getExplicitName(),
 				null);
 
+		if (old2newObjs == null && templateGraph._schedule != null)
+			old2newObjs = new HashMap<Object, Object>();
+		TemplateStructure structure = templateGraph.getTemplateStructure();
+
 		// Copy owned variables
-		for (VariableBase vTemplate : templateGraph._ownedVariables)
+		VariableBase[] ownedCopies = new VariableBase[structure.ownedVariables.length];
+		for (int i = 0; i < ownedCopies.length; i++)
 		{
+			VariableBase vTemplate = structure.ownedVariables[i];
 			VariableBase vCopy = vTemplate.clone();
-
-			//old2newIds.put(vTemplate.getId(), vCopy.getId());
-			old2newObjs.put(vTemplate,vCopy);
+			ownedCopies[i] = vCopy;
+			if (old2newObjs != null)
+				old2newObjs.put(vTemplate,vCopy);
 			addOwnedVariable(vCopy);
 		}
 
@@ -855,48 +1069,43 @@ public class FactorGraph extends FactorBase
 				if (!vBoundary.getDomain().equals(vTemplate.getDomain()))
 					throw new DimpleException("Boundary variable does not have the same domain as template graph.  Index: " + (i-1));
 
-				//old2newIds.put(vTemplate.getId(), vBoundary.getId());
-				old2newObjs.put(vTemplate,vBoundary);
+				if (old2newObjs != null)
+					old2newObjs.put(vTemplate,vBoundary);
 			}
 		}
 
-		for (FactorBase fb : templateGraph._ownedFactors)
+		for (int iFactor = 0; iFactor < structure.factors.length; iFactor++)
 		{
+			FactorBase fb = structure.factors[iFactor];
+			int[] siblings = structure.siblings[iFactor];
 			FactorGraph subGraph = fb.asFactorGraph();
 			if (subGraph != null)
 			{
-
-				VariableBase[] vBoundary = new VariableBase[subGraph._boundaryVariables.size()];
-				{
-					int i = 0;
-					for (VariableBase v : subGraph._boundaryVariables)
-						vBoundary[i++] = (VariableBase)old2newObjs.get(v);
-				}
+				VariableBase[] vBoundary = new VariableBase[siblings.length];
+				for (int i = 0; i < siblings.length; i++)
+					vBoundary[i] = structure.getCopy(siblings[i], ownedCopies, boundaryVariables);
 				FactorGraph newGraph = addGraph(subGraph, vBoundary);	// Add the graph using the appropriate boundary variables
-				old2newObjs.put(subGraph,newGraph);
-
-		
+				if (old2newObjs != null)
+					old2newObjs.put(subGraph,newGraph);
 			}
 			else
 			{
 				Factor fTemplate = fb.asFactor();
 				Factor fCopy = fTemplate.clone();
-				old2newObjs.put(fTemplate,fCopy);
+				if (old2newObjs != null)
+					old2newObjs.put(fTemplate,fCopy);
 
 				addNameAndUUID(fCopy);
 				fCopy.setParentGraph(this);
 				_ownedFactors.add(fCopy);
-				for (INode n : fTemplate.getSiblings())
+				ArrayList<INode> fSiblings = fCopy.getSiblings();
+				fSiblings.ensureCapacity(siblings.length);
+				for (int i = 0; i < siblings.length; i++)
 				{
-					VariableBase vTemplate = (VariableBase)n;
-					VariableBase var = (VariableBase)old2newObjs.get(vTemplate);
-					fCopy.getSiblings().add(var);
-					if (templateGraph._boundaryVariables.contains(vTemplate))
-					{
-						var.connect(fCopy);		// Boundary variable in template graph: connect port to corresponding boundary variable in this graph
-					}
-					else
-						var.connect(fCopy);			// Owned variable in template graph: connect port to new copy of template variable
+					// Connect the port to the boundary variable of this graph, or the copy of the template's owned variable
+					VariableBase var = structure.getCopy(siblings[i], ownedCopies, boundaryVariables);
+					fSiblings.add(var);
+					var.connect(fCopy);
 				}
 			}
 		}
@@ -921,6 +1130,101 @@ public class FactorGraph extends FactorBase
 		//setSolverFactory(templateGraph.getFactorGraphFactory());
 	}
 
+	/*
+	 * The topology of a graph used as a template, compiled once so that each copy made by addGraph
+	 * doesn't need to rediscover it.  The copies share the template's factor functions and tables,
+	 * since cloning a factor is shallow.
+	 */
+	private static class TemplateStructure
+	{
+		final long versionId;
+		final VariableBase[] ownedVariables;
+		final FactorBase[] factors;
+		final int[][] siblings;		// For each factor, or boundary variables of each sub-graph: owned variable index, or -(boundary index)-1
+
+		TemplateStructure(FactorGraph template)
+		{
+			versionId = template._versionId;
+			ownedVariables = template._ownedVariables.values().toArray(new VariableBase[template._ownedVariables.size()]);
+			IdentityHashMap<VariableBase, Integer> variableIndices = new IdentityHashMap<VariableBase, Integer>();
+			for (int i = 0; i < ownedVariables.length; i++)
+				variableIndices.put(ownedVariables[i], i);
+			int boundaryIndex = 0;
+			for (VariableBase v : template._boundaryVariables)
+				variableIndices.put(v, -(++boundaryIndex));
+
+			factors = template._ownedFactors.values().toArray(new FactorBase[template._ownedFactors.size()]);
+			siblings = new int[factors.length][];
+			for (int iFactor = 0; iFactor < factors.length; iFactor++)
+			{
+				FactorGraph subGraph = factors[iFactor].asFactorGraph();
+				Collection<? extends INode> nodes = (subGraph != null) ? subGraph._boundaryVariables.values() : factors[iFactor].getSiblings();
+				int[] indices = siblings[iFactor] = new int[nodes.size()];
+				int i = 0;
+				for (INode n : nodes)
+				{
+					Integer index = variableIndices.get(n);
+					if (index == null)
+						throw new DimpleException("Template graph refers to a variable that it neither owns nor has as a boundary variable");
+					indices[i++] = index;
+				}
+			}
+		}
+
+		VariableBase getCopy(int index, VariableBase[] ownedCopies, VariableBase[] boundaryVariables)
+		{
+			return (index >= 0) ? ownedCopies[index] : boundaryVariables[-index - 1];
+		}
+	}
+
+	private TemplateStructure _templateStructure = null;
+	private volatile GraphAdjacency _adjacency = null;
+
+	/*
+	 * Adjacency of the root graph in compressed sparse row form, built on demand and kept until
+	 * the graph or any of its solver objects change.
+	 */
+	public GraphAdjacency getAdjacency()
+	{
+		FactorGraph root = getRootGraph();
+		if (root != this)
+			return root.getAdjacency();
+		GraphAdjacency adjacency = _adjacency;
+		if (adjacency == null || !adjacency.isValid())
+		{
+			// Rebuilt under the structural lock so that an invalidation from another thread is not lost
+			synchronized (this)
+			{
+				adjacency = _adjacency;
+				if (adjacency == null || !adjacency.isValid())
+					_adjacency = adjacency = new GraphAdjacency(this);
+			}
+		}
+		return adjacency;
+	}
+
+	// Called when a solver object in the graph is replaced, so that the adjacency's solver references are refreshed
+	void invalidateAdjacency()
+	{
+		FactorGraph root = getRootGraph();
+		synchronized (root)
+		{
+			GraphAdjacency adjacency = root._adjacency;
+			if (adjacency != null)
+			{
+				adjacency.invalidate();
+				root._adjacency = null;
+			}
+		}
+	}
+
+	private TemplateStructure getTemplateStructure()
+	{
+		if (_templateStructure == null || _templateStructure.versionId != _versionId)
+			_templateStructure = new TemplateStructure(this);
+		return _templateStructure;
+	}
+
 	public FactorGraph copyRoot()
 	{
 		return copyRoot(new HashMap<Object, Object>());
@@ -1083,6 +1387,7 @@ public class FactorGraph extends FactorBase
 			variable.setParentGraph(this);
 			//...and us about the variable
 			_ownedVariables.add(variable);
+			structureChanged();
 		}
 	}
 
@@ -1119,6 +1424,9 @@ public class FactorGraph extends FactorBase
 
 		if (_solverFactorGraph != null)
 			_solverFactorGraph.initialize();
+		
+		if (_schedule instanceof IDynamicSchedule)
+			((IDynamicSchedule)_schedule).reset();
 	}
 
 	private void checkSolverIsSet()
@@ -1169,6 +1477,7 @@ public class FactorGraph extends FactorBase
 		removeVariables(arr);
 		removeNode(factorGraph);
 		_ownedFactors.remove(factorGraph);
+		structureChanged();
 		_ownedSubGraphs.remove(factorGraph);
 		
 		for (VariableBase v : boundary)
@@ -1179,9 +1488,12 @@ public class FactorGraph extends FactorBase
 		
 	}
 	
-	private void removeNode(Node n)
+	private synchronized void removeNode(Node n)
 	{
-		_UUID2object.remove(n.getUUID());
+		if (n.hasUUID())
+			_UUID2object.remove(n.getUUID());
+		else
+			n.cancelUUIDRegistration(this);
 		String explicitName = n.getExplicitName();
 		if(explicitName != null)
 		{
@@ -1197,6 +1509,7 @@ public class FactorGraph extends FactorBase
 			throw new DimpleException("Cannot delete factor.  It is not a member of this graph");
 
 		_ownedFactors.remove(factor);
+		structureChanged();
 		removeNode(factor);
 		
 		for (VariableBase var : factor.getVariables())
@@ -1588,6 +1901,53 @@ public class FactorGraph extends FactorBase
 		return _boundaryVariables;
 	}
 	
+	/*
+	 * For rewiring in place: replaces boundary variables of this graph and of any nested graphs,
+	 * all at once, since a variable may be both replaced and a replacement.
+	 */
+	public void replaceBoundaryVariables(Map<VariableBase,VariableBase> replacements)
+	{
+		VariableBase [] vars = new VariableBase[_boundaryVariables.size()];
+		boolean changed = false;
+		for (int i = 0; i < vars.length; i++)
+		{
+			VariableBase var = _boundaryVariables.getByIndex(i);
+			vars[i] = replacements.containsKey(var) ? replacements.get(var) : var;
+			changed |= vars[i] != var;
+		}
+		if (!changed)
+			return;
+		
+		_boundaryVariables.clear();
+		for (VariableBase var : vars)
+			_boundaryVariables.add(var);
+		for (FactorGraph graph : _ownedSubGraphs)
+			graph.replaceBoundaryVariables(replacements);
+	}
+	
+	/*
+	 * For rewiring in place, as the ring buffer mode of streams does: points one port of a node
+	 * in this graph at a different node, or disconnects every port of a variable.  The caller is
+	 * responsible for the other end of each edge and for the solver's messages.
+	 */
+	public void replaceSibling(Node node, int portNum, INode sibling)
+	{
+		checkRewiredNode(node);
+		node.setSibling(portNum, sibling);
+	}
+	
+	public void disconnectVariable(VariableBase var)
+	{
+		checkRewiredNode(var);
+		var.disconnectAll();
+	}
+	
+	private void checkRewiredNode(Node node)
+	{
+		if (node.getRootGraph() != getRootGraph())
+			throw new DimpleException("Can't rewire a node that is not in this graph");
+	}
+	
 
 	public boolean isBoundaryVariable(VariableBase mv)
 	{
@@ -1807,6 +2167,23 @@ public class FactorGraph extends FactorBase
 		return _versionId;
 	}
 	
+	/*
+	 * Unlike getVersionId, which only counts changes made to this graph itself, this changes
+	 * whenever a node is added to or removed from this graph or any graph nested within it.
+	 * Anything cached from the flattened graph should be keyed on this.
+	 */
+	public long getStructureVersionId()
+	{
+		return _structureVersionId;
+	}
+	
+	private void structureChanged()
+	{
+		_templateStructure = null;
+		for (FactorGraph graph = this; graph != null; graph = graph.getParentGraph())
+			graph._structureVersionId++;
+	}
+	
 	public long getScheduleVersionId()
 	{
 		return _scheduleVersionId;
@@ -1817,36 +2194,68 @@ public class FactorGraph extends FactorBase
 	 * 
 	 * Names
 	 * 
+	 * Access to the name and UUID maps is synchronized, since a node copied from a template
+	 * registers its UUID on whichever thread first asks for it.
+	 * 
 	 ******************************************************************/
 	private boolean addNameAndUUID(INameable nameable)
 	{
+		// A node cloned from a template has no UUID until one is asked for, at which point it
+		// registers it here.  Only its explicit name, if any, needs registering now.
+		if (nameable instanceof Node && !((Node)nameable).hasUUID() && ((Node)nameable).deferUUIDRegistration(this))
+		{
+			String explicitName = nameable.getExplicitName();
+			if(explicitName != null)
+			{
+				synchronized (this)
+				{
+					if(_name2object.get(explicitName) != null)
+					{
+						((Node)nameable).cancelUUIDRegistration(this);
+						throw new DimpleException("ERROR variable name " + explicitName + " already in graph");
+					}
+					_name2object.put(explicitName, nameable);
+				}
+			}
+			return true;
+		}
+
 		boolean added = false;
-		UUID uuid = nameable.getUUID();
+		UUID uuid = nameable.getUUID();			// Outside the lock, since this may register the UUID with another graph
 		String explicitName = nameable.getExplicitName();
 
-		if(_UUID2object.get(uuid) == null)
+		synchronized (this)
 		{
-			//(true or exception...)
-			added = true;
-
-			//Check + insert name if there is one
-			if(explicitName != null)
+			if(_UUID2object.get(uuid) == null)
 			{
-				if(_name2object.get(explicitName) != null)
+				//(true or exception...)
+				added = true;
+
+				//Check + insert name if there is one
+				if(explicitName != null)
 				{
-					throw new DimpleException("ERROR variable name " + explicitName + " already in graph");
+					if(_name2object.get(explicitName) != null)
+					{
+						throw new DimpleException("ERROR variable name " + explicitName + " already in graph");
+					}
+
+					_name2object.put(explicitName, nameable);
 				}
 
-				_name2object.put(explicitName, nameable);
+				_UUID2object.put(uuid, nameable);
 			}
-
-			_UUID2object.put(uuid, nameable);
 		}
 
 		return added;
 	}
 
-	public void setChildUUID(INameable child, UUID newUUID)
+	// Called by a node registered without a UUID when it is first assigned one
+	synchronized void addDeferredUUID(Node node)
+	{
+		_UUID2object.put(node.getUUID(), node);
+	}
+
+	public synchronized void setChildUUID(INameable child, UUID newUUID)
 	{
 		INameable childFound = (INameable) getObjectByUUID(child.getUUID());
 
@@ -1866,7 +2275,7 @@ public class FactorGraph extends FactorBase
 		//add new UUID, if there is one
 		_UUID2object.put(newUUID, childFound);
 	}
-	public void setChildName(INameable child, String newName)
+	public synchronized void setChildName(INameable child, String newName)
 	{
 		INameable childFound = (INameable) getObjectByUUID(child.getUUID());
 
@@ -1895,7 +2304,7 @@ public class FactorGraph extends FactorBase
 		}
 	}
 
-	private Object getObjectByNameOrUUIDWithoutRecurse(String string)
+	private synchronized Object getObjectByNameOrUUIDWithoutRecurse(String string)
 	{
 		//try first as a simple name; qualified names won't be found
 		//	'.' is prevented from being part of a simple name
@@ -1994,7 +2403,7 @@ public class FactorGraph extends FactorBase
 		return o;
 	}
 
-	public Object getObjectByUUID(UUID uuid)
+	public synchronized Object getObjectByUUID(UUID uuid)
 	{
 		return _UUID2object.get(uuid);
 	}
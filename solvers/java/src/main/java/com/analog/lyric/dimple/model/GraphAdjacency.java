@@ -0,0 +1,146 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.model;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
+
+/*
+ * A snapshot of the adjacency of a root graph in compressed sparse row form, for solver
+ * loops that would otherwise walk sibling lists, look up port numbers and call getSolver
+ * on each neighbor.
+ *
+ * Nodes are numbered with the variables first (including the root's boundary variables),
+ * followed by the non-graph factors, all flattened through nested graphs.  The edges of
+ * node i occupy entries getEdgeOffset(i) through getEdgeOffset(i+1)-1 of the edge arrays,
+ * in port order.  For each edge the arrays hold the index of the neighbor, the port number
+ * of the edge at the neighbor, and the neighbor's solver object.
+ *
+ * Obtained with FactorGraph.getAdjacency, which builds a new snapshot once the graph
+ * changes or any of its solver objects are recreated.  Holders of a snapshot check
+ * isValid before using it.
+ */
+public class GraphAdjacency
+{
+	private final FactorGraph _graph;
+	private final long _versionId;
+	private final long _structureVersionId;		// Also changes when a nested graph is edited
+	private volatile boolean _valid = true;
+
+	private final INode[] _nodes;
+	private final int _numVariables;
+	private final IdentityHashMap<INode, Integer> _nodeIndices;
+	private final int[] _edgeOffsets;
+	private final int[] _neighbors;				// Node index of the neighbor, or -1 if outside the graph
+	private final int[] _neighborPorts;			// Port of the edge at the neighbor
+	private final ISolverNode[] _neighborSolvers;
+	private final ISolverNode[] _solvers;		// Solver object of each node
+
+	GraphAdjacency(FactorGraph graph)
+	{
+		_graph = graph;
+		_versionId = graph.getVersionId();
+		_structureVersionId = graph.getStructureVersionId();
+
+		ArrayList<INode> nodes = new ArrayList<INode>();
+		nodes.addAll(graph.getVariablesFlat(true));
+		_numVariables = nodes.size();
+		nodes.addAll(graph.getNonGraphFactorsFlat());
+
+		int numNodes = nodes.size();
+		_nodes = nodes.toArray(new INode[numNodes]);
+		_nodeIndices = new IdentityHashMap<INode, Integer>(numNodes);
+		_solvers = new ISolverNode[numNodes];
+		_edgeOffsets = new int[numNodes + 1];
+		for (int i = 0; i < numNodes; i++)
+		{
+			_nodeIndices.put(_nodes[i], i);
+			_solvers[i] = _nodes[i].getSolver();
+			_edgeOffsets[i + 1] = _edgeOffsets[i] + _nodes[i].getSiblings().size();
+		}
+
+		int numEdges = _edgeOffsets[numNodes];
+		_neighbors = new int[numEdges];
+		_neighborPorts = new int[numEdges];
+		_neighborSolvers = new ISolverNode[numEdges];
+		for (int e = 0; e < numEdges; e++)
+			_neighborPorts[e] = -1;
+
+		for (int i = 0; i < numNodes; i++)
+		{
+			ArrayList<INode> siblings = _nodes[i].getSiblings();
+			for (int port = 0, e = _edgeOffsets[i]; port < siblings.size(); port++, e++)
+			{
+				INode neighbor = siblings.get(port);
+				Integer neighborIndex = _nodeIndices.get(neighbor);
+				_neighbors[e] = (neighborIndex != null) ? neighborIndex : -1;
+				_neighborSolvers[e] = neighbor.getSolver();
+				if (_neighborPorts[e] >= 0)
+					continue;					// Already matched from the other side
+
+				// Match this edge with the first unmatched edge back from the neighbor, which pairs
+				// up repeated edges between the same two nodes in order
+				ArrayList<INode> neighborSiblings = neighbor.getSiblings();
+				int neighborOffset = (neighborIndex != null) ? _edgeOffsets[neighborIndex] : -1;
+				for (int neighborPort = 0; neighborPort < neighborSiblings.size(); neighborPort++)
+				{
+					if (neighborSiblings.get(neighborPort) != _nodes[i])
+						continue;
+					if (neighborOffset >= 0)
+					{
+						if (_neighborPorts[neighborOffset + neighborPort] >= 0)
+							continue;
+						_neighborPorts[neighborOffset + neighborPort] = port;
+					}
+					_neighborPorts[e] = neighborPort;
+					break;
+				}
+			}
+		}
+	}
+
+	public FactorGraph getGraph() {return _graph;}
+	public long getVersionId() {return _versionId;}
+	public boolean isValid()
+	{
+		return _valid && _graph.getVersionId() == _versionId && _graph.getStructureVersionId() == _structureVersionId;
+	}
+	void invalidate() {_valid = false;}
+
+	public int getNumNodes() {return _nodes.length;}
+	public int getNumVariables() {return _numVariables;}
+	public int getNumEdges() {return _neighbors.length;}
+	public INode getNode(int index) {return _nodes[index];}
+	public ISolverNode getSolver(int index) {return _solvers[index];}
+
+	// Index of the node, or -1 if it is not part of the graph
+	public int getIndex(INode node)
+	{
+		Integer index = _nodeIndices.get(node);
+		return (index != null) ? index : -1;
+	}
+
+	public int getEdgeOffset(int index) {return _edgeOffsets[index];}
+
+	// The arrays themselves, for use in inner loops; they must not be modified
+	public int[] getEdgeOffsets() {return _edgeOffsets;}
+	public int[] getNeighbors() {return _neighbors;}
+	public int[] getNeighborPorts() {return _neighborPorts;}
+	public ISolverNode[] getNeighborSolvers() {return _neighborSolvers;}
+}
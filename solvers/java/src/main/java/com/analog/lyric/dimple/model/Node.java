@@ -19,18 +19,27 @@ package com.analog.lyric.dimple.model;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import com.analog.lyric.util.misc.MapList;
 
 public abstract class Node implements INode, Cloneable
 {
 	private int _id;
-	private UUID _UUID;
+	private volatile UUID _UUID;
 	protected String _name;
 	protected String _label;
 	private FactorGraph _parentGraph;
 	protected ArrayList<INode> _siblings;
 	private int [] _siblingIndices = new int[0];
+	private FactorGraph _deferredUUIDGraph;		// Graph to register the UUID with once it is assigned
+	private volatile long _messageVersion = 0;	// Incremented whenever messages on this node's edges change
+	private volatile ConcurrentLinkedQueue<Node> _changedNodes;	// Where to report message changes, if anywhere
+	private volatile boolean _inChangedNodes;
+	
+	private static final AtomicLongFieldUpdater<Node> _messageVersionUpdater =
+		AtomicLongFieldUpdater.newUpdater(Node.class, "_messageVersion");
 
 	public Node()
 	{
@@ -106,19 +115,66 @@ public abstract class Node implements INode, Cloneable
 		
 		n._siblings = new ArrayList<INode>();	// Clear the ports in the clone
 		n._id = NodeId.getNext();
-		n._UUID = NodeId.getNextUUID();
+		n._UUID = null;							// Assigned on demand, since clones made from templates often never need one
+		n._deferredUUIDGraph = null;
 		n._parentGraph = null;
+		n._messageVersion = 0;
+		n._changedNodes = null;
+		n._inChangedNodes = false;
 		n._name = _name;
 		
 		return n;
 	}
 	
+	/*
+	 * Counts changes to the messages on this node's edges: each update of the node, each
+	 * initialize, and any other change made through the model or solver node.  Solver nodes
+	 * compare the sum of a node's and its neighbors' versions to tell whether values derived
+	 * from their messages, such as beliefs, are still current.  Nodes may be updated on
+	 * several threads at once, so the increment is atomic.
+	 */
+	public final long getMessageVersion()
+	{
+		return _messageVersion;
+	}
+	
+	public final void markMessagesChanged()
+	{
+		_messageVersionUpdater.incrementAndGet(this);
+		ConcurrentLinkedQueue<Node> changedNodes = _changedNodes;
+		if (changedNodes != null && !_inChangedNodes)
+		{
+			_inChangedNodes = true;
+			changedNodes.add(this);
+		}
+	}
+	
+	/*
+	 * After this call, the first message change following each call to takeMessagesChanged adds
+	 * this node to the given queue, so that the solver graph can update sums over the nodes
+	 * without visiting the ones that haven't changed.  Null stops the reports.
+	 */
+	public final void reportMessageChangesTo(ConcurrentLinkedQueue<Node> changedNodes)
+	{
+		_inChangedNodes = false;
+		_changedNodes = changedNodes;
+	}
+	
+	// Called when this node is taken off the queue; its next change adds it again
+	public final void takeMessagesChanged()
+	{
+		_inChangedNodes = false;
+	}
+	
 	public int getSiblingPortIndex(int index)
 	{
 		if (_siblingIndices.length <= index)
-		{		
+		{
+			// Fill in every new entry, not just this one, since the ones skipped over would otherwise be left as zero
+			int start = _siblingIndices.length;
 			_siblingIndices = Arrays.copyOf(_siblingIndices, index+1);
-			_siblingIndices[index] = _siblings.get(index).getPortNum(this);
+			for (int i = start; i <= index; i++)
+				_siblingIndices[i] = _siblings.get(i).getPortNum(this);
 		}
 		
 		return _siblingIndices[index];
@@ -274,6 +330,31 @@ public abstract class Node implements INode, Cloneable
 	public void connect(INode node)
 	{
 		_siblings.add(node);
+		markMessagesChanged();		// A new edge, so neighbors' message keys must change even if its node's version is zero
+	}
+	
+	/*
+	 * For rewiring a graph in place, through FactorGraph.replaceSibling and disconnectVariable:
+	 * points one port at a different node, or disconnects every port.  The caller is responsible
+	 * for the other end of each edge and for the solver's messages.
+	 */
+	void setSibling(int portNum, INode node)
+	{
+		_siblings.set(portNum, node);
+		siblingsChanged();
+	}
+	
+	void disconnectAll()
+	{
+		_siblings.clear();
+		siblingsChanged();
+	}
+	
+	// For when edges are removed or replaced
+	protected void siblingsChanged()
+	{
+		_siblingIndices = new int[0];
+		markMessagesChanged();
 	}
 
 	@Override
@@ -356,15 +437,52 @@ public abstract class Node implements INode, Cloneable
 		String name = _name;
 		if(name == null)
 		{
-			name = _UUID.toString();
+			name = getUUID().toString();
 		}
 		return name;
 	}
     @Override
 	public UUID getUUID()
 	{
+		UUID uuid = _UUID;
+		return (uuid != null) ? uuid : assignUUID();
+	}
+	
+	private UUID assignUUID()
+	{
+		FactorGraph graph;
+		synchronized (this)
+		{
+			if (_UUID != null)
+				return _UUID;
+			_UUID = NodeId.getNextUUID();
+			graph = _deferredUUIDGraph;
+			_deferredUUIDGraph = null;
+		}
+		if (graph != null)
+			graph.addDeferredUUID(this);
 		return _UUID;
 	}
+	
+	boolean hasUUID()
+	{
+		return _UUID != null;
+	}
+	
+	// Called by a graph to register this node without a UUID; fails if a graph already has
+	synchronized boolean deferUUIDRegistration(FactorGraph graph)
+	{
+		if (_deferredUUIDGraph != null)
+			return false;
+		_deferredUUIDGraph = graph;
+		return true;
+	}
+	
+	synchronized void cancelUUIDRegistration(FactorGraph graph)
+	{
+		if (_deferredUUIDGraph == graph)
+			_deferredUUIDGraph = null;
+	}
 	@Override
 	public void setUUID(UUID newUUID) 
 	{
@@ -401,7 +519,7 @@ public abstract class Node implements INode, Cloneable
 				name = String.format("%s_%d_%s"
 						,getClassLabel()
 						,getId()
-						,_UUID.toString().substring(0, 8));
+						,getUUID().toString().substring(0, 8));
 			}
 		}
 		return name;
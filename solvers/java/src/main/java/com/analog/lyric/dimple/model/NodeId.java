@@ -17,11 +17,17 @@
 package com.analog.lyric.dimple.model;
 
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/*
+ * Ids and UUIDs are drawn from atomic counters, so graphs may be built on several threads at once.
+ */
 public class NodeId
 {
-	private static UUID _uuid = java.util.UUID.randomUUID();
-	private static int nextId = 0;
+	private static final UUID _baseUUID = java.util.UUID.randomUUID();
+	private static final AtomicLong _nextUUIDOffset = new AtomicLong();
+	private static final AtomicInteger _nextId = new AtomicInteger();
 	
 	/*
 	 * Generating new UUIDs is somewhat expensive.  For now, simply generate 
@@ -30,18 +36,16 @@ public class NodeId
 	 */
 	public static UUID getNextUUID()
 	{
-		UUID retval = new UUID(_uuid.getMostSignificantBits(),_uuid.getLeastSignificantBits());
-		_uuid = new UUID(_uuid.getMostSignificantBits(), _uuid.getLeastSignificantBits()+1);
-		return retval;
+		return new UUID(_baseUUID.getMostSignificantBits(), _baseUUID.getLeastSignificantBits() + _nextUUIDOffset.getAndIncrement());
 	}
 	
 	public static int getNext()
 	{
-		return nextId++;
+		return _nextId.getAndIncrement();
 	}
 	
 	public static void initialize()
 	{
-		nextId = 0;		
+		_nextId.set(0);
 	}
 }
@@ -178,6 +178,7 @@ public abstract class VariableBase extends Node implements Cloneable
 		_fixedValue = other._fixedValue;
 		_hasFixedValue = other._hasFixedValue;
 		_solverVariable.setInputOrFixedValue(_input,_fixedValue,_hasFixedValue);
+		markMessagesChanged();
 	}
 
 	
@@ -193,6 +194,8 @@ public abstract class VariableBase extends Node implements Cloneable
 		{
 			_solverVariable = null;
 		}
+		if (getParentGraph() != null)
+			getParentGraph().invalidateAdjacency();
 	}
 	
 	public void setProperty(String key,Object value)
@@ -238,7 +241,7 @@ public abstract class VariableBase extends Node implements Cloneable
 	{
 		if (_solverVariable != null)
     		_solverVariable.setInputOrFixedValue(_input,_fixedValue,_hasFixedValue);
-		
+		markMessagesChanged();
 	}
 	
 	protected void setFixedValueObject(Object value,boolean leaveInput)
@@ -294,6 +297,7 @@ public abstract class VariableBase extends Node implements Cloneable
 	{
 		if (_solverVariable != null)
 			_solverVariable.resetEdgeMessages(portNum);
+		markMessagesChanged();
 	}
     
     @Override
@@ -302,6 +306,7 @@ public abstract class VariableBase extends Node implements Cloneable
 
     	if (_solverVariable != null)
     		_solverVariable.initialize();
+    	markMessagesChanged();
     }
     
     public Factor [] getFactors()
@@ -348,6 +353,7 @@ public abstract class VariableBase extends Node implements Cloneable
 			{
 				found = true;
 				siblings.remove(i);
+				siblingsChanged();
 				break;
 			}
 		}
@@ -370,6 +376,7 @@ public abstract class VariableBase extends Node implements Cloneable
 	{
 		checkSolverNotNull();
 		_solverVariable.update();
+		markMessagesChanged();
 	}
 
 	@Override
@@ -377,6 +384,7 @@ public abstract class VariableBase extends Node implements Cloneable
 	{
 		checkSolverNotNull();
 		_solverVariable.updateEdge(outPortNum);
+		markMessagesChanged();
 	}
 	
 	private void checkSolverNotNull()
@@ -17,8 +17,10 @@
 package com.analog.lyric.dimple.model.repeated;
 
 import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.model.FactorGraph;
 import com.analog.lyric.dimple.model.Port;
 import com.analog.lyric.dimple.model.VariableBase;
+import com.analog.lyric.dimple.solvers.core.SBlastFromThePast;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverBlastFromThePastFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 
@@ -47,6 +49,27 @@ public class BlastFromThePastFactor extends Factor
 	}
 	
 	
+	/*
+	 * Moves this factor onto the given edge of another variable, in place of the node that
+	 * edge was connected to, for the ring buffer mode of streams.  The edge's messages stay
+	 * with the variable, so this factor takes them over.  The port for the other variable is
+	 * passed separately, since it may not be connected yet.
+	 */
+	void moveTo(VariableBase var, int varPortNum)
+	{
+		FactorGraph graph = getParentGraph();
+		graph.replaceSibling(var, varPortNum, this);
+		graph.replaceSibling(this, 0, var);
+		_variableConnectedToBlast = var;
+	}
+	
+	void setPortForOtherVariable(Port portForOtherVar)
+	{
+		_portForOtherVariable = portForOtherVar;
+		VariableBase var = _variableConnectedToBlast;
+		((SBlastFromThePast)_solverFactor).setPorts(new Port(var, var.getPortNum(this)), portForOtherVar);
+	}
+	
 	public void advance()
 	{
 		((ISolverBlastFromThePastFactor)_solverFactor).advance();
@@ -17,11 +17,18 @@
 package com.analog.lyric.dimple.model.repeated;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+
+import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.Factor;
 import com.analog.lyric.dimple.model.FactorGraph;
 import com.analog.lyric.dimple.model.Port;
 import com.analog.lyric.dimple.model.VariableBase;
+import com.analog.lyric.dimple.solvers.core.SBlastFromThePast;
 
 /*
  * This class represents one stream of Nested Factor Graphs.
@@ -37,6 +44,16 @@ public class FactorGraphStream
 	private FactorGraph _graph;
 	private FactorGraph _repeatedGraph;
 	private FactorGraph _parameterFactorGraph;
+	
+	// For the ring buffer mode: _head is the index in _nestedGraphs of the oldest graph and, for
+	// each port of a nested graph in getPorts order, the stream it is connected to (null for a
+	// parameter), its offset into the stream and its chain of blast from the past factors (null
+	// when it has none).
+	private int _head = 0;
+	private ArrayList<VariableStreamBase> _portStreams = new ArrayList<VariableStreamBase>();
+	private ArrayList<Integer> _portOffsets = new ArrayList<Integer>();
+	private ArrayList<ArrayList<BlastFromThePastFactor>> _portChains = new ArrayList<ArrayList<BlastFromThePastFactor>>();
+	private ArrayList<Port> _ringPorts;
 
 	/*
 	 * The constructor adds Factors and Variables and BlastFromThePastFactors.
@@ -88,6 +105,9 @@ public class FactorGraphStream
 			//figure out which variable stream this is connected to
 			VariableBase var = (VariableBase)p.getSibling();
 			VariableStreamBase vsb = getVariableStream(var);
+			_portStreams.add(vsb);
+			_portOffsets.add(vsb == null ? 0 : vsb.indexOf(var));
+			_portChains.add(null);
 
 			if (vsb == null)
 			{
@@ -120,6 +140,7 @@ public class FactorGraphStream
 				{
 					ArrayList<BlastFromThePastFactor> bfc = new ArrayList<BlastFromThePastFactor>();
 					_blastFromThePastChains.add(bfc);
+					_portChains.set(_portChains.size()-1, bfc);
 					
 					//For each variable before this one
 					for (int i = index-1; i >= 0; i--)
@@ -155,6 +176,7 @@ public class FactorGraphStream
 
 	public void setBufferSize(int size) 
 	{
+		unrotate();
 		if (size > _bufferSize)
 		{
 			for (int i = 0; i < size-_bufferSize; i++)
@@ -231,11 +253,12 @@ public class FactorGraphStream
 		//For each blast from the past chain
 		for (ArrayList<BlastFromThePastFactor> al : _blastFromThePastChains)
 		{
-			//For each blast from the past
-			for (BlastFromThePastFactor bfp : al)
+			//For each blast from the past, oldest first, so that each gets the message
+			//the one after it had before this step rather than the one it has just taken
+			for (int i = al.size()-1; i >= 0; i--)
 			{
 				//Get new message
-				bfp.advance();
+				al.get(i).advance();
 			}
 		}
 
@@ -254,6 +277,139 @@ public class FactorGraphStream
 
 
 
+	/*
+	 * Advances the streams without moving any messages or inputs.  Instead, the oldest nested
+	 * graph of each factor graph stream and the oldest variable of each variable stream are
+	 * rewired to become the newest, and each blast from the past factor moves up one variable,
+	 * taking over the edge, and so the messages, of the node ahead of it.  This changes only the
+	 * edges of one slice of the graph, where advance() moves the messages of the whole buffer.
+	 * 
+	 * Only streams whose factors have no parameter (non-stream) arguments are supported, and
+	 * only with solvers that use the default blast from the past factors, since those keep no
+	 * messages of their own.  The variables of a stream must only be connected to the graphs
+	 * of the factor graph streams.
+	 */
+	public static void advanceRingBuffer(FactorGraph graph, Collection<VariableStreamBase> variableStreams, List<FactorGraphStream> factorGraphStreams)
+	{
+		HashMap<VariableStreamBase,Integer> expectedEdges = new HashMap<VariableStreamBase,Integer>();
+		for (FactorGraphStream s : factorGraphStreams)
+			s.checkRingBuffer(expectedEdges);
+		
+		// Every edge of the oldest variable of a stream is to a factor of the oldest graph of a
+		// factor graph stream, either directly or as the end of a blast from the past chain.
+		for (VariableStreamBase vs : variableStreams)
+		{
+			Integer expected = expectedEdges.get(vs);
+			if (vs.size() > 0 && vs.get(0).getSiblings().size() != (expected == null ? 0 : expected))
+				throw new DimpleException("Can't advance a stream as a ring buffer when its variables are connected to factors outside the repeated graphs");
+		}
+		
+		for (VariableStreamBase vs : variableStreams)
+			if (vs.size() > 0)
+				vs.pushOutput();
+		
+		// The oldest variables can only be disconnected once the chains have moved off them,
+		// and only then reconnected as the newest variables
+		for (FactorGraphStream s : factorGraphStreams)
+			s.rewireOldestGraph();
+		for (VariableStreamBase vs : variableStreams)
+			if (vs.size() > 0)
+				graph.disconnectVariable(vs.get(0));
+		for (FactorGraphStream s : factorGraphStreams)
+			s.connectOldestGraph();
+		
+		for (VariableStreamBase vs : variableStreams)
+			if (vs.size() > 0)
+				vs.rotate();
+		for (FactorGraphStream s : factorGraphStreams)
+			s.rotate();
+	}
+	
+	private void checkRingBuffer(HashMap<VariableStreamBase,Integer> expectedEdges)
+	{
+		if (!_parameter2blastFromThePastHandler.isEmpty())
+			throw new DimpleException("Streams with parameter arguments can't be advanced as a ring buffer");
+		
+		for (ArrayList<BlastFromThePastFactor> chain : _blastFromThePastChains)
+			for (BlastFromThePastFactor f : chain)
+				if (f.getSolver().getClass() != SBlastFromThePast.class)
+					throw new DimpleException("The solver's blast from the past factors don't support advancing streams as a ring buffer");
+		
+		for (VariableStreamBase vs : _portStreams)
+		{
+			Integer count = expectedEdges.get(vs);
+			expectedEdges.put(vs, count == null ? 1 : count + 1);
+		}
+	}
+	
+	private void rewireOldestGraph()
+	{
+		FactorGraph oldest = _nestedGraphs.get(_head);
+		int bufferSize = _nestedGraphs.size();
+		_ringPorts = oldest.getPorts();
+		HashMap<VariableBase,VariableBase> boundaryVariables = new HashMap<VariableBase,VariableBase>();
+		
+		for (int p = 0; p < _ringPorts.size(); p++)
+		{
+			Factor f = (Factor)_ringPorts.get(p).node;
+			int portNum = _ringPorts.get(p).index;
+			VariableStreamBase vs = _portStreams.get(p);
+			int offset = _portOffsets.get(p);
+			ArrayList<BlastFromThePastFactor> chain = _portChains.get(p);
+			VariableBase oldVar = vs.get(offset);
+			
+			if (chain != null)
+			{
+				// Each factor of the chain takes the place of the node ahead of it, one variable on
+				int [] varPortNums = new int[chain.size()];
+				varPortNums[0] = oldVar.getPortNum(f);
+				for (int m = 1; m < chain.size(); m++)
+					varPortNums[m] = vs.get(offset - m).getPortNum(chain.get(m-1));
+				for (int m = 0; m < chain.size(); m++)
+					chain.get(m).moveTo(vs.get(offset - m), varPortNums[m]);
+				for (int m = 1; m < chain.size(); m++)
+					chain.get(m).setPortForOtherVariable(new Port(vs.get(offset - m + 1), varPortNums[m-1]));
+			}
+			
+			VariableBase newVar = vs.get((bufferSize + offset) % vs.size());
+			_graph.replaceSibling(f, portNum, newVar);
+			boundaryVariables.put(oldVar, newVar);
+		}
+		oldest.replaceBoundaryVariables(boundaryVariables);
+	}
+	
+	private void connectOldestGraph()
+	{
+		for (int p = 0; p < _ringPorts.size(); p++)
+		{
+			Factor f = (Factor)_ringPorts.get(p).node;
+			VariableBase newVar = (VariableBase)f.getSiblings().get(_ringPorts.get(p).index);
+			newVar.connect(f);
+			
+			ArrayList<BlastFromThePastFactor> chain = _portChains.get(p);
+			if (chain != null)
+				chain.get(0).setPortForOtherVariable(new Port(newVar, newVar.getSiblings().size()-1));
+		}
+		_ringPorts = null;
+	}
+	
+	private void rotate()
+	{
+		FactorGraph newest = _nestedGraphs.get(_head);
+		_head = (_head + 1) % _nestedGraphs.size();
+		newest.recreateMessages();
+	}
+	
+	// Puts the nested graphs back in order from oldest to newest
+	private void unrotate()
+	{
+		if (_head != 0)
+		{
+			Collections.rotate(_nestedGraphs, -_head);
+			_head = 0;
+		}
+	}
+
 	public boolean hasNext() 
 	{
         for (VariableStreamBase s : _variableStreams)
@@ -293,6 +449,7 @@ public class FactorGraphStream
 	
 	public ArrayList<FactorGraph> getNestedGraphs()
 	{
+		unrotate();
 		return _nestedGraphs;
 	}
 }
@@ -17,6 +17,7 @@
 package com.analog.lyric.dimple.model.repeated;
 
 import java.util.ArrayList;
+import java.util.Collections;
 
 import com.analog.lyric.dimple.model.DimpleException;
 import com.analog.lyric.dimple.model.Domain;
@@ -31,6 +32,7 @@ public abstract class VariableStreamBase implements IVariableStreamSlice
 	private IDataSink _dataSink = null;
 	private ArrayList<VariableStreamSlice> _slices = new ArrayList<VariableStreamSlice>();
 	private VariableStreamSlice _slice;
+	private int _head = 0;		// Index in _variables of the oldest variable, once the stream has advanced as a ring buffer
 	
 
 	public VariableStreamBase(Domain domain) 
@@ -48,7 +50,8 @@ public abstract class VariableStreamBase implements IVariableStreamSlice
 	public VariableBase [] getVariables()
 	{
 		VariableBase [] vars = new VariableBase[_variables.size()];
-		_variables.toArray(vars);
+		for (int i = 0; i < vars.length; i++)
+			vars[i] = _variables.get(physicalIndex(i));
 		return vars;
 	}
 	
@@ -59,11 +62,7 @@ public abstract class VariableStreamBase implements IVariableStreamSlice
 	
 	public void advanceState()
 	{
-		if (_dataSink != null)
-		{
-			Object output = _variables.get(0).getBeliefObject();
-			_dataSink.push(output);
-		}
+		pushOutput();
 		
 		for (int i = 0; i < _variables.size()-1; i++)
 		{
@@ -87,6 +86,47 @@ public abstract class VariableStreamBase implements IVariableStreamSlice
 	}
 	
 	
+	void pushOutput()
+	{
+		if (_dataSink != null)
+		{
+			Object output = get(0).getBeliefObject();
+			_dataSink.push(output);
+		}
+	}
+	
+	/*
+	 * Ring buffer version of advanceState: rather than moving every variable's inputs down by
+	 * one, the oldest variable, already disconnected and reconnected as the newest by
+	 * FactorGraphStream.advanceRingBuffer, gets a new solver variable and the next input.
+	 */
+	void rotate()
+	{
+		VariableBase newest = _variables.get(_head);
+		_head = (_head + 1) % _variables.size();
+		
+		newest.createSolverObject(newest.getParentGraph().getSolver());
+		if (_dataSource != null)
+			newest.setInputObject(_dataSource.getNext());
+		else
+			newest.setInputObject(null);
+	}
+	
+	// Puts the variables back in order, so that the stream can grow or shrink
+	private void unrotate()
+	{
+		if (_head != 0)
+		{
+			Collections.rotate(_variables, -_head);
+			_head = 0;
+		}
+	}
+	
+	private int physicalIndex(int index)
+	{
+		return _head == 0 ? index : (index + _head) % _variables.size();
+	}
+	
 	public VariableStreamSlice getSlice(int start)
 	{
 		VariableStreamSlice ss = new VariableStreamSlice(start,this);
@@ -155,6 +195,7 @@ public abstract class VariableStreamBase implements IVariableStreamSlice
 		
 		while (localIndex >= _variables.size() )
 		{
+			unrotate();
 			if (_dataSource != null && !_dataSource.hasNext())
 			{
 				return false;
@@ -184,10 +225,11 @@ public abstract class VariableStreamBase implements IVariableStreamSlice
 		
 		while (localIndex >= _variables.size())
 		{
+			unrotate();
 			_variables.add(createVariable());
 		}
 		
-		return _variables.get(localIndex);
+		return _variables.get(physicalIndex(localIndex));
 
 	}
 
@@ -213,11 +255,15 @@ public abstract class VariableStreamBase implements IVariableStreamSlice
 
 	int indexOf(VariableBase vb)
 	{
-		return _variables.indexOf(vb);
+		int index = _variables.indexOf(vb);
+		if (index < 0 || _head == 0)
+			return index;
+		return (index - _head + _variables.size()) % _variables.size();
 	}
 	
 	void cleanupUnusedVariables()
 	{
+		unrotate();
 
 		for(int i =  _variables.size()-1; i >= 0; i--)
 		{
@@ -0,0 +1,99 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+package com.analog.lyric.dimple.schedulers;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.model.INode;
+import com.analog.lyric.dimple.schedulers.schedule.ColoredSchedule;
+import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
+
+/**
+ * Creates a schedule that updates the graph in phases, where each phase is
+ * one color class of a greedy distance-2 coloring of the graph. No two nodes of
+ * the same color are neighbors or share a neighbor, so the nodes in a phase
+ * read and write disjoint sets of messages and can be updated in parallel.
+ * Variables and factors are colored separately, so a phase never mixes the two,
+ * and the variable phases come first.
+ * <p>
+ * With a single thread the phases are updated one node at a time, which is
+ * equivalent to a sequential schedule in color order. With more than one
+ * thread, each phase is split over the solver's thread pool and the phases are
+ * separated by a barrier. Setting up the schedule takes time proportional to the
+ * number of edges times the number of colors, independent of the number of
+ * iterations.
+ * <p>
+ * WARNING: This schedule DOES NOT respect any existing sub-graph scheduler
+ * associations. That is, if any sub-graph already has an associated scheduler,
+ * that scheduler is ignored in creating this schedule.
+ */
+public class ColoringScheduler implements IScheduler
+{
+	public ISchedule createSchedule(FactorGraph factorGraph) 
+	{
+		ArrayList<ArrayList<INode>> phases = new ArrayList<ArrayList<INode>>();
+		addColorPhases(factorGraph.getVariables(), phases);
+		addColorPhases(factorGraph.getNonGraphFactors(), phases);
+		return new ColoredSchedule(phases);
+	}
+	
+	// Greedily gives each node the lowest color not used by any node it shares a neighbor with,
+	// keeping the colors used around each neighbor as a bitset, and adds a phase per color.
+	// Nodes of the same kind are never neighbors, so sharing a neighbor is the only conflict.
+	private static void addColorPhases(Iterable<? extends INode> nodes, ArrayList<ArrayList<INode>> phases)
+	{
+		IdentityHashMap<INode,long[]> usedColors = new IdentityHashMap<INode,long[]>();
+		ArrayList<ArrayList<INode>> colorPhases = new ArrayList<ArrayList<INode>>();
+		for (INode node : nodes)
+		{
+			ArrayList<INode> siblings = node.getSiblings();
+			int color = 0;
+			for (boolean free = false; !free; )
+			{
+				free = true;
+				for (INode sibling : siblings)
+				{
+					long [] used = usedColors.get(sibling);
+					if (used != null && (color >> 6) < used.length && (used[color >> 6] & (1L << color)) != 0)
+					{
+						free = false;
+						color++;
+						break;
+					}
+				}
+			}
+			for (INode sibling : siblings)
+			{
+				long [] used = usedColors.get(sibling);
+				if (used == null || (color >> 6) >= used.length)
+				{
+					long [] grown = new long[(color >> 6) + 1];
+					if (used != null)
+						System.arraycopy(used, 0, grown, 0, used.length);
+					usedColors.put(sibling, used = grown);
+				}
+				used[color >> 6] |= 1L << color;
+			}
+			
+			if (color == colorPhases.size())
+				colorPhases.add(new ArrayList<INode>());
+			colorPhases.get(color).add(node);
+		}
+		phases.addAll(colorPhases);
+	}
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+package com.analog.lyric.dimple.schedulers;
+
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
+import com.analog.lyric.dimple.schedulers.schedule.ResidualBPSchedule;
+
+/**
+ * Creates a residual belief propagation schedule, which always updates next the node
+ * whose incoming messages have changed the most. See {@link ResidualBPSchedule}.
+ * <p>
+ * With a batch size greater than one, batches of high-residual nodes that share no
+ * neighbors are updated at a time, in parallel when the solver uses more than one thread.
+ * Message changes no larger than the threshold don't cause a node to be rescheduled.
+ * <p>
+ * WARNING: This schedule DOES NOT respect any existing sub-graph scheduler
+ * associations. That is, if any sub-graph already has an associated scheduler,
+ * that scheduler is ignored in creating this schedule.
+ */
+public class ResidualBPScheduler implements IScheduler
+{
+	protected int _batchSize;
+	protected double _threshold;
+
+	public ResidualBPScheduler()
+	{
+		this(1, 0);
+	}
+	public ResidualBPScheduler(int batchSize)
+	{
+		this(batchSize, 0);
+	}
+	public ResidualBPScheduler(int batchSize, double threshold)
+	{
+		_batchSize = batchSize;
+		_threshold = threshold;
+	}
+
+	public ISchedule createSchedule(FactorGraph factorGraph)
+	{
+		return new ResidualBPSchedule(factorGraph, _batchSize, _threshold);
+	}
+}
@@ -32,6 +32,7 @@ import com.analog.lyric.dimple.schedulers.scheduleEntry.BatchScheduleEntry;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.EdgeScheduleEntry;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.ParallelScheduleEntry;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.SubScheduleEntry;
 
 public class ScheduleDependencyGraph extends BasicDependencyGraph<IScheduleEntry, DependencyGraphNode<IScheduleEntry>>
@@ -153,6 +154,14 @@ public class ScheduleDependencyGraph extends BasicDependencyGraph<IScheduleEntry
 					subSchedule.add(singleEntry);
 				createOneIterationOfScheduleDependencyGraph(subSchedule, portToScheduleMap, scheduleEntryMap);	// Recurse to the sub-graph
 			}
+			else if (entry instanceof ParallelScheduleEntry)
+			{
+				// The nodes of a parallel entry are independent, so treat them as a sequence of node entries
+				FixedSchedule subSchedule = new FixedSchedule();
+				for (NodeScheduleEntry nodeEntry : ((ParallelScheduleEntry)entry).getEntries())
+					subSchedule.add(nodeEntry);
+				createOneIterationOfScheduleDependencyGraph(subSchedule, portToScheduleMap, scheduleEntryMap);
+			}
 			else if (entry instanceof SubScheduleEntry)
 				createOneIterationOfScheduleDependencyGraph(((SubScheduleEntry)entry).getSchedule(), portToScheduleMap, scheduleEntryMap);	// Recurse to the sub-graph
 			else
@@ -0,0 +1,79 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+package com.analog.lyric.dimple.schedulers.schedule;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+import com.analog.lyric.dimple.model.INode;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.ParallelScheduleEntry;
+
+
+/**
+ * A fixed schedule made up of a sequence of phases, each of which updates a set
+ * of nodes no two of which share a neighbor.
+ * <p>
+ * Each phase is a {@link ParallelScheduleEntry}, so when the solver uses more
+ * than one thread the nodes in a phase are spread over the solver's thread pool,
+ * and every node in a phase is updated before the next phase starts.
+ */
+public class ColoredSchedule extends FixedSchedule implements IParallelSchedule
+{
+	public ColoredSchedule()
+	{
+	}
+	
+	public ColoredSchedule(Collection<? extends Collection<? extends INode>> phases)
+	{
+		for (Collection<? extends INode> phase : phases)
+			addPhase(phase);
+	}
+	
+	// Add a phase of nodes to be updated in parallel; empty phases are ignored
+	public void addPhase(Collection<? extends INode> nodes)
+	{
+		if (!nodes.isEmpty())
+			add(new ParallelScheduleEntry(nodes));
+	}
+	
+	public int getNumPhases()
+	{
+		return _schedule.size();
+	}
+	
+	public ArrayList<INode> getPhase(int phase)
+	{
+		ArrayList<INode> nodes = new ArrayList<INode>();
+		for (NodeScheduleEntry entry : ((ParallelScheduleEntry)_schedule.get(phase)).getEntries())
+			nodes.add(entry.getNode());
+		return nodes;
+	}
+	
+	// Copied as a colored schedule, so the copy of a graph still updates its phases in parallel
+	public ISchedule copy(HashMap<Object,Object> old2newObjs, boolean copyToRoot) 
+	{
+		FixedSchedule copy = (FixedSchedule)super.copy(old2newObjs, copyToRoot);
+		if (copy == null)
+			return null;
+		
+		ColoredSchedule coloredCopy = new ColoredSchedule();
+		coloredCopy.add(copy.getSchedule());
+		coloredCopy._checkAllEdgesAreIncluded = copy._checkAllEdgesAreIncluded;
+		return coloredCopy;
+	}
+}
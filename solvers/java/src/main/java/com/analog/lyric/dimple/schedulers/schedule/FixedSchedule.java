@@ -227,7 +227,9 @@ public class FixedSchedule extends ScheduleBase
 					newSchedule.add(newEntry);
 				
 			}
-			return new FixedSchedule(newSchedule);
+			FixedSchedule scheduleCopy = new FixedSchedule(newSchedule);
+			scheduleCopy._checkAllEdgesAreIncluded = fs._checkAllEdgesAreIncluded;
+			return scheduleCopy;
 		}
 		else
 		{
@@ -18,10 +18,10 @@ package com.analog.lyric.dimple.schedulers.schedule;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import com.analog.lyric.dimple.model.FactorGraph;
 import com.analog.lyric.dimple.model.VariableBase;
-import com.analog.lyric.dimple.model.VariableList;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
 import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
@@ -43,8 +43,8 @@ import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
  */
 public class GibbsRandomScanSchedule extends ScheduleBase
 {
-	protected VariableList _variables;
 	protected int _numVariables;
+	protected IScheduleEntry[] _entries;		// Built once, so iterations don't allocate entries
 	
 	public GibbsRandomScanSchedule(FactorGraph factorGraph)
 	{
@@ -61,23 +61,46 @@ public class GibbsRandomScanSchedule extends ScheduleBase
 
 	protected void initialize()
 	{
-		_variables = _factorGraph.getVariables();
-		_numVariables = _variables.size();
+		ArrayList<VariableBase> variables = (ArrayList<VariableBase>)_factorGraph.getVariables().values();
+		_numVariables = variables.size();
+		_entries = new IScheduleEntry[_numVariables];
+		for (int i = 0; i < _numVariables; i++)
+			_entries[i] = new NodeScheduleEntry(variables.get(i));
 	}
 
 	@Override
 	public Iterator<IScheduleEntry> iterator()
 	{
-		ArrayList<IScheduleEntry> updateList = new ArrayList<IScheduleEntry>();
+		// Note: the solver graph's random stream is used here so that if a fixed seed is set in the solver, then the schedule will also be repeatable
+		int variableIndex = SolverRandomGenerator.getCurrent().nextInt(_numVariables);
 		
-		// Note: the GibbsSolverRandomGenerator is used here so that if a fixed seed is set in the solver, then the schedule will also be repeatable
-		int variableIndex = SolverRandomGenerator.rand.nextInt(_numVariables);
-		
-		// Create a single schedule entry that includes all of the selected variable
-		VariableBase v = ((ArrayList<VariableBase>)_variables.values()).get(variableIndex);
-		updateList.add(new NodeScheduleEntry(v));
-		
-		return updateList.iterator();
+		// A single schedule entry that updates the selected variable
+		final IScheduleEntry entry = _entries[variableIndex];
+		return new Iterator<IScheduleEntry>()
+		{
+			private boolean _done = false;
+
+			@Override
+			public boolean hasNext()
+			{
+				return !_done;
+			}
+
+			@Override
+			public IScheduleEntry next()
+			{
+				if (_done)
+					throw new NoSuchElementException();
+				_done = true;
+				return entry;
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
 	}
 
 }
@@ -0,0 +1,29 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers.schedule;
+
+/**
+ * A schedule whose order of updates depends on the state of the solver, such as how
+ * much the messages have been changing, so that each iteration may differ.
+ * <p>
+ * The graph calls {@link #reset} whenever it is initialized, so that the schedule
+ * can discard whatever it has learned about the messages and start over.
+ */
+public interface IDynamicSchedule extends ISchedule
+{
+	public void reset();
+}
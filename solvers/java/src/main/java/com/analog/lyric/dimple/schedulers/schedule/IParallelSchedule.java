@@ -0,0 +1,28 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers.schedule;
+
+/**
+ * A schedule whose entries run their own updates in parallel, using the
+ * solver graph's thread pool when more than one thread is in use.
+ * <p>
+ * When the solver is multithreaded, a schedule of this type is iterated directly
+ * rather than being unrolled into a schedule dependency graph.
+ */
+public interface IParallelSchedule extends ISchedule
+{
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers.schedule;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.model.INode;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.EdgeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+
+/**
+ * Base class for schedules that update the factors of a graph in a random order, each
+ * factor update preceded by updates of the edges of its connected variables.
+ * <p>
+ * The schedule entries for each factor are built once, when the schedule is created or
+ * attached. Each iteration subclasses only fill in {@link #_factorSequence} with the
+ * indices of the factors to update, and the iterator walks it lazily, reusing the same
+ * entries, so an iteration allocates nothing in proportion to the size of the graph.
+ */
+public abstract class RandomFactorScheduleBase extends ScheduleBase
+{
+	protected int _numFactors;
+	protected IScheduleEntry[] _entries;		// Edge entries followed by the node entry, for each factor in turn
+	protected int[] _entryOffsets;				// Offset of each factor's entries in _entries, plus the total at the end
+	protected int[] _factorSequence;			// Factors to update in the current iteration
+	protected Random _rand;
+
+	protected RandomFactorScheduleBase(FactorGraph factorGraph, Random rand)
+	{
+		_factorGraph = factorGraph;
+		_rand = rand;
+		initialize();
+	}
+
+	@Override
+	public void attach(FactorGraph factorGraph)
+	{
+		super.attach(factorGraph);
+		initialize();
+	}
+
+	protected void initialize()
+	{
+		ArrayList<Factor> factors = (ArrayList<Factor>)_factorGraph.getNonGraphFactors().values();
+		_numFactors = factors.size();
+		_entryOffsets = new int[_numFactors + 1];
+		for (int i = 0; i < _numFactors; i++)
+			_entryOffsets[i + 1] = _entryOffsets[i] + factors.get(i).getSiblings().size() + 1;
+
+		_entries = new IScheduleEntry[_entryOffsets[_numFactors]];
+		int entry = 0;
+		for (Factor f : factors)
+		{
+			for (INode v : f.getSiblings())
+				_entries[entry++] = new EdgeScheduleEntry(v, f);
+			_entries[entry++] = new NodeScheduleEntry(f);
+		}
+		_factorSequence = new int[_numFactors];
+	}
+
+	// Fills in _factorSequence for the next iteration
+	protected abstract void chooseFactorSequence();
+
+	@Override
+	public Iterator<IScheduleEntry> iterator()
+	{
+		chooseFactorSequence();
+		return new Iterator<IScheduleEntry>()
+		{
+			private int _sequenceIndex = 0;
+			private int _entry = 0;
+			private int _factorEnd = 0;
+
+			@Override
+			public boolean hasNext()
+			{
+				return _entry < _factorEnd || _sequenceIndex < _numFactors;
+			}
+
+			@Override
+			public IScheduleEntry next()
+			{
+				if (_entry == _factorEnd)
+				{
+					if (_sequenceIndex >= _numFactors)
+						throw new NoSuchElementException();
+					int factorIndex = _factorSequence[_sequenceIndex++];
+					_entry = _entryOffsets[factorIndex];
+					_factorEnd = _entryOffsets[factorIndex + 1];
+				}
+				return _entries[_entry++];
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
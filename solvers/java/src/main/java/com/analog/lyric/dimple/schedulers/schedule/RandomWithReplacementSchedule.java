@@ -16,17 +16,9 @@
 
 package com.analog.lyric.dimple.schedulers.schedule;
 
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.Random;
 
-import com.analog.lyric.dimple.model.Factor;
 import com.analog.lyric.dimple.model.FactorGraph;
-import com.analog.lyric.dimple.model.FactorList;
-import com.analog.lyric.dimple.model.INode;
-import com.analog.lyric.dimple.schedulers.scheduleEntry.EdgeScheduleEntry;
-import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
-import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
 
 /**
  * @author jeffb
@@ -44,51 +36,18 @@ import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
  *         associated scheduler, that scheduler is ignored in creating this
  *         schedule.
  */
-public class RandomWithReplacementSchedule extends ScheduleBase
+public class RandomWithReplacementSchedule extends RandomFactorScheduleBase
 {
-	protected FactorList _factors;
-	protected int _numFactors;
-	protected Random _rand;
-
-
 	public RandomWithReplacementSchedule(FactorGraph factorGraph, Random rand)
 	{
-		_factorGraph = factorGraph;
-		_rand = rand;
-		initialize();
-	}
-
-	@Override
-	public void attach(FactorGraph factorGraph) 
-	{
-		super.attach(factorGraph);
-		initialize();
-	}
-
-	protected void initialize()
-	{
-		_factors = _factorGraph.getNonGraphFactors();
-		_numFactors = _factors.size();
+		super(factorGraph, rand);
 	}
 
 	@Override
-	public Iterator<IScheduleEntry> iterator()
+	protected void chooseFactorSequence()
 	{
-		ArrayList<IScheduleEntry> updateList = new ArrayList<IScheduleEntry>();
-
 		// One iteration consists of the number of factor updates equaling the total number of factors, even though not all factors will necessarily be updated
 		for (int iFactor = 0; iFactor < _numFactors; iFactor++)
-		{
-			int factorIndex = _rand.nextInt(_numFactors);
-			Factor f = ((ArrayList<Factor>)_factors.values()).get(factorIndex);
-			for (INode v : f.getSiblings())
-			{
-				updateList.add(new EdgeScheduleEntry(v,f));
-			}
-			updateList.add(new NodeScheduleEntry(f));
-		}
-
-		return updateList.iterator();
+			_factorSequence[iFactor] = _rand.nextInt(_numFactors);
 	}
-
 }
@@ -0,0 +1,412 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers.schedule;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.analog.lyric.collect.IndexedDoubleMaxHeap;
+import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.model.INode;
+import com.analog.lyric.dimple.model.Port;
+import com.analog.lyric.dimple.model.VariableBase;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
+import com.analog.lyric.dimple.solvers.core.multithreading.IRangeTask;
+import com.analog.lyric.dimple.solvers.core.multithreading.SolverThreadPool;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
+
+/**
+ * Residual belief propagation: a dynamic schedule that always updates next the node
+ * whose incoming messages have changed the most since it was last updated.
+ * <p>
+ * The nodes are kept in an indexed max-heap keyed by their pending residual. After a
+ * node is updated, the largest change in the message it sends to each neighbor is
+ * measured against a copy of that message, and the neighbor's pending residual is raised
+ * to at least that much. A node whose inputs haven't changed at all is not in the heap,
+ * so once the messages stop changing an iteration ends early. Changes no larger than an
+ * optional threshold are ignored, which keeps rounding noise from requeuing nodes forever.
+ * On initialization every node is given an infinite residual, so each is updated at least once.
+ * <p>
+ * One iteration is as many node updates as there are nodes in the graph. With a batch
+ * size greater than one, each schedule entry instead pops a batch of high-residual nodes,
+ * no two of which are neighbors or share a neighbor, and updates them in parallel using
+ * the solver's thread pool.
+ * <p>
+ * Messages must be arrays of doubles, as for the sum-product, min-sum and Gaussian solvers.
+ * <p>
+ * WARNING: This schedule DOES NOT respect any existing sub-graph scheduler
+ * associations. That is, if any sub-graph already has an associated scheduler,
+ * that scheduler is ignored in creating this schedule.
+ */
+public class ResidualBPSchedule extends ScheduleBase implements IDynamicSchedule, IParallelSchedule
+{
+	protected final int _batchSize;
+	protected final double _threshold;
+	protected boolean _needsReset = true;
+	protected long _graphVersionId = -1;
+	protected long _graphStructureVersionId = -1;	// Also changes when a nested graph is edited
+
+	// Structure of the graph, by node index
+	protected INode [] _nodes;
+	protected int [][] _neighbors;				// Node index of the sibling on each port, or -1 if outside the schedule
+	protected double [][][] _outputMsgs;		// Message sent on each port
+	protected int [][] _snapshotOffsets;		// Offset of each port's message copy in _snapshot
+	protected double [] _snapshot;
+
+	protected IndexedDoubleMaxHeap _heap;
+	protected NodeEntry [] _nodeEntries;
+	protected BatchEntry _batchEntry;
+	protected int [] _claimed;					// Batch stamp of nodes used by, or adjacent to, the current batch
+	protected int _batchStamp = 0;
+	protected int [] _deferred;					// Nodes popped but left out of the current batch
+	protected double [] _deferredPriorities;
+
+	public ResidualBPSchedule(FactorGraph factorGraph)
+	{
+		this(factorGraph, 1, 0);
+	}
+	public ResidualBPSchedule(FactorGraph factorGraph, int batchSize, double threshold)
+	{
+		if (batchSize < 1)
+			throw new DimpleException("Batch size must be at least one");
+		if (!(threshold >= 0))
+			throw new DimpleException("Residual threshold must be non-negative");
+		_factorGraph = factorGraph;
+		_batchSize = batchSize;
+		_threshold = threshold;
+	}
+
+	@Override
+	public void attach(FactorGraph factorGraph)
+	{
+		super.attach(factorGraph);
+		_graphVersionId = -1;
+		_graphStructureVersionId = -1;
+		_needsReset = true;
+	}
+
+	@Override
+	public void reset()
+	{
+		_needsReset = true;
+	}
+
+	public int getBatchSize()
+	{
+		return _batchSize;
+	}
+
+	public double getThreshold()
+	{
+		return _threshold;
+	}
+
+	@Override
+	public Iterator<IScheduleEntry> iterator()
+	{
+		if (_graphVersionId != _factorGraph.getVersionId() || _graphStructureVersionId != _factorGraph.getStructureVersionId())
+			buildStructure();
+		if (_needsReset)
+			start();
+
+		final int numUpdates = _nodes.length;
+		return new Iterator<IScheduleEntry>()
+		{
+			private int _updates = 0;
+
+			@Override
+			public boolean hasNext()
+			{
+				return _updates < numUpdates && !_heap.isEmpty();
+			}
+
+			@Override
+			public IScheduleEntry next()
+			{
+				if (!hasNext())
+					throw new NoSuchElementException();
+				if (_batchSize == 1)
+				{
+					_updates++;
+					return _nodeEntries[_heap.poll()];
+				}
+				fillBatch(Math.min(_batchSize, numUpdates - _updates));
+				_updates += _batchEntry._size;
+				return _batchEntry;
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	protected void buildStructure()
+	{
+		ArrayList<INode> nodes = new ArrayList<INode>();
+		for (VariableBase v : _factorGraph.getVariablesFlat())
+			nodes.add(v);
+		for (Factor f : _factorGraph.getNonGraphFactorsFlat())
+			nodes.add(f);
+
+		int numNodes = nodes.size();
+		IdentityHashMap<INode,Integer> node2index = new IdentityHashMap<INode,Integer>(numNodes);
+		for (int i = 0; i < numNodes; i++)
+			node2index.put(nodes.get(i), i);
+
+		_nodes = nodes.toArray(new INode[numNodes]);
+		_neighbors = new int[numNodes][];
+		_outputMsgs = new double[numNodes][][];
+		_snapshotOffsets = new int[numNodes][];
+		_nodeEntries = new NodeEntry[numNodes];
+		for (int i = 0; i < numNodes; i++)
+		{
+			ArrayList<INode> siblings = _nodes[i].getSiblings();
+			int numPorts = siblings.size();
+			_neighbors[i] = new int[numPorts];
+			_outputMsgs[i] = new double[numPorts][];
+			_snapshotOffsets[i] = new int[numPorts];
+			for (int port = 0; port < numPorts; port++)
+			{
+				Integer neighbor = node2index.get(siblings.get(port));
+				_neighbors[i][port] = (neighbor != null) ? neighbor : -1;
+			}
+			_nodeEntries[i] = new NodeEntry(i);
+		}
+
+		_heap = new IndexedDoubleMaxHeap(numNodes);
+		_claimed = new int[numNodes];
+		_batchStamp = 0;
+		_deferred = new int[numNodes];
+		_deferredPriorities = new double[numNodes];
+		_batchEntry = new BatchEntry(Math.min(_batchSize, Math.max(numNodes, 1)));
+		_graphVersionId = _factorGraph.getVersionId();
+		_graphStructureVersionId = _factorGraph.getStructureVersionId();
+		_needsReset = true;
+	}
+
+	// Gathers the current message arrays, since the solver may have recreated them, and schedules every node
+	protected void start()
+	{
+		int length = 0;
+		for (int i = 0; i < _nodes.length; i++)
+		{
+			ISolverNode solver = _nodes[i].getSolver();
+			if (solver == null)
+				throw new DimpleException("The solver must be set before iterating with a residual schedule");
+			for (int port = 0; port < _neighbors[i].length; port++)
+			{
+				Object message = solver.getOutputMsg(port);
+				if (!(message instanceof double[]))
+					throw new DimpleException("The residual schedule requires messages that are arrays of doubles");
+				_outputMsgs[i][port] = (double[])message;
+				_snapshotOffsets[i][port] = length;
+				length += ((double[])message).length;
+			}
+		}
+		if (_snapshot == null || _snapshot.length != length)
+			_snapshot = new double[length];
+		for (int i = 0; i < _nodes.length; i++)
+			for (int port = 0; port < _neighbors[i].length; port++)
+				System.arraycopy(_outputMsgs[i][port], 0, _snapshot, _snapshotOffsets[i][port], _outputMsgs[i][port].length);
+
+		_heap.clear();
+		for (int i = 0; i < _nodes.length; i++)
+			_heap.set(i, Double.POSITIVE_INFINITY);
+		_needsReset = false;
+	}
+
+	// After a node is updated, raises the pending residual of each neighbor by the change in the message sent to it
+	protected void propagateResidual(int node)
+	{
+		double [][] outputMsgs = _outputMsgs[node];
+		int [] neighbors = _neighbors[node];
+		int [] offsets = _snapshotOffsets[node];
+		double [] snapshot = _snapshot;
+		for (int port = 0; port < neighbors.length; port++)
+		{
+			double [] message = outputMsgs[port];
+			int offset = offsets[port];
+			double residual = 0;
+			for (int j = 0; j < message.length; j++)
+			{
+				double value = message[j];
+				double previous = snapshot[offset + j];
+				if (value != previous)
+				{
+					double change = Math.abs(value - previous);
+					if (change != change)			// NaN, from the difference of infinite values or a NaN value
+						change = Double.POSITIVE_INFINITY;
+					if (change > residual)
+						residual = change;
+					snapshot[offset + j] = value;
+				}
+			}
+			int neighbor = neighbors[port];
+			if (residual > _threshold && neighbor >= 0)
+				_heap.raise(neighbor, residual);
+		}
+	}
+
+	// Pops the highest-residual nodes that can be updated at the same time; others popped along the way are put back
+	protected void fillBatch(int maxSize)
+	{
+		BatchEntry batch = _batchEntry;
+		int stamp = ++_batchStamp;
+		int numDeferred = 0;
+		int maxScanned = 4 * maxSize;
+		batch._size = 0;
+		for (int scanned = 0; batch._size < maxSize && scanned < maxScanned && !_heap.isEmpty(); scanned++)
+		{
+			int node = _heap.peek();
+			double priority = _heap.peekPriority();
+			_heap.poll();
+
+			boolean conflict = (_claimed[node] == stamp);
+			for (int neighbor : _neighbors[node])
+				if (neighbor >= 0 && _claimed[neighbor] == stamp)
+					conflict = true;
+
+			if (conflict)
+			{
+				_deferred[numDeferred] = node;
+				_deferredPriorities[numDeferred++] = priority;
+			}
+			else
+			{
+				batch._nodes[batch._size++] = node;
+				_claimed[node] = stamp;
+				for (int neighbor : _neighbors[node])
+					if (neighbor >= 0)
+						_claimed[neighbor] = stamp;
+			}
+		}
+		for (int i = 0; i < numDeferred; i++)
+			_heap.raise(_deferred[i], _deferredPriorities[i]);
+	}
+
+
+	protected class NodeEntry implements IScheduleEntry
+	{
+		protected final int _index;
+
+		public NodeEntry(int index)
+		{
+			_index = index;
+		}
+
+		@Override
+		public void update()
+		{
+			_nodes[_index].update();
+			propagateResidual(_index);
+		}
+
+		@Override
+		public IScheduleEntry copy(java.util.HashMap<Object,Object> old2newObjs)
+		{
+			return null;
+		}
+		@Override
+		public IScheduleEntry copyToRoot(java.util.HashMap<Object,Object> old2newObjs)
+		{
+			return null;
+		}
+
+		@Override
+		public Iterable<Port> getPorts()
+		{
+			return getNodePorts(_nodes[_index], new ArrayList<Port>());
+		}
+	}
+
+	protected class BatchEntry implements IScheduleEntry, IRangeTask
+	{
+		protected final int [] _nodes;
+		protected int _size = 0;
+
+		public BatchEntry(int capacity)
+		{
+			_nodes = new int[capacity];
+		}
+
+		@Override
+		public void update()
+		{
+			SolverThreadPool pool = (_size > 1) ? getThreadPool() : null;
+			if (pool != null)
+				pool.forkJoin(_size, this);
+			else
+				run(0, _size);
+
+			// The heap isn't thread-safe, so residuals are propagated once the batch is done
+			for (int i = 0; i < _size; i++)
+				propagateResidual(_nodes[i]);
+		}
+
+		@Override
+		public void run(int start, int end)
+		{
+			for (int i = start; i < end; i++)
+				ResidualBPSchedule.this._nodes[_nodes[i]].update();
+		}
+
+		@Override
+		public IScheduleEntry copy(java.util.HashMap<Object,Object> old2newObjs)
+		{
+			return null;
+		}
+		@Override
+		public IScheduleEntry copyToRoot(java.util.HashMap<Object,Object> old2newObjs)
+		{
+			return null;
+		}
+
+		@Override
+		public Iterable<Port> getPorts()
+		{
+			ArrayList<Port> ports = new ArrayList<Port>();
+			for (int i = 0; i < _size; i++)
+				getNodePorts(ResidualBPSchedule.this._nodes[_nodes[i]], ports);
+			return ports;
+		}
+	}
+
+	protected static ArrayList<Port> getNodePorts(INode node, ArrayList<Port> ports)
+	{
+		for (int index = 0; index < node.getSiblings().size(); index++)
+			ports.add(new Port(node, index));
+		return ports;
+	}
+
+	protected SolverThreadPool getThreadPool()
+	{
+		FactorGraph rootGraph = _factorGraph.getRootGraph();
+		ISolverFactorGraph solverGraph = rootGraph != null ? rootGraph.getSolver() : null;
+		if (solverGraph instanceof SFactorGraphBase)
+			return ((SFactorGraphBase)solverGraph).getThreadPool();
+		return null;
+	}
+}
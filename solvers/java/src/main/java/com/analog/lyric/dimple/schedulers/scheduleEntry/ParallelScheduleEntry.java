@@ -0,0 +1,133 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers.scheduleEntry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.model.INode;
+import com.analog.lyric.dimple.model.Port;
+import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
+import com.analog.lyric.dimple.solvers.core.multithreading.IRangeTask;
+import com.analog.lyric.dimple.solvers.core.multithreading.SolverThreadPool;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+
+
+/**
+ * A schedule entry that updates a set of nodes, none of which may share a
+ * neighbor or be neighbors of each other, so that the nodes can be updated in
+ * any order or at the same time.
+ * <p>
+ * If the root graph's solver is using more than one thread, the update method
+ * splits the nodes over the solver's thread pool and returns once all of them
+ * have been updated. Otherwise the nodes are updated in order.
+ */
+public class ParallelScheduleEntry implements IScheduleEntry, IRangeTask
+{
+	private final NodeScheduleEntry [] _entries;
+	
+	public ParallelScheduleEntry(Collection<? extends INode> nodes)
+	{
+		_entries = new NodeScheduleEntry[nodes.size()];
+		int i = 0;
+		for (INode node : nodes)
+			_entries[i++] = new NodeScheduleEntry(node);
+	}
+	
+	// The node entries are kept so that a dependency graph built from this entry sees the same entries on every iteration
+	public NodeScheduleEntry [] getEntries()
+	{
+		return _entries;
+	}
+	
+	public INode [] getNodes()
+	{
+		INode [] nodes = new INode[_entries.length];
+		for (int i = 0; i < nodes.length; i++)
+			nodes[i] = _entries[i].getNode();
+		return nodes;
+	}
+	
+	public int size()
+	{
+		return _entries.length;
+	}
+	
+	public void update()  
+	{
+		SolverThreadPool pool = _entries.length > 1 ? getThreadPool() : null;
+		if (pool != null)
+			pool.forkJoin(_entries.length, this);
+		else
+			run(0, _entries.length);
+	}
+
+	@Override
+	public void run(int start, int end)
+	{
+		NodeScheduleEntry [] entries = _entries;
+		for (int i = start; i < end; i++)
+			entries[i].update();
+	}
+	
+	private SolverThreadPool getThreadPool()
+	{
+		FactorGraph rootGraph = _entries[0].getNode().getRootGraph();
+		ISolverFactorGraph solverGraph = rootGraph != null ? rootGraph.getSolver() : null;
+		if (solverGraph instanceof SFactorGraphBase)
+			return ((SFactorGraphBase)solverGraph).getThreadPool();
+		return null;
+	}
+
+	public IScheduleEntry copy(HashMap<Object,Object> old2newObjs) 
+	{
+		return copy(old2newObjs, false);
+	}
+	public IScheduleEntry copyToRoot(HashMap<Object,Object> old2newObjs) 
+	{
+		return copy(old2newObjs, true);
+	}
+	
+	public IScheduleEntry copy(HashMap<Object, Object> old2newObjs, boolean copyToRoot)
+	{
+		// Copy node by node so that boundary variables are skipped the same way as for single node entries
+		ArrayList<INode> newNodes = new ArrayList<INode>();
+		for (NodeScheduleEntry entry : _entries)
+		{
+			NodeScheduleEntry copyEntry = (NodeScheduleEntry)entry.copy(old2newObjs, copyToRoot);
+			if (copyEntry != null)
+				newNodes.add(copyEntry.getNode());
+		}
+		return newNodes.isEmpty() ? null : new ParallelScheduleEntry(newNodes);
+	}
+	
+	public Iterable<Port> getPorts() 
+	{
+		ArrayList<Port> ports = new ArrayList<Port>();
+		for (NodeScheduleEntry entry : _entries)
+			for (Port port : entry.getPorts())
+				ports.add(port);
+		return ports;
+	}
+	
+	public String toString()
+	{
+		return String.format("ParallelScheduleEntry  %d nodes", _entries.length);
+	}
+}
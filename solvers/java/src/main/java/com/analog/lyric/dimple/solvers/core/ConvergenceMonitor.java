@@ -0,0 +1,163 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core;
+
+import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
+
+/*
+ * Measures how much the messages of a graph change from one iteration to the next, for
+ * solvers whose messages are arrays of doubles (sum-product, min-sum, Gaussian) or floats
+ * (their single-precision variants).  Messages in any other form are ignored.
+ *
+ * At the start of a run, references to the message arrays on both sides of every edge are
+ * gathered and their values copied into a single snapshot array, double messages first.  After
+ * each iteration the residual is the largest (or total) absolute change in any message value
+ * since the snapshot, which is then updated.  Arrays are only reallocated when the graph's
+ * messages grow, so iterations don't allocate.
+ */
+public class ConvergenceMonitor
+{
+	public enum Norm {MAX, L1}
+
+	protected double _tolerance;
+	protected Norm _norm;
+	protected double[][] _messages = new double[0][];
+	protected int _numMessages = 0;
+	protected float[][] _floatMessages = new float[0][];
+	protected int _numFloatMessages = 0;
+	protected double[] _snapshot = new double[0];
+	protected int _numIterations = 0;
+	protected double _residual = Double.NaN;
+
+	public ConvergenceMonitor(double tolerance, Norm norm)
+	{
+		_tolerance = tolerance;
+		_norm = norm;
+	}
+
+	public double getTolerance() {return _tolerance;}
+	public Norm getNorm() {return _norm;}
+	public int getNumIterations() {return _numIterations;}		// Iterations in the most recent run
+	public double getResidual() {return _residual;}				// Residual after the last iteration of the most recent run
+	public boolean hasConverged() {return _residual <= _tolerance;}
+
+	// Called before the first iteration of a run
+	public void start(Factor[] factors)
+	{
+		_numMessages = 0;
+		_numFloatMessages = 0;
+		for (Factor f : factors)
+		{
+			ISolverFactor sf = f.getSolver();
+			int numPorts = f.getSiblings().size();
+			for (int port = 0; port < numPorts; port++)
+			{
+				addMessage(sf.getInputMsg(port));
+				addMessage(sf.getOutputMsg(port));
+			}
+		}
+
+		int length = 0;
+		for (int i = 0; i < _numMessages; i++)
+			length += _messages[i].length;
+		for (int i = 0; i < _numFloatMessages; i++)
+			length += _floatMessages[i].length;
+		if (_snapshot.length < length)
+			_snapshot = new double[length];
+		int offset = 0;
+		for (int i = 0; i < _numMessages; i++)
+		{
+			double[] message = _messages[i];
+			System.arraycopy(message, 0, _snapshot, offset, message.length);
+			offset += message.length;
+		}
+		for (int i = 0; i < _numFloatMessages; i++)
+		{
+			float[] message = _floatMessages[i];
+			for (int j = 0; j < message.length; j++, offset++)
+				_snapshot[offset] = message[j];
+		}
+
+		_numIterations = 0;
+		_residual = Double.NaN;
+	}
+
+	// Called after each iteration; returns true if the messages have converged
+	public boolean update()
+	{
+		double residual = 0;
+		int offset = 0;
+		for (int i = 0; i < _numMessages; i++)
+		{
+			double[] message = _messages[i];
+			for (int j = 0; j < message.length; j++, offset++)
+				residual = addChange(message[j], offset, residual);
+		}
+		for (int i = 0; i < _numFloatMessages; i++)
+		{
+			float[] message = _floatMessages[i];
+			for (int j = 0; j < message.length; j++, offset++)
+				residual = addChange(message[j], offset, residual);
+		}
+
+		_numIterations++;
+		_residual = residual;
+		return residual <= _tolerance;
+	}
+
+	// Updates the snapshot value at offset and returns the residual including its change
+	private double addChange(double value, int offset, double residual)
+	{
+		double previous = _snapshot[offset];
+		if (value == previous)
+			return residual;
+		_snapshot[offset] = value;
+
+		double change = Math.abs(value - previous);
+		if (change != change)					// NaN, from the difference of infinite values or a NaN value
+			change = Double.POSITIVE_INFINITY;
+		if (_norm == Norm.MAX)
+			return (change > residual) ? change : residual;
+		else
+			return residual + change;
+	}
+
+	protected void addMessage(Object message)
+	{
+		if (message instanceof double[])
+		{
+			if (_numMessages == _messages.length)
+			{
+				double[][] messages = new double[Math.max(16, 2 * _numMessages)][];
+				System.arraycopy(_messages, 0, messages, 0, _numMessages);
+				_messages = messages;
+			}
+			_messages[_numMessages++] = (double[])message;
+		}
+		else if (message instanceof float[])
+		{
+			if (_numFloatMessages == _floatMessages.length)
+			{
+				float[][] messages = new float[Math.max(16, 2 * _numFloatMessages)][];
+				System.arraycopy(_floatMessages, 0, messages, 0, _numFloatMessages);
+				_floatMessages = messages;
+			}
+			_floatMessages[_numFloatMessages++] = (float[])message;
+		}
+	}
+}
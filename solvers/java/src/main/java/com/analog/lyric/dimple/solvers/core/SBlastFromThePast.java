@@ -71,6 +71,13 @@ public class SBlastFromThePast implements ISolverBlastFromThePastFactor
 		throw new DimpleException("not supported");
 	}
 
+	// For when the model factor has been moved onto another edge, keeping that edge's messages
+	public void setPorts(Port portForBlastVar, Port portForOtherVar)
+	{
+		_portForBlastVar = portForBlastVar;
+		_portForOtherVar = portForOtherVar;
+	}
+	
 	@Override
 	public void createMessages(VariableBase varConnectedToBlast, Port portForOtherVar)
 	{
@@ -46,6 +46,13 @@ public abstract class SDiscreteVariableBase extends SVariableBase
 	@Override
 	public abstract double[] getBelief();
 	
+	// Copies the belief into out, which must have room for one value per domain element
+	public void getBelief(double [] out)
+	{
+		double [] belief = getBelief();
+		System.arraycopy(belief, 0, out, 0, belief.length);
+	}
+	
 	@Override
 	public Object getValue()
 	{
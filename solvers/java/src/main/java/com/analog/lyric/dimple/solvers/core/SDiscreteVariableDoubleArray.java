@@ -0,0 +1,124 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+package com.analog.lyric.dimple.solvers.core;
+
+import java.util.Arrays;
+
+import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.DiscreteDomain;
+import com.analog.lyric.dimple.model.VariableBase;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
+
+/*
+ * Discrete variable whose messages are arrays of doubles, which a subclass only has to give
+ * the initial message value and the update for.  Subclasses that keep more per-port state
+ * extend createMessages and moveMessages.
+ */
+public abstract class SDiscreteVariableDoubleArray extends SDiscreteVariableBase
+{
+	protected double [][] _inPortMsgs = new double[0][];
+	protected double [][] _outMsgArray = new double[0][];
+
+	public SDiscreteVariableDoubleArray(VariableBase var)
+	{
+		super(var);
+		
+		if (!var.getDomain().isDiscrete())
+			throw new DimpleException("only discrete variables supported");
+	}
+
+	// Value of every entry of a freshly reset message
+	protected abstract double getInitialMessageValue();
+
+	@Override
+	public Object [] createMessages(ISolverFactor factor)
+	{
+		int portNum = _var.getPortNum(factor.getModelObject());
+		int newArraySize = Math.max(_inPortMsgs.length, portNum + 1);
+		_inPortMsgs = Arrays.copyOf(_inPortMsgs, newArraySize);
+		_outMsgArray = Arrays.copyOf(_outMsgArray, newArraySize);
+		_inPortMsgs[portNum] = createDefaultMessage();
+		_outMsgArray[portNum] = createDefaultMessage();
+		
+		return new Object [] {_inPortMsgs[portNum], _outMsgArray[portNum]};
+	}
+
+	public double [] createDefaultMessage()
+	{
+		int domainLength = ((DiscreteDomain)_var.getDomain()).size();
+		return (double[])resetInputMessage(new double[domainLength]);
+	}
+
+	@Override
+	public Object resetInputMessage(Object message)
+	{
+		Arrays.fill((double[])message, getInitialMessageValue());
+		return message;
+	}
+
+	@Override
+	public void resetEdgeMessages(int portNum)
+	{
+		resetInputMessage(_inPortMsgs[portNum]);
+		resetOutputMessage(_outMsgArray[portNum]);
+		_var.markMessagesChanged();
+	}
+
+	@Override
+	public void moveMessages(ISolverNode other, int portNum, int otherPortNum)
+	{
+		SDiscreteVariableDoubleArray sother = (SDiscreteVariableDoubleArray)other;
+		_inPortMsgs[portNum] = sother._inPortMsgs[otherPortNum];
+		_outMsgArray[portNum] = sother._outMsgArray[otherPortNum];
+		_var.markMessagesChanged();
+	}
+
+	@Override
+	public Object getInputMsg(int portIndex)
+	{
+		return _inPortMsgs[portIndex];
+	}
+
+	@Override
+	public Object getOutputMsg(int portIndex)
+	{
+		return _outMsgArray[portIndex];
+	}
+
+	@Override
+	public void setInputMsg(int portIndex, Object obj)
+	{
+		_inPortMsgs[portIndex] = (double[])obj;
+		_var.markMessagesChanged();
+	}
+
+	@Override
+	public void setInputMsgValues(int portIndex, Object obj)
+	{
+		double [] values = (double[])obj;
+		System.arraycopy(values, 0, _inPortMsgs[portIndex], 0, values.length);
+		_var.markMessagesChanged();
+	}
+	
+	@Override
+	public void setOutputMsgValues(int portIndex, Object obj)
+	{
+		double [] values = (double[])obj;
+		System.arraycopy(values, 0, _outMsgArray[portIndex], 0, values.length);
+		_var.markMessagesChanged();
+	}
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+package com.analog.lyric.dimple.solvers.core;
+
+import java.util.Arrays;
+
+import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.DiscreteDomain;
+import com.analog.lyric.dimple.model.VariableBase;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
+
+/*
+ * Discrete variable whose messages are arrays of floats, for the single-precision solvers.
+ * Halving the size of the messages halves the memory traffic of an iteration, which is what
+ * limits the speed of belief propagation on large graphs.  Subclasses should still do any
+ * accumulation (sums, logs, normalization) in double and only round the results to float.
+ */
+public abstract class SDiscreteVariableFloatArray extends SDiscreteVariableBase
+{
+	protected float [][] _inPortMsgs = new float[0][];
+	protected float [][] _outMsgArray = new float[0][];
+
+	public SDiscreteVariableFloatArray(VariableBase var)
+	{
+		super(var);
+		
+		if (!var.getDomain().isDiscrete())
+			throw new DimpleException("only discrete variables supported");
+	}
+
+	// Value of every entry of a freshly reset message
+	protected abstract float getInitialMessageValue();
+
+	@Override
+	public Object [] createMessages(ISolverFactor factor)
+	{
+		int portNum = _var.getPortNum(factor.getModelObject());
+		int newArraySize = Math.max(_inPortMsgs.length, portNum + 1);
+		_inPortMsgs = Arrays.copyOf(_inPortMsgs, newArraySize);
+		_outMsgArray = Arrays.copyOf(_outMsgArray, newArraySize);
+		_inPortMsgs[portNum] = createDefaultMessage();
+		_outMsgArray[portNum] = createDefaultMessage();
+		
+		return new Object [] {_inPortMsgs[portNum], _outMsgArray[portNum]};
+	}
+
+	public float [] createDefaultMessage()
+	{
+		int domainLength = ((DiscreteDomain)_var.getDomain()).size();
+		return (float[])resetInputMessage(new float[domainLength]);
+	}
+
+	@Override
+	public Object resetInputMessage(Object message)
+	{
+		Arrays.fill((float[])message, getInitialMessageValue());
+		return message;
+	}
+
+	@Override
+	public void resetEdgeMessages(int portNum)
+	{
+		resetInputMessage(_inPortMsgs[portNum]);
+		resetOutputMessage(_outMsgArray[portNum]);
+	}
+
+	@Override
+	public void moveMessages(ISolverNode other, int portNum, int otherPortNum)
+	{
+		SDiscreteVariableFloatArray sother = (SDiscreteVariableFloatArray)other;
+		_inPortMsgs[portNum] = sother._inPortMsgs[otherPortNum];
+		_outMsgArray[portNum] = sother._outMsgArray[otherPortNum];
+	}
+
+	@Override
+	public Object getInputMsg(int portIndex)
+	{
+		return _inPortMsgs[portIndex];
+	}
+
+	@Override
+	public Object getOutputMsg(int portIndex)
+	{
+		return _outMsgArray[portIndex];
+	}
+
+	@Override
+	public void setInputMsg(int portIndex, Object obj)
+	{
+		_inPortMsgs[portIndex] = (float[])obj;
+	}
+
+	@Override
+	public void setInputMsgValues(int portIndex, Object obj)
+	{
+		copyValues(obj, _inPortMsgs[portIndex]);
+	}
+	
+	@Override
+	public void setOutputMsgValues(int portIndex, Object obj)
+	{
+		copyValues(obj, _outMsgArray[portIndex]);
+	}
+
+	// Copies message values given either in single or double precision
+	static void copyValues(Object values, float [] message)
+	{
+		if (values instanceof float[])
+			System.arraycopy(values, 0, message, 0, message.length);
+		else
+		{
+			double [] tmp = (double[])values;
+			for (int i = 0; i < message.length; i++)
+				message[i] = (float)tmp[i];
+		}
+	}
+}
@@ -16,23 +16,30 @@
 
 package com.analog.lyric.dimple.solvers.core;
 
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+import org.apache.commons.math.random.RandomGenerator;
+
+import com.analog.lyric.collect.LongIntHashMap;
 import com.analog.lyric.dimple.FactorFunctions.core.FactorTable;
+import com.analog.lyric.dimple.FactorFunctions.core.FactorTableBase;
 import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.DiscreteDomain;
 import com.analog.lyric.dimple.model.Factor;
 import com.analog.lyric.dimple.model.FactorBase;
 import com.analog.lyric.dimple.model.FactorGraph;
 import com.analog.lyric.dimple.model.FactorList;
 import com.analog.lyric.dimple.model.INode;
+import com.analog.lyric.dimple.model.Node;
 import com.analog.lyric.dimple.model.VariableBase;
 import com.analog.lyric.dimple.model.VariableList;
 import com.analog.lyric.dimple.model.repeated.BlastFromThePastFactor;
-import com.analog.lyric.dimple.schedulers.dependencyGraph.DependencyGraphNode;
 import com.analog.lyric.dimple.schedulers.dependencyGraph.ScheduleDependencyGraph;
-import com.analog.lyric.dimple.schedulers.scheduleEntry.EdgeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.schedule.IParallelSchedule;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
-import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.multithreading.ScheduleDependencyExecutor;
+import com.analog.lyric.dimple.solvers.core.multithreading.SolverThreadPool;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverBlastFromThePastFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
@@ -65,27 +72,105 @@ public abstract class SFactorGraphBase  extends SNode implements ISolverFactorGr
 	public void moveMessages(ISolverNode other)
 	{
 		SFactorGraphBase sother = (SFactorGraphBase)other;
-		FactorList otherFactors = sother._factorGraph.getFactorsFlat();
-		FactorList myFactors = _factorGraph.getFactorsFlat();
+		Factor [] otherFactors = sother.getFlatFactors();
+		Factor [] myFactors = getFlatFactors();
 		
-		if (otherFactors.size() != myFactors.size())
+		if (otherFactors.length != myFactors.length)
 			throw new DimpleException("Graphs dont' match");
 		
-		for (int i = 0; i < myFactors.size(); i++)
-		{
-			ISolverFactor sf = myFactors.getByIndex(i).getSolver();
-			sf.moveMessages(otherFactors.getByIndex(i).getSolver());
-		}
+		for (int i = 0; i < myFactors.length; i++)
+			myFactors[i].getSolver().moveMessages(otherFactors[i].getSolver());
+		
+		VariableBase [] myVars = getFlatVariables();
+		VariableBase [] otherVars = sother.getFlatVariables();
 		
-		VariableList myVars = _factorGraph.getVariablesFlat();
-		VariableList otherVars = sother._factorGraph.getVariablesFlat();
+		for (int i = 0; i < myVars.length; i++)
+			myVars[i].getSolver().moveNonEdgeSpecificState(otherVars[i].getSolver());
 		
-		for (int i = 0; i < myVars.size(); i++)
+	}
+	
+	/*
+	 * Flat factor and variable arrays, cached so that advancing a stream doesn't rebuild
+	 * the flat lists of every nested graph on every step.  They are rebuilt whenever a node
+	 * is added to or removed from the graph or any nested graph.
+	 */
+	private Factor [] _flatFactors;
+	private VariableBase [] _flatVariables;
+	private long _flatNodesVersionId = -1;
+	private LongIntHashMap _flatVariableIndices;		// Node id to position in _flatVariables; built on demand
+	
+	protected Factor [] getFlatFactors()
+	{
+		updateFlatNodes();
+		return _flatFactors;
+	}
+	
+	protected VariableBase [] getFlatVariables()
+	{
+		updateFlatNodes();
+		return _flatVariables;
+	}
+	
+	private void updateFlatNodes()
+	{
+		long versionId = _factorGraph.getStructureVersionId();
+		if (_flatFactors != null && _flatNodesVersionId == versionId)
+			return;
+		
+		FactorList factors = _factorGraph.getFactorsFlat();
+		_flatFactors = new Factor[factors.size()];
+		for (int i = 0; i < _flatFactors.length; i++)
+			_flatFactors[i] = factors.getByIndex(i);
+		
+		VariableList vars = _factorGraph.getVariablesFlat();
+		_flatVariables = new VariableBase[vars.size()];
+		for (int i = 0; i < _flatVariables.length; i++)
+			_flatVariables[i] = vars.getByIndex(i);
+		
+		_flatVariableIndices = null;
+		_flatNodesVersionId = versionId;
+	}
+	
+	private LongIntHashMap getFlatVariableIndices()
+	{
+		VariableBase [] vars = getFlatVariables();
+		if (_flatVariableIndices == null)
 		{
-			ISolverVariable sv = myVars.getByIndex(i).getSolver();
-			sv.moveNonEdgeSpecificState(otherVars.getByIndex(i).getSolver());
+			LongIntHashMap indices = new LongIntHashMap(vars.length, -1);
+			for (int i = 0; i < vars.length; i++)
+				indices.put(vars[i].getId(), i);
+			_flatVariableIndices = indices;
 		}
+		return _flatVariableIndices;
+	}
+	
+	/*
+	 * Copies the beliefs of the discrete variables with the given ids into out, one array per
+	 * variable.  Entries of out that are null or too short are replaced by new arrays; the rest
+	 * are reused, so repeated calls with the same arrays don't allocate.
+	 */
+	public void getBeliefs(int [] variableIds, double [][] out)
+	{
+		if (out.length < variableIds.length)
+			throw new DimpleException("Too few belief arrays for the given variables");
 		
+		VariableBase [] vars = getFlatVariables();
+		LongIntHashMap indices = getFlatVariableIndices();
+		for (int i = 0; i < variableIds.length; i++)
+		{
+			int index = indices.get(variableIds[i]);
+			if (index < 0)
+				throw new DimpleException("No variable with id " + variableIds[i] + " in the graph");
+			
+			VariableBase var = vars[index];
+			if (!(var.getSolver() instanceof SDiscreteVariableBase))
+				throw new DimpleException("Variable " + var.getLabel() + " is not discrete");
+			
+			int size = ((DiscreteDomain)var.getDomain()).size();
+			if (out[i] == null || out[i].length < size)
+				out[i] = new double[size];
+			((SDiscreteVariableBase)var.getSolver()).getBelief(out[i]);
+		}
 	}
 
 
@@ -136,7 +221,14 @@ public abstract class SFactorGraphBase  extends SNode implements ISolverFactorGr
 	@Override
 	public void iterate(int numIters)
 	{
-		if (_numThreads == 1)
+		if (_convergenceMonitor != null)
+		{
+			iterateUntilConverged(numIters);
+			return;
+		}
+		
+		// Parallel schedules use the thread pool themselves, so they are run like a single-threaded schedule
+		if (_numThreads == 1 || _factorGraph.getSchedule() instanceof IParallelSchedule)
 		{
 			// *** Single thread
 			for (int iterNum = 0; iterNum < numIters; iterNum++)
@@ -155,6 +247,78 @@ public abstract class SFactorGraphBase  extends SNode implements ISolverFactorGr
 		}
 	}
 	
+	// Same as iterate, but stops early once the messages stop changing
+	protected void iterateUntilConverged(int numIters)
+	{
+		boolean singleThreaded = (_numThreads == 1 || _factorGraph.getSchedule() instanceof IParallelSchedule);
+		_convergenceMonitor.start(getFlatFactors());
+		for (int iterNum = 0; iterNum < numIters; iterNum++)
+		{
+			if (singleThreaded)
+				update();
+			else
+				iterateMultiThreaded(1);
+			
+			if (_convergenceMonitor.update())
+				return;
+			
+			if (Thread.interrupted())
+				return;
+		}
+	}
+	
+	/*
+	 * Optional early stopping.  With a tolerance set, each call to iterate (including the
+	 * iterations of solve) stops as soon as no message value changes by more than the tolerance
+	 * in an iteration (or, for the L1 norm, the total change is no more than the tolerance).
+	 * The number of iterations is then only an upper limit.  Solvers whose own iterate doesn't
+	 * pass messages that settle, such as the sampling solvers, reject a tolerance.
+	 */
+	protected ConvergenceMonitor _convergenceMonitor;		// Null unless enabled
+	
+	public void setConvergenceTolerance(double tolerance)
+	{
+		setConvergenceTolerance(tolerance, ConvergenceMonitor.Norm.MAX);
+	}
+	public void setConvergenceTolerance(double tolerance, ConvergenceMonitor.Norm norm)
+	{
+		if (!supportsConvergenceMonitor())
+			throw new DimpleException("This solver does not support a convergence tolerance");
+		if (tolerance < 0)
+			throw new DimpleException("Tolerance must be non-negative");
+		_convergenceMonitor = new ConvergenceMonitor(tolerance, norm);
+	}
+	protected boolean supportsConvergenceMonitor()
+	{
+		return true;
+	}
+	public void disableConvergenceMonitor()
+	{
+		_convergenceMonitor = null;
+	}
+	public ConvergenceMonitor getConvergenceMonitor()
+	{
+		return _convergenceMonitor;
+	}
+	
+	// Iterations run and final residual of the most recent call to iterate; only available when a tolerance is set
+	public int getNumIterationsRun()
+	{
+		if (_convergenceMonitor == null)
+			throw new DimpleException("Convergence monitoring is not enabled");
+		return _convergenceMonitor.getNumIterations();
+	}
+	public double getFinalResidual()
+	{
+		if (_convergenceMonitor == null)
+			throw new DimpleException("Convergence monitoring is not enabled");
+		return _convergenceMonitor.getResidual();
+	}
+	public boolean hasConverged()
+	{
+		return _convergenceMonitor != null && _convergenceMonitor.hasConverged();
+	}
+	
 	@Override
 	public void solveOneStep()
 	{
@@ -165,12 +329,18 @@ public abstract class SFactorGraphBase  extends SNode implements ISolverFactorGr
 	@Override
 	public void solve()
 	{
+		RandomGenerator previousRandom = bindRandom();
+		try
+		{
+			_factorGraph.initialize();
 			
-		_factorGraph.initialize();
-		
-		solveOneStep();
-		continueSolve();
-
+			solveOneStep();
+			continueSolve();
+		}
+		finally
+		{
+			unbindRandom(previousRandom);
+		}
 	}
 
 	@Override
@@ -234,15 +404,23 @@ public abstract class SFactorGraphBase  extends SNode implements ISolverFactorGr
 	@Override
 	public double getBetheEntropy()
 	{
+		if (updateEnergySums())
+		{
+			double sum = _betheEntropySum;
+			for (int i = 0; i < _numUntrackedEnergyTerms; i++)
+				sum += betheEntropyTerm(_untrackedEnergyTerms[i]);
+			return sum;
+		}
+		
 		double sum = 0;
 		
 		//Sum up factor internal energy
-		for (Factor f : _factorGraph.getFactorsFlat())
+		for (Factor f : getFlatFactors())
 			sum += f.getBetheEntropy();
 		
 		//The following would be unnecessary if we implemented inputs as single node factors
-		for (VariableBase v : _factorGraph.getVariablesFlat())
-			sum -= v.getBetheEntropy() * (v.getFactors().length - 1);
+		for (VariableBase v : getFlatVariables())
+			sum -= v.getBetheEntropy() * (v.getSiblings().size() - 1);
 		
 		return sum;
 	}
@@ -267,18 +445,190 @@ public abstract class SFactorGraphBase  extends SNode implements ISolverFactorGr
 	@Override
 	public double getInternalEnergy()
 	{
+		if (updateEnergySums())
+		{
+			double sum = _internalEnergySum;
+			for (int i = 0; i < _numUntrackedEnergyTerms; i++)
+				sum += internalEnergyTerm(_untrackedEnergyTerms[i]);
+			return sum;
+		}
+		
 		double sum = 0;
 		
 		//Sum up factor internal energy
-		for (Factor f : _factorGraph.getFactorsFlat())
+		for (Factor f : getFlatFactors())
 			sum += f.getInternalEnergy();
 		
 		//The following would be unnecessary if we implemented inputs as single node factors
-		for (VariableBase v : _factorGraph.getVariablesFlat())
+		for (VariableBase v : getFlatVariables())
 			sum += v.getInternalEnergy();
 		
 		return sum;
 	}
+	
+	/*
+	 * Running sums of the energy terms of the flat nodes of a root graph.  Every node reports
+	 * its first message change after each query to _changedNodes, and only the terms of the
+	 * nodes that changed and of their neighbors are recomputed, adjusting the sums by the
+	 * difference.  Only the terms of nodes that say their energy is keyed by their messages
+	 * (SNode.hasMessageKeyedEnergy) are kept in the sums; the others are added afresh on each
+	 * query.  The sums are recomputed from scratch after a change to the graph or to any
+	 * factor table, when more than a quarter of the terms have changed, and while a sum isn't
+	 * finite, which also keeps rounding errors from building up.  Terms are numbered with the
+	 * flat factors first, then the flat variables.
+	 */
+	private ConcurrentLinkedQueue<Node> _changedNodes;
+	private LongIntHashMap _energyTermIndices;			// Node id to term number
+	private double [] _internalEnergyTerms;
+	private double [] _betheEntropyTerms;
+	private boolean [] _energyTermTracked;
+	private int [] _untrackedEnergyTerms;
+	private int _numUntrackedEnergyTerms;
+	private int [] _changedEnergyTerms;
+	private int [] _energyTermStamps;					// Equal to _energyStamp for terms already in _changedEnergyTerms
+	private int _energyStamp;
+	private double _internalEnergySum;
+	private double _betheEntropySum;
+	private boolean _energySumsValid;
+	private long _energyGraphVersionId = -1;
+	private long _energyTableChangeCount = -1;
+	
+	// Brings the running sums up to date; returns false for a nested graph, which doesn't keep them
+	private boolean updateEnergySums()
+	{
+		if (_factorGraph.getParentGraph() != null)
+			return false;
+		
+		long graphVersionId = _factorGraph.getStructureVersionId() + _factorGraph.getVersionId();
+		if (_changedNodes == null || graphVersionId != _energyGraphVersionId)
+		{
+			startEnergyTracking();
+			_energyGraphVersionId = graphVersionId;
+		}
+		long tableChangeCount = FactorTableBase.getChangeCount();
+		if (tableChangeCount != _energyTableChangeCount)
+		{
+			_energySumsValid = false;
+			_energyTableChangeCount = tableChangeCount;
+		}
+		
+		// Collect the terms of the changed nodes and their neighbors
+		int numTerms = _internalEnergyTerms.length;
+		int numChanged = 0;
+		int stamp = ++_energyStamp;
+		Node node;
+		while ((node = _changedNodes.poll()) != null)
+		{
+			node.takeMessagesChanged();
+			if (!_energySumsValid)
+				continue;
+			numChanged = addChangedEnergyTerm(node, numChanged, stamp);
+			ArrayList<INode> siblings = node.getSiblings();
+			for (int i = 0, n = siblings.size(); i < n; i++)
+				numChanged = addChangedEnergyTerm(siblings.get(i), numChanged, stamp);
+			if (numChanged > numTerms / 4)
+				_energySumsValid = false;
+		}
+		
+		if (_energySumsValid)
+		{
+			double internalEnergySum = _internalEnergySum;
+			double betheEntropySum = _betheEntropySum;
+			for (int i = 0; i < numChanged; i++)
+			{
+				int term = _changedEnergyTerms[i];
+				double internalEnergy = internalEnergyTerm(term);
+				double betheEntropy = betheEntropyTerm(term);
+				internalEnergySum += internalEnergy - _internalEnergyTerms[term];
+				betheEntropySum += betheEntropy - _betheEntropyTerms[term];
+				_internalEnergyTerms[term] = internalEnergy;
+				_betheEntropyTerms[term] = betheEntropy;
+			}
+			_internalEnergySum = internalEnergySum;
+			_betheEntropySum = betheEntropySum;
+		}
+		else
+		{
+			double internalEnergySum = 0;
+			double betheEntropySum = 0;
+			for (int term = 0; term < numTerms; term++)
+			{
+				if (_energyTermTracked[term])
+				{
+					_internalEnergyTerms[term] = internalEnergyTerm(term);
+					_betheEntropyTerms[term] = betheEntropyTerm(term);
+					internalEnergySum += _internalEnergyTerms[term];
+					betheEntropySum += _betheEntropyTerms[term];
+				}
+			}
+			_internalEnergySum = internalEnergySum;
+			_betheEntropySum = betheEntropySum;
+		}
+		_energySumsValid = isFinite(_internalEnergySum) && isFinite(_betheEntropySum);
+		return true;
+	}
+	
+	// Numbers the terms of the flat nodes and has the nodes report their changes to a new queue
+	private void startEnergyTracking()
+	{
+		Factor [] factors = getFlatFactors();
+		VariableBase [] vars = getFlatVariables();
+		int numTerms = factors.length + vars.length;
+		_changedNodes = new ConcurrentLinkedQueue<Node>();
+		_energyTermIndices = new LongIntHashMap(numTerms, -1);
+		_internalEnergyTerms = new double[numTerms];
+		_betheEntropyTerms = new double[numTerms];
+		_energyTermTracked = new boolean[numTerms];
+		_untrackedEnergyTerms = new int[numTerms];
+		_numUntrackedEnergyTerms = 0;
+		_changedEnergyTerms = new int[numTerms];
+		_energyTermStamps = new int[numTerms];
+		_energyStamp = 0;
+		for (int term = 0; term < numTerms; term++)
+		{
+			Node node = term < factors.length ? factors[term] : vars[term - factors.length];
+			ISolverNode solverNode = node.getSolver();
+			_energyTermIndices.put(node.getId(), term);
+			_energyTermTracked[term] = solverNode instanceof SNode && ((SNode)solverNode).hasMessageKeyedEnergy();
+			if (!_energyTermTracked[term])
+				_untrackedEnergyTerms[_numUntrackedEnergyTerms++] = term;
+			node.reportMessageChangesTo(_changedNodes);
+		}
+		_energySumsValid = false;
+	}
+	
+	private int addChangedEnergyTerm(INode node, int numChanged, int stamp)
+	{
+		int term = _energyTermIndices.get(node.getId());
+		if (term >= 0 && _energyTermTracked[term] && _energyTermStamps[term] != stamp)
+		{
+			_energyTermStamps[term] = stamp;
+			_changedEnergyTerms[numChanged++] = term;
+		}
+		return numChanged;
+	}
+	
+	private static boolean isFinite(double value)
+	{
+		return !Double.isNaN(value) && !Double.isInfinite(value);
+	}
+	
+	private double internalEnergyTerm(int term)
+	{
+		Factor [] factors = getFlatFactors();
+		if (term < factors.length)
+			return factors[term].getInternalEnergy();
+		return getFlatVariables()[term - factors.length].getInternalEnergy();
+	}
+	
+	private double betheEntropyTerm(int term)
+	{
+		Factor [] factors = getFlatFactors();
+		if (term < factors.length)
+			return factors[term].getBetheEntropy();
+		VariableBase v = getFlatVariables()[term - factors.length];
+		return -v.getBetheEntropy() * (v.getSiblings().size() - 1);
+	}
 
 
 	@Override
@@ -374,11 +724,6 @@ public abstract class SFactorGraphBase  extends SNode implements ISolverFactorGr
 			System.out.println(">>> Interrupting solver");
 			_thread.interrupt();
 
-			// See if there are any running sub-threads; in which case, interrupt those too
-			if (_solverSubThreads != null)
-				for (Thread thread : _solverSubThreads)
-					if (thread != null)
-						thread.interrupt();
 		}
 	}
 	@Override
@@ -411,18 +756,56 @@ public abstract class SFactorGraphBase  extends SNode implements ISolverFactorGr
 
 
 	/***********************************************
-	 * 
+	 *
+	 * Random number streams
+	 *
+	 ***********************************************/
+
+	private RandomGenerator _random;
+	private long _seed = System.nanoTime() ^ (((long)System.identityHashCode(this)) << 32);	// Until a seed is set
+
+	// Returns the random number stream owned by this graph, creating it if necessary
+	public RandomGenerator getRandomGenerator()
+	{
+		if (_random == null)
+			_random = SolverRandomGenerator.createStream(_seed, 0);
+		return _random;
+	}
+
+	// Returns a new stream that is independent of this graph's own stream, derived from the graph's seed
+	public RandomGenerator createRandomStream(int streamIndex)
+	{
+		return SolverRandomGenerator.createStream(_seed, streamIndex);
+	}
+
+	// Sets the random seed for this graph's random number stream.  This allows runs of the solver to be repeatable.
+	public void setSeed(long seed)
+	{
+		_seed = seed;
+		getRandomGenerator().setSeed(seed);
+	}
+
+	// Binds this graph's stream to the current thread, returning the stream previously bound, to be passed to unbindRandom
+	protected RandomGenerator bindRandom()
+	{
+		return SolverRandomGenerator.setCurrent(getRandomGenerator());
+	}
+
+	protected void unbindRandom(RandomGenerator previous)
+	{
+		SolverRandomGenerator.setCurrent(previous);
+	}
+
+	/***********************************************
+	 *
 	 * For multi-threaded execution
 	 * 
 	 ***********************************************/
 
 	protected int _numThreads = 1;			// Default number of CPU threads to run on
 	protected ScheduleDependencyGraph _scheduleDependencyGraph;
-	protected LinkedBlockingQueue<DependencyGraphNode<IScheduleEntry>> _workQueue = new LinkedBlockingQueue<DependencyGraphNode<IScheduleEntry>>();
-	protected int _numScheduleEntriesRemaining;
-	protected Thread[] _solverSubThreads;
-	protected WaitNotify _waitNotify = new WaitNotify();
-	protected Exception _subThreadException = null;
+	protected ScheduleDependencyExecutor _scheduleDependencyExecutor;
+	protected SolverThreadPool _threadPool;
 	protected long _graphVersionIdWhenLastBuilt = -1;
 	protected long _scheduleVersionIdWhenLastBuilt = -1;
 	protected long _iterationsWhenLastBuilt = -1;
@@ -434,6 +817,8 @@ public abstract class SFactorGraphBase  extends SNode implements ISolverFactorGr
 
 	public void setNumThreads(int numThreads)
 	{
+		if (numThreads != _numThreads)
+			shutdownThreadPool();
 		_numThreads = numThreads;
 	}
 
@@ -452,139 +837,62 @@ public abstract class SFactorGraphBase  extends SNode implements ISolverFactorGr
 				(_iterationsWhenLastBuilt != numIters))
 		{
 			_scheduleDependencyGraph = new ScheduleDependencyGraph(_factorGraph, numIters);
+			_scheduleDependencyExecutor = new ScheduleDependencyExecutor(_scheduleDependencyGraph);
 			_graphVersionIdWhenLastBuilt = _factorGraph.getVersionId();
 			_scheduleVersionIdWhenLastBuilt = _factorGraph.getScheduleVersionId();
 			_iterationsWhenLastBuilt = numIters;
 		}
+		
+		// Start the worker threads ahead of time too
+		getThreadPool();
 	}
 
-
-	// Run iterations using multi-threading (called by iterate if multi-threading is in use)
-	protected void iterateMultiThreaded(int numIters)
-	{
-		prepareForMultiThreading(numIters);	// Create _scheduleDependencyGraph if not already up-to-date
-		_numScheduleEntriesRemaining = _scheduleDependencyGraph.size();
-		_scheduleDependencyGraph.initialize();
-
-		// Initialize the work queue
-		_workQueue.clear();
-		for (DependencyGraphNode<IScheduleEntry> entry : _scheduleDependencyGraph.getRootList())	// Start with the roots
-			_workQueue.add(entry);
-
-		// Create and start the threads
-		_solverSubThreads = new Thread[_numThreads];
-		for (int i = 0; i < _numThreads; i++)
-		{
-			_solverSubThreads[i] = new Thread(new SFactorGraphThread(this));
-			_solverSubThreads[i].start();
-		}
-
-		// Wait for notification of completion, then stop all the sub-threads
-		_waitNotify.doWait();
-		for (Thread thread : _solverSubThreads)
-			thread.interrupt();
-
-		// If there was an exception in any of the sub-threads, pass it along
-		if (_subThreadException != null)
-			throw new DimpleException(_subThreadException.getMessage());
-	}
-
-	// Callback from the threads; must be synchronized
-	protected synchronized void scheduleEntryCompleted(DependencyGraphNode<IScheduleEntry> entry)
+	/**
+	 * Returns the pool of worker threads used for multithreaded iteration, starting the
+	 * threads if necessary. The threads are reused by later calls, and are stopped when the
+	 * thread count changes or when this solver graph is disposed. Threads that have been idle
+	 * for {@link SolverThreadPool#DEFAULT_IDLE_TIMEOUT_MILLIS} also exit, and are restarted on
+	 * the next multithreaded iteration, so a graph dropped without being disposed doesn't keep
+	 * them running.
+	 * Returns null if only one thread is in use.
+	 */
+	public SolverThreadPool getThreadPool()
 	{
-		// Mark this entry completed
-		entry.markCompleted();
-
-		// Are we done?
-		if (--_numScheduleEntriesRemaining == 0)
-		{
-			_waitNotify.doNotify();		// Notify the parent thread that we're done
-			return;
-		}
-
-		// Run through the dependents of this node and see if they are ready to add to the work queue
-		for (DependencyGraphNode<IScheduleEntry> dependentEntry : entry.getDependents())
-			if (dependentEntry.allDependenciesMet())	// If all dependencies have now been met, the add it to the work queue
-				_workQueue.add(dependentEntry);
+		if (_numThreads <= 1)
+			return null;
+		
+		if (_threadPool == null)
+			_threadPool = new SolverThreadPool(_numThreads);
+		return _threadPool;
 	}
 
 
-	// Get the work queue
-	protected LinkedBlockingQueue<DependencyGraphNode<IScheduleEntry>> getWorkQueue()
+	// Run iterations using multi-threading (called by iterate if multi-threading is in use)
+	protected void iterateMultiThreaded(int numIters)
 	{
-		return _workQueue;
+		prepareForMultiThreading(numIters);	// Create _scheduleDependencyGraph if not already up-to-date
+		_scheduleDependencyExecutor.execute(getThreadPool());
 	}
 
-
-	// This is the class defining the sub-threads
-	private class SFactorGraphThread implements Runnable
+	// Stops the worker threads, if any; they will be recreated if needed
+	protected void shutdownThreadPool()
 	{
-		SFactorGraphBase _parentGraph;
-
-		public SFactorGraphThread(SFactorGraphBase graph)
+		if (_threadPool != null)
 		{
-			_parentGraph = graph;
-		}
-
-		@Override
-		public void run()
-		{
-			LinkedBlockingQueue<DependencyGraphNode<IScheduleEntry>> workQueue = _parentGraph.getWorkQueue();
-			try
-			{
-				while(true)
-				{
-					DependencyGraphNode<IScheduleEntry> entry = workQueue.take();	// Pull the next entry from the work queue (blocking if there are none)
-					IScheduleEntry scheduleEntry = entry.getObject();
-					INode node = (scheduleEntry instanceof NodeScheduleEntry) ? ((NodeScheduleEntry)scheduleEntry).getNode() : ((EdgeScheduleEntry)scheduleEntry).getNode();
-					synchronized (node)												// Synchronize on the node: don't allow updating the same node in more than one thread at the same time
-					{
-						scheduleEntry.update();										// Run it
-					}
-					_parentGraph.scheduleEntryCompleted(entry);						// Tell the main thread that it's done
-				}
-			}
-			catch (InterruptedException e) {return;}
-			catch (Exception e)
-			{
-				_subThreadException = e;
-				_waitNotify.doNotify();		// Notify the parent thread that we're done (not really done, but it's an exception)
-				Thread.currentThread().interrupt();
-				return;
-			}
+			_threadPool.shutdown();
+			_threadPool = null;
 		}
 	}
 
-
-	// Notifier, to notify from the thread that completes the final entry to the main task to tell it that we're done
-	// Adapted from http://tutorials.jenkov.com/java-concurrency/thread-signaling.html
-	protected class MonitorObject {}
-	protected class WaitNotify
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The default implementation stops the worker threads used for multithreaded iteration.
+	 */
+	@Override
+	public void dispose()
 	{
-		MonitorObject _monitorObject = new MonitorObject();
-		boolean _wasSignalled = false;
-
-		public void doWait()
-		{
-			synchronized(_monitorObject)
-			{
-				while(!_wasSignalled)
-				{
-					try{_monitorObject.wait();}
-					catch(InterruptedException e){throw new DimpleException(e.getMessage());}
-				}
-				_wasSignalled = false;
-			}
-		}
-
-		public void doNotify()
-		{
-			synchronized (_monitorObject)
-			{
-				_wasSignalled = true;
-				_monitorObject.notify();
-			}
-		}
+		shutdownThreadPool();
 	}
 
 	@Override
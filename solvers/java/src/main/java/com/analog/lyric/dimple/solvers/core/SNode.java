@@ -16,13 +16,20 @@
 
 package com.analog.lyric.dimple.solvers.core;
 
+import java.util.ArrayList;
+
 import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.model.GraphAdjacency;
+import com.analog.lyric.dimple.model.INode;
 import com.analog.lyric.dimple.model.Node;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
 
 public abstract class SNode implements ISolverNode
 {
 	private final Node _model;
+	private GraphAdjacency _adjacency;
+	private int _adjacencyOffset;
 	
 	public SNode(Node n)
 	{
@@ -35,6 +42,70 @@ public abstract class SNode implements ISolverNode
     	return _model;
     }
 	
+	/*
+	 * The adjacency snapshot of the root graph, for loops over this node's neighbors; refreshed if
+	 * the graph has changed since it was last asked for.  This node's edges start at getAdjacencyOffset.
+	 */
+	protected final GraphAdjacency getAdjacency()
+	{
+		GraphAdjacency adjacency = _adjacency;
+		if (adjacency == null || !adjacency.isValid())
+		{
+			FactorGraph root = _model.getRootGraph();
+			if (root == null)
+				throw new DimpleException("Node is not part of a graph");
+			adjacency = root.getAdjacency();
+			int index = adjacency.getIndex(_model);
+			if (index < 0)
+				throw new DimpleException("Node is not part of the graph's adjacency");
+			_adjacencyOffset = adjacency.getEdgeOffset(index);
+			_adjacency = adjacency;
+		}
+		return adjacency;
+	}
+	
+	// Start of this node's edges in the arrays of the adjacency last returned by getAdjacency
+	protected final int getAdjacencyOffset()
+	{
+		return _adjacencyOffset;
+	}
+	
+	/*
+	 * Sum of the message versions of this node and its neighbors.  Versions only increase, so
+	 * the sum changes whenever any message into or out of this node may have changed, and a
+	 * value derived from those messages can be reused for as long as it stays the same.  Since
+	 * adding or removing an edge also changes it, callers should check the graph version too.
+	 */
+	protected long getMessageKey()
+	{
+		ArrayList<INode> siblings = _model.getSiblings();
+		long key = _model.getMessageVersion();
+		for (int i = 0, n = siblings.size(); i < n; i++)
+			key += ((Node)siblings.get(i)).getMessageVersion();
+		return key;
+	}
+	
+	/*
+	 * Changes with any edit to the graph, to go with getMessageKey: the structure version
+	 * covers nodes added to or removed from nested graphs, and the root's own version covers
+	 * edges rewired in place.  Both only increase, so their sum does too.
+	 */
+	protected long getGraphVersionId()
+	{
+		FactorGraph root = _model.getRootGraph();
+		return root == null ? -1 : root.getStructureVersionId() + root.getVersionId();
+	}
+	
+	/*
+	 * True if this node's internal energy and Bethe entropy only change when its message key,
+	 * the graph version or a factor table changes, so that the solver graph can keep a
+	 * running sum of them instead of asking every node on every query.
+	 */
+	protected boolean hasMessageKeyedEnergy()
+	{
+		return false;
+	}
+	
 	
 	@Override
 	public void initialize()
@@ -64,7 +64,7 @@ public abstract class STableFactorDoubleArray extends STableFactorBase
 		STableFactorDoubleArray sother = (STableFactorDoubleArray)other;
 	    _inputMsgs[portNum] = sother._inputMsgs[otherPort];
 	    _outputMsgs[portNum] = sother._outputMsgs[otherPort];
-	    
+	    _factor.markMessagesChanged();
 	}
 
 
@@ -86,6 +86,7 @@ public abstract class STableFactorDoubleArray extends STableFactorBase
 		double [] tmp = (double[])obj;
 		for (int i = 0; i <tmp.length; i++)
 			_inputMsgs[portIndex][i] = tmp[i];
+		_factor.markMessagesChanged();
 	}
 	
 	@Override
@@ -94,6 +95,7 @@ public abstract class STableFactorDoubleArray extends STableFactorBase
 		double [] tmp = (double[])obj;
 		for (int i = 0; i <tmp.length; i++)
 			_outputMsgs[portIndex][i] = tmp[i];
+		_factor.markMessagesChanged();
 	}
 	
 }
@@ -0,0 +1,90 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+package com.analog.lyric.dimple.solvers.core;
+
+import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
+
+/*
+ * Table factor whose messages are arrays of floats, for the single-precision solvers.
+ * The messages are created by the variables; see SDiscreteVariableFloatArray.
+ */
+public abstract class STableFactorFloatArray extends STableFactorBase 
+{
+	protected float [][] _inputMsgs = new float[0][];
+	protected float [][] _outputMsgs;
+
+	public STableFactorFloatArray(Factor factor)
+	{
+		super(factor);
+	}
+	
+
+	@Override
+	public void createMessages()
+	{
+		int numPorts = _factor.getSiblings().size();
+		
+	    _inputMsgs = new float[numPorts][];
+	    _outputMsgs = new float[numPorts][];
+	    
+	    for (int index = 0; index < _factor.getVariables().size(); index++)
+	    {
+	    	ISolverVariable is = _factor.getVariables().getByIndex(index).getSolver();
+	    	Object [] messages = is.createMessages(this);	    	
+	    	_outputMsgs[index] = (float[])messages[0]; 
+	    	_inputMsgs[index] = (float[])messages[1];
+	    }
+	}	
+
+	@Override
+	public void resetEdgeMessages(int i)
+	{
+	}
+
+	@Override
+	public void moveMessages(ISolverNode other, int portNum, int otherPort) 
+	{
+		STableFactorFloatArray sother = (STableFactorFloatArray)other;
+	    _inputMsgs[portNum] = sother._inputMsgs[otherPort];
+	    _outputMsgs[portNum] = sother._outputMsgs[otherPort];
+	}
+
+	@Override
+	public Object getInputMsg(int portIndex) 
+	{
+		return _inputMsgs[portIndex];
+	}
+
+	@Override
+	public Object getOutputMsg(int portIndex) 
+	{
+		return _outputMsgs[portIndex];
+	}
+
+	@Override
+	public void setInputMsgValues(int portIndex, Object obj) 
+	{
+		SDiscreteVariableFloatArray.copyValues(obj, _inputMsgs[portIndex]);
+	}
+	
+	@Override
+	public void setOutputMsgValues(int portIndex, Object obj) 
+	{
+		SDiscreteVariableFloatArray.copyValues(obj, _outputMsgs[portIndex]);
+	}
+}
@@ -19,7 +19,59 @@ package com.analog.lyric.dimple.solvers.core;
 import org.apache.commons.math.random.MersenneTwister;
 import org.apache.commons.math.random.RandomGenerator;
 
+/*
+ * Random number streams for the sampling solvers.
+ * 
+ * Each solver graph owns its own stream (see SFactorGraphBase.getRandomGenerator), which
+ * it binds to the calling thread while it is solving.  Samplers, proposal kernels
+ * and schedules get their random numbers from getCurrent(), so graphs solved in
+ * different threads don't share generator state or each other's seeds.
+ * 
+ * Additional streams can be split off deterministically from a seed with
+ * createStream, so that a run that uses several streams (for example, one per
+ * sampling chain) is reproducible from a single seed regardless of which
+ * threads the streams end up running on.
+ */
 public class SolverRandomGenerator
 {
+	// Shared stream, used when no solver graph stream is bound to the current thread
 	public static final RandomGenerator rand = new MersenneTwister();
+	
+	private static final ThreadLocal<RandomGenerator> _current = new ThreadLocal<RandomGenerator>();
+	
+	// Returns the stream bound to the current thread, or the shared stream if there is none
+	public static RandomGenerator getCurrent()
+	{
+		RandomGenerator current = _current.get();
+		return (current != null) ? current : rand;
+	}
+	
+	// Binds a stream to the current thread (or unbinds it if null), returning the previously bound stream, if any
+	public static RandomGenerator setCurrent(RandomGenerator stream)
+	{
+		RandomGenerator previous = _current.get();
+		if (stream != null)
+			_current.set(stream);
+		else
+			_current.remove();
+		return previous;
+	}
+	
+	// Returns the seed for the specified stream of a given seed; stream zero uses the seed itself
+	public static long getStreamSeed(long seed, int streamIndex)
+	{
+		if (streamIndex == 0)
+			return seed;
+		
+		// SplitMix64 finalizer applied to a Weyl sequence; gives well separated seeds for nearby indices
+		long z = seed + streamIndex * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
+	public static RandomGenerator createStream(long seed, int streamIndex)
+	{
+		return new MersenneTwister(getStreamSeed(seed, streamIndex));
+	}
 }
@@ -33,6 +33,15 @@ public abstract class HybridSampledBPDistributionGenerator
 	public abstract void initialize();
 	public abstract void createMessage(Object msg);
 	public abstract void generateDistributionInPlace(ArrayList<Object> input);
+	
+	// Primitive version for a block of real-valued samples; generators that override this avoid boxing the samples
+	public void generateDistributionInPlace(double[] samples, int numSamples)
+	{
+		ArrayList<Object> input = new ArrayList<Object>(numSamples);
+		for (int i = 0; i < numSamples; i++)
+			input.add(samples[i]);
+		generateDistributionInPlace(input);
+	}
 	public abstract void setOutputMsg(Object message);
 	public abstract Object getOutputMsg();
 	public abstract void moveMessages(HybridSampledBPDistributionGenerator other);
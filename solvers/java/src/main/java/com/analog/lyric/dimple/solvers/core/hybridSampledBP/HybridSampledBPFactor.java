@@ -38,6 +38,17 @@ public abstract class HybridSampledBPFactor extends SFactorBase
 	private HybridSampledBPFactorFunction _factorFunction;
 	private HybridSampledBPSampler [] _samplers;
 	
+	// Reused on every update, so that generating a message doesn't allocate
+	private static final int BLOCK_SIZE = 256;
+	private int _numPorts;
+	private boolean _usePrimitiveSamples;
+	private Object [] _inputs;
+	private ArrayList<Object> _samples = new ArrayList<Object>();
+	private double [][] _candidates;			// [input][candidate]
+	private double [] _acceptanceRatios;
+	private double [] _acceptedInputs;
+	private double [] _outputSamples;
+	
 	
 	public abstract HybridSampledBPSampler generateSampler(Port p);
 	public abstract HybridSampledBPDistributionGenerator generateDistributionGenerator(Port p);
@@ -58,13 +69,25 @@ public abstract class HybridSampledBPFactor extends SFactorBase
 		
 		_factorFunction.attachRandom(random);
 		
-		_distGenerator = new HybridSampledBPDistributionGenerator[factor.getSiblings().size()];
-		_samplers = new HybridSampledBPSampler[factor.getSiblings().size()];
+		_numPorts = factor.getSiblings().size();
+		_distGenerator = new HybridSampledBPDistributionGenerator[_numPorts];
+		_samplers = new HybridSampledBPSampler[_numPorts];
 		
-		for (int i = 0; i < factor.getSiblings().size(); i++)
+		_usePrimitiveSamples = _factorFunction.hasPrimitiveSampling();
+		for (int i = 0; i < _numPorts; i++)
 		{
 			_samplers[i] = generateSampler(new Port(factor,i));
 			_distGenerator[i] = generateDistributionGenerator(new Port(factor,i));
+			_usePrimitiveSamples &= _samplers[i].hasPrimitiveSamples();
+		}
+		
+		_inputs = new Object[_numPorts - 1];
+		if (_usePrimitiveSamples)
+		{
+			_candidates = new double[_numPorts - 1][BLOCK_SIZE];
+			_acceptanceRatios = new double[BLOCK_SIZE];
+			_acceptedInputs = new double[_numPorts - 1];
+			_outputSamples = new double[_numSamples];
 		}
 	}
 	
@@ -81,6 +104,8 @@ public abstract class HybridSampledBPFactor extends SFactorBase
 	public void setNumSamples(int numSamples)
 	{
 		_numSamples = numSamples;
+		if (_usePrimitiveSamples)
+			_outputSamples = new double[numSamples];
 	}
 
 	public int getNumSamples()
@@ -91,9 +116,15 @@ public abstract class HybridSampledBPFactor extends SFactorBase
 	@Override
 	public void updateEdge(int outPortNum)  
 	{
+		if (_usePrimitiveSamples)
+		{
+			updateEdgePrimitive(outPortNum);
+			return;
+		}
 		
-		Object [] inputs = null;
-		ArrayList<Object> samples = new ArrayList<Object>();
+		Object [] inputs = _inputs;
+		ArrayList<Object> samples = _samples;
+		samples.clear();
 		
 		int numTries = 0;
 		
@@ -105,11 +136,9 @@ public abstract class HybridSampledBPFactor extends SFactorBase
 			//Until a sample is accepted
 			while (!sampleAccepted)
 			{
-				inputs = new Object [_factor.getSiblings().size()-1];
-				
 				int index = 0;
 				//For each input message (mean/variance)
-				for (int j = 0; j < _factor.getSiblings().size(); j++)
+				for (int j = 0; j < _numPorts; j++)
 				{					
 					//Generate a new sample using the specified mean/variance
 					if (outPortNum != j)
@@ -156,6 +185,45 @@ public abstract class HybridSampledBPFactor extends SFactorBase
 		
 	}
 	
+	// Same as above, but candidate input values are drawn a block at a time into primitive arrays,
+	// and the acceptance ratio is evaluated over the whole block
+	protected void updateEdgePrimitive(int outPortNum)
+	{
+		double [][] candidates = _candidates;
+		double [] ratios = _acceptanceRatios;
+		double [] acceptedInputs = _acceptedInputs;
+		int numInputs = _numPorts - 1;
+		int numAccepted = 0;
+		int numTries = 0;
+		
+		while (numAccepted < _numSamples)
+		{
+			int blockSize = Math.min(BLOCK_SIZE, _numSamples - numAccepted);
+			for (int j = 0, index = 0; j < _numPorts; j++)
+				if (outPortNum != j)
+					_samplers[j].generateSamples(candidates[index++], blockSize);
+			
+			_factorFunction.acceptanceRatios(outPortNum, candidates, blockSize, ratios);
+			
+			for (int n = 0; n < blockSize; n++)
+			{
+				if (_random.nextDouble() < ratios[n])
+				{
+					for (int i = 0; i < numInputs; i++)
+						acceptedInputs[i] = candidates[i][n];
+					_outputSamples[numAccepted++] = _factorFunction.generateSample(outPortNum, acceptedInputs);
+				}
+				
+				if (numTries == _maxNumTries)
+					throw new DimpleException("Failed to get desired number of samples");
+				
+				numTries++;
+			}
+		}
+		
+		_distGenerator[outPortNum].generateDistributionInPlace(_outputSamples, _numSamples);
+	}
+	
 	@Override
 	public void resetEdgeMessages(int i) 
 	{
@@ -18,6 +18,8 @@ package com.analog.lyric.dimple.solvers.core.hybridSampledBP;
 
 import java.util.Random;
 
+import com.analog.lyric.dimple.FactorFunctions.core.FactorFunctionUtilities;
+
 import com.analog.lyric.dimple.model.Port;
 
 public abstract class HybridSampledBPSampler 
@@ -48,6 +50,15 @@ public abstract class HybridSampledBPSampler
 	public abstract void initialize() ;
 	public abstract void createMessage(Object msg);
 	public abstract Object generateSample();
+	
+	// Primitive version for a variable whose values are all real, which fills a block of samples at once.
+	// Samplers that can do this directly should override it and hasPrimitiveSamples.
+	public boolean hasPrimitiveSamples() {return false;}
+	public void generateSamples(double[] samples, int numSamples)
+	{
+		for (int i = 0; i < numSamples; i++)
+			samples[i] = FactorFunctionUtilities.toDouble(generateSample());
+	}
 	public abstract Object getInputMsg();
 	public abstract void moveMessages(HybridSampledBPSampler other);
 }
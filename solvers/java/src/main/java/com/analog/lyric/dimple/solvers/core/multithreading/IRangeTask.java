@@ -0,0 +1,29 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core.multithreading;
+
+/**
+ * A unit of work over a range of indices, used with {@link SolverThreadPool#forkJoin}.
+ */
+public interface IRangeTask
+{
+	/**
+	 * Processes the indices from {@code start} (inclusive) to {@code end} (exclusive).
+	 * May be called concurrently on disjoint ranges.
+	 */
+	public void run(int start, int end);
+}
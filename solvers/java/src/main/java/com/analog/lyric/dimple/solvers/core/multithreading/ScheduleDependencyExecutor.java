@@ -0,0 +1,216 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core.multithreading;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.INode;
+import com.analog.lyric.dimple.schedulers.dependencyGraph.DependencyGraphNode;
+import com.analog.lyric.dimple.schedulers.dependencyGraph.ScheduleDependencyGraph;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.EdgeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+
+/**
+ * Runs the entries of a {@link ScheduleDependencyGraph} on a {@link SolverThreadPool}.
+ * <p>
+ * The dependency graph is compiled once into an array of tasks, each holding its
+ * dependents as an array and an atomic count of dependencies that have not yet
+ * completed. Completing an entry decrements the count of each dependent, and the
+ * thread that brings a count to zero submits that dependent. No global lock is
+ * taken per entry.
+ * <p>
+ * The executor can be run any number of times but only one run may be in
+ * progress at a time.
+ */
+public class ScheduleDependencyExecutor
+{
+	/*
+	 * State
+	 */
+
+	private final Task[] _tasks;
+	private final Task[] _roots;
+	private final AtomicInteger _outstandingTasks = new AtomicInteger();	// Submitted but not yet finished
+	private final Object _doneMonitor = new Object();
+	private boolean _done;
+	private volatile boolean _cancelled;
+	private volatile Throwable _exception;
+	private SolverThreadPool _pool;
+
+	/*
+	 * Construction
+	 */
+
+	public ScheduleDependencyExecutor(ScheduleDependencyGraph graph)
+	{
+		int size = graph.size();
+		_tasks = new Task[size];
+
+		IdentityHashMap<DependencyGraphNode<IScheduleEntry>, Task> node2task = new IdentityHashMap<DependencyGraphNode<IScheduleEntry>, Task>(size);
+		ArrayList<Task> roots = new ArrayList<Task>();
+		for (int i = 0; i < size; i++)
+		{
+			DependencyGraphNode<IScheduleEntry> node = graph.get(i);
+			Task task = new Task(node.getObject(), node.getDependencyCount());
+			_tasks[i] = task;
+			node2task.put(node, task);
+			if (task._numDependencies == 0)
+				roots.add(task);
+		}
+		_roots = roots.toArray(new Task[roots.size()]);
+
+		for (int i = 0; i < size; i++)
+		{
+			ArrayList<? extends DependencyGraphNode<IScheduleEntry>> dependents = graph.get(i).getDependents();
+			Task [] dependentTasks = new Task[dependents.size()];
+			for (int j = 0; j < dependentTasks.length; j++)
+				dependentTasks[j] = node2task.get(dependents.get(j));
+			_tasks[i]._dependents = dependentTasks;
+		}
+	}
+
+	/*
+	 * ScheduleDependencyExecutor methods
+	 */
+
+	public int size()
+	{
+		return _tasks.length;
+	}
+
+	/**
+	 * Runs every entry of the dependency graph on the given pool, waiting until all have
+	 * completed.
+	 * <p>
+	 * If the calling thread is interrupted, entries not yet started are skipped, the
+	 * method waits for running entries to finish, and returns with the interrupt status set.
+	 *
+	 * @throws DimpleException if updating any entry threw an exception.
+	 * @throws Error if updating any entry threw an error.
+	 */
+	public void execute(SolverThreadPool pool)
+	{
+		for (Task task : _tasks)
+			task._remainingDependencies.set(task._numDependencies);
+
+		_pool = pool;
+		_cancelled = false;
+		_exception = null;
+		_done = _tasks.length == 0;
+		_outstandingTasks.set(_roots.length);
+
+		for (Task root : _roots)
+			pool.submit(root);
+
+		boolean interrupted = false;
+		synchronized (_doneMonitor)
+		{
+			while (!_done)
+			{
+				try
+				{
+					_doneMonitor.wait();
+				}
+				catch (InterruptedException e)
+				{
+					// Stop scheduling new entries and wait for the running ones to drain
+					interrupted = true;
+					_cancelled = true;
+				}
+			}
+		}
+		_pool = null;
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		if (_exception instanceof Error)
+			throw (Error)_exception;
+		if (_exception != null)
+			throw new DimpleException(_exception.getMessage());
+	}
+
+	/*
+	 * Private methods
+	 */
+
+	private void taskFinished()
+	{
+		if (_outstandingTasks.decrementAndGet() == 0)
+		{
+			synchronized (_doneMonitor)
+			{
+				_done = true;
+				_doneMonitor.notifyAll();
+			}
+		}
+	}
+
+	private final class Task implements Runnable
+	{
+		private final IScheduleEntry _entry;
+		private final INode _node;
+		private final int _numDependencies;
+		private final AtomicInteger _remainingDependencies = new AtomicInteger();
+		private Task[] _dependents;
+
+		Task(IScheduleEntry entry, int numDependencies)
+		{
+			_entry = entry;
+			_node = (entry instanceof NodeScheduleEntry) ? ((NodeScheduleEntry)entry).getNode() : ((EdgeScheduleEntry)entry).getNode();
+			_numDependencies = numDependencies;
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				if (!_cancelled)
+				{
+					synchronized (_node)			// Don't allow updating the same node in more than one thread at the same time
+					{
+						_entry.update();
+					}
+
+					for (Task dependent : _dependents)
+					{
+						if (dependent._remainingDependencies.decrementAndGet() == 0)
+						{
+							_outstandingTasks.incrementAndGet();
+							_pool.submit(dependent);
+						}
+					}
+				}
+			}
+			catch (Throwable e)
+			{
+				if (_exception == null)
+					_exception = e;
+				_cancelled = true;
+			}
+			finally
+			{
+				taskFinished();
+			}
+		}
+	}
+}
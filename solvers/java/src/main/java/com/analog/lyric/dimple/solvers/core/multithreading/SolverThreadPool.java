@@ -0,0 +1,385 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core.multithreading;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A long-lived pool of work-stealing worker threads used by the solvers for
+ * multithreaded iteration.
+ * <p>
+ * Each worker owns a deque of tasks. A task submitted from a worker thread is
+ * pushed onto the front of that worker's deque and is normally run next by the
+ * same worker, which keeps dependent updates on the same core. Idle workers steal
+ * from the back of other workers' deques. Tasks submitted from any other thread
+ * are spread round-robin over the workers.
+ * <p>
+ * Worker threads are daemon threads that are reused from one task to the next. A
+ * worker that has been idle for the idle timeout exits, and is started again when new
+ * work is submitted, so a pool that is dropped without {@link #shutdown()} doesn't keep
+ * its threads forever. The deques belong to the pool rather than to the threads, so no
+ * queued task is lost when a worker exits. Tasks are expected to handle their own
+ * exceptions; anything thrown out of a submitted task is discarded and the worker keeps
+ * running.
+ */
+public class SolverThreadPool
+{
+	/*
+	 * State
+	 */
+
+	// Target number of pieces per worker thread for forkJoin; more than one allows for load balancing
+	private static final int FORK_JOIN_PIECES_PER_THREAD = 4;
+
+	public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+
+	private final long _idleTimeoutMillis;
+	private final LinkedBlockingDeque<Runnable>[] _deques;
+	private final Worker[] _workers;					// Null where the worker has exited; guarded by _idleMonitor
+	private final AtomicInteger _liveWorkers = new AtomicInteger();
+	private final AtomicInteger _pendingTasks = new AtomicInteger();	// Tasks sitting in a deque that have not been taken yet
+	private final AtomicInteger _idleWorkers = new AtomicInteger();
+	private final AtomicInteger _nextWorker = new AtomicInteger();
+	private final Object _idleMonitor = new Object();
+	private volatile boolean _shutdown = false;
+
+	/*
+	 * Construction
+	 */
+
+	public SolverThreadPool(int numThreads)
+	{
+		this(numThreads, DEFAULT_IDLE_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * @param idleTimeoutMillis how long a worker thread waits for work before it exits.
+	 */
+	@SuppressWarnings("unchecked")
+	public SolverThreadPool(int numThreads, long idleTimeoutMillis)
+	{
+		if (numThreads < 1)
+			throw new IllegalArgumentException("Number of threads must be at least one");
+		if (idleTimeoutMillis <= 0)
+			throw new IllegalArgumentException("Idle timeout must be positive");
+
+		_idleTimeoutMillis = idleTimeoutMillis;
+		_deques = new LinkedBlockingDeque[numThreads];
+		_workers = new Worker[numThreads];
+		for (int i = 0; i < numThreads; i++)
+			_deques[i] = new LinkedBlockingDeque<Runnable>();
+		synchronized (_idleMonitor)
+		{
+			startWorkers();
+		}
+	}
+
+	/*
+	 * SolverThreadPool methods
+	 */
+
+	public int getNumThreads()
+	{
+		return _workers.length;
+	}
+
+	// Number of worker threads currently running, which drops as idle workers time out
+	public int getNumLiveThreads()
+	{
+		return _liveWorkers.get();
+	}
+
+	public long getIdleTimeoutMillis()
+	{
+		return _idleTimeoutMillis;
+	}
+
+	public boolean isShutdown()
+	{
+		return _shutdown;
+	}
+
+	/**
+	 * Queues the task to be run by one of the worker threads.
+	 */
+	public void submit(Runnable task)
+	{
+		if (_shutdown)
+			throw new IllegalStateException("Thread pool has been shut down");
+
+		Thread current = Thread.currentThread();
+		if (current instanceof Worker && ((Worker)current).getPool() == this)
+		{
+			_deques[((Worker)current)._index].offerFirst(task);
+		}
+		else
+		{
+			int index = (_nextWorker.getAndIncrement() & Integer.MAX_VALUE) % _deques.length;
+			_deques[index].offerLast(task);
+		}
+
+		// The task must be visible in a deque before the pending count is incremented, and the
+		// pending count must be incremented before checking for idle workers. Idle workers
+		// register themselves before checking the pending count under the monitor, so
+		// a wakeup cannot be lost. A worker that times out does so under the monitor, and
+		// counts itself out of the live workers before it counts itself out of the idle ones,
+		// so either it is seen as idle here or its exit is.
+		_pendingTasks.incrementAndGet();
+		if (_idleWorkers.get() > 0 || _liveWorkers.get() < _workers.length)
+		{
+			synchronized (_idleMonitor)
+			{
+				startWorkers();
+				_idleMonitor.notify();
+			}
+		}
+	}
+
+	/**
+	 * Runs {@code task} over the index range [0, size) and waits for it to complete.
+	 * <p>
+	 * The range is split in halves fork/join style: the calling thread keeps the
+	 * lower half and submits the upper half, repeating until the piece is no larger
+	 * than the grain size, and submitted pieces are split further by the workers that
+	 * take them. Returning from this method acts as a barrier.
+	 * <p>
+	 * Must not be called from one of this pool's worker threads.
+	 * 
+	 * @throws RuntimeException the first exception thrown by any piece of the task.
+	 * @throws Error the first error thrown by any piece of the task.
+	 */
+	public void forkJoin(int size, IRangeTask task)
+	{
+		if (size <= 0)
+			return;
+
+		int grainSize = Math.max(1, size / (_workers.length * FORK_JOIN_PIECES_PER_THREAD));
+		RangeJob job = new RangeJob(task, grainSize);
+		job.runRange(0, size);
+		job.await();
+	}
+
+	/**
+	 * Stops all worker threads once they finish the task they are currently running.
+	 * Tasks still queued are discarded.
+	 */
+	public void shutdown()
+	{
+		_shutdown = true;
+		synchronized (_idleMonitor)
+		{
+			_idleMonitor.notifyAll();
+		}
+	}
+
+	/*
+	 * Private methods
+	 */
+
+	private class RangeJob
+	{
+		private final IRangeTask _task;
+		private final int _grainSize;
+		private final AtomicInteger _outstandingPieces = new AtomicInteger(1);
+		private volatile Throwable _exception;
+
+		RangeJob(IRangeTask task, int grainSize)
+		{
+			_task = task;
+			_grainSize = grainSize;
+		}
+
+		// Split off and submit upper halves until the remaining piece is small enough, then run it
+		void runRange(int start, int end)
+		{
+			try
+			{
+				while (end - start > _grainSize && _exception == null)
+				{
+					final int mid = (start + end) >>> 1;
+					final int upper = end;
+					_outstandingPieces.incrementAndGet();
+					submit(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							runRange(mid, upper);
+						}
+					});
+					end = mid;
+				}
+				
+				if (_exception == null)
+					_task.run(start, end);
+			}
+			catch (Throwable e)
+			{
+				// Errors are recorded too, so that the piece still counts as finished and forkJoin reports them
+				if (_exception == null)
+					_exception = e;
+			}
+			finally
+			{
+				if (_outstandingPieces.decrementAndGet() == 0)
+				{
+					synchronized (this)
+					{
+						notifyAll();
+					}
+				}
+			}
+		}
+
+		void await()
+		{
+			boolean interrupted = false;
+			synchronized (this)
+			{
+				while (_outstandingPieces.get() != 0)
+				{
+					try
+					{
+						wait();
+					}
+					catch (InterruptedException e)
+					{
+						interrupted = true;
+					}
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			
+			Throwable exception = _exception;
+			if (exception instanceof RuntimeException)
+				throw (RuntimeException)exception;
+			if (exception instanceof Error)
+				throw (Error)exception;
+			if (exception != null)
+				throw new RuntimeException(exception);
+		}
+	}
+
+	// Starts a worker in each slot whose worker has exited; must be called holding _idleMonitor
+	private void startWorkers()
+	{
+		if (_shutdown)
+			return;
+		for (int i = 0; i < _workers.length; i++)
+		{
+			if (_workers[i] == null)
+			{
+				Worker worker = new Worker(i);
+				_workers[i] = worker;
+				_liveWorkers.incrementAndGet();
+				worker.start();
+			}
+		}
+	}
+
+	private Runnable steal(int thiefIndex)
+	{
+		int numWorkers = _deques.length;
+		for (int i = 1; i < numWorkers; i++)
+		{
+			Runnable task = _deques[(thiefIndex + i) % numWorkers].pollLast();
+			if (task != null)
+				return task;
+		}
+		return null;
+	}
+
+	// Waits for a task to be submitted; returns false if the worker has timed out and must exit
+	private boolean awaitWork(int index)
+	{
+		_idleWorkers.incrementAndGet();
+		try
+		{
+			synchronized (_idleMonitor)
+			{
+				long deadline = System.currentTimeMillis() + _idleTimeoutMillis;
+				while (_pendingTasks.get() == 0 && !_shutdown)
+				{
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0)
+					{
+						_workers[index] = null;
+						_liveWorkers.decrementAndGet();
+						return false;
+					}
+					_idleMonitor.wait(remaining);
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// Workers are only stopped through shutdown or the timeout; just go back and look for work
+		}
+		finally
+		{
+			_idleWorkers.decrementAndGet();
+		}
+		return true;
+	}
+
+	private class Worker extends Thread
+	{
+		private final int _index;
+
+		Worker(int index)
+		{
+			super("Dimple solver worker " + index);
+			_index = index;
+			setDaemon(true);
+		}
+
+		SolverThreadPool getPool()
+		{
+			return SolverThreadPool.this;
+		}
+
+		@Override
+		public void run()
+		{
+			while (!_shutdown)
+			{
+				Runnable task = _deques[_index].pollFirst();
+				if (task == null)
+					task = steal(_index);
+
+				if (task != null)
+				{
+					_pendingTasks.decrementAndGet();
+					try
+					{
+						task.run();
+					}
+					catch (Throwable e)
+					{
+						// Tasks report their own failures; keep the worker alive
+					}
+				}
+				else if (!awaitWork(_index))
+				{
+					return;
+				}
+			}
+		}
+	}
+}
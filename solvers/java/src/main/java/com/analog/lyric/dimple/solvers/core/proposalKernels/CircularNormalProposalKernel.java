@@ -16,7 +16,7 @@
 
 package com.analog.lyric.dimple.solvers.core.proposalKernels;
 
-import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
+import org.apache.commons.math.random.RandomGenerator;
 
 public class CircularNormalProposalKernel implements IProposalKernel
 {
@@ -25,9 +25,9 @@ public class CircularNormalProposalKernel implements IProposalKernel
 	protected double _max = Math.PI;
 	protected double _range = _max-_min;
 
-	public Proposal next(Object currentValue)
+	public Proposal next(Object currentValue, RandomGenerator rand)
 	{
-		double value = (Double)currentValue + _standardDeviation * SolverRandomGenerator.rand.nextGaussian();
+		double value = (Double)currentValue + _standardDeviation * rand.nextGaussian();
 		value = ((((value - _min) % _range) + _range) % _range) + _min;		// Wrap from -pi to pi
 		return new Proposal(value);
 	}
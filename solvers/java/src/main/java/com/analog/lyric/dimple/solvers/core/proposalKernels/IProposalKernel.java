@@ -16,9 +16,11 @@
 
 package com.analog.lyric.dimple.solvers.core.proposalKernels;
 
+import org.apache.commons.math.random.RandomGenerator;
+
 public interface IProposalKernel
 {
-	public Proposal next(Object currentValue);
+	public Proposal next(Object currentValue, RandomGenerator rand);
 	public void setParameters(Object... parameters);
 	public Object[] getParameters();
 }
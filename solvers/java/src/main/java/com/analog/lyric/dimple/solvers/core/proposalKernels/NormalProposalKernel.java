@@ -16,15 +16,15 @@
 
 package com.analog.lyric.dimple.solvers.core.proposalKernels;
 
-import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
+import org.apache.commons.math.random.RandomGenerator;
 
 public class NormalProposalKernel implements IProposalKernel
 {
 	protected double _standardDeviation = 1;
 	
-	public Proposal next(Object currentValue)
+	public Proposal next(Object currentValue, RandomGenerator rand)
 	{
-		return new Proposal((Double)currentValue + _standardDeviation * SolverRandomGenerator.rand.nextGaussian());
+		return new Proposal((Double)currentValue + _standardDeviation * rand.nextGaussian());
 	}
 	
 	public void setParameters(Object... parameters)
@@ -17,6 +17,8 @@
 package com.analog.lyric.dimple.solvers.gaussian;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 
 import com.analog.lyric.dimple.model.Discrete;
@@ -24,6 +26,7 @@ import com.analog.lyric.dimple.model.DimpleException;
 import com.analog.lyric.dimple.model.INode;
 import com.analog.lyric.dimple.model.Port;
 import com.analog.lyric.dimple.solvers.core.hybridSampledBP.HybridSampledBPDistributionGenerator;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
 
 public class DiscreteDistributionGenerator extends HybridSampledBPDistributionGenerator
 {
@@ -46,11 +49,46 @@ public class DiscreteDistributionGenerator extends HybridSampledBPDistributionGe
 		{
 			_domain2index.put(domain[i],i);
 		}
+		
+		// For primitive samples, numeric domain values sorted for binary search, along with their indices
+		int length = domain.length;
+		Integer [] order = new Integer[length];
+		_sortedValues = new double[length];
+		_sortedIndices = new int[length];
+		for (int i = 0; i < length; i++)
+			order[i] = i;
+		boolean isNumeric = true;
+		for (Object value : domain)
+			isNumeric &= value instanceof Number;
+		if (isNumeric)
+		{
+			final Object [] values = domain;
+			Arrays.sort(order, new Comparator<Integer>()
+			{
+				@Override
+				public int compare(Integer a, Integer b)
+				{
+					return Double.compare(((Number)values[a]).doubleValue(), ((Number)values[b]).doubleValue());
+				}
+			});
+			for (int i = 0; i < length; i++)
+			{
+				_sortedIndices[i] = order[i];
+				_sortedValues[i] = ((Number)domain[order[i]]).doubleValue();
+			}
+		}
+		else
+		{
+			_sortedValues = null;
+			_sortedIndices = null;
+		}
 
 	}
 
 	private double [] _msg;
 	private HashMap<Object,Integer> _domain2index;
+	private double [] _sortedValues;
+	private int [] _sortedIndices;
 	
 
 	@Override
@@ -64,7 +102,7 @@ public class DiscreteDistributionGenerator extends HybridSampledBPDistributionGe
 		
 		for (int i = 0; i < input.size(); i++)
 		{
-			_msg[_domain2index.get(input)] = _msg[_domain2index.get(input)]+1;
+			_msg[_domain2index.get(input.get(i))] += 1;
 		}
 		
 		//normalize
@@ -72,11 +110,43 @@ public class DiscreteDistributionGenerator extends HybridSampledBPDistributionGe
 			_msg[i] /= input.size();
 		
 	}
+	
+	@Override
+	public void generateDistributionInPlace(double[] samples, int numSamples)
+	{
+		if (_sortedValues == null)
+		{
+			super.generateDistributionInPlace(samples, numSamples);
+			return;
+		}
+		
+		for (int i = 0; i < _msg.length; i++)
+			_msg[i] = 0;
+		
+		// Each sample counts toward the nearest domain value
+		int last = _sortedValues.length - 1;
+		for (int n = 0; n < numSamples; n++)
+		{
+			double sample = samples[n];
+			int position = Arrays.binarySearch(_sortedValues, sample);
+			if (position < 0)
+			{
+				position = -position - 1;		// Insertion point
+				if (position > last || (position > 0 && sample - _sortedValues[position - 1] <= _sortedValues[position] - sample))
+					position--;
+			}
+			_msg[_sortedIndices[position]] += 1;
+		}
+		
+		//normalize
+		for (int i = 0; i < _msg.length; i++)
+			_msg[i] /= numSamples;
+	}
 
 	@Override
 	public void initialize()  
 	{
-		SVariable var = (SVariable)_p.node.getSiblings().get(_p.index).getSolver();
+		ISolverVariable var = (ISolverVariable)_p.node.getSiblings().get(_p.index).getSolver();	// Discrete variables use the sum-product solver's variable
 		_msg = (double[])var.resetInputMessage(_msg);
 
 	}
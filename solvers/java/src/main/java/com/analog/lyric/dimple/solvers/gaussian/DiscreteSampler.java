@@ -23,6 +23,7 @@ import com.analog.lyric.dimple.model.DimpleException;
 import com.analog.lyric.dimple.model.INode;
 import com.analog.lyric.dimple.model.Port;
 import com.analog.lyric.dimple.solvers.core.hybridSampledBP.HybridSampledBPSampler;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
 
 public class DiscreteSampler extends HybridSampledBPSampler 
 {
@@ -40,11 +41,26 @@ public class DiscreteSampler extends HybridSampledBPSampler
 		Discrete d = (Discrete)n;
 		
 		_domain = d.getDiscreteDomain().getElements();
+		
+		// Numeric domains can also be sampled into primitive arrays
+		_domainValues = new double[_domain.length];
+		for (int i = 0; i < _domain.length; i++)
+		{
+			if (!(_domain[i] instanceof Number))
+			{
+				_domainValues = null;
+				break;
+			}
+			_domainValues[i] = ((Number)_domain[i]).doubleValue();
+		}
+		_cumulative = new double[_domain.length];
 
 	}
 
 	private double [] _msg;
 	private Object [] _domain;
+	private double [] _domainValues;
+	private double [] _cumulative;
 	
 
 
@@ -74,10 +90,41 @@ public class DiscreteSampler extends HybridSampledBPSampler
 		return _domain[_domain.length-1];
 	}
 	
+	@Override
+	public boolean hasPrimitiveSamples()
+	{
+		return _domainValues != null;
+	}
+
+	@Override
+	public void generateSamples(double[] samples, int numSamples)
+	{
+		// Normalized cumulative distribution, computed once for the whole block
+		int length = _msg.length;
+		double sum = 0;
+		for (int i = 0; i < length; i++)
+			sum += _msg[i];
+		double cum = 0;
+		for (int i = 0; i < length; i++)
+		{
+			cum += _msg[i]/sum;
+			_cumulative[i] = cum;
+		}
+		
+		for (int n = 0; n < numSamples; n++)
+		{
+			double d = _random.nextDouble();
+			int i = 0;
+			while (i < length - 1 && d >= _cumulative[i])
+				i++;
+			samples[n] = _domainValues[i];
+		}
+	}
+	
 	@Override
 	public void initialize()  
 	{
-		SVariable var = (SVariable)_p.node.getSiblings().get(_p.index).getSolver();
+		ISolverVariable var = (ISolverVariable)_p.node.getSiblings().get(_p.index).getSolver();	// Discrete variables use the sum-product solver's variable
 		_msg = (double[])var.resetInputMessage(_msg);
 		
 	}
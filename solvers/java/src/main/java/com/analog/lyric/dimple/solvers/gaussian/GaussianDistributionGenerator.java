@@ -69,6 +69,34 @@ public class GaussianDistributionGenerator extends HybridSampledBPDistributionGe
 		_msg[0] = mean;
 		_msg[1] = Math.sqrt(sigmasquared);
 	}
+	
+	@Override
+	public void generateDistributionInPlace(double[] samples, int numSamples)
+	{
+		double mean = 0;
+		for (int i = 0; i < numSamples; i++)
+		{
+			if (Math.abs(samples[i]) == Double.POSITIVE_INFINITY)
+			{
+				_msg[0] = 0;
+				_msg[1] = Double.POSITIVE_INFINITY;
+				return;
+			}
+			mean += samples[i];
+		}
+		mean = mean/numSamples;
+		
+		double sigmasquared = 0;
+		for (int i = 0; i < numSamples; i++)
+		{
+			double tmp = samples[i] - mean;
+			sigmasquared += tmp*tmp;
+		}
+		sigmasquared /= (numSamples-1);
+		
+		_msg[0] = mean;
+		_msg[1] = Math.sqrt(sigmasquared);
+	}
 
 	
 	@Override
@@ -38,6 +38,18 @@ public class GaussianSampler extends HybridSampledBPSampler
 		return _random.nextGaussian()*_msg[1]+_msg[0];
 	}
 
+	@Override
+	public boolean hasPrimitiveSamples() {return true;}
+
+	@Override
+	public void generateSamples(double[] samples, int numSamples)
+	{
+		double mean = _msg[0];
+		double sigma = _msg[1];
+		for (int i = 0; i < numSamples; i++)
+			samples[i] = _random.nextGaussian()*sigma+mean;
+	}
+
 	@Override
 	public void initialize() 
 	{
@@ -16,10 +16,14 @@
 
 package com.analog.lyric.dimple.solvers.gaussian;
 
+import java.util.Arrays;
+
 import com.analog.lyric.dimple.model.Factor;
 
 public class MultivariateGaussianAdd extends MultivariateFactorBase
 {
+	private double [] _vectorScratch;
+	private double [][] _matrixScratch;
 
 	public MultivariateGaussianAdd(Factor factor) 
 	{
@@ -35,12 +39,19 @@ public class MultivariateGaussianAdd extends MultivariateFactorBase
 		
 		//MultivariateMsg outMsg = (MultivariateMsg)_var.getPorts().get(outPortNum).getOutputMsg();
 		
-		int size = outMsg.getMeans().length;
+		int size = outMsg.getVectorLength();
 		
-		double [] vector = new double[size];
-		double [][] matrix = new double[size][];
+		// Sum the covariance forms in scratch arrays, which setMeanAndCovariance copies into the output message
+		if (_vectorScratch == null || _vectorScratch.length != size)
+		{
+			_vectorScratch = new double[size];
+			_matrixScratch = new double[size][size];
+		}
+		double [] vector = _vectorScratch;
+		double [][] matrix = _matrixScratch;
+		Arrays.fill(vector, 0);
 		for (int i = 0; i < matrix.length; i++)
-			matrix[i] = new double[size];
+			Arrays.fill(matrix[i], 0);
 		
 		for (int i = 0; i < _factor.getSiblings().size(); i++ )
 		{
@@ -49,7 +60,7 @@ public class MultivariateGaussianAdd extends MultivariateFactorBase
 				//_var.getInputObject();
 				MultivariateMsg inMsg = _inputMsgs[i];
 				
-				double [] inMsgVector = inMsg.getMeans();
+				double [] inMsgVector = inMsg.getMeansNoCopy();
 				
 				for (int j = 0; j < vector.length; j++)
 				{
@@ -59,7 +70,7 @@ public class MultivariateGaussianAdd extends MultivariateFactorBase
 						vector[j] += inMsgVector[j];
 				}
 				
-				double [][] inMsgMatrix = inMsg.getCovariance();
+				double [][] inMsgMatrix = inMsg.getCovarianceNoCopy();
 				
 				for (int j = 0; j < inMsgMatrix.length; j++)
 				{
@@ -16,16 +16,33 @@
 
 package com.analog.lyric.dimple.solvers.gaussian;
 
+import java.util.Arrays;
+
 import Jama.Matrix;
 
 import com.analog.lyric.math.LyricEigenvalueDecomposition;
 
+/*
+ * A multivariate Gaussian message, in covariance form (means and covariance) and/or
+ * information form (information vector and matrix).
+ * 
+ * Both forms are cached: the form that was set is kept, and the other form is computed
+ * the first time it is requested and kept until the message is set again.  Conversion
+ * uses a Cholesky factorization on primitive arrays, falling back to an eigenvalue
+ * decomposition (which clamps small eigenvalues) for matrices that are not symmetric
+ * positive definite or are too ill-conditioned for the factorization to be trusted.
+ * All arrays are reused from one setting to the next when the dimension doesn't change.
+ */
 public class MultivariateMsg implements Cloneable
 {
-
-	private double [] _vector;
-	private double [][] _matrix;	
-	private boolean _isInInformationForm;
+	private double [] _means;
+	private double [][] _covariance;
+	private double [] _informationVector;
+	private double [][] _informationMatrix;
+	private boolean _hasCovarianceForm;
+	private boolean _hasInformationForm;
+	private boolean _isInInformationForm;		// The form that was last set
+	private double [][] _factor;				// Workspace for the Cholesky factor
 	
 	//private EigenDecomposition eigendecomposition;
 	private double eps = 0.0000001; //minimum value for small eigenvalues or 1/(max value)
@@ -33,11 +50,12 @@ public class MultivariateMsg implements Cloneable
 	
 	public MultivariateMsg clone()
 	{
-		double [][] m = new double[_matrix.length][];
-		for (int i = 0; i < m.length; i++)
-			m[i] = _matrix[i].clone();
-		
-		return new MultivariateMsg(_vector.clone(),m);
+		MultivariateMsg msg = new MultivariateMsg();
+		if (_isInInformationForm)
+			msg.setInformation(_informationVector, _informationMatrix);
+		else
+			msg.setMeanAndCovariance(_means, _covariance);
+		return msg;
 	}
 	
 	public boolean isInInformationForm()
@@ -51,127 +69,257 @@ public class MultivariateMsg implements Cloneable
 	
 	public MultivariateMsg(double [] means, double [][] covariance)
 	{
-		setMeanAndCovariance(means.clone(), cloneMatrix(covariance));
+		setMeanAndCovariance(means, covariance);
 	}
 
 	public void setInformation(double [] informationVector, double [][] informationMatrix)
 	{
-		_vector = informationVector.clone();
-		_matrix = cloneMatrix(informationMatrix);
+		_informationVector = copyVector(informationVector, _informationVector);
+		_informationMatrix = copyMatrix(informationMatrix, _informationMatrix);
+		_hasInformationForm = true;
+		_hasCovarianceForm = false;
 		_isInInformationForm = true;
 	}
 
 	public void setMeanAndCovariance(double [] means, double [][] covariance)
 	{
-		_vector = means.clone();
-		_matrix = cloneMatrix(covariance);
+		_means = copyVector(means, _means);
+		_covariance = copyMatrix(covariance, _covariance);
+		_hasCovarianceForm = true;
+		_hasInformationForm = false;
 		_isInInformationForm = false;
 	}
 
 	public double [] getInformationVector() 
 	{
-		if (!_isInInformationForm)
-			ConvertType();
-		
-		return _vector.clone();
+		return getInformationVectorNoCopy().clone();
 	}
 
 	public double [][] getInformationMatrix() 
 	{
-		if (!_isInInformationForm)
-			ConvertType();
-		
-		return cloneMatrix(_matrix);
-
+		return copyMatrix(getInformationMatrixNoCopy(), null);
 	}
 	
-	private double [][] cloneMatrix(double [][] matrix)
-	{
-		double [][] retval = new double[matrix.length][];
-		for (int i = 0; i < retval.length; i++)
-			retval[i] = matrix[i].clone();
-		
-		return retval;
-	}
-
-
 	public double [] getMeans() 
 	{
-		if (_isInInformationForm)
-			ConvertType();
-		return _vector.clone();
+		return getMeansNoCopy().clone();
 	}
 
 	public double [][] getCovariance() 
 	{
-		if (_isInInformationForm)
-			ConvertType();
-
-		return cloneMatrix(_matrix);
+		return copyMatrix(getCovarianceNoCopy(), null);
+	}
+	
+	// The NoCopy variants return the cached arrays themselves, which must not be modified
+	public double [] getInformationVectorNoCopy()
+	{
+		if (!_hasInformationForm)
+			convertToInformationForm();
+		return _informationVector;
+	}
+	
+	public double [][] getInformationMatrixNoCopy()
+	{
+		if (!_hasInformationForm)
+			convertToInformationForm();
+		return _informationMatrix;
+	}
+	
+	public double [] getMeansNoCopy()
+	{
+		if (!_hasCovarianceForm)
+			convertToCovarianceForm();
+		return _means;
+	}
+	
+	public double [][] getCovarianceNoCopy()
+	{
+		if (!_hasCovarianceForm)
+			convertToCovarianceForm();
+		return _covariance;
 	}
 	
 	public int getVectorLength()
 	{
-		return _vector.length;
+		return _isInInformationForm ? _informationVector.length : _means.length;
 	}
 
-	private boolean isInfiniteIdentity(Matrix m)
+	// Copies a vector into the destination array if it has the right length, otherwise into a new array
+	private static double [] copyVector(double [] vector, double [] destination)
+	{
+		if (destination == null || destination.length != vector.length)
+			return vector.clone();
+		System.arraycopy(vector, 0, destination, 0, vector.length);
+		return destination;
+	}
+	
+	private static double [][] copyMatrix(double [][] matrix, double [][] destination)
+	{
+		if (destination == null || destination.length != matrix.length)
+			destination = new double[matrix.length][];
+		for (int i = 0; i < matrix.length; i++)
+			destination[i] = copyVector(matrix[i], destination[i]);
+		return destination;
+	}
+	
+	private void convertToInformationForm()
 	{
-		for (int i = 0; i < m.getColumnDimension(); i++)
+		int n = _means.length;
+		if (_informationVector == null || _informationVector.length != n)
 		{
-			if (!Double.isInfinite(m.get(i,i)))
-				return false;
+			_informationVector = new double[n];
+			_informationMatrix = new double[n][n];
 		}
-		return true;
+		invert(_covariance, _means, _informationMatrix, _informationVector);
+		_hasInformationForm = true;
 	}
 	
-	private void ConvertType() 
+	private void convertToCovarianceForm()
 	{
-		int i;
+		int n = _informationVector.length;
+		if (_means == null || _means.length != n)
+		{
+			_means = new double[n];
+			_covariance = new double[n][n];
+		}
+		invert(_informationMatrix, _informationVector, _covariance, _means);
+		_hasCovarianceForm = true;
+	}
+	
+	// Sets inverse to the inverse of matrix, and outVector to the inverse times vector
+	private void invert(double [][] matrix, double [] vector, double [][] inverse, double [] outVector)
+	{
+		int n = vector.length;
 		
-		Jama.Matrix mat = new Jama.Matrix(_matrix);
-				
-		Matrix inv;
-		Matrix vec;
-				
-		if (isInfiniteIdentity(mat))
+		if (isInfiniteIdentity(matrix))
 		{
 			//Handle the special case where variances are infinite
-			inv = new Matrix(mat.getRowDimension(),mat.getColumnDimension());
-			vec = new Matrix(mat.getRowDimension(),1);
+			for (int i = 0; i < n; i++)
+			{
+				Arrays.fill(inverse[i], 0);
+				outVector[i] = 0;
+			}
+			return;
 		}
-		else
+		
+		if (!choleskyInvert(matrix, inverse))
+			eigenInvert(matrix, inverse);
+		
+		for (int i = 0; i < n; i++)
 		{
-			LyricEigenvalueDecomposition eig = new LyricEigenvalueDecomposition(mat);
-			
-			Matrix D = eig.getD();
-			Matrix V = eig.getV();
-			
-			int N = D.getColumnDimension();
-			
-			for (i=0; i<N; i++) {
-				//Compute inverse of eigenvalues except for those less than eps we set to large constant.
+			double [] row = inverse[i];
+			double sum = 0;
+			for (int j = 0; j < n; j++)
+				sum += row[j] * vector[j];
+			outVector[i] = sum;
+		}
+	}
 
-				double d = D.get(i,i);
-				d = (d>eps) ? (1/d) : 1/eps;
-				D.set(i,i,d);
+	private static boolean isInfiniteIdentity(double [][] m)
+	{
+		for (int i = 0; i < m.length; i++)
+		{
+			if (!Double.isInfinite(m[i][i]))
+				return false;
+		}
+		return true;
+	}
 	
-				assert(d > 0); // Eigenvalues should always be positive for positive definite matrices 
+	// Inverts a symmetric positive definite matrix using a Cholesky factorization, writing the
+	// result to inverse.  Returns false, leaving inverse in an unspecified state, if the matrix is
+	// not symmetric, the factorization fails, or the smallest eigenvalue might be below eps (in
+	// which case the eigenvalue decomposition must be used to clamp it).
+	private boolean choleskyInvert(double [][] matrix, double [][] inverse)
+	{
+		int n = matrix.length;
+		if (_factor == null || _factor.length != n)
+			_factor = new double[n][n];
+		double [][] L = _factor;
+		
+		// Factor matrix = L * L' in the lower triangle
+		for (int j = 0; j < n; j++)
+		{
+			double [] Lj = L[j];
+			for (int k = 0; k < j; k++)
+			{
+				if (matrix[j][k] != matrix[k][j])
+					return false;
+				
+				double [] Lk = L[k];
+				double sum = matrix[j][k];
+				for (int m = 0; m < k; m++)
+					sum -= Lj[m] * Lk[m];
+				Lj[k] = sum / Lk[k];
 			}
 			
-			inv = V.times(D.times(V.transpose()));
-	
-	
-			vec = new Matrix(new double [][] {_vector}).transpose();
-			
-			vec = inv.times(vec);
+			double pivot = matrix[j][j];
+			for (int m = 0; m < j; m++)
+				pivot -= Lj[m] * Lj[m];
+			if (!(pivot > 0) || Double.isInfinite(pivot))
+				return false;
+			Lj[j] = Math.sqrt(pivot);
 		}
-
-		_matrix = inv.getArray();
-		_vector = vec.transpose().getArray()[0];
 		
-		_isInInformationForm = !_isInInformationForm;
+		// Invert L in place, so the lower triangle holds inv(L)
+		for (int j = 0; j < n; j++)
+		{
+			L[j][j] = 1 / L[j][j];
+			for (int i = j + 1; i < n; i++)
+			{
+				double [] Li = L[i];
+				double sum = 0;
+				for (int m = j; m < i; m++)
+					sum -= Li[m] * L[m][j];
+				Li[j] = sum / Li[i];
+			}
+		}
+		
+		// inverse = inv(L)' * inv(L)
+		double trace = 0;
+		for (int i = 0; i < n; i++)
+		{
+			for (int j = 0; j <= i; j++)
+			{
+				double sum = 0;
+				for (int m = i; m < n; m++)
+					sum += L[m][i] * L[m][j];
+				inverse[i][j] = sum;
+				inverse[j][i] = sum;
+			}
+			trace += inverse[i][i];
+		}
+		
+		// The largest eigenvalue of the inverse is at most its trace, so this bounds the
+		// smallest eigenvalue of the matrix from below
+		return trace * eps < 1;
+	}
+	
+	// Inverts the matrix using an eigenvalue decomposition, treating eigenvalues below eps as eps
+	private void eigenInvert(double [][] matrix, double [][] inverse)
+	{
+		int i;
+		
+		Jama.Matrix mat = new Jama.Matrix(matrix);
+		
+		LyricEigenvalueDecomposition eig = new LyricEigenvalueDecomposition(mat);
+		
+		Matrix D = eig.getD();
+		Matrix V = eig.getV();
+		
+		int N = D.getColumnDimension();
+		
+		for (i=0; i<N; i++) {
+			//Compute inverse of eigenvalues except for those less than eps we set to large constant.
+
+			double d = D.get(i,i);
+			d = (d>eps) ? (1/d) : 1/eps;
+			D.set(i,i,d);
 
+			assert(d > 0); // Eigenvalues should always be positive for positive definite matrices 
+		}
+		
+		double [][] inv = V.times(D.times(V.transpose())).getArray();
+		copyMatrix(inv, inverse);
 	}
 
 
@@ -31,6 +31,8 @@ public class MultivariateVariable extends SVariableBase
 	private MultivariateMsg _input;
 	private MultivariateMsg [] _outputMsgs = new MultivariateMsg[0];
 	private MultivariateMsg [] _inputMsgs = new MultivariateMsg[0];
+	private double [] _vectorScratch;
+	private double [][] _matrixScratch;
 	
 	public MultivariateVariable(VariableBase var) 
 	{
@@ -74,8 +76,18 @@ public class MultivariateVariable extends SVariableBase
 
 	private void doUpdate(MultivariateMsg outMsg,int outPortNum) 
 	{
-		double [] vector = _input.getInformationVector();		
-		double [][] matrix = _input.getInformationMatrix();		
+		// Sum the information forms in scratch arrays, which setInformation copies into the output message
+		if (_vectorScratch == null)
+		{
+			_vectorScratch = new double[_numVars];
+			_matrixScratch = new double[_numVars][_numVars];
+		}
+		double [] vector = _vectorScratch;
+		double [][] matrix = _matrixScratch;
+		System.arraycopy(_input.getInformationVectorNoCopy(), 0, vector, 0, _numVars);
+		double [][] inputMatrix = _input.getInformationMatrixNoCopy();
+		for (int j = 0; j < _numVars; j++)
+			System.arraycopy(inputMatrix[j], 0, matrix[j], 0, _numVars);
 		
 		//MultivariateMsg outMsg = (MultivariateMsg)_var.getPorts().get(outPortNum).getOutputMsg();
 		
@@ -86,14 +98,14 @@ public class MultivariateVariable extends SVariableBase
 				//_var.getInputObject();
 				MultivariateMsg inMsg = _inputMsgs[i];
 				
-				double [] inMsgVector = inMsg.getInformationVector();
+				double [] inMsgVector = inMsg.getInformationVectorNoCopy();
 				
 				for (int j = 0; j < vector.length; j++)
 				{
 					vector[j] += inMsgVector[j];
 				}
 				
-				double [][] inMsgMatrix = inMsg.getInformationMatrix();
+				double [][] inMsgMatrix = inMsg.getInformationMatrixNoCopy();
 				
 				for (int j = 0; j < inMsgMatrix.length; j++)
 				{
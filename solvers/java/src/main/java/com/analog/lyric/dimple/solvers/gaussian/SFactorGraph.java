@@ -45,8 +45,10 @@ public class SFactorGraph extends SFactorGraphBase
 		
 	}
 
+	@Override
 	public void setSeed(long seed)
 	{
+		super.setSeed(seed);
 		_random.setSeed(seed);
 	}
 	
@@ -31,4 +31,10 @@ public interface ISolverVariableGibbs
 	public void randomRestart();
 	public void postAddFactor(Factor f);
 	public void updateDirectedCache();
+	
+	// For running multiple chains: copy solver settings from the corresponding variable of the
+	// original graph, replacing those copied for an earlier solve, and add in the samples collected
+	// by the corresponding variable of another chain
+	public void copyChainSettings(ISolverVariableGibbs variable);
+	public void addChainSamples(ISolverVariableGibbs chainVariable, boolean useChainBestSample);
 }
@@ -0,0 +1,75 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs;
+
+/*
+ * Gelman-Rubin potential scale reduction factor (R-hat) for a scalar quantity
+ * sampled by several independent chains.  Values near 1 indicate that the chains
+ * have mixed; values well above 1 indicate that more samples are needed.
+ */
+public class PotentialScaleReduction
+{
+	// Computes R-hat from the mean and (unbiased) variance of the quantity in each chain,
+	// where each chain has the given number of samples.  Returns NaN if there are fewer
+	// than two chains or fewer than two samples per chain.
+	public static double compute(double[] chainMeans, double[] chainVariances, double samplesPerChain)
+	{
+		int numChains = chainMeans.length;
+		double n = samplesPerChain;
+		if (numChains < 2 || n < 2)
+			return Double.NaN;
+		
+		double grandMean = 0;
+		double withinChainVariance = 0;
+		for (int c = 0; c < numChains; c++)
+		{
+			grandMean += chainMeans[c];
+			withinChainVariance += chainVariances[c];
+		}
+		grandMean /= numChains;
+		withinChainVariance /= numChains;
+		
+		double sumOfSquares = 0;
+		for (int c = 0; c < numChains; c++)
+		{
+			double diff = chainMeans[c] - grandMean;
+			sumOfSquares += diff * diff;
+		}
+		double betweenChainVariance = n * sumOfSquares / (numChains - 1);
+		
+		if (withinChainVariance == 0)
+			return (betweenChainVariance == 0) ? 1 : Double.POSITIVE_INFINITY;	// Every chain stuck, at the same or different values
+		
+		double pooledVariance = (n - 1) / n * withinChainVariance + betweenChainVariance / n;
+		return Math.sqrt(pooledVariance / withinChainVariance);
+	}
+	
+	// Computes R-hat from the sum and sum of squares of the quantity in each chain
+	public static double computeFromSums(double[] chainSums, double[] chainSumsOfSquares, double samplesPerChain)
+	{
+		int numChains = chainSums.length;
+		double n = samplesPerChain;
+		double[] means = new double[numChains];
+		double[] variances = new double[numChains];
+		for (int c = 0; c < numChains; c++)
+		{
+			means[c] = chainSums[c] / n;
+			variances[c] = Math.max(0, (chainSumsOfSquares[c] - chainSums[c] * means[c]) / (n - 1));
+		}
+		return compute(means, variances, n);
+	}
+}
@@ -25,11 +25,15 @@ import com.analog.lyric.dimple.model.DimpleException;
 import com.analog.lyric.dimple.model.Discrete;
 import com.analog.lyric.dimple.model.DiscreteDomain;
 import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.model.GraphAdjacency;
 import com.analog.lyric.dimple.model.INode;
 import com.analog.lyric.dimple.model.VariableBase;
 import com.analog.lyric.dimple.solvers.core.SDiscreteVariableBase;
 import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
+import com.analog.lyric.dimple.solvers.gibbs.sampleStorage.IntSampleBuffer;
+import com.analog.lyric.dimple.solvers.gibbs.sampleStorage.SampleStorage;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
 import com.analog.lyric.math.Utilities;
 
@@ -45,7 +49,7 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 	protected double[] _input;
 	protected double[] _conditional;
 	protected double[] _samplerScratch;
-	protected ArrayList<Integer> _sampleIndexArray;
+	protected IntSampleBuffer _sampleIndexArray;
 	protected int _bestSampleIndex;
 	protected int _lengthRoundedUp;
 	protected double _beta = 1;
@@ -89,10 +93,13 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 			// Update all the neighboring factors
 			// If there are no deterministic dependents, then it should be faster to have
 			// each neighboring factor update its entire message to this variable than the alternative, below
-			ArrayList<INode> siblings = _var.getSiblings();
-			for (int port = 0; port < _numPorts; port++)
+			GraphAdjacency adjacency = getAdjacency();
+			ISolverNode[] neighborSolvers = adjacency.getNeighborSolvers();
+			int[] neighborPorts = adjacency.getNeighborPorts();
+			int edge = getAdjacencyOffset();
+			for (int port = 0; port < _numPorts; port++, edge++)
 			{
-				((ISolverFactorGibbs)siblings.get(port).getSolver()).updateEdgeMessage(_var.getSiblingPortIndex(port));
+				((ISolverFactorGibbs)neighborSolvers[edge]).updateEdgeMessage(neighborPorts[edge]);
 			}
 			
 			// Sum up the messages to get the conditional distribution
@@ -115,14 +122,17 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 		else	// There are deterministic dependents, so must account for these
 		{
 			// TODO: SPEED UP
-			ArrayList<INode> siblings = _var.getSiblings();
+			GraphAdjacency adjacency = getAdjacency();
+			ISolverNode[] neighborSolvers = adjacency.getNeighborSolvers();
+			int[] neighborPorts = adjacency.getNeighborPorts();
+			int offset = getAdjacencyOffset();
 			for (int index = 0; index < messageLength; index++)
 			{
 				setCurrentSampleIndex(index);
 				double out = _input[index];						// Sum of the input prior...
-				for (int port = 0; port < _numPorts; port++)	// Plus each input message value
+				for (int port = 0, edge = offset; port < _numPorts; port++, edge++)	// Plus each input message value
 				{
-					double tmp = ((ISolverFactorGibbs)siblings.get(port).getSolver()).getConditionalPotential(_var.getSiblingPortIndex(port));
+					double tmp = ((ISolverFactorGibbs)neighborSolvers[edge]).getConditionalPotential(neighborPorts[edge]);
 					out += tmp;
 				}
 				out *= _beta;									// Apply tempering
@@ -134,7 +144,7 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 		}
 		
 		// Sample from the conditional distribution
-		int index = generateSample(_conditional, minEnergy);
+		int index = generateSample(_conditional, minEnergy, SolverRandomGenerator.getCurrent());
 		setCurrentSampleIndex(index);
 		
 	}
@@ -160,8 +170,9 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 				minEnergy = _input[i];
 		
 	    _lengthRoundedUp = Utilities.nextPow2(_input.length);
-	    _samplerScratch = new double[_lengthRoundedUp];
-		setCurrentSampleIndex(generateSample(_input, minEnergy));
+	    if (_samplerScratch == null || _samplerScratch.length != _lengthRoundedUp)
+	    	_samplerScratch = new double[_lengthRoundedUp];
+		setCurrentSampleIndex(generateSample(_input, minEnergy, SolverRandomGenerator.getCurrent()));
 	}
 
 	@Override
@@ -258,7 +269,12 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
     @Override
 	public final void saveAllSamples()
     {
-    	_sampleIndexArray = new ArrayList<Integer>();
+    	// Indices are bit-packed by domain size, within the graph's memory budget for samples
+    	if (_sampleIndexArray != null)
+    		_sampleIndexArray.clear();
+    	ISolverFactorGraph rootGraph = getRootGraph();
+    	SampleStorage storage = (rootGraph instanceof SFactorGraph) ? ((SFactorGraph)rootGraph).getSampleStorage() : null;
+    	_sampleIndexArray = new IntSampleBuffer(_varDiscrete.getDiscreteDomain().getElements().length, storage);
     }
     
     @Override
@@ -280,10 +296,13 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 		double result = getPotential();		// Start with the local potential
 		
 		// Propagate the request through the other neighboring factors and sum up the results
-		ArrayList<INode> siblings = _var.getSiblings();
+		GraphAdjacency adjacency = getAdjacency();
+		ISolverNode[] neighborSolvers = adjacency.getNeighborSolvers();
+		int[] neighborPorts = adjacency.getNeighborPorts();
+		int offset = getAdjacencyOffset();
 		for (int port = 0; port < _numPorts; port++)	// Plus each input message value
 			if (port != portIndex)
-				result += ((ISolverFactorGibbs)siblings.get(port).getSolver()).getConditionalPotential(_var.getSiblingPortIndex(port));
+				result += ((ISolverFactorGibbs)neighborSolvers[offset + port]).getConditionalPotential(neighborPorts[offset + port]);
 
 		    return result;
 	}
@@ -332,7 +351,7 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 			for (int port = 0; port < _numPorts; port++)	// Plus each input message value
 			{
 				Factor f = (Factor)siblings.get(port);
-				if (f.getFactorFunction().isDeterministicDirected() && !f.isDirectedTo(_var))
+				if (f.getFactorFunction().isDeterministicDirected() && !f.isDirectedTo(_var.getSiblingPortIndex(port)))
 					((ISolverFactorGibbs)f.getSolver()).updateNeighborVariableValue(_var.getSiblingPortIndex(port));
 			}
 		}
@@ -371,11 +390,7 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
     {
 		if (_sampleIndexArray == null)
 			throw new DimpleException("No samples saved. Must call saveAllSamples on variable or entire graph prior to solving");
-    	int length = _sampleIndexArray.size();
-    	int[] retval = new int[length];
-    	for (int i = 0; i < length; i++)
-    		retval[i] = _sampleIndexArray.get(i);
-    	return retval;
+    	return _sampleIndexArray.toArray();
     }
 
 	public final void setAndHoldSampleValue(Object value)
@@ -400,6 +415,35 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
 		_holdSampleValue = false;
 	}
 	
+	@Override
+	public void copyChainSettings(ISolverVariableGibbs variable)
+	{
+		SDiscreteVariable other = (SDiscreteVariable)variable;
+		if (other._sampleIndexArray != null)
+			saveAllSamples();
+		else
+			_sampleIndexArray = null;
+		if (other._holdSampleValue)
+			setAndHoldSampleIndex(other._sampleIndex);
+		else
+			releaseSampleValue();
+	}
+	
+	@Override
+	public void addChainSamples(ISolverVariableGibbs chainVariable, boolean useChainBestSample)
+	{
+		SDiscreteVariable chain = (SDiscreteVariable)chainVariable;
+		for (int i = 0; i < _beliefHistogram.length; i++)
+			_beliefHistogram[i] += chain._beliefHistogram[i];
+		if (_sampleIndexArray != null && chain._sampleIndexArray != null)
+		{
+			_sampleIndexArray.addAll(chain._sampleIndexArray);
+			chain._sampleIndexArray.clear();		// The chain starts over on its next solve, so release its storage
+		}
+		if (useChainBestSample)
+			_bestSampleIndex = chain._bestSampleIndex;
+	}
+	
     
     @Override
 	public final void setBeta(double beta)	// beta = 1/temperature
@@ -408,9 +452,8 @@ public class SDiscreteVariable extends SDiscreteVariableBase implements ISolverV
     }
 	
     
-	private final int generateSample(double[] energy, double minEnergy)
+	private final int generateSample(double[] energy, double minEnergy, RandomGenerator rand)
 	{
-		RandomGenerator rand = SolverRandomGenerator.rand;
 		int length = energy.length;
 		int sampleIndex;
 
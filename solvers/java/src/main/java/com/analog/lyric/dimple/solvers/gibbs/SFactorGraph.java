@@ -17,8 +17,12 @@
 package com.analog.lyric.dimple.solvers.gibbs;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 
+import org.apache.commons.math.random.RandomGenerator;
+
+import com.analog.lyric.dimple.FactorFunctions.core.FactorTable;
 import com.analog.lyric.dimple.model.DimpleException;
 import com.analog.lyric.dimple.model.Factor;
 import com.analog.lyric.dimple.model.FactorGraph;
@@ -26,10 +30,16 @@ import com.analog.lyric.dimple.model.VariableBase;
 import com.analog.lyric.dimple.model.repeated.BlastFromThePastFactor;
 import com.analog.lyric.dimple.model.repeated.FactorGraphStream;
 import com.analog.lyric.dimple.schedulers.GibbsDefaultScheduler;
+import com.analog.lyric.dimple.schedulers.IScheduler;
 import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
 import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
 import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
+import com.analog.lyric.dimple.solvers.core.multithreading.IRangeTask;
+import com.analog.lyric.dimple.solvers.core.multithreading.SolverThreadPool;
+import com.analog.lyric.dimple.solvers.gibbs.sampleStorage.DoubleSampleBuffer;
+import com.analog.lyric.dimple.solvers.gibbs.sampleStorage.SampleStatistics;
+import com.analog.lyric.dimple.solvers.gibbs.sampleStorage.SampleStorage;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverBlastFromThePastFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
@@ -52,7 +62,17 @@ public class SFactorGraph extends SFactorGraphBase //implements ISolverFactorGra
 	protected double _minPotential = Double.MAX_VALUE;
 	protected boolean _firstSample = true;
 	protected boolean _saveAllScores = false;
-	protected ArrayList<Double> _scoreArray;
+	protected DoubleSampleBuffer _scoreArray;
+	protected SampleStorage _sampleStorage = new SampleStorage();
+	protected int _numChains = 1;
+	protected SFactorGraph[] _chainCopies = new SFactorGraph[0];	// Run chains 1 and up; kept from one solve to the next
+	protected long _chainCopiesGraphVersionId = -1;
+	protected IScheduler _chainCopiesScheduler;
+	protected double _scoreSum;
+	protected double _scoreSumOfSquares;
+	protected long _scoreCount;
+	protected HashMap<VariableBase, Double> _rHat;
+	protected double _scoreRHat = Double.NaN;
 	protected final double LOG2 = Math.log(2);
 	
 	
@@ -119,48 +139,79 @@ public class SFactorGraph extends SFactorGraphBase //implements ISolverFactorGra
 			return new SDiscreteVariable(var);
 	}
 
+	// The public entry points bind this graph's random number stream to the calling thread, so that
+	// the variables, samplers and schedule draw from it rather than from the shared stream
 	@Override
 	public void initialize()
 	{
-		super.initialize();
+		RandomGenerator previousRandom = bindRandom();
+		try
+		{
+			super.initialize();
 		
-		_schedule = _factorGraph.getSchedule();
-		_scheduleIterator = _schedule.iterator();
-		_minPotential = Double.POSITIVE_INFINITY;
-		_firstSample = true;
+			_schedule = _factorGraph.getSchedule();
+			_scheduleIterator = _schedule.iterator();
+			_minPotential = Double.POSITIVE_INFINITY;
+			_firstSample = true;
 		
-		if (_scansPerSample >= 0)
-			setScansPerSample(_scansPerSample);
+			if (_scansPerSample >= 0)
+				setScansPerSample(_scansPerSample);
 		
-		if (_burnInScans >= 0) _burnInUpdates = _burnInScans * _factorGraph.getVariables().size();
-		if (_temper) setTemperature(_initialTemperature);
+			if (_burnInScans >= 0) _burnInUpdates = _burnInScans * _factorGraph.getVariables().size();
+			if (_temper) setTemperature(_initialTemperature);
 		
-		if (_scoreArray != null)
-			_scoreArray.clear();
+			if (_scoreArray != null)
+				_scoreArray.clear();
 		
-		randomRestart();
+			randomRestart();
+		}
+		finally
+		{
+			unbindRandom(previousRandom);
+		}
 	}
 	
 	@Override
 	public void solveOneStep()
 	{
-		_minPotential = Double.POSITIVE_INFINITY;
-		_firstSample = true;
-		
-		for (int restartCount = 0; restartCount < _numRandomRestarts + 1; restartCount++)
+		_rHat = null;
+		if (_numChains > 1)
+			solveChains();
+		else
+			solveOneChain();
+	}
+	
+	// Runs the restarts and samples of a single chain on this graph
+	protected void solveOneChain()
+	{
+		RandomGenerator previousRandom = bindRandom();
+		try
 		{
-			boolean randomRestart = true;
-			
-			if (restartCount == 0)
-				randomRestart = false;
-			
-			burnIn(randomRestart);
+			_minPotential = Double.POSITIVE_INFINITY;
+			_firstSample = true;
+			_scoreSum = 0;
+			_scoreSumOfSquares = 0;
+			_scoreCount = 0;
 			
-			for (int iter = 0; iter < _numSamples; iter++)
+			for (int restartCount = 0; restartCount < _numRandomRestarts + 1; restartCount++)
 			{
-				oneSample();
+				boolean randomRestart = true;
+				
+				if (restartCount == 0)
+					randomRestart = false;
+				
+				burnIn(randomRestart);
+				
+				for (int iter = 0; iter < _numSamples; iter++)
+				{
+					oneSample();
+				}
 			}
 		}
+		finally
+		{
+			unbindRandom(previousRandom);
+		}
 	}
 	
 	
@@ -183,8 +234,23 @@ public class SFactorGraph extends SFactorGraphBase //implements ISolverFactorGra
 	public void sample() {sample(1);}
 	public void sample(int numSamples)
 	{
-		for (int sample = 0; sample < numSamples; sample++)
-			oneSample();
+		RandomGenerator previousRandom = bindRandom();
+		try
+		{
+			for (int sample = 0; sample < numSamples; sample++)
+				oneSample();
+		}
+		finally
+		{
+			unbindRandom(previousRandom);
+		}
+	}
+
+	// The samples never settle, and iterate() doesn't use the convergence monitor, so a tolerance is rejected
+	@Override
+	protected boolean supportsConvergenceMonitor()
+	{
+		return false;
 	}
 
 	// Note that the iterate() method for the Gibbs solver means do the
@@ -195,12 +261,20 @@ public class SFactorGraph extends SFactorGraphBase //implements ISolverFactorGra
 	@Override
 	public void iterate(int numIters)
 	{
-		for (int iterNum = 0; iterNum < numIters; iterNum++)
+		RandomGenerator previousRandom = bindRandom();
+		try
 		{
-			if (!_scheduleIterator.hasNext())
-				_scheduleIterator = _schedule.iterator();	// Wrap-around the schedule if reached the end
+			for (int iterNum = 0; iterNum < numIters; iterNum++)
+			{
+				if (!_scheduleIterator.hasNext())
+					_scheduleIterator = _schedule.iterator();	// Wrap-around the schedule if reached the end
 
-			_scheduleIterator.next().update();
+				_scheduleIterator.next().update();
+			}
+		}
+		finally
+		{
+			unbindRandom(previousRandom);
 		}
 		
 		// Allow interruption (if the solver is run as a thread); currently interruption is allowed only between iterations, not within a single iteration
@@ -233,6 +307,11 @@ public class SFactorGraph extends SFactorGraphBase //implements ISolverFactorGra
 		if (_saveAllScores)
 			_scoreArray.add(totalPotential);
 		
+		// Score statistics for comparing chains
+		_scoreSum += totalPotential;
+		_scoreSumOfSquares += totalPotential * totalPotential;
+		_scoreCount++;
+		
 		// If tempering, reduce the temperature
 		if (_temper)
 		{
@@ -247,21 +326,37 @@ public class SFactorGraph extends SFactorGraphBase //implements ISolverFactorGra
 	{
 		//In the case of rolled up graphs, we make sure we randomly restart
 		//the variables that are added to the end of the chain.
-		for (FactorGraphStream fgs : getModel().getFactorGraphStreams())
+		RandomGenerator previousRandom = bindRandom();
+		try
 		{
-			
-			FactorGraph ng = fgs.getNestedGraphs().get(fgs.getNestedGraphs().size()-1);
-			for (VariableBase vb : ng.getBoundaryVariables())
+			for (FactorGraphStream fgs : getModel().getFactorGraphStreams())
 			{
-				((ISolverVariableGibbs)vb.getSolver()).randomRestart();
+				
+				FactorGraph ng = fgs.getNestedGraphs().get(fgs.getNestedGraphs().size()-1);
+				for (VariableBase vb : ng.getBoundaryVariables())
+				{
+					((ISolverVariableGibbs)vb.getSolver()).randomRestart();
+				}
 			}
 		}
+		finally
+		{
+			unbindRandom(previousRandom);
+		}
 	}
 	
 	public void randomRestart()
 	{
-		for (VariableBase v : _factorGraph.getVariables())
-			((ISolverVariableGibbs)v.getSolver()).randomRestart();
+		RandomGenerator previousRandom = bindRandom();
+		try
+		{
+			for (VariableBase v : _factorGraph.getVariables())
+				((ISolverVariableGibbs)v.getSolver()).randomRestart();
+		}
+		finally
+		{
+			unbindRandom(previousRandom);
+		}
 		
 		if (_temper) setTemperature(_initialTemperature);	// Reset the temperature, if tempering
 	}
@@ -286,24 +381,47 @@ public class SFactorGraph extends SFactorGraphBase //implements ISolverFactorGra
 			((ISolverVariableGibbs)(v.getSolver())).saveAllSamples();
 	}
 	
+	// Before running, calling this method instructs the solver to keep summary statistics of the samples of all real variables in the graph
+	// (discrete variables already keep a histogram of their samples as their belief)
+	public void saveSampleStatistics()
+	{
+		saveSampleStatistics(SampleStatistics.DEFAULT_QUANTILES, SampleStatistics.DEFAULT_MAX_LAG);
+	}
+	public void saveSampleStatistics(double[] quantiles, int maxLag)
+	{
+		for (VariableBase v : _factorGraph.getVariables())
+			if (v.getSolver() instanceof SRealVariable)
+				((SRealVariable)v.getSolver()).saveSampleStatistics(quantiles, maxLag);
+	}
+	
+	// Set/get the number of bytes of saved samples kept in memory, beyond which samples are moved to a temporary file
+	public void setSampleMemoryLimit(long bytes)
+	{
+		_sampleStorage.setMemoryLimit(bytes);
+	}
+	public long getSampleMemoryLimit()
+	{
+		return _sampleStorage.getMemoryLimit();
+	}
+	public SampleStorage getSampleStorage()
+	{
+		return _sampleStorage;
+	}
+	
 	// Before running, calling this method instructs the solver to save the score (energy/likelihood) values for each sample
 	public void saveAllScores()
 	{
 		_saveAllScores = true;
-		_scoreArray = new ArrayList<Double>();
+		if (_scoreArray != null)
+			_scoreArray.clear();
+		_scoreArray = new DoubleSampleBuffer(_sampleStorage);
 	}
 	
 	// If the score had been saved, return the array of score values
 	public final double[] getAllScores()
 	{
 		if (_saveAllScores)
-		{
-			int length = _scoreArray.size();
-			double[] retval = new double[length];
-			for (int i = 0; i < length; i++)
-				retval[i] = _scoreArray.get(i);
-			return retval;
-		}
+			return _scoreArray.toArray();
 		else
 			return null;
 	}
@@ -318,12 +436,6 @@ public class SFactorGraph extends SFactorGraphBase //implements ISolverFactorGra
 	}
 	public double getTemperature() {return _temperature;}
 	
-	// Sets the random seed for the Gibbs solver.  This allows runs of the solver to be repeatable.
-	public void setSeed(long seed)
-	{
-		SolverRandomGenerator.rand.setSeed(seed);
-	}
-	
 	// Set/get the number of samples to be run when solving the graph (post burn-in)
 	public void setNumSamples(int numSamples) {_numSamples = numSamples;}
 	public int getNumSamples() {return _numSamples;}
@@ -379,6 +491,302 @@ public class SFactorGraph extends SFactorGraphBase //implements ISolverFactorGra
 	public boolean isTemperingEnabled() {return _temper;}
 	
 	
+	/*
+	 * Multiple chains
+	 * 
+	 * With more than one chain, solving runs that many independent chains, each with its own
+	 * burn-in, restarts and samples.  This graph runs the first chain; the others run on copies
+	 * of the model, each with its own solver state and its own random stream split from this
+	 * graph's stream, so the results are repeatable regardless of the number of threads.  When
+	 * more than one thread is set, the chains run in parallel.
+	 * 
+	 * Afterward the belief histograms, saved samples and scores of all chains are merged into
+	 * this graph, the best sample is taken from the chain with the lowest potential, and the
+	 * potential scale reduction factor (R-hat) is computed for each variable and for the score.
+	 * 
+	 * The other chains create their schedules using the graph's scheduler, or the default Gibbs
+	 * scheduler if there is none; a schedule set directly on this graph is used only by the first
+	 * chain.  Graphs with streams are not supported.
+	 * 
+	 * The copies are kept from one solve to the next, and only made again when the graph or its
+	 * scheduler changes; before each solve their settings, inputs and fixed values are copied
+	 * from this graph again and they are initialized.
+	 */
+	
+	public void setNumChains(int numChains)
+	{
+		if (numChains < 1)
+			throw new DimpleException("Number of chains must be at least one.");
+		_numChains = numChains;
+	}
+	public int getNumChains() {return _numChains;}
+	
+	// R-hat for a variable over the chains of the last solve, or NaN if it was not computed.  For discrete
+	// variables this is the largest R-hat over the indicators of the domain values; for real variables
+	// it requires that all samples were saved.
+	public double getRHat(VariableBase var)
+	{
+		Double rHat = (_rHat != null) ? _rHat.get(var) : null;
+		return (rHat != null) ? rHat : Double.NaN;
+	}
+	
+	// R-hat for the score (total potential) over the chains of the last solve, or NaN if it was not computed
+	public double getScoreRHat()
+	{
+		return (_rHat != null) ? _scoreRHat : Double.NaN;
+	}
+	
+	protected void solveChains()
+	{
+		if (!getModel().getFactorGraphStreams().isEmpty())
+			throw new DimpleException("Multiple chains are not supported for graphs with streams.");
+		
+		// Build any factor table caches now, since the chains share the tables
+		for (Factor f : getFlatFactors())
+		{
+			ISolverFactor sf = f.getSolver();
+			if (sf instanceof STableFactor)
+			{
+				FactorTable table = ((STableFactor)sf).getFactorTable();
+				if (table.hasDenseIndex())
+					table.getDensePotentials();
+				else
+					table.getPotentials();
+			}
+		}
+		
+		int numChains = _numChains;
+		updateChainCopies(numChains);
+		final SFactorGraph[] chains = new SFactorGraph[numChains];
+		chains[0] = this;
+		for (int chain = 1; chain < numChains; chain++)
+		{
+			chains[chain] = _chainCopies[chain - 1];
+			prepareChain(chains[chain], chain);
+		}
+		
+		IRangeTask task = new IRangeTask()
+		{
+			@Override
+			public void run(int start, int end)
+			{
+				for (int chain = start; chain < end; chain++)
+					chains[chain].solveOneChain();
+			}
+		};
+		SolverThreadPool pool = getThreadPool();
+		if (pool != null)
+			pool.forkJoin(numChains, task);
+		else
+			task.run(0, numChains);
+		
+		mergeChains(chains);
+	}
+	
+	// Makes copies of the model for the chains after the first, unless the ones from the last solve are still current
+	protected void updateChainCopies(int numChains)
+	{
+		long graphVersionId = _factorGraph.getStructureVersionId() + _factorGraph.getVersionId();
+		IScheduler scheduler = _factorGraph.getAssociatedScheduler();
+		if (graphVersionId != _chainCopiesGraphVersionId || scheduler != _chainCopiesScheduler)
+		{
+			disposeChainCopies();
+			_chainCopiesGraphVersionId = graphVersionId;
+			_chainCopiesScheduler = scheduler;
+		}
+		
+		if (_chainCopies.length != numChains - 1)
+		{
+			SFactorGraph[] copies = new SFactorGraph[numChains - 1];
+			for (int i = 0; i < _chainCopies.length; i++)
+			{
+				if (i < copies.length)
+					copies[i] = _chainCopies[i];
+				else
+					_chainCopies[i].dispose();
+			}
+			for (int i = _chainCopies.length; i < copies.length; i++)
+				copies[i] = createChain();
+			_chainCopies = copies;
+		}
+	}
+	
+	protected void disposeChainCopies()
+	{
+		for (SFactorGraph copy : _chainCopies)
+			copy.dispose();
+		_chainCopies = new SFactorGraph[0];
+	}
+	
+	// Creates a copy of the model with its own solver for running another chain
+	protected SFactorGraph createChain()
+	{
+		FactorGraph copy = _factorGraph.copyRoot();
+		copy.setSolverFactory(new Solver());
+		
+		// Create the copy's schedule from the scheduler, since copying a schedule doesn't carry over
+		// entries for variables in nested graphs
+		IScheduler scheduler = _factorGraph.getAssociatedScheduler();
+		copy.setScheduler((scheduler != null) ? scheduler : new GibbsDefaultScheduler());
+		SFactorGraph chain = (SFactorGraph)copy.getSolver();
+		
+		VariableBase[] vars = getFlatVariables();
+		VariableBase[] chainVars = chain.getFlatVariables();
+		if (vars.length != chainVars.length)
+			throw new DimpleException("Copy of graph for chain does not match");
+		return chain;
+	}
+	
+	// Copies this graph's current settings to a chain and initializes it, ready to be solved
+	protected void prepareChain(SFactorGraph chain, int chainIndex)
+	{
+		chain._numSamples = _numSamples;
+		chain._updatesPerSample = _updatesPerSample;
+		chain._scansPerSample = _scansPerSample;
+		chain._burnInUpdates = _burnInUpdates;
+		chain._burnInScans = _burnInScans;
+		chain._numRandomRestarts = _numRandomRestarts;
+		chain._temper = _temper;
+		chain._initialTemperature = _initialTemperature;
+		chain._temperingDecayConstant = _temperingDecayConstant;
+		chain._sampleStorage = _sampleStorage;		// All chains share the memory budget for samples
+		if (_saveAllScores)
+			chain.saveAllScores();
+		else
+		{
+			chain._saveAllScores = false;
+			chain._scoreArray = null;
+		}
+		chain.setSeed(SolverRandomGenerator.getStreamSeed(getRandomGenerator().nextLong(), chainIndex));	// Split from this graph's stream, so that successive solves differ
+		
+		// Inputs and fixed values may have changed since the copy was made without changing the graph version
+		VariableBase[] vars = getFlatVariables();
+		VariableBase[] chainVars = chain.getFlatVariables();
+		for (int i = 0; i < vars.length; i++)
+		{
+			chainVars[i].moveInputs(vars[i]);
+			((ISolverVariableGibbs)chainVars[i].getSolver()).copyChainSettings((ISolverVariableGibbs)vars[i].getSolver());
+		}
+		
+		chain._factorGraph.initialize();
+	}
+	
+	@Override
+	public void dispose()
+	{
+		disposeChainCopies();
+		super.dispose();
+	}
+	
+	protected void mergeChains(SFactorGraph[] chains)
+	{
+		int numChains = chains.length;
+		VariableBase[] vars = getFlatVariables();
+		VariableBase[][] chainVars = new VariableBase[numChains][];
+		for (int chain = 0; chain < numChains; chain++)
+			chainVars[chain] = chains[chain].getFlatVariables();
+		
+		// Convergence statistics, before the per-chain results are merged
+		_rHat = new HashMap<VariableBase, Double>();
+		for (int i = 0; i < vars.length; i++)
+		{
+			ISolverVariable[] chainSolvers = new ISolverVariable[numChains];
+			for (int chain = 0; chain < numChains; chain++)
+				chainSolvers[chain] = chainVars[chain][i].getSolver();
+			_rHat.put(vars[i], computeRHat(chainSolvers));
+		}
+		double[] scoreSums = new double[numChains];
+		double[] scoreSumsOfSquares = new double[numChains];
+		for (int chain = 0; chain < numChains; chain++)
+		{
+			scoreSums[chain] = chains[chain]._scoreSum;
+			scoreSumsOfSquares[chain] = chains[chain]._scoreSumOfSquares;
+		}
+		_scoreRHat = PotentialScaleReduction.computeFromSums(scoreSums, scoreSumsOfSquares, _scoreCount);
+		
+		int bestChain = 0;
+		for (int chain = 1; chain < numChains; chain++)
+			if (chains[chain]._minPotential < chains[bestChain]._minPotential)
+				bestChain = chain;
+		
+		for (int chain = 1; chain < numChains; chain++)
+		{
+			for (int i = 0; i < vars.length; i++)
+				((ISolverVariableGibbs)vars[i].getSolver()).addChainSamples((ISolverVariableGibbs)chainVars[chain][i].getSolver(), chain == bestChain);
+			if (_scoreArray != null && chains[chain]._scoreArray != null)
+			{
+				_scoreArray.addAll(chains[chain]._scoreArray);
+				chains[chain]._scoreArray.clear();
+			}
+		}
+		_minPotential = chains[bestChain]._minPotential;
+	}
+	
+	protected static double computeRHat(ISolverVariable[] chainSolvers)
+	{
+		int numChains = chainSolvers.length;
+		double[] means = new double[numChains];
+		double[] variances = new double[numChains];
+		
+		if (chainSolvers[0] instanceof SDiscreteVariable)
+		{
+			// Largest R-hat over the indicator of each domain value
+			double maxRHat = Double.NaN;
+			int domainSize = ((SDiscreteVariable)chainSolvers[0])._beliefHistogram.length;
+			for (int value = 0; value < domainSize; value++)
+			{
+				double n = Double.POSITIVE_INFINITY;
+				for (int chain = 0; chain < numChains; chain++)
+				{
+					long[] histogram = ((SDiscreteVariable)chainSolvers[chain])._beliefHistogram;
+					long count = 0;
+					for (long c : histogram)
+						count += c;
+					double p = (count > 0) ? (double)histogram[value] / count : 0;
+					means[chain] = p;
+					variances[chain] = (count > 1) ? p * (1 - p) * count / (count - 1) : 0;
+					n = Math.min(n, count);
+				}
+				double rHat = PotentialScaleReduction.compute(means, variances, n);
+				if (Double.isNaN(maxRHat) || rHat > maxRHat)
+					maxRHat = rHat;
+			}
+			return maxRHat;
+		}
+		else if (chainSolvers[0] instanceof SRealVariable)
+		{
+			double n = Double.POSITIVE_INFINITY;
+			for (int chain = 0; chain < numChains; chain++)
+			{
+				SRealVariable variable = (SRealVariable)chainSolvers[chain];
+				if (variable._sampleStatistics != null)
+				{
+					means[chain] = variable._sampleStatistics.getMean();
+					variances[chain] = variable._sampleStatistics.getVariance();
+					n = Math.min(n, variable._sampleStatistics.getCount());
+					continue;
+				}
+				DoubleSampleBuffer samples = variable._sampleArray;
+				if (samples == null)
+					return Double.NaN;
+				int size = samples.size();
+				double sum = 0;
+				for (int i = 0; i < size; i++)
+					sum += samples.get(i);
+				double mean = sum / size;
+				double sumOfSquares = 0;
+				for (int i = 0; i < size; i++)
+					sumOfSquares += (samples.get(i) - mean) * (samples.get(i) - mean);
+				means[chain] = mean;
+				variances[chain] = sumOfSquares / (size - 1);
+				n = Math.min(n, size);
+			}
+			return PotentialScaleReduction.compute(means, variances, n);
+		}
+		return Double.NaN;
+	}
+	
+	
 	
 	// Helpers for operating on pre-specified groups of variables in the graph
 	public double[] getVariableSampleValues(int variableGroupID)
@@ -448,11 +856,13 @@ public class SFactorGraph extends SFactorGraphBase //implements ISolverFactorGra
 
 	
 	
+	// Threads are only used to run multiple chains at the same time; each chain is run in a single thread
 	@Override
 	public void setNumThreads(int numThreads)
 	{
-		if (numThreads != 1)
-			throw new DimpleException("Multithreading is not currently supported by this solver.");
+		if (numThreads < 1)
+			throw new DimpleException("Number of threads must be at least one.");
+		super.setNumThreads(numThreads);
 	}
 
 	// 'Iterations' are not defined for Gibbs since that term is ambiguous.  Instead, set the number of samples using setNumSamples().
@@ -19,10 +19,12 @@ package com.analog.lyric.dimple.solvers.gibbs;
 import java.util.ArrayList;
 
 import com.analog.lyric.dimple.FactorFunctions.core.FactorFunction;
+import com.analog.lyric.dimple.FactorFunctions.core.FactorFunctionUtilities;
 import com.analog.lyric.dimple.model.DimpleException;
 import com.analog.lyric.dimple.model.Discrete;
 import com.analog.lyric.dimple.model.Factor;
 import com.analog.lyric.dimple.model.INode;
+import com.analog.lyric.dimple.model.Real;
 import com.analog.lyric.dimple.model.VariableBase;
 import com.analog.lyric.dimple.solvers.core.SFactorBase;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
@@ -34,6 +36,9 @@ public class SRealFactor extends SFactorBase implements ISolverFactorGibbs
 	protected ObjectSample [] _inputMsgs;
 	protected int _numPorts;
 	protected boolean _isDeterministicDirected;
+	protected boolean _usePrimitiveEval;		// All neighbors are real and the factor function can evaluate them without boxing
+	protected double[] _realArguments;
+	protected double[] _scratch;				// Passed to the factor function, so it needn't find temporary space per evaluation
 	
 	public SRealFactor(Factor factor)
 	{
@@ -106,7 +111,7 @@ public class SRealFactor extends SFactorBase implements ISolverFactorGibbs
 			for (int i = 0; i < outputMsgLength; i++)
 			{
 				values[outPortNum] = outputVariableDomain[i];
-				outputMsgs[i] = factorFunction.evalEnergy(values);		// Messages to discrete variables are energy values
+				outputMsgs[i] = factorFunction.evalEnergyWithScratch(values, _scratch);		// Messages to discrete variables are energy values
 			}
 		}
 	}
@@ -114,6 +119,13 @@ public class SRealFactor extends SFactorBase implements ISolverFactorGibbs
 	
 	public double getPotential()
 	{
+		if (_usePrimitiveEval)
+		{
+			for (int port = 0; port < _numPorts; port++)
+				_realArguments[port] = FactorFunctionUtilities.toDouble(_inputMsgs[port].value);
+			return _realFactor.getFactorFunction().evalEnergyWithScratch(_realArguments, _scratch);
+		}
+		
 	    int numPorts = _factor.getSiblings().size();
 	    Object[] inPortMsgs = new Object[numPorts];
 	    for (int port = 0; port < numPorts; port++)
@@ -123,7 +135,7 @@ public class SRealFactor extends SFactorBase implements ISolverFactorGibbs
 	}
 	public double getPotential(Object[] inputs)
 	{
-	    return _realFactor.getFactorFunction().evalEnergy(inputs);
+	    return _realFactor.getFactorFunction().evalEnergyWithScratch(inputs, _scratch);
 	}
 
 	
@@ -160,11 +172,17 @@ public class SRealFactor extends SFactorBase implements ISolverFactorGibbs
 	{
 		_numPorts = _factor.getSiblings().size();
 		_inputMsgs = new ObjectSample[_numPorts];
+		_usePrimitiveEval = _factor.getFactorFunction().hasPrimitiveEvalEnergy();
 		for (int i = 0; i < _numPorts; i++)
 		{
-			Object [] messages = _factor.getVariables().getByIndex(i).getSolver().createMessages(this);
+			VariableBase var = _factor.getVariables().getByIndex(i);
+			Object [] messages = var.getSolver().createMessages(this);
 			_inputMsgs[i] = (ObjectSample)messages[1];
+			if (!(var instanceof Real))
+				_usePrimitiveEval = false;
 		}
+		_realArguments = _usePrimitiveEval ? new double[_numPorts] : null;
+		_scratch = new double[_factor.getFactorFunction().getScratchLength(_numPorts)];
 	}
 
 
@@ -22,6 +22,7 @@ import com.analog.lyric.dimple.FactorFunctions.core.FactorFunction;
 import com.analog.lyric.dimple.FactorFunctions.core.FactorFunctionUtilities;
 import com.analog.lyric.dimple.model.DimpleException;
 import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.model.GraphAdjacency;
 import com.analog.lyric.dimple.model.INode;
 import com.analog.lyric.dimple.model.Real;
 import com.analog.lyric.dimple.model.RealDomain;
@@ -34,7 +35,11 @@ import com.analog.lyric.dimple.solvers.gibbs.samplers.IRealSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.ISampleScorer;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.MHSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.RealSamplerRegistry;
+import com.analog.lyric.dimple.solvers.gibbs.sampleStorage.DoubleSampleBuffer;
+import com.analog.lyric.dimple.solvers.gibbs.sampleStorage.SampleStatistics;
+import com.analog.lyric.dimple.solvers.gibbs.sampleStorage.SampleStorage;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
 
 public class SRealVariable extends SRealVariableBase implements ISolverVariableGibbs, ISampleScorer
@@ -44,9 +49,11 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 	protected double _sampleValue = 0;
 	protected double _initialSampleValue = 0;
 	protected FactorFunction _input;
+	protected final double[] _inputArgument = new double[1];	// Reused to avoid boxing when evaluating the input
 	protected RealDomain _domain;
 	protected IRealSampler _sampler = new DefaultRealSampler();
-	protected ArrayList<Double> _sampleArray;
+	protected DoubleSampleBuffer _sampleArray;
+	protected SampleStatistics _sampleStatistics;
 	protected double _bestSampleValue;
 	protected double _beta = 1;
 	protected boolean _holdSampleValue = false;
@@ -84,7 +91,7 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 		if (_var.hasFixedValue()) return;
 
 		// Get the next sample value from the sampler
-		double nextSampleValue = _sampler.nextSample(_sampleValue, this);
+		double nextSampleValue = _sampler.nextSample(_sampleValue, this, SolverRandomGenerator.getCurrent());
 		if (nextSampleValue != _sampleValue)	// Would be exactly equal if not changed since last value tested
 			setCurrentSample(nextSampleValue);
 	}
@@ -101,15 +108,12 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 
 		// Sum up the potentials from the input and all connected factors
 		if (_input != null)
-			potential = _input.evalEnergy(new Object[]{_sampleValue});
-		ArrayList<INode> siblings = _var.getSiblings();
-		for (int portIndex = 0; portIndex < numPorts; portIndex++)
-		{
-			INode factorNode = siblings.get(portIndex);
-			ISolverFactorGibbs factor = (ISolverFactorGibbs)(factorNode.getSolver());
-			int factorPortNumber = factorNode.getPortNum(_var);
-			potential += factor.getConditionalPotential(factorPortNumber);
-		}
+			potential = getInputEnergy(_sampleValue);
+		GraphAdjacency adjacency = getAdjacency();
+		ISolverNode[] neighborSolvers = adjacency.getNeighborSolvers();
+		int[] neighborPorts = adjacency.getNeighborPorts();
+		for (int portIndex = 0, edge = getAdjacencyOffset(); portIndex < numPorts; portIndex++, edge++)
+			potential += ((ISolverFactorGibbs)neighborSolvers[edge]).getConditionalPotential(neighborPorts[edge]);
 		
 		return potential * _beta;	// Incorporate current temperature
 	}
@@ -143,7 +147,7 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 		double hi = _domain.getUpperBound();
 		double lo = _domain.getLowerBound();
 		if (hi < Double.POSITIVE_INFINITY && lo > Double.NEGATIVE_INFINITY)
-			setCurrentSample(SolverRandomGenerator.rand.nextDouble() * (hi - lo) + lo);
+			setCurrentSample(SolverRandomGenerator.getCurrent().nextDouble() * (hi - lo) + lo);
 	}
 
 	public void updateBelief()
@@ -203,9 +207,9 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 		else if (_input == null)
 			return 0;
 		else if (_guessWasSet)
-			return _input.evalEnergy(_guessValue);
+			return getInputEnergy(_guessValue);
 		else
-			return _input.evalEnergy(_sampleValue);
+			return getInputEnergy(_sampleValue);
 	}
 	
 	@Override
@@ -222,13 +226,29 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 
 	public final void saveAllSamples()
 	{
-		_sampleArray = new ArrayList<Double>();
+		if (_sampleArray != null)
+			_sampleArray.clear();
+		ISolverFactorGraph rootGraph = getRootGraph();
+		SampleStorage storage = (rootGraph instanceof SFactorGraph) ? ((SFactorGraph)rootGraph).getSampleStorage() : null;
+		_sampleArray = new DoubleSampleBuffer(storage);
+	}
+
+	// Keep summary statistics of the samples (mean, variance, quantiles, autocorrelation) without saving the samples themselves
+	public final void saveSampleStatistics()
+	{
+		saveSampleStatistics(SampleStatistics.DEFAULT_QUANTILES, SampleStatistics.DEFAULT_MAX_LAG);
+	}
+	public final void saveSampleStatistics(double[] quantiles, int maxLag)
+	{
+		_sampleStatistics = new SampleStatistics(quantiles, maxLag);
 	}
 
 	public final void saveCurrentSample()
 	{
 		if (_sampleArray != null)
 			_sampleArray.add(_sampleValue);
+		if (_sampleStatistics != null)
+			_sampleStatistics.add(_sampleValue);
 	}
 
 	public final void saveBestSample()
@@ -241,11 +261,14 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 		double result = getPotential();		// Start with the local potential
 		
 		// Propagate the request through the other neighboring factors and sum up the results
-		ArrayList<INode> siblings = _var.getSiblings();
-		int numPorts = siblings.size();
+		GraphAdjacency adjacency = getAdjacency();
+		ISolverNode[] neighborSolvers = adjacency.getNeighborSolvers();
+		int[] neighborPorts = adjacency.getNeighborPorts();
+		int offset = getAdjacencyOffset();
+		int numPorts = _var.getSiblings().size();
 		for (int port = 0; port < numPorts; port++)	// Plus each input message value
 			if (port != portIndex)
-				result += ((ISolverFactorGibbs)siblings.get(port).getSolver()).getConditionalPotential(_var.getSiblingPortIndex(port));
+				result += ((ISolverFactorGibbs)neighborSolvers[offset + port]).getConditionalPotential(neighborPorts[offset + port]);
 
 		    return result;
 	}
@@ -257,7 +280,13 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 		else if (_input == null)
 			return 0;
 		else
-			return _input.evalEnergy(new Object[]{_sampleValue});
+			return getInputEnergy(_sampleValue);
+	}
+
+	protected final double getInputEnergy(double value)
+	{
+		_inputArgument[0] = value;
+		return _input.evalEnergy(_inputArgument);
 	}
 
     public final void setCurrentSample(Object value) {setCurrentSample(FactorFunctionUtilities.toDouble(value));}
@@ -294,11 +323,14 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 	{
 		if (_sampleArray == null)
 			throw new DimpleException("No samples saved. Must call saveAllSamples on variable or entire graph prior to solving");
-		int length = _sampleArray.size();
-		double[] retval = new double[length];
-		for (int i = 0; i < length; i++)
-			retval[i] = _sampleArray.get(i);
-		return retval;
+		return _sampleArray.toArray();
+	}
+
+	public final SampleStatistics getSampleStatistics()
+	{
+		if (_sampleStatistics == null)
+			throw new DimpleException("No sample statistics saved. Must call saveSampleStatistics on variable or entire graph prior to solving");
+		return _sampleStatistics;
 	}
 
 	public final void setAndHoldSampleValue(double value)
@@ -317,6 +349,39 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 		_holdSampleValue = false;
 	}
 
+	public void copyChainSettings(ISolverVariableGibbs variable)
+	{
+		SRealVariable other = (SRealVariable)variable;
+		_sampler = other._sampler;		// Samplers draw from the current thread's random stream, so they can be shared
+		_initialSampleValue = other._initialSampleValue;
+		if (other._sampleArray != null)
+			saveAllSamples();
+		else
+			_sampleArray = null;
+		if (other._sampleStatistics != null)
+			saveSampleStatistics(other._sampleStatistics.getQuantiles(), other._sampleStatistics.getMaxLag());
+		else
+			_sampleStatistics = null;
+		if (other._holdSampleValue)
+			setAndHoldSampleValue(other._sampleValue);
+		else
+			releaseSampleValue();
+	}
+
+	public void addChainSamples(ISolverVariableGibbs chainVariable, boolean useChainBestSample)
+	{
+		SRealVariable chain = (SRealVariable)chainVariable;
+		if (_sampleArray != null && chain._sampleArray != null)
+		{
+			_sampleArray.addAll(chain._sampleArray);
+			chain._sampleArray.clear();		// The chain starts over on its next solve, so release its storage
+		}
+		if (_sampleStatistics != null && chain._sampleStatistics != null)
+			_sampleStatistics.merge(chain._sampleStatistics);
+		if (useChainBestSample)
+			_bestSampleValue = chain._bestSampleValue;
+	}
+
 
 
 
@@ -475,6 +540,7 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 		
 		_bestSampleValue = _sampleValue;
 		if (_sampleArray != null) _sampleArray.clear();
+		if (_sampleStatistics != null) _sampleStatistics.clear();
 	}
 
 	@Override
@@ -497,6 +563,7 @@ public class SRealVariable extends SRealVariableBase implements ISolverVariableG
 		_sampleValue = ovar._sampleValue;
 		_initialSampleValue = ovar._initialSampleValue;
 		_sampleArray = ovar._sampleArray;
+		_sampleStatistics = ovar._sampleStatistics;
 		_bestSampleValue = ovar._bestSampleValue;
 		_beta = ovar._beta;
 		_sampler = ovar._sampler;
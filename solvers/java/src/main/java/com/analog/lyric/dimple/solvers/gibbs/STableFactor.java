@@ -17,9 +17,11 @@
 package com.analog.lyric.dimple.solvers.gibbs;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import com.analog.lyric.dimple.FactorFunctions.core.FactorTable;
 import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.DiscreteDomain;
 import com.analog.lyric.dimple.model.Factor;
 import com.analog.lyric.dimple.model.INode;
 import com.analog.lyric.dimple.model.VariableBase;
@@ -34,6 +36,16 @@ public class STableFactor extends STableFactorBase implements ISolverFactorGibbs
     protected double[][] _outPortMsgs = null;
     protected int _numPorts;
     protected boolean _isDeterministicDirected;
+    protected int[] _indicesScratch = null;			// Per-factor scratch space so that updates don't allocate
+
+    // For deterministic directed factors, maps the joint index of the directed-from ports to the table row
+    // giving the output values, so that the outputs can be computed without evaluating the factor function
+    protected static final int MAX_DETERMINISTIC_LOOKUP_SIZE = 1 << 20;
+    private FactorTable _deterministicTable = null;		// Table from which the lookup was built, and its version then
+    private int _deterministicTableVersion;
+    private int[][] _deterministicTableIndices;
+    private int[] _deterministicInputOffsets;
+    private int[] _deterministicInput2row;				// Null if the lookup can't be used
 
     
 	public STableFactor(Factor factor) 
@@ -69,9 +81,8 @@ public class STableFactor extends STableFactorBase implements ISolverFactorGibbs
 			ArrayList<INode> siblings = _factor.getSiblings();
 		    for (int port = 0; port < _numPorts; port++)
 		    {
-		    	VariableBase v = (VariableBase)siblings.get(port);
-		    	if (_factor.isDirectedTo(v))
-		    		result += ((ISolverVariableGibbs)v.getSolver()).getConditionalPotential(_factor.getSiblingPortIndex(port));
+		    	if (_factor.isDirectedTo(port))
+		    		result += ((ISolverVariableGibbs)siblings.get(port).getSolver()).getConditionalPotential(_factor.getSiblingPortIndex(port));
 		    }
 		}
 
@@ -91,23 +102,30 @@ public class STableFactor extends STableFactorBase implements ISolverFactorGibbs
 		double[] outMessage = _outPortMsgs[outPortNum];
 		int outputMsgLength = outMessage.length;
 
-		FactorTable factorTable = getFactorTable();
-		double[] factorTableWeights = factorTable.getPotentials();
-
-		int[] inPortMsgs = new int[_numPorts];
+		int[] inPortMsgs = _indicesScratch;
 		for (int port = 0; port < _numPorts; port++)
 			inPortMsgs[port] = _inPortMsgs[port].index;
 
-		for (int outIndex = 0; outIndex < outputMsgLength; outIndex++)
+		// Read the conditional as a strided slice of the table
+		FactorTable factorTable = getFactorTable();
+		long jointIndex = factorTable.getJointIndexSliceBase(inPortMsgs, outPortNum);
+		long stride = factorTable.getJointIndexStride(outPortNum);
+		if (factorTable.hasDenseIndex())
 		{
-			inPortMsgs[outPortNum] = outIndex;
-		
-			int weightIndex = factorTable.getWeightIndexFromTableIndices(inPortMsgs);
-			if (weightIndex >= 0)
-				outMessage[outIndex] = factorTableWeights[weightIndex];
-			else
-				outMessage[outIndex] = Double.POSITIVE_INFINITY;
-			
+			double[] densePotentials = factorTable.getDensePotentials();
+			int denseIndex = (int)jointIndex;
+			int denseStride = (int)stride;
+			for (int outIndex = 0; outIndex < outputMsgLength; outIndex++, denseIndex += denseStride)
+				outMessage[outIndex] = densePotentials[denseIndex];
+		}
+		else
+		{
+			double[] potentials = factorTable.getPotentials();
+			for (int outIndex = 0; outIndex < outputMsgLength; outIndex++, jointIndex += stride)
+			{
+				int weightIndex = factorTable.getWeightIndexFromJointIndex(jointIndex);
+				outMessage[outIndex] = (weightIndex >= 0) ? potentials[weightIndex] : Double.POSITIVE_INFINITY;
+			}
 		}
 	}
 	
@@ -116,7 +134,7 @@ public class STableFactor extends STableFactorBase implements ISolverFactorGibbs
 
 	public double getPotential()
 	{
-	    int[] inPortMsgs = new int[_numPorts];
+	    int[] inPortMsgs = _indicesScratch;
 	    for (int port = 0; port < _numPorts; port++)
 	    	inPortMsgs[port] = _inPortMsgs[port].index;
 	    
@@ -141,22 +159,98 @@ public class STableFactor extends STableFactorBase implements ISolverFactorGibbs
 		if (!_isDeterministicDirected) return;
 		if (_factor.isDirectedTo(portIndex)) return;
 		
-		// Compute the output values of the deterministic factor function from the input values
+		ArrayList<INode> siblings = _factor.getSiblings();
+		
+		// Look up the output values in the factor table if possible
+		int row = getDeterministicRow();
+		if (row >= 0)
+		{
+			int[] rowIndices = _deterministicTableIndices[row];
+			int[] directedTo = _factor.getDirectedTo();
+			for (int i = 0; i < directedTo.length; i++)
+			{
+				int port = directedTo[i];
+				((SDiscreteVariable)siblings.get(port).getSolver()).setCurrentSampleIndex(rowIndices[port]);
+			}
+			return;
+		}
+		
+		// Otherwise compute the output values of the deterministic factor function from the input values
 	    Object[] values = new Object[_numPorts];
 	    for (int port = 0; port < _numPorts; port++)
 	    	values[port] = _inPortMsgs[port].value;
 		_factor.getFactorFunction().evalDeterministicFunction(values);
 		
 		// Update the directed-to variables with the computed values
-		ArrayList<INode> siblings = _factor.getSiblings();
 	    for (int port = 0; port < _numPorts; port++)
 	    {
-	    	VariableBase v = (VariableBase)siblings.get(port);
-	    	if (_factor.isDirectedTo(v))
-	    		((SDiscreteVariable)v.getSolver()).setCurrentSample(values[port]);
+	    	if (_factor.isDirectedTo(port))
+	    		((SDiscreteVariable)siblings.get(port).getSolver()).setCurrentSample(values[port]);
 	    }
 	}
-
+	
+	// Returns the factor table row holding the outputs for the current input values, or -1 if there
+	// isn't exactly one such row or the lookup table would be too large
+	private int getDeterministicRow()
+	{
+		// Rebuilt when the weights change as well as the indices, since rows of zero weight are left out
+		FactorTable table = getFactorTable();
+		if (table != _deterministicTable || table.getVersion() != _deterministicTableVersion)
+			initDeterministicLookup(table);
+		
+		int[] input2row = _deterministicInput2row;
+		if (input2row == null)
+			return -1;
+		
+		int[] directedFrom = _factor.getDirectedFrom();
+		int[] offsets = _deterministicInputOffsets;
+		int inputIndex = 0;
+		for (int i = 0; i < directedFrom.length; i++)
+			inputIndex += _inPortMsgs[directedFrom[i]].index * offsets[i];
+		
+		return input2row[inputIndex];
+	}
+	
+	private void initDeterministicLookup(FactorTable table)
+	{
+		int[][] tableIndices = table.getIndices();
+		_deterministicTable = table;
+		_deterministicTableVersion = table.getVersion();
+		_deterministicTableIndices = tableIndices;
+		_deterministicInput2row = null;
+		
+		int[] directedFrom = _factor.getDirectedFrom();
+		DiscreteDomain[] domains = table.getDomains();
+		int[] offsets = new int[directedFrom.length];
+		long size = 1;
+		for (int i = 0; i < directedFrom.length; i++)
+		{
+			offsets[i] = (int)size;
+			size *= domains[directedFrom[i]].size();
+			if (size > MAX_DETERMINISTIC_LOOKUP_SIZE)
+				return;
+		}
+		
+		int[] input2row = new int[(int)size];
+		Arrays.fill(input2row, -1);
+		double[] weights = table.getWeights();
+		for (int row = 0; row < tableIndices.length; row++)
+		{
+			if (weights[row] == 0)
+				continue;
+			
+			int inputIndex = 0;
+			for (int i = 0; i < directedFrom.length; i++)
+				inputIndex += tableIndices[row][directedFrom[i]] * offsets[i];
+			
+			if (input2row[inputIndex] >= 0)
+				return;		// Not a function of the inputs after all, so use the factor function
+			input2row[inputIndex] = row;
+		}
+		
+		_deterministicInputOffsets = offsets;
+		_deterministicInput2row = input2row;
+	}
 
 
 	@Override
@@ -167,6 +261,7 @@ public class STableFactor extends STableFactorBase implements ISolverFactorGibbs
     	
 	    _inPortMsgs = new DiscreteSample[_numPorts];
 	    _outPortMsgs = new double[_numPorts][];
+	    _indicesScratch = new int[_numPorts];
 	    
 	    for (int port = 0; port < _numPorts; port++)
 	    {
@@ -183,6 +278,7 @@ public class STableFactor extends STableFactorBase implements ISolverFactorGibbs
 	{
 		super.initialize();
 		_isDeterministicDirected = _factor.getFactorFunction().isDeterministicDirected();
+		_deterministicTable = null;
 	}
 	
 	@Override
@@ -217,6 +313,8 @@ public class STableFactor extends STableFactorBase implements ISolverFactorGibbs
 	@Override
 	public void setDirectedTo(int [] indices)
 	{
+		_deterministicTable = null;
+		
 		for (VariableBase vb : _factor.getVariables())
 		{
 			((ISolverVariableGibbs)vb.getSolver()).updateDirectedCache();
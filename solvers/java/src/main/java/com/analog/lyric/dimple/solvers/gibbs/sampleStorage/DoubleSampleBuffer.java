@@ -0,0 +1,57 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs.sampleStorage;
+
+/*
+ * Sample buffer for real values, each stored as the raw bits of a double.
+ */
+public class DoubleSampleBuffer extends SampleBuffer
+{
+	public DoubleSampleBuffer()
+	{
+		this(null);
+	}
+	public DoubleSampleBuffer(SampleStorage storage)
+	{
+		super(64, storage);
+	}
+
+	public final void add(double value)
+	{
+		addBits(Double.doubleToRawLongBits(value));
+	}
+
+	public final double get(int index)
+	{
+		return Double.longBitsToDouble(getBits(index));
+	}
+
+	public final void addAll(DoubleSampleBuffer other)
+	{
+		int size = other.size();
+		for (int i = 0; i < size; i++)
+			add(other.get(i));
+	}
+
+	public final double[] toArray()
+	{
+		double[] result = new double[_size];
+		for (int i = 0; i < _size; i++)
+			result[i] = get(i);
+		return result;
+	}
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs.sampleStorage;
+
+/*
+ * Sample buffer for indices into a domain, using only as many bits per sample as
+ * the size of the domain requires (one bit for a binary variable).
+ */
+public class IntSampleBuffer extends SampleBuffer
+{
+	public IntSampleBuffer(int domainSize)
+	{
+		this(domainSize, null);
+	}
+	public IntSampleBuffer(int domainSize, SampleStorage storage)
+	{
+		super(Math.max(1, 32 - Integer.numberOfLeadingZeros(domainSize - 1)), storage);
+	}
+
+	public final void add(int value)
+	{
+		addBits(value);
+	}
+
+	public final int get(int index)
+	{
+		return (int)getBits(index);
+	}
+
+	public final void addAll(IntSampleBuffer other)
+	{
+		int size = other.size();
+		for (int i = 0; i < size; i++)
+			add(other.get(i));
+	}
+
+	public final int[] toArray()
+	{
+		int[] result = new int[_size];
+		for (int i = 0; i < _size; i++)
+			result[i] = get(i);
+		return result;
+	}
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs.sampleStorage;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+
+/*
+ * Append-only sequence of samples, each packed into a fixed number of bits, stored in
+ * chunks of longs.  A sample never straddles two longs.  If there is a shared storage
+ * budget, full chunks may be moved to a file, in which case the chunk is null and its
+ * position in the file is recorded instead.
+ */
+public abstract class SampleBuffer
+{
+	protected final SampleStorage _storage;					// Null if there is no memory limit
+	protected final int _bitsPerSample;
+	protected final int _samplesPerLong;
+	protected final int _samplesPerChunk;
+	protected final long _mask;
+	protected ArrayList<long[]> _chunks = new ArrayList<long[]>();
+	protected long[] _filePositions = new long[0];			// For chunks that have been spilled
+	protected int _numSpilledChunks = 0;
+	protected int _firstUnspilledChunk = 0;
+	protected int _size = 0;
+	protected int _mappedChunk = -1;						// Most recently read spilled chunk
+	protected LongBuffer _mappedBuffer;
+
+	protected SampleBuffer(int bitsPerSample, SampleStorage storage)
+	{
+		_storage = storage;
+		_bitsPerSample = bitsPerSample;
+		_samplesPerLong = 64 / bitsPerSample;
+		_samplesPerChunk = _samplesPerLong * SampleStorage.CHUNK_LENGTH;
+		_mask = (bitsPerSample == 64) ? -1L : (1L << bitsPerSample) - 1;
+	}
+
+	public final int size()
+	{
+		return _size;
+	}
+
+	public void clear()
+	{
+		if (_storage != null)
+			_storage.releaseChunks(_chunks.size() - _numSpilledChunks, _numSpilledChunks);
+		_chunks.clear();
+		_numSpilledChunks = 0;
+		_firstUnspilledChunk = 0;
+		_size = 0;
+		_mappedChunk = -1;
+		_mappedBuffer = null;
+	}
+
+	// Number of bytes of sample data held in memory
+	public long getMemoryInUse()
+	{
+		return (long)(_chunks.size() - _numSpilledChunks) * SampleStorage.CHUNK_BYTES;
+	}
+
+	protected final void addBits(long bits)
+	{
+		int chunkOffset = _size % _samplesPerChunk;
+		if (chunkOffset == 0)
+			newChunk();
+		long[] chunk = _chunks.get(_chunks.size() - 1);
+		chunk[chunkOffset / _samplesPerLong] |= bits << ((chunkOffset % _samplesPerLong) * _bitsPerSample);
+		_size++;
+	}
+
+	protected final long getBits(int index)
+	{
+		int chunkIndex = index / _samplesPerChunk;
+		int chunkOffset = index % _samplesPerChunk;
+		int shift = (chunkOffset % _samplesPerLong) * _bitsPerSample;
+		long[] chunk = _chunks.get(chunkIndex);
+		long value;
+		if (chunk != null)
+			value = chunk[chunkOffset / _samplesPerLong];
+		else
+		{
+			if (chunkIndex != _mappedChunk)
+			{
+				_mappedBuffer = _storage.map(_filePositions[chunkIndex]);
+				_mappedChunk = chunkIndex;
+			}
+			value = _mappedBuffer.get(chunkOffset / _samplesPerLong);
+		}
+		return (value >>> shift) & _mask;
+	}
+
+	protected void newChunk()
+	{
+		if (_storage != null && _storage.allocateChunk())
+		{
+			// Over budget, so move this buffer's full chunks out of memory
+			int numChunks = _chunks.size();
+			if (_filePositions.length < numChunks)
+			{
+				long[] positions = new long[Math.max(numChunks, 2 * _filePositions.length)];
+				System.arraycopy(_filePositions, 0, positions, 0, _filePositions.length);
+				_filePositions = positions;
+			}
+			for (int i = _firstUnspilledChunk; i < numChunks; i++)
+			{
+				_filePositions[i] = _storage.spill(_chunks.get(i));
+				_chunks.set(i, null);
+				_numSpilledChunks++;
+			}
+			_firstUnspilledChunk = numChunks;
+		}
+		_chunks.add(new long[SampleStorage.CHUNK_LENGTH]);
+	}
+}
@@ -0,0 +1,308 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs.sampleStorage;
+
+import java.util.Arrays;
+
+import com.analog.lyric.dimple.model.DimpleException;
+
+/*
+ * Summary statistics of a stream of real-valued samples, kept without retaining the samples.
+ *
+ * The mean and variance are updated with Welford's method.  Autocorrelations up to a maximum
+ * lag are exact, computed from running sums of lagged products along with the first and the
+ * most recent few samples.  Quantiles are estimated with the P-squared algorithm of Jain and
+ * Chlamtac, which keeps five markers per quantile.
+ *
+ * Statistics from other chains can be merged in.  The merged mean and variance are those of
+ * all of the samples together; the autocorrelation is pooled over the chains, each about its
+ * own mean; and each quantile becomes the sample-weighted average of the per-chain estimates.
+ */
+public class SampleStatistics
+{
+	public static final double[] DEFAULT_QUANTILES = {0.025, 0.5, 0.975};
+	public static final int DEFAULT_MAX_LAG = 10;
+
+	protected final int _maxLag;
+	protected final double[] _quantiles;
+
+	// Moments of all samples, including those merged from other chains
+	protected long _count;
+	protected double _mean;
+	protected double _sumOfSquaredDeviations;
+	protected double _min;
+	protected double _max;
+
+	// Lagged sums over this instance's own stream, relative to its first sample to limit round-off
+	protected long _streamCount;
+	protected double _shift;
+	protected double _streamSum;
+	protected double[] _lagProducts;		// Sum of x[t]*x[t-k] for each lag k
+	protected double[] _first;				// The first maxLag samples
+	protected double[] _recent;				// The last maxLag samples, as a circular buffer
+	protected double[] _mergedCovariances;	// Sums of lagged products about each chain's mean from merged chains
+
+	protected P2Quantile[] _quantileEstimators;
+	protected double[] _mergedQuantiles;	// Sample-weighted sums of quantile estimates from merged chains
+	protected long _mergedQuantileCount;
+
+	public SampleStatistics()
+	{
+		this(DEFAULT_QUANTILES, DEFAULT_MAX_LAG);
+	}
+	public SampleStatistics(double[] quantiles, int maxLag)
+	{
+		if (maxLag < 0)
+			throw new DimpleException("Maximum lag must be non-negative");
+		for (double p : quantiles)
+			if (!(p > 0 && p < 1))
+				throw new DimpleException("Quantiles must be between 0 and 1");
+		_maxLag = maxLag;
+		_quantiles = quantiles.clone();
+		clear();
+	}
+
+	public void clear()
+	{
+		_count = 0;
+		_mean = 0;
+		_sumOfSquaredDeviations = 0;
+		_min = Double.POSITIVE_INFINITY;
+		_max = Double.NEGATIVE_INFINITY;
+		_streamCount = 0;
+		_shift = 0;
+		_streamSum = 0;
+		_lagProducts = new double[_maxLag + 1];
+		_first = new double[_maxLag];
+		_recent = new double[_maxLag];
+		_mergedCovariances = new double[_maxLag + 1];
+		_quantileEstimators = new P2Quantile[_quantiles.length];
+		for (int i = 0; i < _quantiles.length; i++)
+			_quantileEstimators[i] = new P2Quantile(_quantiles[i]);
+		_mergedQuantiles = new double[_quantiles.length];
+		_mergedQuantileCount = 0;
+	}
+
+	public void add(double value)
+	{
+		_count++;
+		double delta = value - _mean;
+		_mean += delta / _count;
+		_sumOfSquaredDeviations += delta * (value - _mean);
+		if (value < _min) _min = value;
+		if (value > _max) _max = value;
+
+		if (_streamCount == 0)
+			_shift = value;
+		double x = value - _shift;
+		long t = _streamCount;
+		_lagProducts[0] += x * x;
+		for (int k = 1; k <= _maxLag && k <= t; k++)
+			_lagProducts[k] += x * _recent[(int)((t - k) % _maxLag)];
+		if (_maxLag > 0)
+		{
+			if (t < _maxLag)
+				_first[(int)t] = x;
+			_recent[(int)(t % _maxLag)] = x;
+		}
+		_streamSum += x;
+		_streamCount++;
+
+		for (P2Quantile estimator : _quantileEstimators)
+			estimator.add(value);
+	}
+
+	// Combines the statistics from another chain into these
+	public void merge(SampleStatistics other)
+	{
+		if (other._maxLag != _maxLag || !Arrays.equals(other._quantiles, _quantiles))
+			throw new DimpleException("Statistics to be merged must have the same lags and quantiles");
+		if (other._count == 0)
+			return;
+
+		long count = _count + other._count;
+		double delta = other._mean - _mean;
+		_sumOfSquaredDeviations += other._sumOfSquaredDeviations + delta * delta * ((double)_count * other._count / count);
+		_mean += delta * other._count / count;
+		_count = count;
+		_min = Math.min(_min, other._min);
+		_max = Math.max(_max, other._max);
+
+		for (int k = 0; k <= _maxLag; k++)
+			_mergedCovariances[k] += other._mergedCovariances[k] + other.getStreamCovarianceSum(k);
+
+		for (int i = 0; i < _quantiles.length; i++)
+		{
+			_mergedQuantiles[i] += other._mergedQuantiles[i];
+			if (other._streamCount > 0)
+				_mergedQuantiles[i] += other._quantileEstimators[i].getEstimate() * other._streamCount;
+		}
+		_mergedQuantileCount += other._mergedQuantileCount + other._streamCount;
+	}
+
+	public final long getCount() {return _count;}
+	public final double getMean() {return (_count > 0) ? _mean : Double.NaN;}
+	public final double getVariance() {return (_count > 1) ? _sumOfSquaredDeviations / (_count - 1) : Double.NaN;}
+	public final double getStandardDeviation() {return Math.sqrt(getVariance());}
+	public final double getMin() {return (_count > 0) ? _min : Double.NaN;}
+	public final double getMax() {return (_count > 0) ? _max : Double.NaN;}
+	public final int getMaxLag() {return _maxLag;}
+	public final double[] getQuantiles() {return _quantiles.clone();}
+
+	// Estimate of the p-quantile, where p must be one of the quantiles being tracked
+	public double getQuantile(double p)
+	{
+		for (int i = 0; i < _quantiles.length; i++)
+		{
+			if (_quantiles[i] == p)
+			{
+				long streamCount = _quantileEstimators[i].getCount();
+				long total = streamCount + _mergedQuantileCount;
+				if (total == 0)
+					return Double.NaN;
+				double weightedSum = _mergedQuantiles[i] + ((streamCount > 0) ? _quantileEstimators[i].getEstimate() * streamCount : 0);
+				return weightedSum / total;
+			}
+		}
+		throw new DimpleException("Quantile " + p + " is not being tracked");
+	}
+
+	// Sample autocorrelation at the given lag, from 0 up to the maximum lag
+	public double getAutocorrelation(int lag)
+	{
+		if (lag < 0 || lag > _maxLag)
+			throw new DimpleException("Lag must be between 0 and " + _maxLag);
+		double variance = _mergedCovariances[0] + getStreamCovarianceSum(0);
+		if (variance <= 0)
+			return Double.NaN;
+		return (_mergedCovariances[lag] + getStreamCovarianceSum(lag)) / variance;
+	}
+
+	// Sum over t of (x[t] - mean)*(x[t-lag] - mean) for this instance's own stream
+	protected double getStreamCovarianceSum(int lag)
+	{
+		long n = _streamCount;
+		if (lag >= n)
+			return 0;
+		double mean = _streamSum / n;
+		double headSum = 0;		// The first lag samples are never the later sample of a pair
+		double tailSum = 0;		// The last lag samples are never the earlier sample of a pair
+		for (int k = 0; k < lag; k++)
+		{
+			headSum += _first[k];
+			tailSum += _recent[(int)((n - 1 - k) % _maxLag)];
+		}
+		double laterSum = _streamSum - headSum;
+		double earlierSum = _streamSum - tailSum;
+		return _lagProducts[lag] - mean * (laterSum + earlierSum) + (n - lag) * mean * mean;
+	}
+
+
+	// P-squared estimator of a single quantile
+	protected static class P2Quantile
+	{
+		protected final double _p;
+		protected final double[] _heights = new double[5];
+		protected final double[] _positions = new double[5];
+		protected final double[] _desiredPositions = new double[5];
+		protected final double[] _increments = new double[5];
+		protected long _count = 0;
+
+		public P2Quantile(double p)
+		{
+			_p = p;
+			_desiredPositions[0] = 0; _desiredPositions[1] = 2 * p; _desiredPositions[2] = 4 * p; _desiredPositions[3] = 2 + 2 * p; _desiredPositions[4] = 4;
+			_increments[0] = 0; _increments[1] = p / 2; _increments[2] = p; _increments[3] = (1 + p) / 2; _increments[4] = 1;
+			for (int i = 0; i < 5; i++)
+				_positions[i] = i;
+		}
+
+		public long getCount() {return _count;}
+
+		public void add(double x)
+		{
+			if (_count < 5)
+			{
+				_heights[(int)_count++] = x;
+				if (_count == 5)
+					Arrays.sort(_heights);
+				return;
+			}
+			_count++;
+
+			int cell;
+			if (x < _heights[0])
+			{
+				_heights[0] = x;
+				cell = 0;
+			}
+			else if (x >= _heights[4])
+			{
+				_heights[4] = x;
+				cell = 3;
+			}
+			else
+			{
+				cell = 0;
+				while (x >= _heights[cell + 1])
+					cell++;
+			}
+			for (int i = cell + 1; i < 5; i++)
+				_positions[i]++;
+			for (int i = 0; i < 5; i++)
+				_desiredPositions[i] += _increments[i];
+
+			// Adjust the middle markers if they have drifted from their desired positions
+			for (int i = 1; i < 4; i++)
+			{
+				double d = _desiredPositions[i] - _positions[i];
+				if ((d >= 1 && _positions[i + 1] - _positions[i] > 1) || (d <= -1 && _positions[i - 1] - _positions[i] < -1))
+				{
+					int sign = (d > 0) ? 1 : -1;
+					double height = parabolic(i, sign);
+					if (!(_heights[i - 1] < height && height < _heights[i + 1]))
+						height = _heights[i] + sign * (_heights[i + sign] - _heights[i]) / (_positions[i + sign] - _positions[i]);
+					_heights[i] = height;
+					_positions[i] += sign;
+				}
+			}
+		}
+
+		public double getEstimate()
+		{
+			if (_count == 0)
+				return Double.NaN;
+			if (_count < 5)
+			{
+				double[] values = Arrays.copyOf(_heights, (int)_count);
+				Arrays.sort(values);
+				int index = (int)Math.round(_p * (_count - 1));
+				return values[index];
+			}
+			return _heights[2];
+		}
+
+		protected double parabolic(int i, int sign)
+		{
+			double[] q = _heights;
+			double[] n = _positions;
+			return q[i] + sign / (n[i + 1] - n[i - 1]) *
+				((n[i] - n[i - 1] + sign) * (q[i + 1] - q[i]) / (n[i + 1] - n[i]) +
+				 (n[i + 1] - n[i] - sign) * (q[i] - q[i - 1]) / (n[i] - n[i - 1]));
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs.sampleStorage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+import com.analog.lyric.dimple.model.DimpleException;
+
+/*
+ * Memory budget shared by the sample buffers of a graph.  Buffers store samples in
+ * fixed-size chunks; while the chunks held in memory by all of the buffers exceed the
+ * memory limit, each buffer moves its full chunks to a temporary file when it starts a new
+ * chunk.  Spilled chunks are read back through memory-mapped views of the file.  The file
+ * is deleted once all of the chunks written to it have been released.
+ *
+ * Buffers may belong to chains that are run on different threads, so all methods are synchronized.
+ */
+public class SampleStorage
+{
+	public static final int CHUNK_LENGTH = 1024;						// Number of longs in each chunk
+	public static final int CHUNK_BYTES = CHUNK_LENGTH * 8;
+
+	protected long _memoryLimit;
+	protected long _memoryInUse = 0;
+	protected File _file;
+	protected RandomAccessFile _randomAccessFile;
+	protected FileChannel _channel;
+	protected long _fileLength = 0;
+	protected int _numSpilledChunks = 0;
+	protected ByteBuffer _writeBuffer;
+
+	public SampleStorage()
+	{
+		this(Long.MAX_VALUE);
+	}
+	public SampleStorage(long memoryLimit)
+	{
+		setMemoryLimit(memoryLimit);
+	}
+
+	public synchronized void setMemoryLimit(long memoryLimit)
+	{
+		if (memoryLimit < 0)
+			throw new DimpleException("Memory limit must be non-negative");
+		_memoryLimit = memoryLimit;
+	}
+	public synchronized long getMemoryLimit() {return _memoryLimit;}
+	public synchronized long getMemoryInUse() {return _memoryInUse;}
+	public synchronized long getSpilledBytes() {return (long)_numSpilledChunks * CHUNK_BYTES;}
+
+	// Accounts for a newly allocated chunk; returns true if the budget is now exceeded
+	synchronized boolean allocateChunk()
+	{
+		_memoryInUse += CHUNK_BYTES;
+		return _memoryInUse > _memoryLimit;
+	}
+
+	synchronized void releaseChunks(int numInMemory, int numSpilled)
+	{
+		_memoryInUse -= (long)numInMemory * CHUNK_BYTES;
+		_numSpilledChunks -= numSpilled;
+		if (_numSpilledChunks == 0 && _channel != null)
+			closeFile();
+	}
+
+	// Writes a chunk to the end of the file and releases its memory; returns its position in the file
+	synchronized long spill(long[] chunk)
+	{
+		try
+		{
+			if (_channel == null)
+			{
+				_file = File.createTempFile("dimpleSamples", ".tmp");
+				_file.deleteOnExit();
+				_randomAccessFile = new RandomAccessFile(_file, "rw");
+				_channel = _randomAccessFile.getChannel();
+				_fileLength = 0;
+				if (_writeBuffer == null)
+					_writeBuffer = ByteBuffer.allocateDirect(CHUNK_BYTES);
+			}
+
+			_writeBuffer.clear();
+			_writeBuffer.asLongBuffer().put(chunk);
+			long position = _fileLength;
+			while (_writeBuffer.hasRemaining())
+				_channel.write(_writeBuffer, position + _writeBuffer.position());
+			_fileLength += CHUNK_BYTES;
+			_memoryInUse -= CHUNK_BYTES;
+			_numSpilledChunks++;
+			return position;
+		}
+		catch (IOException e)
+		{
+			throw new DimpleException("Unable to write samples to temporary file: " + e.getMessage());
+		}
+	}
+
+	synchronized LongBuffer map(long position)
+	{
+		try
+		{
+			return _channel.map(FileChannel.MapMode.READ_ONLY, position, CHUNK_BYTES).asLongBuffer();
+		}
+		catch (IOException e)
+		{
+			throw new DimpleException("Unable to read samples from temporary file: " + e.getMessage());
+		}
+	}
+
+	protected void closeFile()
+	{
+		try
+		{
+			_channel.close();
+			_randomAccessFile.close();
+		}
+		catch (IOException e)
+		{
+			// Nothing more can be done, and the file is deleted on exit anyway
+		}
+		_file.delete();
+		_channel = null;
+		_randomAccessFile = null;
+		_file = null;
+		_fileLength = 0;
+	}
+}
@@ -16,7 +16,10 @@
 
 package com.analog.lyric.dimple.solvers.gibbs.samplers;
 
+import org.apache.commons.math.random.RandomGenerator;
+
+// The random number stream is fetched once per update by the caller and passed in, rather than looked up per draw
 public interface IRealSampler
 {
-	public double nextSample(double currentSampleValue, ISampleScorer sampleScorer);
+	public double nextSample(double currentSampleValue, ISampleScorer sampleScorer, RandomGenerator rand);
 }
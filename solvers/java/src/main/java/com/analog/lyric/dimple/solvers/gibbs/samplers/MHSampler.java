@@ -16,7 +16,8 @@
 
 package com.analog.lyric.dimple.solvers.gibbs.samplers;
 
-import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
+import org.apache.commons.math.random.RandomGenerator;
+
 import com.analog.lyric.dimple.solvers.core.proposalKernels.DefaultProposalKernel;
 import com.analog.lyric.dimple.solvers.core.proposalKernels.IProposalKernel;
 import com.analog.lyric.dimple.solvers.core.proposalKernels.Proposal;
@@ -27,9 +28,9 @@ public class MHSampler implements IRealSampler
 	protected IProposalKernel _proposalKernel = new DefaultProposalKernel();
 
 	@Override
-	public double nextSample(double currentSampleValue, ISampleScorer sampleScorer)
+	public double nextSample(double currentSampleValue, ISampleScorer sampleScorer, RandomGenerator rand)
 	{
-		Proposal proposal = _proposalKernel.next(currentSampleValue);
+		Proposal proposal = _proposalKernel.next(currentSampleValue, rand);
 		double proposalValue = (Double)proposal.value;
 
 		// Get the potential for the current sample value
@@ -41,7 +42,7 @@ public class MHSampler implements IRealSampler
 
 		// Accept or reject
 		double rejectionThreshold = Math.exp(LPrevious - LProposed + proposal.hastingsTerm);
-		if (SolverRandomGenerator.rand.nextDouble() < rejectionThreshold)
+		if (rand.nextDouble() < rejectionThreshold)
 			return proposalValue;		// Accept
 		else
 			return currentSampleValue;	// Reject
@@ -16,7 +16,7 @@
 
 package com.analog.lyric.dimple.solvers.gibbs.samplers;
 
-import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
+import org.apache.commons.math.random.RandomGenerator;
 
 
 public class SliceSampler implements IRealSampler
@@ -25,26 +25,26 @@ public class SliceSampler implements IRealSampler
 	private double _maximumDoublings = 10;	// Default value
 	
 	@Override
-	public double nextSample(double currentSampleValue, ISampleScorer sampleScorer)
+	public double nextSample(double currentSampleValue, ISampleScorer sampleScorer, RandomGenerator rand)
 	{
-		double y = sampleVerticalSlice(sampleScorer);
-		double x = sampleHorizontalSlice(currentSampleValue, y, sampleScorer);
+		double y = sampleVerticalSlice(sampleScorer, rand);
+		double x = sampleHorizontalSlice(currentSampleValue, y, sampleScorer, rand);
 		return x;
 	}
 
 	// Sample vertical slice in log domain
 	// In probability domain this would be uniform from 0 to the value at the current horizontal location (in probability representation)
-	public double sampleVerticalSlice(ISampleScorer sampleScorer)
+	public double sampleVerticalSlice(ISampleScorer sampleScorer, RandomGenerator rand)
 	{
 		double yValue = sampleScorer.getCurrentSampleScore();
-		return yValue - Math.log(SolverRandomGenerator.rand.nextDouble());
+		return yValue - Math.log(rand.nextDouble());
 	}
 
 	// Sample horizontal slice using doubling method
-	public double sampleHorizontalSlice(double x, double y, ISampleScorer sampleScorer)
+	public double sampleHorizontalSlice(double x, double y, ISampleScorer sampleScorer, RandomGenerator rand)
 	{
 		// First finding slice using doubling method
-		double L = x - _initialSliceWidth * SolverRandomGenerator.rand.nextDouble();
+		double L = x - _initialSliceWidth * rand.nextDouble();
 		double R = L + _initialSliceWidth;
 		double fL = sampleScorer.getSampleScore(L);
 		double fR = sampleScorer.getSampleScore(R);
@@ -52,7 +52,7 @@ public class SliceSampler implements IRealSampler
 		{
 			if (y <= fL && y <= fR)
 				break;
-			if (SolverRandomGenerator.rand.nextBoolean())	// Flip a coin
+			if (rand.nextBoolean())	// Flip a coin
 			{
 				L -= (R - L);
 				fL = sampleScorer.getSampleScore(L);
@@ -70,7 +70,7 @@ public class SliceSampler implements IRealSampler
 		double Rs = R;
 		while (true)
 		{
-			xSample = Ls + (Rs - Ls) * SolverRandomGenerator.rand.nextDouble();
+			xSample = Ls + (Rs - Ls) * rand.nextDouble();
 			double fSample = sampleScorer.getSampleScore(xSample);
 			
 			if (y >= fSample && accept(xSample, x, y, L, R, sampleScorer))
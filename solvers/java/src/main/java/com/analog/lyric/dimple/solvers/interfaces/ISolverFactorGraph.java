@@ -56,6 +56,13 @@ public interface ISolverFactorGraph extends ISolverNode
 	public void postAddFactor(Factor f);
 	public void postSetSolverFactory();
 	
+	/**
+	 * Releases resources held by the solver graph, such as worker threads. Called when
+	 * the solver graph is being replaced by another. The solver graph should not be
+	 * used after this is called.
+	 */
+	public void dispose();
+	
 	/**
 	 * Returns the name of a solver-specific MATLAB wrapper function that should be invoked from
 	 * MATLAB to do the solve. The value or existence of the function is allowed to change depending
@@ -335,6 +335,13 @@ public class SFactorGraph extends SFactorGraphBase
 		return _lpSolverName.isEmpty() || _lpSolverName.equalsIgnoreCase("matlab");
 	}
 	
+	// The linear program is solved directly, not by iterating
+	@Override
+	protected boolean supportsConvergenceMonitor()
+	{
+		return false;
+	}
+	
 	@Override
 	public void iterate(int numIters)
 	{
@@ -55,6 +55,7 @@ public class SFactorGraph extends SFactorGraphBase
 	@Override
 	public void initialize() 
 	{
+		super.initialize();
 	}
 
 	@Override
@@ -20,19 +20,17 @@ import java.util.Arrays;
 
 import com.analog.lyric.dimple.model.DiscreteDomain;
 import com.analog.lyric.dimple.model.VariableBase;
-import com.analog.lyric.dimple.solvers.core.SDiscreteVariableBase;
+import com.analog.lyric.dimple.solvers.core.SDiscreteVariableDoubleArray;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
 
 
-public class SVariable extends SDiscreteVariableBase
+public class SVariable extends SDiscreteVariableDoubleArray
 {
 	/*
 	 * We cache all of the double arrays we use during the update.  This saves
 	 * time when performing the update.
 	 */
-	protected double[][] _inPortMsgs = new double[0][];
-	protected double[][] _outMsgArray = new double[0][];
 	protected double[][] _savedOutMsgArray = new double[0][];
 	protected double[] _dampingParams = new double[0];
 	protected double[] _input;
@@ -44,6 +42,12 @@ public class SVariable extends SDiscreteVariableBase
 		super(var);
 	}
 
+	@Override
+	protected double getInitialMessageValue()
+	{
+		return 0;
+	}
+
 	@Override
 	public void updateEdge(int outPortNum)
 	{
@@ -240,60 +244,27 @@ public class SVariable extends SDiscreteVariableBase
 	@Override
 	public Object [] createMessages(ISolverFactor factor)
 	{
+		Object [] messages = super.createMessages(factor);
 		int portNum = _var.getPortNum(factor.getModelObject());
-		int newArraySize = Math.max(_inPortMsgs.length,portNum + 1);
-		
+		int newArraySize = _inPortMsgs.length;
 		
-		_inPortMsgs = Arrays.copyOf(_inPortMsgs, newArraySize);
-		_outMsgArray = Arrays.copyOf(_outMsgArray,newArraySize);
 		if (_dampingInUse)
 		{
 			_savedOutMsgArray = Arrays.copyOf(_savedOutMsgArray,newArraySize);
+			_savedOutMsgArray[portNum] = new double[_outMsgArray[portNum].length];
 		}
 
 		_dampingParams = Arrays.copyOf(_dampingParams,newArraySize);
 		
-		
-		_inPortMsgs[portNum] = createDefaultMessage();
-		_outMsgArray[portNum] = createDefaultMessage();
-		
-		if (_dampingInUse)
-			_savedOutMsgArray[portNum] = new double[_outMsgArray[portNum].length];
-		
-		return new Object [] {_inPortMsgs[portNum], _outMsgArray[portNum]};
-	}
-
-
-	public double [] createDefaultMessage()
-	{
-		int domainLength = ((DiscreteDomain)_var.getDomain()).size();
-		double[] retVal = new double[domainLength];
-		return (double[])resetInputMessage(retVal);
-	}
-
-
-	@Override
-	public Object resetInputMessage(Object message)
-	{
-		Arrays.fill((double[])message, 0);
-		return message;
-	}
-
-
-	@Override
-	public void resetEdgeMessages(int portNum)
-	{
-		_inPortMsgs[portNum] = (double[])resetInputMessage(_inPortMsgs[portNum]);
-		_outMsgArray[portNum] = (double[])resetOutputMessage(_outMsgArray[portNum]);
+		return messages;
 	}
 
 
 	@Override
 	public void moveMessages(ISolverNode other, int portNum, int otherPort)
 	{
+		super.moveMessages(other, portNum, otherPort);
 		SVariable sother = (SVariable)other;
-		_inPortMsgs[portNum] = sother._inPortMsgs[otherPort];
-		_outMsgArray[portNum]  = sother._outMsgArray[otherPort];
 		
 		if (_dampingInUse)
 			_savedOutMsgArray[portNum] = sother._savedOutMsgArray[otherPort];
@@ -301,25 +272,4 @@ public class SVariable extends SDiscreteVariableBase
 		_dampingParams[portNum] = sother._dampingParams[otherPort];
 		
 	}
-
-
-	@Override
-	public Object getInputMsg(int portIndex)
-	{
-		return _inPortMsgs[portIndex];
-	}
-
-	@Override
-	public Object getOutputMsg(int portIndex)
-	{
-		return _outMsgArray[portIndex];
-	}
-
-	@Override
-	public void setInputMsg(int portIndex, Object msg)
-	{
-		_inPortMsgs[portIndex] = (double[])msg;
-	}
-
-
 }
@@ -0,0 +1,110 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+package com.analog.lyric.dimple.solvers.minsumfloat;
+
+import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.solvers.core.STableFactorFloatArray;
+
+/*
+ * Min-sum table factor using the single-precision potentials of the factor table.  The
+ * potential of each table row plus its input messages is summed in double; rounding it to
+ * float before taking the minimum gives the same result as rounding the minimum.
+ */
+public class STableFactor extends STableFactorFloatArray
+{
+	public STableFactor(Factor factor)
+	{
+		super(factor);
+	}
+
+	@Override
+	public void updateEdge(int outPortNum)
+	{
+		int [][] table = getFactorTable().getIndices();
+		float [] values = getFactorTable().getFloatPotentials();
+		int tableLength = table.length;
+		int numPorts = _inputMsgs.length;
+		float [][] inputMsgs = _inputMsgs;
+		float [] outputMsgs = _outputMsgs[outPortNum];
+		
+		for (int i = 0; i < outputMsgs.length; i++)
+			outputMsgs[i] = Float.POSITIVE_INFINITY;
+		
+		for (int tableIndex = 0; tableIndex < tableLength; tableIndex++)
+		{
+			int [] tableRow = table[tableIndex];
+			double L = values[tableIndex];
+			for (int inPortNum = 0; inPortNum < numPorts; inPortNum++)
+				if (inPortNum != outPortNum)
+					L += inputMsgs[inPortNum][tableRow[inPortNum]];
+			
+			float value = (float)L;
+			int outputIndex = tableRow[outPortNum];
+			if (value < outputMsgs[outputIndex])
+				outputMsgs[outputIndex] = value;
+		}
+		
+		normalize(outputMsgs);
+	}
+
+	@Override
+	public void update()
+	{
+		int [][] table = getFactorTable().getIndices();
+		float [] values = getFactorTable().getFloatPotentials();
+		int tableLength = table.length;
+		int numPorts = _inputMsgs.length;
+		float [][] inputMsgs = _inputMsgs;
+		float [][] outputMsgs = _outputMsgs;
+		
+		for (int port = 0; port < numPorts; port++)
+			for (int i = 0; i < outputMsgs[port].length; i++)
+				outputMsgs[port][i] = Float.POSITIVE_INFINITY;
+		
+		for (int tableIndex = 0; tableIndex < tableLength; tableIndex++)
+		{
+			int [] tableRow = table[tableIndex];
+			
+			// Sum up the function value plus the messages on all ports
+			double L = values[tableIndex];
+			for (int port = 0; port < numPorts; port++)
+				L += inputMsgs[port][tableRow[port]];
+			
+			// Subtract out the message from each output port in turn
+			for (int outPortNum = 0; outPortNum < numPorts; outPortNum++)
+			{
+				int outputIndex = tableRow[outPortNum];
+				float value = (float)(L - inputMsgs[outPortNum][outputIndex]);
+				if (value < outputMsgs[outPortNum][outputIndex])
+					outputMsgs[outPortNum][outputIndex] = value;
+			}
+		}
+		
+		for (int port = 0; port < numPorts; port++)
+			normalize(outputMsgs[port]);
+	}
+
+	// Shifts the message so that its smallest value is zero
+	protected void normalize(float [] outputMsg)
+	{
+		float minVal = Float.POSITIVE_INFINITY;
+		for (int i = 0; i < outputMsg.length; i++)
+			if (outputMsg[i] < minVal)
+				minVal = outputMsg[i];
+		for (int i = 0; i < outputMsg.length; i++)
+			outputMsg[i] -= minVal;
+	}
+}
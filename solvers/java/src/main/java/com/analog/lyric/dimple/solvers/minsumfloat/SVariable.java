@@ -0,0 +1,142 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+package com.analog.lyric.dimple.solvers.minsumfloat;
+
+import com.analog.lyric.dimple.model.DiscreteDomain;
+import com.analog.lyric.dimple.model.VariableBase;
+import com.analog.lyric.dimple.solvers.core.SDiscreteVariableFloatArray;
+import com.analog.lyric.dimple.solvers.minsum.MessageConverter;
+
+/*
+ * Same update as the double-precision min-sum variable, with the sums of the incoming
+ * messages formed in double and only the min-normalized outputs rounded to float.
+ */
+public class SVariable extends SDiscreteVariableFloatArray
+{
+	protected double [] _input;
+	protected double [] _beliefs = new double[0];		// Scratch for update
+
+	public SVariable(VariableBase var)
+	{
+		super(var);
+	}
+
+	@Override
+	protected float getInitialMessageValue()
+	{
+		return 0;
+	}
+
+	@Override
+	public void setInputOrFixedValue(Object input, Object fixedValue, boolean hasFixedValue)
+	{
+		if (input == null)
+			_input = MessageConverter.initialValue(((DiscreteDomain)_var.getDomain()).size());
+		else
+			// Convert from probabilities since that's what the interface provides
+			_input = MessageConverter.fromProb((double[])input);
+	}
+
+	@Override
+	public double getScore()
+	{
+		return _input[getGuessIndex()];
+	}
+
+	@Override
+	public void updateEdge(int outPortNum)
+	{
+		double [] priors = _input;
+		int numPorts = _var.getSiblings().size();
+		int numValue = priors.length;
+		double [] sums = getBeliefs(numValue);
+		double minPotential = Double.POSITIVE_INFINITY;
+		
+		for (int i = 0; i < numValue; i++)
+		{
+			double out = priors[i];
+			for (int port = 0; port < numPorts; port++)
+				if (port != outPortNum)
+					out += _inPortMsgs[port][i];
+			sums[i] = out;
+			if (out < minPotential)
+				minPotential = out;
+		}
+		
+		float [] outMsgs = _outMsgArray[outPortNum];
+		for (int i = 0; i < numValue; i++)
+			outMsgs[i] = (float)(sums[i] - minPotential);
+	}
+
+	@Override
+	public void update()
+	{
+		double [] priors = _input;
+		int numPorts = _var.getSiblings().size();
+		int numValue = priors.length;
+		double [] beliefs = getBeliefs(numValue);
+		
+		for (int i = 0; i < numValue; i++)
+		{
+			double sum = priors[i];
+			for (int port = 0; port < numPorts; port++)
+				sum += _inPortMsgs[port][i];
+			beliefs[i] = sum;
+		}
+		
+		for (int port = 0; port < numPorts; port++)
+		{
+			float [] inMsgs = _inPortMsgs[port];
+			float [] outMsgs = _outMsgArray[port];
+			double minPotential = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < numValue; i++)
+			{
+				double out = beliefs[i] - inMsgs[i];
+				if (out < minPotential)
+					minPotential = out;
+			}
+			for (int i = 0; i < numValue; i++)
+				outMsgs[i] = (float)(beliefs[i] - inMsgs[i] - minPotential);
+		}
+	}
+
+	@Override
+	public double [] getBelief()
+	{
+		double [] priors = _input;
+		int numValue = priors.length;
+		int numPorts = _var.getSiblings().size();
+		double [] outBelief = new double[numValue];
+		
+		for (int i = 0; i < numValue; i++)
+		{
+			double sum = priors[i];
+			for (int port = 0; port < numPorts; port++)
+				sum += _inPortMsgs[port][i];
+			outBelief[i] = sum;
+		}
+		
+		// Convert to probabilities since that's what the interface expects
+		return MessageConverter.toProb(outBelief);
+	}
+
+	private double [] getBeliefs(int length)
+	{
+		if (_beliefs.length < length)
+			_beliefs = new double[length];
+		return _beliefs;
+	}
+}
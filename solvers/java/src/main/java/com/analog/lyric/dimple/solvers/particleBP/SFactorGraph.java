@@ -16,12 +16,13 @@
 
 package com.analog.lyric.dimple.solvers.particleBP;
 
+import org.apache.commons.math.random.RandomGenerator;
+
 import com.analog.lyric.dimple.model.Factor;
 import com.analog.lyric.dimple.model.FactorGraph;
 import com.analog.lyric.dimple.model.VariableBase;
 import com.analog.lyric.dimple.model.VariableList;
 import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
-import com.analog.lyric.dimple.solvers.core.SolverRandomGenerator;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
 import com.analog.lyric.dimple.solvers.sumproduct.STableFactor;
@@ -98,6 +99,13 @@ public class SFactorGraph extends SFactorGraphBase
 		if (_temper) setTemperature(_initialTemperature);
 	}
 	
+	// The particles are resampled between iterations, and iterate() doesn't use the convergence monitor
+	@Override
+	protected boolean supportsConvergenceMonitor()
+	{
+		return false;
+	}
+	
 	@Override
 	public void iterate(int numIters) 
 	{
@@ -108,11 +116,20 @@ public class SFactorGraph extends SFactorGraphBase
 		{
 			if (--iterationsBeforeResampling <= 0)
 			{
-				for (VariableBase v : vars)
+				// Resample using this graph's random number stream
+				RandomGenerator previousRandom = bindRandom();
+				try
 				{
-					ISolverVariable vs = v.getSolver();
-					if (vs instanceof SRealVariable)
-						((SRealVariable)vs).resample();	
+					for (VariableBase v : vars)
+					{
+						ISolverVariable vs = v.getSolver();
+						if (vs instanceof SRealVariable)
+							((SRealVariable)vs).resample();	
+					}
+				}
+				finally
+				{
+					unbindRandom(previousRandom);
 				}
 				iterationsBeforeResampling = _numIterationsBetweenResampling;
 			}
@@ -164,12 +181,6 @@ public class SFactorGraph extends SFactorGraphBase
 	}
 	public double getTemperature() {return _temperature;}
 	
-	// Sets the random seed for the Particle BP solver.  This allows runs of the solver to be repeatable.
-	public void setSeed(long seed)
-	{
-		SolverRandomGenerator.rand.setSeed(seed);
-	}
-	
 
 	// Set the number of particle values globally for all real variables
 	public void setNumParticles(int numParticles)
@@ -35,6 +35,9 @@ public class SRealFactor extends SFactorBase
 	protected double [][] _outMsgArray;
 	protected Object[][] _variableDomains;
 	protected Object[] _variableValues;
+	protected double[] _realVariableValues;		// Used instead of _variableValues when _usePrimitiveEval is set
+	protected boolean _usePrimitiveEval;		// All neighbors are real and the factor function can evaluate them without boxing
+	protected double[] _scratch;				// Passed to the factor function, so it needn't find temporary space per evaluation
 	protected int[] _variableIndices;
 	protected int[] _variableDomainLengths;
 	protected boolean[] _realVariable;
@@ -56,11 +59,14 @@ public class SRealFactor extends SFactorBase
 
         double marginal = 0;        
         initializeVariableCombinations();
-		_variableValues[outPortIndex] = value;	// Use the specified value for the output port
+		if (_usePrimitiveEval)
+			_realVariableValues[outPortIndex] = value;	// Use the specified value for the output port
+		else
+			_variableValues[outPortIndex] = value;
         while (true)
         {
         	double prob = 1;
-			try {prob = factorFunction.eval(_variableValues);} catch (Exception e) {e.printStackTrace(); System.exit(1);}
+			try {prob = evalFactor(factorFunction);} catch (Exception e) {e.printStackTrace(); System.exit(1);}
 			if (_beta != 1) prob = Math.pow(prob, _beta);
 
         	for (int inPortNum = 0; inPortNum < _numPorts; inPortNum++)
@@ -90,7 +96,7 @@ public class SRealFactor extends SFactorBase
         while (true)
         {
         	double prob = 1;
-			try {prob = factorFunction.eval(_variableValues);} catch (Exception e) {e.printStackTrace(); System.exit(1);}
+			try {prob = evalFactor(factorFunction);} catch (Exception e) {e.printStackTrace(); System.exit(1);}
 			if (_beta != 1) prob = Math.pow(prob, _beta);
 
         	for (int inPortNum = 0; inPortNum < _numPorts; inPortNum++)
@@ -123,7 +129,7 @@ public class SRealFactor extends SFactorBase
 			while (true)
 			{
 				double prob = 1;
-				try {prob = factorFunction.eval(_variableValues);} catch (Exception e) {e.printStackTrace(); System.exit(1);}
+				try {prob = evalFactor(factorFunction);} catch (Exception e) {e.printStackTrace(); System.exit(1);}
 				if (_beta != 1) prob = Math.pow(prob, _beta);
 
 				for (int inPortNum = 0; inPortNum < _numPorts; inPortNum++)
@@ -144,13 +150,34 @@ public class SRealFactor extends SFactorBase
 	
 	
 	
+	protected double evalFactor(FactorFunction factorFunction)
+	{
+		if (_usePrimitiveEval)
+			return Math.exp(-factorFunction.evalEnergyWithScratch(_realVariableValues, _scratch));
+		else
+			return factorFunction.evalWithScratch(_variableValues, _scratch);
+	}
+	
 	protected void initializeVariableCombinations()
 	{
 		_moreCombinations = true;
 		for (int iPort = 0; iPort < _numPorts; iPort++)
-		{
 			_variableIndices[iPort] = 0;
-			_variableValues[iPort] = _variableDomains[iPort][0];
+		updateVariableValues();
+	}
+	
+	// Get values for the current indices
+	protected void updateVariableValues()
+	{
+		if (_usePrimitiveEval)
+		{
+			for (int i = 0; i < _numPorts; i++)
+				_realVariableValues[i] = (Double)_variableDomains[i][_variableIndices[i]];
+		}
+		else
+		{
+			for (int i = 0; i < _numPorts; i++)
+				_variableValues[i] = _variableDomains[i][_variableIndices[i]];
 		}
 	}
 	
@@ -178,9 +205,7 @@ public class SRealFactor extends SFactorBase
 		}
 		
 		// Get values for indices
-		for (int i = 0; i < _numPorts; i++)
-			_variableValues[i] =_variableDomains[i][_variableIndices[i]];
-		
+		updateVariableValues();
 	}
 	
 	
@@ -212,9 +237,11 @@ public class SRealFactor extends SFactorBase
 		}
 		
 		// Get values for indices
-		for (int i = 0; i < _numPorts; i++)
-			_variableValues[i] =_variableDomains[i][_variableIndices[i]];
-		_variableValues[exceptionIndex] = exceptionValue;
+		updateVariableValues();
+		if (_usePrimitiveEval)
+			_realVariableValues[exceptionIndex] = exceptionValue;
+		else
+			_variableValues[exceptionIndex] = exceptionValue;
 	}
 	
 	
@@ -240,6 +267,7 @@ public class SRealFactor extends SFactorBase
 		_variableIndices = new int[_numPorts];
 		_variableDomainLengths = new int[_numPorts];
 		_realVariable = new boolean[_numPorts];
+		_usePrimitiveEval = _factor.getFactorFunction().hasPrimitiveEvalEnergy();
 
 		
 		for (int iPort = 0; iPort < _numPorts; iPort++)
@@ -257,6 +285,7 @@ public class SRealFactor extends SFactorBase
 	    	}
 	    	else
 	    	{
+	    		_usePrimitiveEval = false;
 	    		_realVariable[iPort] = true;
 	    		_variableDomains[iPort] = ((Discrete)var).getDiscreteDomain().getElements();
 	    		_inPortMsgs[iPort] = (double[])messages[1];
@@ -265,6 +294,8 @@ public class SRealFactor extends SFactorBase
     		_outMsgArray[iPort] = (double[])messages[0];
 	    	_variableDomainLengths[iPort] = _variableDomains[iPort].length;
 	    }
+		_realVariableValues = _usePrimitiveEval ? new double[_numPorts] : null;
+		_scratch = new double[_factor.getFactorFunction().getScratchLength(_numPorts)];
 	}
 
 
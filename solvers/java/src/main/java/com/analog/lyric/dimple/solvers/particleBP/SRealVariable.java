@@ -18,6 +18,8 @@ package com.analog.lyric.dimple.solvers.particleBP;
 
 import java.util.Arrays;
 
+import org.apache.commons.math.random.RandomGenerator;
+
 import com.analog.lyric.dimple.FactorFunctions.core.FactorFunction;
 import com.analog.lyric.dimple.model.DimpleException;
 import com.analog.lyric.dimple.model.Factor;
@@ -43,6 +45,7 @@ public class SRealVariable extends SRealVariableBase
 	protected double _initialParticleMax = 0;
 	protected boolean _initialParticleRangeSet = false;
 	protected FactorFunction _input;
+	protected final double[] _inputArgument = new double[1];	// Reused to avoid boxing when evaluating the input
 	protected RealDomain _domain;
 	double[][] _inPortMsgs = new double[0][];
 	double[][] _logInPortMsgs = new double[0][];
@@ -77,7 +80,7 @@ public class SRealVariable extends SRealVariableBase
 		{
 			double prior = 1;
 			if (_input != null)
-				try {prior = _input.eval(new Object[]{_particleValues[m]});} catch (Exception e) {e.printStackTrace(); System.exit(1);}
+				try {prior = getInputValue(_particleValues[m]);} catch (Exception e) {e.printStackTrace(); System.exit(1);}
 				double out = (prior == 0) ? minLog : Math.log(prior) * _beta;
 
 				for (int d = 0; d < D; d++)
@@ -124,7 +127,7 @@ public class SRealVariable extends SRealVariableBase
 		{
 			double prior = 1;
 			if (_input != null)
-				try {prior = _input.eval(new Object[]{_particleValues[m]});} catch (Exception e) {e.printStackTrace(); System.exit(1);}
+				try {prior = getInputValue(_particleValues[m]);} catch (Exception e) {e.printStackTrace(); System.exit(1);}
 				double alpha = (prior == 0) ? minLog : Math.log(prior) * _beta;
 
 				for (int d = 0; d < D; d++)
@@ -179,6 +182,7 @@ public class SRealVariable extends SRealVariableBase
 
 	public void resample()
 	{
+		RandomGenerator rand = SolverRandomGenerator.getCurrent();
 		int numPorts = _var.getSiblings().size();
 		double _lowerBound = _domain.getLowerBound();
 		double _upperBound = _domain.getUpperBound();
@@ -196,7 +200,7 @@ public class SRealVariable extends SRealVariableBase
 			// Start with the potential for the current particle value
 			if (_input != null)
 				try {
-					potential = -Math.log(_input.eval(new Object[]{sampleValue})) * _beta;
+					potential = -Math.log(getInputValue(sampleValue)) * _beta;
 				} 
 				catch (Exception e) 
 				{
@@ -223,7 +227,7 @@ public class SRealVariable extends SRealVariableBase
 			// Now repeat resampling this sample
 			for (int update = 0; update < _resamplingUpdatesPerSample; update++)
 			{
-				Proposal proposal = _proposalKernel.next(sampleValue);
+				Proposal proposal = _proposalKernel.next(sampleValue, rand);
 				double proposalValue = (Double)proposal.value;
 
 				// If outside the bounds, then reject
@@ -233,7 +237,7 @@ public class SRealVariable extends SRealVariableBase
 				// Sum up the potentials from the input and all connected factors
 				potentialProposed = 0;
 				if (_input != null)
-					try {potentialProposed = -Math.log(_input.eval(new Object[]{proposalValue})) * _beta;} catch (Exception e) {e.printStackTrace(); System.exit(1);}
+					try {potentialProposed = -Math.log(getInputValue(proposalValue)) * _beta;} catch (Exception e) {e.printStackTrace(); System.exit(1);}
 
 					for (int portIndex = 0; portIndex < numPorts; portIndex++)
 					{
@@ -247,7 +251,7 @@ public class SRealVariable extends SRealVariableBase
 
 					// Accept or reject
 					double rejectionThreshold = Math.exp(potential - potentialProposed + proposal.hastingsTerm);
-					if (SolverRandomGenerator.rand.nextDouble() < rejectionThreshold)
+					if (rand.nextDouble() < rejectionThreshold)
 					{
 						sampleValue = proposalValue;
 						potential = potentialProposed;
@@ -294,7 +298,7 @@ public class SRealVariable extends SRealVariableBase
 		{
 			double prior = 1;
 			if (_input != null)
-				prior = _input.eval(new Object[]{_particleValues[m]});
+				prior = getInputValue(_particleValues[m]);
 			double out = (prior == 0) ? minLog : Math.log(prior) * _beta;
 
 			for (int d = 0; d < D; d++)
@@ -342,7 +346,7 @@ public class SRealVariable extends SRealVariableBase
 			double value = valueSet[m];
 			double prior = 1;
 			if (_input != null)
-				prior = _input.eval(new Object[]{value});
+				prior = getInputValue(value);
 			double out = (prior == 0) ? minLog : Math.log(prior) * _beta;
 
 			for (int d = 0; d < D; d++)
@@ -442,6 +446,18 @@ public class SRealVariable extends SRealVariableBase
 			_input = (FactorFunction)input;
 	}
 
+	// Evaluates the input at the given value, without boxing if the factor function supports it
+	protected final double getInputValue(double value)
+	{
+		if (_input.hasPrimitiveEvalEnergy())
+		{
+			_inputArgument[0] = value;
+			return Math.exp(-_input.evalEnergy(_inputArgument));
+		}
+		else
+			return _input.eval(value);
+	}
+
 	public double getScore()
 	{
 		if (_guessWasSet)
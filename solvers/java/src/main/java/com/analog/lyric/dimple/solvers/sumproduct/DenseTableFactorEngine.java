@@ -0,0 +1,240 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct;
+
+import java.util.Arrays;
+
+import com.analog.lyric.dimple.FactorFunctions.core.FactorTable;
+import com.analog.lyric.dimple.model.DiscreteDomain;
+
+/*
+ * Sum-product update logic for factor tables that are dense, or nearly so.
+ *
+ * The table is viewed as a flat tensor over the Cartesian product of the
+ * variable domains, with the first port varying fastest.  Rather than
+ * looping over the table once per output port, update() visits each
+ * tensor entry once and produces the contribution to every output
+ * message from a running prefix product (ports before the output) and a
+ * cached suffix product (ports after the output).  The suffix products
+ * only need to be recomputed for the ports whose index changed when the
+ * tensor counter advanced, so a full update costs O(numPorts * tableSize)
+ * rather than O(numPorts^2 * tableSize).
+ *
+ * Weights are read from the factor table on every update, so in-place
+ * weight changes are picked up.  The tensor layout is rebuilt whenever the
+ * table's indices are replaced.
+ */
+public class DenseTableFactorEngine extends TableFactorEngine
+{
+	// Minimum ratio of table rows to tensor entries for a table to be treated as dense
+	public static final double DENSITY_THRESHOLD = 0.5;
+
+	// Maximum number of tensor entries; larger tables always use the sparse engine
+	public static final int MAX_TENSOR_SIZE = 1 << 24;
+
+	private int [][] _tableIndices = null;		// Indices from which the tensor was built
+	private int [] _tensor2weightIndex;			// Weight index for each tensor entry, or -1 if not in the table
+	private int [] _domainSizes;
+	private int [] _counter;
+	private double [] _suffixProducts;
+
+	public DenseTableFactorEngine(STableFactor tableFactor)
+	{
+		super(tableFactor);
+	}
+
+	// Returns true if the table is dense enough for this engine to be worthwhile
+	public static boolean isDenseEnough(FactorTable table)
+	{
+		long tensorSize = getTensorSize(table.getDomains());
+		if (tensorSize > MAX_TENSOR_SIZE)
+			return false;
+
+		return table.getRows() >= DENSITY_THRESHOLD * tensorSize;
+	}
+
+	private static long getTensorSize(DiscreteDomain [] domains)
+	{
+		long size = 1;
+		for (int i = 0; i < domains.length; i++)
+		{
+			size *= domains[i].size();
+			if (size > Integer.MAX_VALUE)
+				return size;
+		}
+		return size;
+	}
+
+	private void initTensor()
+	{
+		FactorTable table = _tableFactor.getFactorTable();
+		int [][] indices = table.getIndices();
+
+		if (indices == _tableIndices)
+			return;
+
+		DiscreteDomain [] domains = table.getDomains();
+		int numPorts = domains.length;
+
+		_domainSizes = new int[numPorts];
+		int [] offsets = new int[numPorts];
+		int size = 1;
+		for (int i = 0; i < numPorts; i++)
+		{
+			offsets[i] = size;
+			_domainSizes[i] = domains[i].size();
+			size *= _domainSizes[i];
+		}
+
+		_tensor2weightIndex = new int[size];
+		Arrays.fill(_tensor2weightIndex, -1);
+		for (int row = 0; row < indices.length; row++)
+		{
+			int[] tableRow = indices[row];
+			int tensorIndex = 0;
+			for (int i = 0; i < numPorts; i++)
+				tensorIndex += tableRow[i] * offsets[i];
+			_tensor2weightIndex[tensorIndex] = row;
+		}
+
+		_counter = new int[numPorts];
+		_suffixProducts = new double[numPorts + 1];
+		_tableIndices = indices;
+	}
+
+	// Advance the tensor counter by one, returning the highest port whose index changed,
+	// or numPorts if the counter has wrapped around.
+	private int advanceCounter()
+	{
+		int [] counter = _counter;
+		int [] domainSizes = _domainSizes;
+		int numPorts = counter.length;
+
+		int port = 0;
+		while (port < numPorts && ++counter[port] == domainSizes[port])
+		{
+			counter[port] = 0;
+			port++;
+		}
+		return port;
+	}
+
+	// Recompute the suffix products for all ports at or below the given port
+	private void updateSuffixProducts(int highestChangedPort, double [][] inMsgs)
+	{
+		double [] suffix = _suffixProducts;
+		int [] counter = _counter;
+		for (int i = highestChangedPort; i >= 0; i--)
+			suffix[i] = suffix[i + 1] * inMsgs[i][counter[i]];
+	}
+
+	@Override
+	public void updateEdge(int outPortNum)
+	{
+		initTensor();
+
+		double[] values = _tableFactor.getFactorTable().getWeights();
+		double [][] inMsgs = _tableFactor.getInPortMsgs();
+		double[] outputMsgs = _tableFactor.getOutPortMsgs()[outPortNum];
+		int [] tensor2weightIndex = _tensor2weightIndex;
+		int [] counter = _counter;
+		double [] suffix = _suffixProducts;
+		int numPorts = counter.length;
+		int tensorSize = tensor2weightIndex.length;
+
+		saveForDamping(outPortNum);
+		Arrays.fill(outputMsgs, 0);
+
+		Arrays.fill(counter, 0);
+		suffix[numPorts] = 1;
+		updateSuffixProducts(numPorts - 1, inMsgs);
+
+		for (int tensorIndex = 0; tensorIndex < tensorSize; tensorIndex++)
+		{
+			int weightIndex = tensor2weightIndex[tensorIndex];
+			if (weightIndex >= 0)
+			{
+				double prob = values[weightIndex];
+				if (prob != 0)
+				{
+					for (int inPortNum = 0; inPortNum < outPortNum; inPortNum++)
+						prob *= inMsgs[inPortNum][counter[inPortNum]];
+					outputMsgs[counter[outPortNum]] += prob * suffix[outPortNum + 1];
+				}
+			}
+
+			int changedPort = advanceCounter();
+			if (changedPort < numPorts)
+				updateSuffixProducts(changedPort, inMsgs);
+		}
+
+		normalizeAndDamp(outPortNum, "UpdateEdge");
+	}
+
+	@Override
+	public void update()
+	{
+		initTensor();
+
+		double[] values = _tableFactor.getFactorTable().getWeights();
+	    double [][] outMsgs = _tableFactor.getOutPortMsgs();
+	    double [][] inMsgs = _tableFactor.getInPortMsgs();
+		int [] tensor2weightIndex = _tensor2weightIndex;
+		int [] counter = _counter;
+		double [] suffix = _suffixProducts;
+		int numPorts = counter.length;
+		int tensorSize = tensor2weightIndex.length;
+
+	    for (int outPortNum = 0; outPortNum < numPorts; outPortNum++)
+	    {
+	    	saveForDamping(outPortNum);
+	    	Arrays.fill(outMsgs[outPortNum], 0);
+	    }
+
+		Arrays.fill(counter, 0);
+		suffix[numPorts] = 1;
+		updateSuffixProducts(numPorts - 1, inMsgs);
+
+		for (int tensorIndex = 0; tensorIndex < tensorSize; tensorIndex++)
+		{
+			int weightIndex = tensor2weightIndex[tensorIndex];
+			if (weightIndex >= 0)
+			{
+				double prefix = values[weightIndex];
+				if (prefix != 0)
+				{
+					// The message for each port is the product of the weight, the
+					// inputs on the lower ports (prefix) and the inputs on the higher
+					// ports (suffix).
+					for (int port = 0; port < numPorts; port++)
+					{
+						int index = counter[port];
+						outMsgs[port][index] += prefix * suffix[port + 1];
+						prefix *= inMsgs[port][index];
+					}
+				}
+			}
+
+			int changedPort = advanceCounter();
+			if (changedPort < numPorts)
+				updateSuffixProducts(changedPort, inMsgs);
+		}
+
+	    for (int outPortNum = 0; outPortNum < numPorts; outPortNum++)
+	    	normalizeAndDamp(outPortNum, "Update");
+	}
+}
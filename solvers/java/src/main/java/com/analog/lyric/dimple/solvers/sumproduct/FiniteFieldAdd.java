@@ -16,117 +16,250 @@
 
 package com.analog.lyric.dimple.solvers.sumproduct;
 
+import com.analog.lyric.dimple.FactorFunctions.Xor;
 import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.Discrete;
+import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.model.INode;
 
 
-
+/*
+ * Parity check over GF(2^n): the sum (bitwise XOR) of all of the connected variables is zero.
+ * Any number of variables may be connected, and each must have a domain of 2^n elements
+ * in which the index of each element is its value. This serves for finiteFieldAdd, the
+ * customXor factor, and the Xor factor function on binary variables.
+ *
+ * Messages are computed in the Walsh-Hadamard transform domain, where the XOR constraint
+ * becomes a point-wise product. Each output message is the product of the transforms of
+ * all of the other input messages, found from prefix and suffix products so that no
+ * division is needed. For binary variables, this reduces to the tanh rule on the difference
+ * between the two probabilities. No memory is allocated during an update.
+ */
 public class FiniteFieldAdd extends FiniteFieldFactor
 {
-	
-	public FiniteFieldAdd(com.analog.lyric.dimple.model.Factor factor) 
+	protected int _numPorts;
+	protected int _domainLength;
+	protected double [][] _transforms;		// Transform of each input message
+	protected double [][] _suffixProducts;	// Product of the transforms of inputs [i, numPorts)
+	protected double [] _prefixProduct;
+	protected double [] _differences;		// For binary variables, p(0) - p(1) of each normalized input
+	protected double [] _suffixDifferences;
+
+	public FiniteFieldAdd(Factor factor)
 	{
 		super(factor);
-		
-		if (factor.getPorts().size() != 3)
-			throw new DimpleException("Only supports 3 arguments");
 
-	}	
+		_numPorts = factor.getSiblings().size();
+		_domainLength = -1;
+		for (INode node : factor.getSiblings())
+		{
+			if (!(node instanceof Discrete))
+				throw new DimpleException("Only supports discrete variables");
+			int length = ((Discrete)node).getDiscreteDomain().getElements().length;
+			if (_domainLength < 0)
+				_domainLength = length;
+			if (length != _domainLength || Integer.bitCount(length) != 1 || length < 2)
+				throw new DimpleException("All variables must have the same domain size, which must be a power of two");
+		}
+	}
 
-	public void updateEdge(int outPortNum) 
+	// True if the factor is an Xor of binary variables whose domains have the values 0 and 1 in that order
+	public static boolean isFactorCompatible(Factor factor)
 	{
-		double [] inputs1 = null;
-		double [] inputs2 = null;
-		double [] outputs = null;
-				
+		if (!(factor.getFactorFunction() instanceof Xor))
+			return false;
 
-		for (int i = 0; i < 3; i++)
+		for (INode node : factor.getSiblings())
 		{
-			if (outPortNum == i)
-			{
-				outputs = (double[])_outputMsgs[i];
-			}
-			else
+			if (!(node instanceof Discrete))
+				return false;
+			Object [] elements = ((Discrete)node).getDiscreteDomain().getElements();
+			if (elements.length != 2)
+				return false;
+			for (int i = 0; i < 2; i++)
 			{
-				if (inputs1 == null)
-					inputs1 = (double[])_inputMsgs[i];
+				Object element = elements[i];
+				if (element instanceof Boolean)
+				{
+					if ((Boolean)element != (i == 1))
+						return false;
+				}
+				else if (element instanceof Double || element instanceof Integer)
+				{
+					if (((Number)element).doubleValue() != i)
+						return false;
+				}
 				else
-					inputs2 = (double[])_inputMsgs[i];
+					return false;
 			}
 		}
+		return true;
+	}
 
-		inputs1 = inputs1.clone();
-		inputs2 = inputs2.clone();
-		
-		//TODO: fix this.
-		int n = (int) (Math.log(inputs1.length)/Math.log(2));
-
-		double [] tmp1 = new double[inputs1.length];
-		double [] tmp2 = new double[inputs2.length];
-		double [] tmp3 = new double[outputs.length];
 
-		//Fast hadamard input 1 probs
-		fast_hadamard(n,inputs1, tmp1);
-		fast_hadamard(n,inputs2, tmp2);
+	@Override
+	public void createMessages()
+	{
+		super.createMessages();
 
-		//Point-wise multiply values
-		for (int i = 0; i < outputs.length; i++)
+		if (_domainLength == 2)
 		{
-			tmp3[i] = tmp1[i]*tmp2[i];
+			_differences = new double[_numPorts];
+			_suffixDifferences = new double[_numPorts + 1];
 		}
-
-
-		//Fast hadamard result
-		fast_hadamard(n,tmp3,outputs);
-		double sum = 0;
-		for (int i = 0; i < outputs.length; i++)
-			sum += outputs[i];
-		for (int i = 0; i < outputs.length; i++)
+		else
 		{
-			if (outputs[i] < 0)
-				outputs[i] = 0;
-			else
-				outputs[i] /= sum;
+			_transforms = new double[_numPorts][_domainLength];
+			_suffixProducts = new double[_numPorts + 1][_domainLength];
+			_prefixProduct = new double[_domainLength];
 		}
-		
 	}
 
 
-	//TODO: can we do this in place?
-	public static void fast_hadamard(int n, double [] in, double [] out)
+	@Override
+	public void updateEdge(int outPortNum)
 	{
-		int i, bit, flip_bit;
-		int leftmask, rightmask, leftshifted, ind0, ind1;
-		double [] tmp;
-		for (bit=0;bit<n;bit++)
+		if (_domainLength == 2)
+		{
+			double product = 1;
+			for (int port = 0; port < _numPorts; port++)
+				if (port != outPortNum)
+					product *= getDifference(_inputMsgs[port]);
+			setBinaryOutput(outPortNum, product);
+		}
+		else
 		{
-			flip_bit=1<<bit;
-			
-			for (leftmask=0;leftmask< (1<<(n-bit-1));leftmask++)
+			double [] outputs = _outputMsgs[outPortNum];
+			double [] transform = _prefixProduct;		// Used as scratch space here
+			for (int i = 0; i < _domainLength; i++)
+				outputs[i] = 1;
+			for (int port = 0; port < _numPorts; port++)
 			{
-				leftshifted=leftmask<<(bit+1);
-				for (rightmask=0;rightmask< (1<<bit); rightmask++)
+				if (port != outPortNum)
 				{
-					ind0=leftshifted | rightmask;
-					ind1=leftshifted | rightmask | flip_bit;
-					out[ind0]=in[ind0]+in[ind1];
-					out[ind1]=in[ind0]-in[ind1];
+					setTransform(_inputMsgs[port], transform);
+					for (int i = 0; i < _domainLength; i++)
+						outputs[i] *= transform[i];
 				}
 			}
-			
-			tmp=in;
-			in=out;
-			out=tmp;
-		} 
-
-		/* If "n" is even, then we need to copy "out" to "in" to make the
-		     output appear in the correct array. */
-		if ((n&1) == 0){
-			for (i=0;i< (1<<n);i++){
-				out[i]=in[i];
+			inverseTransform(outputs);
+		}
+	}
+
+	@Override
+	public void update()
+	{
+		if (_domainLength == 2)
+		{
+			// Tanh rule, with products of all but one input from prefix and suffix products
+			double [] differences = _differences;
+			double [] suffix = _suffixDifferences;
+			for (int port = 0; port < _numPorts; port++)
+				differences[port] = getDifference(_inputMsgs[port]);
+			suffix[_numPorts] = 1;
+			for (int port = _numPorts - 1; port >= 0; port--)
+				suffix[port] = suffix[port + 1] * differences[port];
+			double prefix = 1;
+			for (int port = 0; port < _numPorts; port++)
+			{
+				setBinaryOutput(port, prefix * suffix[port + 1]);
+				prefix *= differences[port];
 			}
 		}
+		else
+		{
+			for (int port = 0; port < _numPorts; port++)
+				setTransform(_inputMsgs[port], _transforms[port]);
 
+			double [] suffix = _suffixProducts[_numPorts];
+			for (int i = 0; i < _domainLength; i++)
+				suffix[i] = 1;
+			for (int port = _numPorts - 1; port >= 0; port--)
+			{
+				double [] next = _suffixProducts[port + 1];
+				double [] transform = _transforms[port];
+				suffix = _suffixProducts[port];
+				for (int i = 0; i < _domainLength; i++)
+					suffix[i] = next[i] * transform[i];
+			}
+
+			double [] prefix = _prefixProduct;
+			for (int i = 0; i < _domainLength; i++)
+				prefix[i] = 1;
+			for (int port = 0; port < _numPorts; port++)
+			{
+				double [] outputs = _outputMsgs[port];
+				double [] next = _suffixProducts[port + 1];
+				double [] transform = _transforms[port];
+				for (int i = 0; i < _domainLength; i++)
+				{
+					outputs[i] = prefix[i] * next[i];
+					prefix[i] *= transform[i];
+				}
+				inverseTransform(outputs);
+			}
+		}
 	}
 
 
+	// Difference between the probabilities of 0 and 1 in a normalized binary message
+	protected static double getDifference(double [] input)
+	{
+		double sum = input[0] + input[1];
+		return (sum == 0) ? 0 : (input[0] - input[1]) / sum;
+	}
+
+	protected void setBinaryOutput(int port, double difference)
+	{
+		double [] outputs = _outputMsgs[port];
+		outputs[0] = (1 + difference) * 0.5;
+		outputs[1] = (1 - difference) * 0.5;
+	}
+
+	// Normalize the input and transform it
+	protected void setTransform(double [] input, double [] transform)
+	{
+		double sum = 0;
+		for (int i = 0; i < _domainLength; i++)
+			sum += input[i];
+		double scale = (sum == 0) ? 0 : 1 / sum;
+		for (int i = 0; i < _domainLength; i++)
+			transform[i] = input[i] * scale;
+		fast_hadamard(transform);
+	}
+
+	// The transform is its own inverse up to a scale factor, which normalization removes
+	protected void inverseTransform(double [] values)
+	{
+		fast_hadamard(values);
+		double sum = 0;
+		for (int i = 0; i < _domainLength; i++)
+		{
+			if (values[i] < 0)
+				values[i] = 0;		// Round-off can leave small negative values
+			sum += values[i];
+		}
+		for (int i = 0; i < _domainLength; i++)
+			values[i] /= sum;
+	}
+
+
+	// In-place unnormalized Walsh-Hadamard transform; the length must be a power of two
+	public static void fast_hadamard(double [] x)
+	{
+		int length = x.length;
+		for (int half = 1; half < length; half <<= 1)
+		{
+			for (int start = 0; start < length; start += half << 1)
+			{
+				for (int i = start, end = start + half; i < end; i++)
+				{
+					double a = x[i];
+					double b = x[i + half];
+					x[i] = a + b;
+					x[i + half] = a - b;
+				}
+			}
+		}
+	}
 }
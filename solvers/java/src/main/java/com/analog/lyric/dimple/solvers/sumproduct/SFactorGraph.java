@@ -17,6 +17,8 @@
 package com.analog.lyric.dimple.solvers.sumproduct;
 
 import java.util.Random;
+
+import com.analog.lyric.dimple.FactorFunctions.Xor;
 import com.analog.lyric.dimple.FactorFunctions.core.FactorFunctionWithConstants;
 import com.analog.lyric.dimple.FactorFunctions.core.FactorTable;
 import com.analog.lyric.dimple.model.DimpleException;
@@ -51,7 +53,7 @@ public class SFactorGraph extends SFactorGraphBase
 			else
 				return new FiniteFieldMult(factor);
 		}
-		else if (funcName.equals("finiteFieldAdd"))
+		else if (funcName.equals("finiteFieldAdd") || funcName.equals("customXor"))
 		{
 			return new FiniteFieldAdd(factor);    		
 		}
@@ -59,6 +61,14 @@ public class SFactorGraph extends SFactorGraphBase
 		{
 			return new FiniteFieldProjection(factor);
 		}
+		else if (funcName.equals("Sum") || funcName.equals("Subtract"))
+		{
+			return new SumConvolutionFactor(factor);
+		}
+		else if (factor.getFactorFunction() instanceof Xor)
+		{
+			return new FiniteFieldAdd(factor);
+		}
 		else
 			throw new DimpleException("Not implemented");
 	}
@@ -78,11 +88,28 @@ public class SFactorGraph extends SFactorGraphBase
 			return true;
 		else if (funcName.equals("finiteFieldAdd"))
 			return true;
+		else if (funcName.equals("customXor"))
+			return true;
 		else if (funcName.equals("finiteFieldProjection"))
 			return true;
 		else
 			return false;	
 	}
+	
+	// For internal use, we check more than just the name
+	// This allows discrete Sum, Subtract and Xor factors to avoid creating a factor table when their domains allow it
+	public boolean customFactorExists(Factor factor)
+	{
+		String funcName = factor.getFactorFunction().getName();
+		if (customFactorExists(funcName))
+			return true;
+		else if (funcName.equals("Sum") || funcName.equals("Subtract"))
+			return SumConvolutionFactor.isFactorCompatible(factor);
+		else if (factor.getFactorFunction() instanceof Xor)
+			return FiniteFieldAdd.isFactorCompatible(factor);
+		else
+			return false;
+	}
 
 
 	private static Random _rand = new Random();
@@ -92,15 +119,17 @@ public class SFactorGraph extends SFactorGraphBase
 		return _rand;
 	}
 	
+	@Override
 	public void setSeed(long seed)
 	{
+		super.setSeed(seed);
 		_rand = new Random(seed);
 	}
 	
 	@Override
 	public ISolverFactor createFactor(Factor factor)  
 	{
-		if (customFactorExists(factor.getFactorFunction().getName()))
+		if (customFactorExists(factor))
 		{
 			return createCustomFactor(factor);
 		}
@@ -124,8 +153,8 @@ public class SFactorGraph extends SFactorGraphBase
 		_damping = damping;
 		for (Factor f : _factorGraph.getNonGraphFactors())
 		{
-			STableFactor tf = (STableFactor)f.getSolver();
-			setDampingForTableFunction(tf);
+			if (f.getSolver() instanceof STableFactor)
+				setDampingForTableFunction((STableFactor)f.getSolver());
 		}
 	}
 	
@@ -40,19 +40,32 @@ public class STableFactor extends STableFactorDoubleArray implements IKBestFacto
 	protected double [][][] _outPortDerivativeMsgs;
 	protected double [] _dampingParams;
 	protected TableFactorEngine _tableFactorEngine;
+	protected int [][] _tableFactorEngineIndices;
 	protected KBestFactorEngine _kbestFactorEngine;
 	protected int _k;
 	protected boolean _kIsSmallerThanDomain = false;
 	protected boolean _updateDerivative = false;
 	protected boolean _dampingInUse = false;
 	
+	/*
+	 * The belief and the energy terms computed from it, kept until the messages they came
+	 * from or the factor table change; see getMessageKey.  The energy terms are NaN until
+	 * asked for.
+	 */
+	private double [] _belief = null;
+	private long _beliefKey = -1;
+	private long _beliefGraphVersionId = -1;
+	private FactorTable _beliefTable = null;
+	private int _beliefTableVersion = -1;
+	private double _internalEnergy = Double.NaN;
+	private double _betheEntropy = Double.NaN;
+	
 
 	public STableFactor(Factor factor)  
 	{
 		super(factor);
 		
 		_dampingParams = new double[_factor.getSiblings().size()];
-		_tableFactorEngine = new TableFactorEngine(this);
 		
 		
 		//TODO: should I recheck for factor table every once in a while?
@@ -110,6 +123,24 @@ public class STableFactor extends STableFactorDoubleArray implements IKBestFacto
 	}
 
 
+	/*
+	 * Chooses between the sparse and dense engines based on the density of the
+	 * factor table.  The choice is revisited whenever the table's indices change.
+	 */
+	protected TableFactorEngine getTableFactorEngine()
+	{
+		FactorTable table = getFactorTable();
+		if (_tableFactorEngine == null || _tableFactorEngineIndices != table.getIndices())
+		{
+			if (DenseTableFactorEngine.isDenseEnough(table))
+				_tableFactorEngine = new DenseTableFactorEngine(this);
+			else
+				_tableFactorEngine = new TableFactorEngine(this);
+			_tableFactorEngineIndices = table.getIndices();
+		}
+		return _tableFactorEngine;
+	}
+
 	public void setUpdateDerivative(boolean updateDer)
 	{
 		_updateDerivative = updateDer;
@@ -122,7 +153,7 @@ public class STableFactor extends STableFactorDoubleArray implements IKBestFacto
 		if (_kIsSmallerThanDomain)
 			_kbestFactorEngine.updateEdge(outPortNum);
 		else
-			_tableFactorEngine.updateEdge(outPortNum);
+			getTableFactorEngine().updateEdge(outPortNum);
 
 		if (_updateDerivative)
 			updateDerivative(outPortNum);
@@ -138,7 +169,7 @@ public class STableFactor extends STableFactorDoubleArray implements IKBestFacto
 			//TODO: damping
 			_kbestFactorEngine.update();
 		else
-			_tableFactorEngine.update();
+			getTableFactorEngine().update();
 		
 		if (_updateDerivative)
 			for (int i = 0; i < _inputMsgs.length ;i++)
@@ -155,7 +186,38 @@ public class STableFactor extends STableFactorDoubleArray implements IKBestFacto
 	 * Calculates a piece of the beta free energy
 	 */
 	public double [] getBelief() 
-	{		
+	{
+		return getCachedBelief().clone();
+	}
+	
+	@Override
+	protected boolean hasMessageKeyedEnergy()
+	{
+		return true;
+	}
+	
+	// The belief for the current messages and table; not to be modified
+	protected double [] getCachedBelief()
+	{
+		long key = getMessageKey();
+		long graphVersionId = getGraphVersionId();
+		FactorTable table = getFactorTable();
+		if (_belief == null || key != _beliefKey || graphVersionId != _beliefGraphVersionId ||
+			table != _beliefTable || table.getVersion() != _beliefTableVersion)
+		{
+			_belief = computeBelief();
+			_beliefKey = key;
+			_beliefGraphVersionId = graphVersionId;
+			_beliefTable = table;
+			_beliefTableVersion = table.getVersion();
+			_internalEnergy = Double.NaN;
+			_betheEntropy = Double.NaN;
+		}
+		return _belief;
+	}
+	
+	protected double [] computeBelief()
+	{
 		double [] retval = getUnormalizedBelief();
 		double sum = 0; 
 		for (int i = 0; i < retval.length; i++)
@@ -257,11 +319,19 @@ public class STableFactor extends STableFactorDoubleArray implements IKBestFacto
 
 	public double getInternalEnergy()
 	{
-		double [] belief = getBelief();
+		double [] belief = getCachedBelief();
+		if (Double.isNaN(_internalEnergy))
+			_internalEnergy = computeInternalEnergy(belief);
+		return _internalEnergy;
+	}
+	
+	private double computeInternalEnergy(double [] belief)
+	{
+		double [] weights = getFactorTable().getWeights();
 		double sum = 0;
 		for (int i = 0; i < belief.length; i++)
 		{
-			double tmp = - Math.log(getFactorTable().getWeights()[i]);
+			double tmp = - Math.log(weights[i]);
 			if (tmp != 0 && belief[i] != 0)
 				sum += belief[i] * tmp;
 		}
@@ -270,10 +340,17 @@ public class STableFactor extends STableFactorDoubleArray implements IKBestFacto
 	}
 	
 	public double getBetheEntropy()
+	{
+		double [] belief = getCachedBelief();
+		if (Double.isNaN(_betheEntropy))
+			_betheEntropy = computeBetheEntropy(belief);
+		return _betheEntropy;
+	}
+	
+	private double computeBetheEntropy(double [] belief)
 	{
 		double sum = 0;
 		
-		double [] belief = getBelief();
 		for (int i = 0; i < belief.length; i++)
 		{
 			if (belief[i] != 0)
@@ -290,8 +367,7 @@ public class STableFactor extends STableFactorDoubleArray implements IKBestFacto
 		boolean isFactorOfInterest = sfg.getCurrentFactorTable() == getFactor().getFactorTable();
 		
 		double [] weights = _factor.getFactorTable().getWeights();
-		//TODO: avoid recompute
-		double [] beliefs = getBelief();
+		double [] beliefs = getCachedBelief();
 		
 		double sum = 0;
 		
@@ -520,7 +596,7 @@ public class STableFactor extends STableFactorDoubleArray implements IKBestFacto
 		boolean isFactorOfInterest = ((SFactorGraph)getRootGraph()).getCurrentFactorTable() == getFactor().getFactorTable(); 
 				
 		//Belief'(weightIndex)*(-log(Belief(weightIndex))) + Belief(weightIndex)*(-log(Belief(weightIndex)))'
-		double [] beliefs = getBelief();
+		double [] beliefs = getCachedBelief();
 		double sum = 0;
 		for (int i = 0; i < beliefs.length; i++)
 		{
@@ -22,32 +22,39 @@ import com.analog.lyric.dimple.model.DimpleException;
 import com.analog.lyric.dimple.model.DiscreteDomain;
 import com.analog.lyric.dimple.model.Factor;
 import com.analog.lyric.dimple.model.VariableBase;
-import com.analog.lyric.dimple.solvers.core.SDiscreteVariableBase;
+import com.analog.lyric.dimple.solvers.core.SDiscreteVariableDoubleArray;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
 
-public class SVariable extends SDiscreteVariableBase
+public class SVariable extends SDiscreteVariableDoubleArray
 {
 	/*
 	 * We cache all of the double arrays we use during the update.  This saves
 	 * time when performing the update.
 	 */
-    protected double [][] _inPortMsgs = new double[0][];
     double [][] _logInPortMsgs = new double[0][];
-    protected double [][] _outMsgArray = new double[0][];
     double [][] _savedOutMsgArray = new double[0][];
     double [][] _outPortDerivativeMsgs = new double[0][];
     double [] _dampingParams = new double[0];
+    double [] _alphas = new double[0];
     protected double [] _input;
     private boolean _calculateDerivative = false;
 	protected boolean _dampingInUse = false;
+	
+	/*
+	 * The belief and the energy terms computed from it are kept until the messages they
+	 * came from change, as told by getMessageKey, so repeated queries between updates
+	 * don't recompute them.  The energy terms are NaN until asked for.
+	 */
+	private double [] _belief = null;
+	private long _beliefKey = -1;
+	private long _beliefGraphVersionId = -1;
+	private double _internalEnergy = Double.NaN;
+	private double _betheEntropy = Double.NaN;
 
 	public SVariable(VariableBase var)
     {
 		super(var);
-		
-		if (!var.getDomain().isDiscrete())
-			throw new DimpleException("only discrete variables supported");
 	}
 		
 	public VariableBase getVariable()
@@ -62,10 +69,9 @@ public class SVariable extends SDiscreteVariableBase
 
 
 	@Override
-	public void resetEdgeMessages(int portNum)
+	protected double getInitialMessageValue()
 	{
-		_inPortMsgs[portNum] = (double[])resetInputMessage(_inPortMsgs[portNum]);
-		_outMsgArray[portNum] = (double[])resetOutputMessage(_outMsgArray[portNum]);
+		return 1.0 / ((DiscreteDomain)_var.getDomain()).size();
 	}
 	
 	
@@ -206,7 +212,9 @@ public class SVariable extends SDiscreteVariableBase
         
         
         //Compute alphas
-        double[] alphas = new double[M];
+        if (_alphas.length < M)
+        	_alphas = new double[M];
+        double[] alphas = _alphas;
         for (int m = 0; m < M; m++)
         {
         	double prior = priors[m];
@@ -291,6 +299,40 @@ public class SVariable extends SDiscreteVariableBase
         
     @Override
 	public double[] getBelief()
+    {
+    	return getCachedBelief().clone();
+    }
+    
+    @Override
+    public void getBelief(double [] out)
+    {
+    	double [] belief = getCachedBelief();
+    	System.arraycopy(belief, 0, out, 0, belief.length);
+    }
+    
+    @Override
+    protected boolean hasMessageKeyedEnergy()
+    {
+    	return true;
+    }
+    
+    // The belief for the current messages; not to be modified
+    protected double [] getCachedBelief()
+    {
+    	long key = getMessageKey();
+    	long graphVersionId = getGraphVersionId();
+    	if (_belief == null || key != _beliefKey || graphVersionId != _beliefGraphVersionId)
+    	{
+    		_belief = computeBelief();
+    		_beliefKey = key;
+    		_beliefGraphVersionId = graphVersionId;
+    		_internalEnergy = Double.NaN;
+    		_betheEntropy = Double.NaN;
+    	}
+    	return _belief;
+    }
+    
+    protected double [] computeBelief()
     {
 
         final double minLog = -100;
@@ -374,11 +416,18 @@ public class SVariable extends SDiscreteVariableBase
 	
 	@Override
 	public double getInternalEnergy()
+	{
+		double [] belief = getCachedBelief();
+		if (Double.isNaN(_internalEnergy))
+			_internalEnergy = computeInternalEnergy(belief);
+		return _internalEnergy;
+	}
+	
+	private double computeInternalEnergy(double [] belief)
 	{
 		int domainLength = ((DiscreteDomain)_var.getDomain()).size();
 		double sum = 0;
 		
-		double [] belief = getBelief();
 		double [] input = _input;
 		
 		//make sure input is normalized
@@ -398,10 +447,17 @@ public class SVariable extends SDiscreteVariableBase
 
 	@Override
 	public double getBetheEntropy()
+	{
+		double [] belief = getCachedBelief();
+		if (Double.isNaN(_betheEntropy))
+			_betheEntropy = computeBetheEntropy(belief);
+		return _betheEntropy;
+	}
+	
+	private double computeBetheEntropy(double [] belief)
 	{
 		double sum = 0;
 		
-		double [] belief = getBelief();
 		for (int i = 0; i < belief.length; i++)
 		{
 			if (belief[i] != 0)
@@ -475,7 +531,7 @@ public class SVariable extends SDiscreteVariableBase
 	{
 		double sum = 0;
 		
-		double [] belief = getBelief();
+		double [] belief = getCachedBelief();
 		
 		for (int d = 0; d < _input.length; d++)
 		{
@@ -592,96 +648,33 @@ public class SVariable extends SDiscreteVariableBase
 	@Override
 	public Object [] createMessages(ISolverFactor factor)
 	{
+		Object [] messages = super.createMessages(factor);
 		int portNum = _var.getPortNum(factor.getModelObject());
-		int newArraySize = Math.max(_inPortMsgs.length,portNum + 1);
-		_inPortMsgs = Arrays.copyOf(_inPortMsgs,newArraySize);
-		_inPortMsgs[portNum] = createDefaultMessage();
+		int newArraySize = _inPortMsgs.length;
 		_logInPortMsgs = Arrays.copyOf(_logInPortMsgs, newArraySize);
 		_logInPortMsgs[portNum] = new double[_inPortMsgs[portNum].length];
-		_outMsgArray = Arrays.copyOf(_outMsgArray, newArraySize);
-		_outMsgArray[portNum] = createDefaultMessage();
 		
 		if (_dampingInUse)
 		{
 			_savedOutMsgArray = Arrays.copyOf(_savedOutMsgArray,newArraySize);
 			_savedOutMsgArray[portNum] = new double[_inPortMsgs[portNum].length];
 		}
-
+		
 		_dampingParams = Arrays.copyOf(_dampingParams, newArraySize);
 		
-		return new Object [] {_inPortMsgs[portNum],_outMsgArray[portNum]};
+		return messages;
 	}
-	
-
-	
-	@Override
-	public Object resetInputMessage(Object message)
-	{
-    	double [] retval = (double[])message;
-    	int domainLength = retval.length;
-    	double val = 1.0/domainLength;
-    	
-    	Arrays.fill(retval, val);
-    	return retval;
-
-	}
-	
-	public double [] createDefaultMessage()
-	{
-		//TODO: both variable and factor do this.  Why doesn't factor just ask variable?
-		int domainLength = ((DiscreteDomain)_var.getDomain()).size();
-    	double[] retVal = new double[domainLength];
-    	return (double[])resetInputMessage(retVal);
-    }
 
 	@Override
 	public void moveMessages(ISolverNode other, int portNum, int otherPortNum)
 	{
+		super.moveMessages(other, portNum, otherPortNum);
 		SVariable sother = (SVariable)other;
-		_inPortMsgs[portNum] = sother._inPortMsgs[otherPortNum];
 		_logInPortMsgs[portNum] = sother._logInPortMsgs[otherPortNum];
-		_outMsgArray[portNum] = sother._outMsgArray[otherPortNum];
 		
 		if (_dampingInUse)
 		{
 			_savedOutMsgArray[portNum] = sother._savedOutMsgArray[otherPortNum];
 		}
 	}
-
-	@Override
-	public Object getInputMsg(int portIndex)
-	{
-		return _inPortMsgs[portIndex];
-	}
-
-	@Override
-	public Object getOutputMsg(int portIndex)
-	{
-		return _outMsgArray[portIndex];
-	}
-
-	@Override
-	public void setInputMsg(int portIndex, Object obj)
-	{
-		_inPortMsgs[portIndex] = (double[])obj;
-		
-	}
-
-	@Override
-	public void setInputMsgValues(int portIndex, Object obj)
-	{
-		double [] tmp = (double[])obj;
-		for (int i = 0; i <tmp.length; i++)
-			_inPortMsgs[portIndex][i] = tmp[i];
-	}
-	
-	@Override
-	public void setOutputMsgValues(int portIndex, Object obj)
-	{
-		double [] tmp = (double[])obj;
-		for (int i = 0; i <tmp.length; i++)
-			_outMsgArray[portIndex][i] = tmp[i];
-	}
-
-	
 }
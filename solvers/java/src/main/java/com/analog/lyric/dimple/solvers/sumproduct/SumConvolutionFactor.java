@@ -0,0 +1,396 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import com.analog.lyric.dimple.FactorFunctions.Subtract;
+import com.analog.lyric.dimple.FactorFunctions.Sum;
+import com.analog.lyric.dimple.FactorFunctions.core.FactorFunction;
+import com.analog.lyric.dimple.FactorFunctions.core.FactorFunctionUtilities;
+import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.Discrete;
+import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.model.INode;
+import com.analog.lyric.dimple.solvers.core.SFactorBase;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
+
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+
+/*
+ * Sum-product factor for the deterministic Sum and Subtract factor functions over
+ * integer-valued discrete variables, which avoids building the factor table.
+ *
+ * Both are treated as one output variable that equals the sum of the other (summand)
+ * variables; for Subtract, the positive input plays the part of the output, since it is
+ * the sum of the result and the subtracted inputs. The distribution of the sum of all summands is the convolution
+ * of their input messages. The message to each summand uses the convolution of all of
+ * the other summands, formed from prefix and suffix convolutions, correlated with the
+ * input message from the output variable. Long convolutions are done with an FFT, so
+ * the cost is O(k D log D) for k summands with a combined range of D values, rather
+ * than growing exponentially in k.
+ */
+public class SumConvolutionFactor extends SFactorBase
+{
+	// Convolutions where one of the sequences is at most this long are done directly instead of with an FFT
+	public static final int DIRECT_CONVOLUTION_LENGTH = 32;
+
+	// The values in each domain must span no more than this many times the size of the domain
+	public static final int MAX_DOMAIN_SPARSITY = 4;
+
+	// Smaller factors, measured by the number of combinations of summand values, just use the factor table
+	public static final int MIN_TABLE_SIZE = 64;
+
+	protected double [][] _inputMsgs;
+	protected double [][] _outputMsgs;
+	protected int _outputPort;
+	protected int [] _summandPorts;
+	protected int [] _lowerBounds;			// Smallest value in the domain of each port
+	protected int [] _spans;				// Number of integers between the smallest and largest value of each port
+	protected int [][] _valueOffsets;		// Value minus the lower bound, for each domain element of each port
+	protected int _summandLowerBound;		// Sum of the lower bounds of the summands
+	protected double [][] _denseInputs;		// Scratch for the dense input message of each port
+	private HashMap<Integer, DoubleFFT_1D> _ffts = new HashMap<Integer, DoubleFFT_1D>();
+	private double [] _fftScratchA = new double[0];	// Interleaved complex scratch for the FFT convolution, grown as needed
+	private double [] _fftScratchB = new double[0];
+
+	public SumConvolutionFactor(Factor factor)
+	{
+		super(factor);
+
+		int numPorts = factor.getSiblings().size();
+		_outputPort = (factor.getFactorFunction() instanceof Subtract) ? 1 : 0;
+		_summandPorts = new int[numPorts - 1];
+		for (int port = 0, i = 0; port < numPorts; port++)
+			if (port != _outputPort)
+				_summandPorts[i++] = port;
+
+		_lowerBounds = new int[numPorts];
+		_spans = new int[numPorts];
+		_valueOffsets = new int[numPorts][];
+		_denseInputs = new double[numPorts][];
+		ArrayList<INode> siblings = factor.getSiblings();
+		for (int port = 0; port < numPorts; port++)
+		{
+			Object [] elements = ((Discrete)siblings.get(port)).getDiscreteDomain().getElements();
+			int lower = Integer.MAX_VALUE;
+			int upper = Integer.MIN_VALUE;
+			for (Object element : elements)
+			{
+				int value = FactorFunctionUtilities.toInteger(element);
+				lower = Math.min(lower, value);
+				upper = Math.max(upper, value);
+			}
+			_lowerBounds[port] = lower;
+			_spans[port] = upper - lower + 1;
+			_valueOffsets[port] = new int[elements.length];
+			for (int i = 0; i < elements.length; i++)
+				_valueOffsets[port][i] = FactorFunctionUtilities.toInteger(elements[i]) - lower;
+			_denseInputs[port] = new double[_spans[port]];
+		}
+
+		_summandLowerBound = 0;
+		for (int port : _summandPorts)
+			_summandLowerBound += _lowerBounds[port];
+	}
+
+	// True if the factor is a deterministic Sum or Subtract whose variables all have integer-valued discrete domains,
+	// and the factor table would have at least MIN_TABLE_SIZE rows
+	public static boolean isFactorCompatible(Factor factor)
+	{
+		FactorFunction function = factor.getFactorFunction();
+		if (!(function instanceof Sum || function instanceof Subtract))
+			return false;
+		if (!function.isDeterministicDirected())	// Smoothed versions aren't constraints
+			return false;
+
+		ArrayList<INode> siblings = factor.getSiblings();
+		int numPorts = siblings.size();
+		if (numPorts < 2)
+			return false;
+
+		int outputPort = (function instanceof Subtract) ? 1 : 0;
+		double tableSize = 1;
+		for (int port = 0; port < numPorts; port++)
+		{
+			INode node = siblings.get(port);
+			if (!(node instanceof Discrete))
+				return false;
+
+			Object [] elements = ((Discrete)node).getDiscreteDomain().getElements();
+			if (port != outputPort)
+				tableSize *= elements.length;
+			double lower = Double.POSITIVE_INFINITY;
+			double upper = Double.NEGATIVE_INFINITY;
+			for (Object element : elements)
+			{
+				if (!(element instanceof Double || element instanceof Integer))
+					return false;
+				double value = FactorFunctionUtilities.toDouble(element);
+				if (value != Math.rint(value) || Math.abs(value) > (1 << 24))
+					return false;
+				lower = Math.min(lower, value);
+				upper = Math.max(upper, value);
+			}
+			if (upper - lower + 1 > (double)MAX_DOMAIN_SPARSITY * elements.length)
+				return false;
+		}
+		return tableSize >= MIN_TABLE_SIZE;
+	}
+
+
+	@Override
+	public void updateEdge(int outPortNum)
+	{
+		int numSummands = _summandPorts.length;
+		double [] others = new double[] {1};
+		for (int i = 0; i < numSummands; i++)
+			if (_summandPorts[i] != outPortNum)
+				others = convolve(others, getDenseInput(_summandPorts[i]));
+
+		if (outPortNum == _outputPort)
+			setOutputFromSum(others);
+		else
+			setSummandOutput(outPortNum, others);
+	}
+
+	@Override
+	public void update()
+	{
+		// Share the prefix and suffix convolutions among all of the edges
+		int numSummands = _summandPorts.length;
+		double [][] dense = new double[numSummands][];
+		for (int i = 0; i < numSummands; i++)
+			dense[i] = getDenseInput(_summandPorts[i]);
+
+		double [][] prefix = new double[numSummands + 1][];	// Convolution of summands [0, i)
+		double [][] suffix = new double[numSummands + 1][];	// Convolution of summands [i, numSummands)
+		prefix[0] = new double[] {1};
+		suffix[numSummands] = new double[] {1};
+		for (int i = 0; i < numSummands; i++)
+			prefix[i + 1] = convolve(prefix[i], dense[i]);
+		for (int i = numSummands - 1; i >= 0; i--)
+			suffix[i] = convolve(dense[i], suffix[i + 1]);
+
+		setOutputFromSum(prefix[numSummands]);
+		for (int i = 0; i < numSummands; i++)
+			setSummandOutput(_summandPorts[i], convolve(prefix[i], suffix[i + 1]));
+	}
+
+
+	// Input message from the port, indexed by value minus the lower bound of the domain; the array is
+	// per-port scratch that is overwritten by the next call for the same port
+	protected double [] getDenseInput(int port)
+	{
+		double [] inputs = _inputMsgs[port];
+		int [] offsets = _valueOffsets[port];
+		double [] dense = _denseInputs[port];
+		if (inputs.length < dense.length)
+			Arrays.fill(dense, 0);
+		for (int i = 0; i < inputs.length; i++)
+			dense[offsets[i]] = inputs[i];
+		return dense;
+	}
+
+	// Output message to the output variable given the distribution of the sum of all summands
+	protected void setOutputFromSum(double [] sum)
+	{
+		double [] outputs = _outputMsgs[_outputPort];
+		int [] offsets = _valueOffsets[_outputPort];
+		int shift = _lowerBounds[_outputPort] - _summandLowerBound;
+		for (int i = 0; i < outputs.length; i++)
+		{
+			int index = offsets[i] + shift;
+			outputs[i] = (index >= 0 && index < sum.length) ? sum[index] : 0;
+		}
+		normalize(outputs, _outputPort);
+	}
+
+	// Output message to a summand given the distribution of the sum of all of the other summands
+	protected void setSummandOutput(int port, double [] others)
+	{
+		// Message at summand value x is the sum over s of others(s) * input from the output variable at x + s
+		int shift = _summandLowerBound - _lowerBounds[_outputPort];
+		double [] result = correlate(others, getDenseInput(_outputPort), shift, _spans[port]);
+
+		double [] outputs = _outputMsgs[port];
+		int [] offsets = _valueOffsets[port];
+		for (int i = 0; i < outputs.length; i++)
+			outputs[i] = result[offsets[i]];
+		normalize(outputs, port);
+	}
+
+	protected void normalize(double [] values, int port)
+	{
+		double sum = 0;
+		for (int i = 0; i < values.length; i++)
+			sum += values[i];
+		if (sum == 0)
+			throw new DimpleException("Update failed in SumProduct Solver.  All probabilities were zero when calculating message for port "
+					+ port + " on factor " + _factor.getLabel());
+		for (int i = 0; i < values.length; i++)
+			values[i] /= sum;
+	}
+
+
+	// Linear convolution of a and b
+	protected double [] convolve(double [] a, double [] b)
+	{
+		int resultLength = a.length + b.length - 1;
+		double [] result = new double[resultLength];
+
+		if (Math.min(a.length, b.length) <= DIRECT_CONVOLUTION_LENGTH)
+		{
+			for (int i = 0; i < a.length; i++)
+			{
+				double ai = a[i];
+				if (ai != 0)
+					for (int j = 0; j < b.length; j++)
+						result[i + j] += ai * b[j];
+			}
+		}
+		else
+		{
+			int n = Integer.highestOneBit(resultLength);
+			if (n < resultLength)
+				n <<= 1;
+			DoubleFFT_1D fft = getFFT(n);
+
+			if (_fftScratchA.length < 2 * n)
+			{
+				_fftScratchA = new double[2 * n];
+				_fftScratchB = new double[2 * n];
+			}
+			double [] fa = _fftScratchA;
+			double [] fb = _fftScratchB;
+			Arrays.fill(fa, 0, 2 * n, 0);
+			Arrays.fill(fb, 0, 2 * n, 0);
+			for (int i = 0; i < a.length; i++)
+				fa[2 * i] = a[i];
+			for (int i = 0; i < b.length; i++)
+				fb[2 * i] = b[i];
+			fft.complexForward(fa);
+			fft.complexForward(fb);
+			for (int i = 0; i < n; i++)
+			{
+				double re = fa[2 * i] * fb[2 * i] - fa[2 * i + 1] * fb[2 * i + 1];
+				double im = fa[2 * i] * fb[2 * i + 1] + fa[2 * i + 1] * fb[2 * i];
+				fa[2 * i] = re;
+				fa[2 * i + 1] = im;
+			}
+			fft.complexInverse(fa, true);
+			for (int i = 0; i < resultLength; i++)
+				result[i] = Math.max(fa[2 * i], 0);	// Round-off can leave small negative values
+		}
+
+		return result;
+	}
+
+	// result[x] = sum over s of a[s] * b[x + s + shift], for x in [0, length), treating b as zero outside its range
+	protected double [] correlate(double [] a, double [] b, int shift, int length)
+	{
+		double [] result = new double[length];
+
+		if (Math.min(a.length, length) <= DIRECT_CONVOLUTION_LENGTH)
+		{
+			for (int x = 0; x < length; x++)
+			{
+				int start = Math.max(0, -(x + shift));
+				int end = Math.min(a.length, b.length - (x + shift));
+				double sum = 0;
+				for (int s = start; s < end; s++)
+					sum += a[s] * b[x + s + shift];
+				result[x] = sum;
+			}
+		}
+		else
+		{
+			// Convolve b with a reversed, in which index u corresponds to x = u - shift - (a.length - 1)
+			double [] reversed = new double[a.length];
+			for (int i = 0; i < a.length; i++)
+				reversed[i] = a[a.length - 1 - i];
+			double [] convolution = convolve(reversed, b);
+			int offset = shift + a.length - 1;
+			for (int x = 0; x < length; x++)
+			{
+				int u = x + offset;
+				result[x] = (u >= 0 && u < convolution.length) ? convolution[u] : 0;
+			}
+		}
+
+		return result;
+	}
+
+	private DoubleFFT_1D getFFT(int n)
+	{
+		DoubleFFT_1D fft = _ffts.get(n);
+		if (fft == null)
+		{
+			fft = new DoubleFFT_1D(n);
+			_ffts.put(n, fft);
+		}
+		return fft;
+	}
+
+
+	@Override
+	public void createMessages()
+	{
+		int numPorts = _factor.getSiblings().size();
+
+	    _inputMsgs = new double[numPorts][];
+	    _outputMsgs = new double[numPorts][];
+
+	    for (int index = 0; index < numPorts; index++)
+	    {
+	    	ISolverVariable svar = _factor.getVariables().getByIndex(index).getSolver();
+	    	Object [] messages = svar.createMessages(this);
+	    	_outputMsgs[index] = (double[])messages[0];
+	    	_inputMsgs[index] = (double[])messages[1];
+	    }
+	}
+
+	@Override
+	public void resetEdgeMessages(int i)
+	{
+		SVariable sv = (SVariable)_factor.getSiblings().get(i).getSolver();
+		_inputMsgs[i] = (double[])sv.resetInputMessage(_inputMsgs[i]);
+	}
+
+	@Override
+	public Object getInputMsg(int portIndex)
+	{
+		return _inputMsgs[portIndex];
+	}
+
+	@Override
+	public Object getOutputMsg(int portIndex)
+	{
+		return _outputMsgs[portIndex];
+	}
+
+	@Override
+	public void moveMessages(ISolverNode other, int thisPortNum, int otherPortNum)
+	{
+		SumConvolutionFactor sother = (SumConvolutionFactor)other;
+	    _inputMsgs[thisPortNum] = sother._inputMsgs[otherPortNum];
+	    _outputMsgs[thisPortNum] = sother._outputMsgs[otherPortNum];
+	}
+}
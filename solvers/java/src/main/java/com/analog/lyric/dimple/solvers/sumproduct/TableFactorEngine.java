@@ -47,16 +47,7 @@ public class TableFactorEngine
         double[] outputMsgs = _tableFactor.getOutPortMsgs()[outPortNum];
         double [][] inputMsgs = _tableFactor.getInPortMsgs();
         
-        if (_tableFactor._dampingInUse)
-        {
-        	double damping = _tableFactor._dampingParams[outPortNum];
-        	if (damping != 0)
-        	{
-        		double[] saved = _tableFactor._savedOutMsgArray[outPortNum];
-        		for (int i = 0; i < outputMsgs.length; i++)
-        			saved[i] = outputMsgs[i];
-        	}
-        }
+        saveForDamping(outPortNum);
         
     	int outputMsgLength = outputMsgs.length;
         for (int i = 0; i < outputMsgLength; i++) outputMsgs[i] = 0;
@@ -76,28 +67,7 @@ public class TableFactorEngine
         	outputMsgs[outputIndex] += prob;
         }
         
-    	double sum = 0; 
-    	for (int i = 0; i < outputMsgLength; i++) sum += outputMsgs[i];
-		if (sum == 0)
-		{
-			throw new DimpleException("UpdateEdge failed in SumProduct Solver.  All probabilities were zero when calculating message for port " 
-					+ outPortNum + " on factor " + _factor.getLabel());
-		}
-
-		for (int i = 0; i < outputMsgLength; i++) 
-			outputMsgs[i] /= sum;
-    	
-		if (_tableFactor._dampingInUse)
-		{
-			double damping = _tableFactor._dampingParams[outPortNum];
-			if (damping != 0)
-			{
-				double[] saved = _tableFactor._savedOutMsgArray[outPortNum];
-				for (int i = 0; i < outputMsgLength; i++)
-					outputMsgs[i] = (1-damping)*outputMsgs[i] + damping*saved[i];
-			}
-		}
-    	
+        normalizeAndDamp(outPortNum, "UpdateEdge");
 	}
 	
 
@@ -121,16 +91,7 @@ public class TableFactorEngine
 	    {
 	    	double[] outputMsgs = outMsgs[outPortNum];
 	    		    	
-	    	if (_tableFactor._dampingInUse)
-	    	{
-	    		double damping = _tableFactor._dampingParams[outPortNum];
-	    		if (damping != 0)
-	    		{
-	    			double[] saved = _tableFactor._savedOutMsgArray[outPortNum];
-	    			for (int i = 0; i < outputMsgs.length; i++)
-	    				saved[i] = outputMsgs[i];
-	    		}
-	    	}
+	    	saveForDamping(outPortNum);
 	    	
 	    	int outputMsgLength = outputMsgs.length;
 	    	for (int i = 0; i < outputMsgLength; i++) outputMsgs[i] = 0;
@@ -149,28 +110,54 @@ public class TableFactorEngine
 	    		outputMsgs[outputIndex] += prob;
 	    	}
 
-	    	double sum = 0; 
-	    	for (int i = 0; i < outputMsgLength; i++) sum += outputMsgs[i];
-    		if (sum == 0)
+	    	normalizeAndDamp(outPortNum, "Update");
+	    }
+	}
+	
+	// Copy the current output message aside if damping is enabled for the port.
+	// Must be called before the output message is overwritten.
+	protected void saveForDamping(int outPortNum)
+	{
+    	if (_tableFactor._dampingInUse)
+    	{
+    		double damping = _tableFactor._dampingParams[outPortNum];
+    		if (damping != 0)
     		{
-    			throw new DimpleException("Update failed in SumProduct Solver.  All probabilities were zero when calculating message for port " 
-    					+ outPortNum + " on factor " +_factor.getLabel());
+    			double[] outputMsgs = _tableFactor.getOutPortMsgs()[outPortNum];
+    			double[] saved = _tableFactor._savedOutMsgArray[outPortNum];
+    			for (int i = 0; i < outputMsgs.length; i++)
+    				saved[i] = outputMsgs[i];
     		}
+    	}
+	}
+	
+	// Normalize the freshly accumulated output message and then mix in the
+	// saved message if damping is enabled for the port.
+	protected void normalizeAndDamp(int outPortNum, String operation)
+	{
+		double[] outputMsgs = _tableFactor.getOutPortMsgs()[outPortNum];
+		int outputMsgLength = outputMsgs.length;
+		
+    	double sum = 0; 
+    	for (int i = 0; i < outputMsgLength; i++) sum += outputMsgs[i];
+		if (sum == 0)
+		{
+			throw new DimpleException(operation + " failed in SumProduct Solver.  All probabilities were zero when calculating message for port " 
+					+ outPortNum + " on factor " + _factor.getLabel());
+		}
 
-	    	for (int i = 0; i < outputMsgLength; i++) 
-	    		outputMsgs[i] /= sum;
-	    	
-	    	if (_tableFactor._dampingInUse)
-	    	{
-	    		double damping = _tableFactor._dampingParams[outPortNum];
-	    		if (damping != 0)
-	    		{
-	    			double[] saved = _tableFactor._savedOutMsgArray[outPortNum];
-	    		for (int i = 0; i < outputMsgLength; i++)
-	    			outputMsgs[i] = (1-damping)*outputMsgs[i] + damping*saved[i];
-	    		}
-	    	}
-	    	
-	    }
+		for (int i = 0; i < outputMsgLength; i++) 
+			outputMsgs[i] /= sum;
+    	
+		if (_tableFactor._dampingInUse)
+		{
+			double damping = _tableFactor._dampingParams[outPortNum];
+			if (damping != 0)
+			{
+				double[] saved = _tableFactor._savedOutMsgArray[outPortNum];
+				for (int i = 0; i < outputMsgLength; i++)
+					outputMsgs[i] = (1-damping)*outputMsgs[i] + damping*saved[i];
+			}
+		}
 	}
 }
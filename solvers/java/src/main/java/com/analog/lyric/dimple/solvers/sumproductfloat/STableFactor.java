@@ -0,0 +1,118 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+package com.analog.lyric.dimple.solvers.sumproductfloat;
+
+import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.solvers.core.STableFactorFloatArray;
+
+/*
+ * Sum-product table factor using the single-precision weights of the factor table.  Each
+ * output message is accumulated and normalized in double and only then rounded to float.
+ */
+public class STableFactor extends STableFactorFloatArray
+{
+	protected double [] _outputSums = new double[0];		// Scratch for updateEdge
+
+	public STableFactor(Factor factor)
+	{
+		super(factor);
+	}
+
+	@Override
+	public void updateEdge(int outPortNum)
+	{
+		int [][] table = getFactorTable().getIndices();
+		float [] values = getFactorTable().getFloatWeights();
+		int tableLength = table.length;
+		int numPorts = _inputMsgs.length;
+		float [][] inputMsgs = _inputMsgs;
+		float [] outputMsgs = _outputMsgs[outPortNum];
+		int outputMsgLength = outputMsgs.length;
+		
+		if (_outputSums.length < outputMsgLength)
+			_outputSums = new double[outputMsgLength];
+		double [] sums = _outputSums;
+		for (int i = 0; i < outputMsgLength; i++)
+			sums[i] = 0;
+		
+		for (int tableIndex = 0; tableIndex < tableLength; tableIndex++)
+		{
+			double prob = values[tableIndex];
+			int [] tableRow = table[tableIndex];
+			for (int inPortNum = 0; inPortNum < numPorts; inPortNum++)
+				if (inPortNum != outPortNum)
+					prob *= inputMsgs[inPortNum][tableRow[inPortNum]];
+			sums[tableRow[outPortNum]] += prob;
+		}
+		
+		double sum = 0;
+		for (int i = 0; i < outputMsgLength; i++)
+			sum += sums[i];
+		if (sum == 0)
+		{
+			throw new DimpleException("Update failed in SumProduct Solver.  All probabilities were zero when calculating message for port " 
+					+ outPortNum + " on factor " + _factor.getLabel());
+		}
+		for (int i = 0; i < outputMsgLength; i++)
+			outputMsgs[i] = (float)(sums[i] / sum);
+	}
+
+	@Override
+	public double [] getBelief()
+	{
+		int [][] table = getFactorTable().getIndices();
+		double [] values = getFactorTable().getWeights();
+		double [] retval = new double[table.length];
+		double sum = 0;
+		
+		for (int i = 0; i < table.length; i++)
+		{
+			double prob = values[i];
+			for (int j = 0; j < table[i].length; j++)
+				prob *= _inputMsgs[j][table[i][j]];
+			retval[i] = prob;
+			sum += prob;
+		}
+		for (int i = 0; i < retval.length; i++)
+			retval[i] /= sum;
+		
+		return retval;
+	}
+
+	@Override
+	public double getInternalEnergy()
+	{
+		double [] belief = getBelief();
+		double [] potentials = getFactorTable().getPotentials();
+		double sum = 0;
+		for (int i = 0; i < belief.length; i++)
+			if (potentials[i] != 0 && belief[i] != 0)
+				sum += belief[i] * potentials[i];
+		return sum;
+	}
+
+	@Override
+	public double getBetheEntropy()
+	{
+		double sum = 0;
+		double [] belief = getBelief();
+		for (int i = 0; i < belief.length; i++)
+			if (belief[i] != 0)
+				sum -= belief[i] * Math.log(belief[i]);
+		return sum;
+	}
+}
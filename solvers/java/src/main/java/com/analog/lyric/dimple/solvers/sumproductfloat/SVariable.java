@@ -0,0 +1,211 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+package com.analog.lyric.dimple.solvers.sumproductfloat;
+
+import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.DiscreteDomain;
+import com.analog.lyric.dimple.model.VariableBase;
+import com.analog.lyric.dimple.solvers.core.SDiscreteVariableFloatArray;
+
+/*
+ * Same update as the double-precision sum-product variable: the product of the incoming
+ * messages is formed as a sum of logs in double, and only the normalized output is rounded
+ * to float.
+ */
+public class SVariable extends SDiscreteVariableFloatArray
+{
+	private static final double minLog = -100;
+	
+	protected double [] _input;
+	protected double [] _alphas = new double[0];		// Scratch for update
+
+	public SVariable(VariableBase var)
+	{
+		super(var);
+	}
+
+	@Override
+	protected float getInitialMessageValue()
+	{
+		return 1.0f / ((DiscreteDomain)_var.getDomain()).size();
+	}
+
+	@Override
+	public void setInputOrFixedValue(Object priors, Object fixed, boolean hasFixedValue)
+	{
+		if (priors == null)
+		{
+			int domainLength = ((DiscreteDomain)_var.getDomain()).size();
+			_input = new double[domainLength];
+			for (int i = 0; i < domainLength; i++)
+				_input[i] = 1.0 / domainLength;
+		}
+		else
+		{
+			double [] vals = (double[])priors;
+			if (vals.length != ((DiscreteDomain)_var.getDomain()).size())
+				throw new DimpleException("length of priors does not match domain");
+			
+			_input = vals;
+		}
+	}
+
+	@Override
+	public double getScore()
+	{
+		return -Math.log(_input[getGuessIndex()]);
+	}
+
+	@Override
+	public void updateEdge(int outPortNum)
+	{
+		double [] priors = _input;
+		int M = priors.length;
+		int D = _var.getSiblings().size();
+		double [] logs = getAlphas(M);
+		double maxLog = Double.NEGATIVE_INFINITY;
+		
+		for (int m = 0; m < M; m++)
+		{
+			double out = log(priors[m]);
+			for (int d = 0; d < D; d++)
+				if (d != outPortNum)
+					out += log(_inPortMsgs[d][m]);
+			if (out > maxLog) maxLog = out;
+			logs[m] = out;
+		}
+		
+		setNormalized(_outMsgArray[outPortNum], logs, 0, maxLog, M);
+	}
+
+	@Override
+	public void update()
+	{
+		double [] priors = _input;
+		int M = priors.length;
+		int D = _var.getSiblings().size();
+		double [] alphas = getAlphas(2 * M);		// Second half holds each output before normalizing
+		
+		for (int m = 0; m < M; m++)
+		{
+			double alpha = log(priors[m]);
+			for (int d = 0; d < D; d++)
+				alpha += log(_inPortMsgs[d][m]);
+			alphas[m] = alpha;
+		}
+		
+		for (int d = 0; d < D; d++)
+		{
+			float [] inMsgs = _inPortMsgs[d];
+			double maxLog = Double.NEGATIVE_INFINITY;
+			for (int m = 0; m < M; m++)
+			{
+				double out = alphas[m] - log(inMsgs[m]);
+				if (out > maxLog) maxLog = out;
+				alphas[M + m] = out;
+			}
+			setNormalized(_outMsgArray[d], alphas, M, maxLog, M);
+		}
+	}
+
+	@Override
+	public double [] getBelief()
+	{
+		double [] priors = _input;
+		int M = priors.length;
+		int D = _var.getSiblings().size();
+		double [] outBelief = new double[M];
+		double maxLog = Double.NEGATIVE_INFINITY;
+		
+		for (int m = 0; m < M; m++)
+		{
+			double out = log(priors[m]);
+			for (int d = 0; d < D; d++)
+				out += log(_inPortMsgs[d][m]);
+			if (out > maxLog) maxLog = out;
+			outBelief[m] = out;
+		}
+		
+		double sum = 0;
+		for (int m = 0; m < M; m++)
+		{
+			double out = Math.exp(outBelief[m] - maxLog);
+			outBelief[m] = out;
+			sum += out;
+		}
+		for (int m = 0; m < M; m++)
+			outBelief[m] /= sum;
+		
+		return outBelief;
+	}
+
+	@Override
+	public double getInternalEnergy()
+	{
+		double [] belief = getBelief();
+		double [] input = _input;
+		
+		double norm = 0;
+		for (int i = 0; i < input.length; i++)
+			norm += input[i];
+		
+		double sum = 0;
+		for (int i = 0; i < input.length; i++)
+		{
+			double tmp = input[i] / norm;
+			if (tmp != 0)
+				sum += belief[i] * (- Math.log(tmp));
+		}
+		return sum;
+	}
+
+	@Override
+	public double getBetheEntropy()
+	{
+		double sum = 0;
+		double [] belief = getBelief();
+		for (int i = 0; i < belief.length; i++)
+			if (belief[i] != 0)
+				sum -= belief[i] * Math.log(belief[i]);
+		return sum;
+	}
+
+	// Exponentiates the M logs starting at offset relative to their maximum and stores the normalized result
+	private void setNormalized(float [] outMsgs, double [] logs, int offset, double maxLog, int M)
+	{
+		double sum = 0;
+		for (int m = 0; m < M; m++)
+		{
+			double out = Math.exp(logs[offset + m] - maxLog);
+			logs[offset + m] = out;
+			sum += out;
+		}
+		for (int m = 0; m < M; m++)
+			outMsgs[m] = (float)(logs[offset + m] / sum);
+	}
+
+	private double [] getAlphas(int length)
+	{
+		if (_alphas.length < length)
+			_alphas = new double[length];
+		return _alphas;
+	}
+
+	private static double log(double value)
+	{
+		return (value == 0) ? minLog : Math.log(value);
+	}
+}
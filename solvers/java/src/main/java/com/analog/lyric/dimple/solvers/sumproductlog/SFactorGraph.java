@@ -0,0 +1,45 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+package com.analog.lyric.dimple.solvers.sumproductlog;
+
+import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.model.VariableBase;
+import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
+
+public class SFactorGraph extends SFactorGraphBase
+{
+	public SFactorGraph(com.analog.lyric.dimple.model.FactorGraph factorGraph) 
+	{
+		super(factorGraph);
+	}
+
+	public ISolverVariable createVariable(VariableBase var)  
+	{
+		if (!var.getDomain().isDiscrete())
+			throw new DimpleException("only support discrete variables");
+		
+		return new SVariable(var);
+	}
+
+	@Override
+	public ISolverFactor createFactor(Factor factor)  
+	{
+		return new STableFactor(factor);
+	}
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+package com.analog.lyric.dimple.solvers.sumproductlog;
+
+import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.solvers.core.STableFactorDoubleArray;
+
+/*
+ * Log-domain sum-product table factor.  Each output value is the log-sum-exp, over the table
+ * rows with that value, of the row's log-weight plus the other incoming messages.  The
+ * log-weights are the negated potentials, which the factor table already caches.  The first
+ * pass over the table finds the largest term for each output value, so the second only needs
+ * one exp per row and nothing can overflow or underflow.
+ */
+public class STableFactor extends STableFactorDoubleArray
+{
+	protected double [] _maxima = new double[0];		// Scratch for updateEdge
+	protected double [] _sums = new double[0];
+
+	public STableFactor(Factor factor)
+	{
+		super(factor);
+	}
+
+	@Override
+	public void updateEdge(int outPortNum)
+	{
+		int [][] table = getFactorTable().getIndices();
+		double [] potentials = getFactorTable().getPotentials();
+		int tableLength = table.length;
+		int numPorts = _inputMsgs.length;
+		double [][] inputMsgs = _inputMsgs;
+		double [] outputMsgs = _outputMsgs[outPortNum];
+		int outputMsgLength = outputMsgs.length;
+		
+		if (_maxima.length < outputMsgLength)
+		{
+			_maxima = new double[outputMsgLength];
+			_sums = new double[outputMsgLength];
+		}
+		double [] maxima = _maxima;
+		double [] sums = _sums;
+		for (int i = 0; i < outputMsgLength; i++)
+		{
+			maxima[i] = Double.NEGATIVE_INFINITY;
+			sums[i] = 0;
+		}
+		
+		for (int tableIndex = 0; tableIndex < tableLength; tableIndex++)
+		{
+			int [] tableRow = table[tableIndex];
+			double L = rowLog(tableRow, potentials[tableIndex], inputMsgs, numPorts, outPortNum);
+			int outputIndex = tableRow[outPortNum];
+			if (L > maxima[outputIndex])
+				maxima[outputIndex] = L;
+		}
+		
+		for (int tableIndex = 0; tableIndex < tableLength; tableIndex++)
+		{
+			int [] tableRow = table[tableIndex];
+			double L = rowLog(tableRow, potentials[tableIndex], inputMsgs, numPorts, outPortNum);
+			if (L != Double.NEGATIVE_INFINITY)
+			{
+				int outputIndex = tableRow[outPortNum];
+				sums[outputIndex] += Math.exp(L - maxima[outputIndex]);
+			}
+		}
+		
+		double maxLog = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < outputMsgLength; i++)
+		{
+			double out = (sums[i] == 0) ? Double.NEGATIVE_INFINITY : maxima[i] + Math.log(sums[i]);
+			if (out > maxLog) maxLog = out;
+			outputMsgs[i] = out;
+		}
+		if (maxLog == Double.NEGATIVE_INFINITY)
+		{
+			throw new DimpleException("Update failed in SumProduct Solver.  All probabilities were zero when calculating message for port " 
+					+ outPortNum + " on factor " + _factor.getLabel());
+		}
+		SVariable.shift(outputMsgs, maxLog);
+	}
+
+	@Override
+	public double [] getBelief()
+	{
+		int [][] table = getFactorTable().getIndices();
+		double [] potentials = getFactorTable().getPotentials();
+		int numPorts = _inputMsgs.length;
+		double [] retval = new double[table.length];
+		double maxLog = Double.NEGATIVE_INFINITY;
+		
+		for (int i = 0; i < table.length; i++)
+		{
+			double L = rowLog(table[i], potentials[i], _inputMsgs, numPorts, -1);
+			if (L > maxLog) maxLog = L;
+			retval[i] = L;
+		}
+		
+		double sum = 0;
+		for (int i = 0; i < retval.length; i++)
+		{
+			retval[i] = Math.exp(retval[i] - maxLog);
+			sum += retval[i];
+		}
+		for (int i = 0; i < retval.length; i++)
+			retval[i] /= sum;
+		
+		return retval;
+	}
+
+	@Override
+	public double getInternalEnergy()
+	{
+		double [] belief = getBelief();
+		double [] potentials = getFactorTable().getPotentials();
+		double sum = 0;
+		for (int i = 0; i < belief.length; i++)
+			if (potentials[i] != 0 && belief[i] != 0)
+				sum += belief[i] * potentials[i];
+		return sum;
+	}
+
+	@Override
+	public double getBetheEntropy()
+	{
+		double sum = 0;
+		double [] belief = getBelief();
+		for (int i = 0; i < belief.length; i++)
+			if (belief[i] != 0)
+				sum -= belief[i] * Math.log(belief[i]);
+		return sum;
+	}
+
+	// Log-weight of a table row plus the incoming messages on all ports except excludedPort
+	private static double rowLog(int [] tableRow, double potential, double [][] inputMsgs, int numPorts, int excludedPort)
+	{
+		double L = -potential;
+		for (int port = 0; port < numPorts; port++)
+			if (port != excludedPort)
+				L += inputMsgs[port][tableRow[port]];
+		return L;
+	}
+}
@@ -0,0 +1,225 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+package com.analog.lyric.dimple.solvers.sumproductlog;
+
+import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.DiscreteDomain;
+import com.analog.lyric.dimple.model.VariableBase;
+import com.analog.lyric.dimple.solvers.core.SDiscreteVariableDoubleArray;
+
+/*
+ * Messages are unnormalized log-probabilities, shifted so that their largest value is zero.
+ * Each output is the log of the input plus the sum of the other incoming messages, so an
+ * update only adds and subtracts.  A zero probability is negative infinity; since infinity
+ * can't be subtracted back out, update counts the infinite terms separately.
+ */
+public class SVariable extends SDiscreteVariableDoubleArray
+{
+	protected double [] _input;
+	protected double [] _logInput;
+	protected double [] _sums = new double[0];			// Scratch for update
+	protected int [] _numInfinite = new int[0];
+
+	public SVariable(VariableBase var)
+	{
+		super(var);
+	}
+
+	@Override
+	protected double getInitialMessageValue()
+	{
+		return 0;
+	}
+
+	@Override
+	public void setInputOrFixedValue(Object priors, Object fixed, boolean hasFixedValue)
+	{
+		int domainLength = ((DiscreteDomain)_var.getDomain()).size();
+		if (priors == null)
+		{
+			_input = new double[domainLength];
+			for (int i = 0; i < domainLength; i++)
+				_input[i] = 1.0 / domainLength;
+		}
+		else
+		{
+			double [] vals = (double[])priors;
+			if (vals.length != domainLength)
+				throw new DimpleException("length of priors does not match domain");
+			
+			_input = vals;
+		}
+		
+		_logInput = new double[domainLength];
+		for (int i = 0; i < domainLength; i++)
+			_logInput[i] = Math.log(_input[i]);
+	}
+
+	@Override
+	public double getScore()
+	{
+		return -Math.log(_input[getGuessIndex()]);
+	}
+
+	@Override
+	public void updateEdge(int outPortNum)
+	{
+		double [] logInput = _logInput;
+		int M = logInput.length;
+		int D = _var.getSiblings().size();
+		double [] outMsgs = _outMsgArray[outPortNum];
+		double maxLog = Double.NEGATIVE_INFINITY;
+		
+		for (int m = 0; m < M; m++)
+		{
+			double out = logInput[m];
+			for (int d = 0; d < D; d++)
+				if (d != outPortNum)
+					out += _inPortMsgs[d][m];
+			if (out > maxLog) maxLog = out;
+			outMsgs[m] = out;
+		}
+		
+		shift(outMsgs, maxLog);
+	}
+
+	@Override
+	public void update()
+	{
+		double [] logInput = _logInput;
+		int M = logInput.length;
+		int D = _var.getSiblings().size();
+		if (_sums.length < M)
+		{
+			_sums = new double[M];
+			_numInfinite = new int[M];
+		}
+		double [] sums = _sums;
+		int [] numInfinite = _numInfinite;
+		
+		// Sum of the finite terms, and the number of infinite ones, for each value
+		for (int m = 0; m < M; m++)
+		{
+			double sum = 0;
+			int count = 0;
+			double value = logInput[m];
+			if (value == Double.NEGATIVE_INFINITY)
+				count++;
+			else
+				sum += value;
+			for (int d = 0; d < D; d++)
+			{
+				value = _inPortMsgs[d][m];
+				if (value == Double.NEGATIVE_INFINITY)
+					count++;
+				else
+					sum += value;
+			}
+			sums[m] = sum;
+			numInfinite[m] = count;
+		}
+		
+		for (int d = 0; d < D; d++)
+		{
+			double [] inMsgs = _inPortMsgs[d];
+			double [] outMsgs = _outMsgArray[d];
+			double maxLog = Double.NEGATIVE_INFINITY;
+			for (int m = 0; m < M; m++)
+			{
+				double in = inMsgs[m];
+				double out;
+				if (in == Double.NEGATIVE_INFINITY)
+					out = (numInfinite[m] > 1) ? Double.NEGATIVE_INFINITY : sums[m];
+				else
+					out = (numInfinite[m] > 0) ? Double.NEGATIVE_INFINITY : sums[m] - in;
+				if (out > maxLog) maxLog = out;
+				outMsgs[m] = out;
+			}
+			shift(outMsgs, maxLog);
+		}
+	}
+
+	@Override
+	public double [] getBelief()
+	{
+		double [] logInput = _logInput;
+		int M = logInput.length;
+		int D = _var.getSiblings().size();
+		double [] outBelief = new double[M];
+		double maxLog = Double.NEGATIVE_INFINITY;
+		
+		for (int m = 0; m < M; m++)
+		{
+			double out = logInput[m];
+			for (int d = 0; d < D; d++)
+				out += _inPortMsgs[d][m];
+			if (out > maxLog) maxLog = out;
+			outBelief[m] = out;
+		}
+		
+		double sum = 0;
+		for (int m = 0; m < M; m++)
+		{
+			double out = Math.exp(outBelief[m] - maxLog);
+			outBelief[m] = out;
+			sum += out;
+		}
+		for (int m = 0; m < M; m++)
+			outBelief[m] /= sum;
+		
+		return outBelief;
+	}
+
+	@Override
+	public double getInternalEnergy()
+	{
+		double [] belief = getBelief();
+		double [] input = _input;
+		
+		double norm = 0;
+		for (int i = 0; i < input.length; i++)
+			norm += input[i];
+		
+		double sum = 0;
+		for (int i = 0; i < input.length; i++)
+		{
+			double tmp = input[i] / norm;
+			if (tmp != 0)
+				sum += belief[i] * (- Math.log(tmp));
+		}
+		return sum;
+	}
+
+	@Override
+	public double getBetheEntropy()
+	{
+		double sum = 0;
+		double [] belief = getBelief();
+		for (int i = 0; i < belief.length; i++)
+			if (belief[i] != 0)
+				sum -= belief[i] * Math.log(belief[i]);
+		return sum;
+	}
+
+	// Shifts the message so that its largest value is zero, unless every value is zero probability
+	static void shift(double [] msg, double maxLog)
+	{
+		if (maxLog == Double.NEGATIVE_INFINITY)
+			return;
+		for (int m = 0; m < msg.length; m++)
+			msg[m] -= maxLog;
+	}
+}
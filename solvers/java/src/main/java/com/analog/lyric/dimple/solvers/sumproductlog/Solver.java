@@ -0,0 +1,35 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+package com.analog.lyric.dimple.solvers.sumproductlog;
+
+import com.analog.lyric.dimple.solvers.core.SolverBase;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+
+/*
+ * Variant of the sum-product solver whose messages are log-probabilities.  Variables only add
+ * messages, and factors combine them with log-sum-exp over the cached potentials of the
+ * factor table, so messages can't underflow however small the probabilities get.  Only
+ * discrete variables and table factors are supported.
+ */
+public class Solver extends SolverBase
+{
+
+	public ISolverFactorGraph createFactorGraph(com.analog.lyric.dimple.model.FactorGraph factorGraph) 
+	{
+		return new SFactorGraph(factorGraph);
+	}
+	
+}
@@ -0,0 +1,229 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.Discrete;
+import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.model.VariableBase;
+import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
+
+public class BeliefCacheTest
+{
+	@Test
+	public void test_belief()
+	{
+		Discrete [] vars = new Discrete[4];
+		FactorGraph fg = GraphFixtures.createLoop(new com.analog.lyric.dimple.solvers.sumproduct.Solver(), vars, 5);
+		SFactorGraphBase solver = (SFactorGraphBase)fg.getSolver();
+		fg.initialize();
+		solver.iterate(2);
+		checkBeliefs(vars);
+
+		// Repeated queries give equal copies
+		double [] belief = vars[0].getBelief();
+		assertNotSame(belief, vars[0].getBelief());
+		assertArrayEquals(belief, vars[0].getBelief(), 0);
+		belief[0] = -1;
+		checkBeliefs(vars);
+
+		// Each way of changing messages or inputs invalidates the belief
+		double [] before = vars[0].getBelief();
+		solver.iterate(1);
+		assertFalse(Arrays.equals(before, vars[0].getBelief()));
+		checkBeliefs(vars);
+
+		Factor f = fg.getNonGraphFactorsFlat().getByIndex(0);
+		f.update();
+		checkBeliefs(vars);
+
+		vars[1].setInput(0.5, 0.3, 0.2);
+		checkBeliefs(vars);
+
+		fg.initialize();
+		checkBeliefs(vars);
+	}
+
+	@Test
+	public void test_getBeliefs()
+	{
+		Discrete [] vars = new Discrete[4];
+		FactorGraph fg = GraphFixtures.createLoop(new com.analog.lyric.dimple.solvers.sumproduct.Solver(), vars, 7);
+		SFactorGraphBase solver = (SFactorGraphBase)fg.getSolver();
+		fg.solve();
+
+		int [] ids = new int[] {vars[2].getId(), vars[0].getId(), vars[3].getId()};
+		double [][] out = new double[3][];
+		solver.getBeliefs(ids, out);
+		assertArrayEquals(vars[2].getBelief(), out[0], 0);
+		assertArrayEquals(vars[0].getBelief(), out[1], 0);
+		assertArrayEquals(vars[3].getBelief(), out[2], 0);
+
+		// The arrays are reused once allocated
+		double [] first = out[0];
+		solver.iterate(1);
+		solver.getBeliefs(ids, out);
+		assertSame(first, out[0]);
+		assertArrayEquals(vars[2].getBelief(), out[0], 0);
+
+		try
+		{
+			solver.getBeliefs(new int[] {-5}, out);
+			fail("expected exception");
+		}
+		catch (DimpleException e)
+		{
+		}
+	}
+
+	@Test
+	public void test_energy()
+	{
+		// Queried every iteration in one graph and only at the end in an identical one
+		Discrete [] vars = new Discrete[4];
+		FactorGraph fg = GraphFixtures.createLoop(new com.analog.lyric.dimple.solvers.sumproduct.Solver(), vars, 11);
+		FactorGraph twin = GraphFixtures.createLoop(new com.analog.lyric.dimple.solvers.sumproduct.Solver(), new Discrete[4], 11);
+		SFactorGraphBase solver = (SFactorGraphBase)fg.getSolver();
+		SFactorGraphBase twinSolver = (SFactorGraphBase)twin.getSolver();
+		fg.initialize();
+		twin.initialize();
+
+		double previous = solver.getBetheFreeEnergy();
+		for (int i = 0; i < 4; i++)
+		{
+			solver.iterate(1);
+			double energy = solver.getBetheFreeEnergy();
+			assertEquals(energy, solver.getBetheFreeEnergy(), 0);
+			assertTrue(energy != previous);
+			previous = energy;
+		}
+		twinSolver.iterate(4);
+		assertEquals(twinSolver.getInternalEnergy(), solver.getInternalEnergy(), 1e-12);
+		assertEquals(twinSolver.getBetheEntropy(), solver.getBetheEntropy(), 1e-12);
+
+		// Changing a factor table changes the energy without any message changing
+		fg.getNonGraphFactorsFlat().getByIndex(0).getFactorTable().changeWeight(0, 5);
+		twin.getNonGraphFactorsFlat().getByIndex(0).getFactorTable().changeWeight(0, 5);
+		assertTrue(solver.getInternalEnergy() != previous);
+		assertEquals(twinSolver.getBetheFreeEnergy(), solver.getBetheFreeEnergy(), 1e-12);
+	}
+
+	@Test
+	public void test_energyAfterLocalChanges()
+	{
+		// Few nodes change between queries, so the sums are adjusted rather than recomputed
+		Discrete [] vars = new Discrete[40];
+		FactorGraph fg = GraphFixtures.createChain(new com.analog.lyric.dimple.solvers.sumproduct.Solver(), vars, 17);
+		SFactorGraphBase solver = (SFactorGraphBase)fg.getSolver();
+		fg.initialize();
+		solver.iterate(2);
+		checkEnergy(fg);
+
+		Random r = new Random(17);
+		for (int i = 0; i < 50; i++)
+		{
+			int index = r.nextInt(vars.length);
+			if (i % 3 == 0)
+				vars[index].setInput(0.1 + r.nextDouble(), 0.1 + r.nextDouble(), 0.1 + r.nextDouble());
+			else if (i % 3 == 1)
+				vars[index].update();
+			else
+				fg.getNonGraphFactorsFlat().getByIndex(index % (vars.length - 1)).update();
+			checkEnergy(fg);
+		}
+	}
+
+	@Test
+	public void test_nestedEdit()
+	{
+		// A nested graph hanging off the loop
+		Discrete [] vars = new Discrete[4];
+		FactorGraph fg = GraphFixtures.createLoop(new com.analog.lyric.dimple.solvers.sumproduct.Solver(), vars, 13);
+		Random r = new Random(13);
+		Discrete x = new Discrete(0, 1, 2);
+		Discrete y = new Discrete(0, 1, 2);
+		FactorGraph template = new FactorGraph(x, y);
+		template.addFactor(GraphFixtures.randomTable(r, x, y), x, y);
+		FactorGraph nested = fg.addGraph(template, vars[0], vars[2]);
+		SFactorGraphBase solver = (SFactorGraphBase)fg.getSolver();
+		fg.initialize();
+		solver.iterate(3);
+		checkBeliefs(vars);
+		checkEnergy(fg);
+
+		// Nodes added to the nested graph, and a new edge to a variable of the root, are included
+		Discrete z = new Discrete(0, 1, 2);
+		z.setInput(0.2, 0.5, 0.3);
+		long version = vars[2].getMessageVersion();
+		nested.addFactor(GraphFixtures.randomTable(r, vars[2], z), vars[2], z);
+		assertTrue(vars[2].getMessageVersion() != version);
+		checkEnergy(fg);
+		solver.iterate(3);
+		checkBeliefs(vars);
+		checkEnergy(fg);
+	}
+
+	// Compares the solver's energies with sums over the model's own lists of nodes
+	private void checkEnergy(FactorGraph fg)
+	{
+		double internalEnergy = 0;
+		double betheEntropy = 0;
+		for (Factor f : fg.getNonGraphFactorsFlat())
+		{
+			internalEnergy += f.getInternalEnergy();
+			betheEntropy += f.getBetheEntropy();
+		}
+		for (VariableBase v : fg.getVariablesFlat())
+		{
+			internalEnergy += v.getInternalEnergy();
+			betheEntropy -= v.getBetheEntropy() * (v.getSiblings().size() - 1);
+		}
+		assertEquals(internalEnergy, fg.getInternalEnergy(), 1e-12);
+		assertEquals(betheEntropy, fg.getBetheEntropy(), 1e-12);
+	}
+
+	// Compares each cached belief with one computed from the current input and messages
+	private void checkBeliefs(Discrete [] vars)
+	{
+		for (Discrete v : vars)
+		{
+			ISolverVariable sv = v.getSolver();
+			double [] input = v.getInput();
+			double [] expected = new double[input.length];
+			double sum = 0;
+			for (int m = 0; m < input.length; m++)
+			{
+				expected[m] = input[m];
+				for (int d = 0; d < v.getSiblings().size(); d++)
+					expected[m] *= ((double[])sv.getInputMsg(d))[m];
+				sum += expected[m];
+			}
+			for (int m = 0; m < input.length; m++)
+				expected[m] /= sum;
+			assertArrayEquals(expected, v.getBelief(), 1e-12);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.FactorFunctions.Sum;
+import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.Discrete;
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.model.Real;
+import com.analog.lyric.dimple.solvers.core.ConvergenceMonitor;
+import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+
+public class ConvergenceMonitorTest
+{
+	@Test
+	public void test_tree()
+	{
+		// On a tree, belief propagation converges within the diameter of the graph
+		test_tree(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		test_tree(new com.analog.lyric.dimple.solvers.minsum.Solver());
+	}
+
+	@Test
+	public void test_unsupported()
+	{
+		// Solvers whose iterations don't pass settling messages reject a tolerance rather than ignore it
+		IFactorGraphFactory [] solvers = new IFactorGraphFactory[] {
+			new com.analog.lyric.dimple.solvers.gibbs.Solver(), new com.analog.lyric.dimple.solvers.particleBP.Solver()};
+		for (IFactorGraphFactory solverFactory : solvers)
+		{
+			Discrete [] vars = new Discrete[3];
+			SFactorGraphBase solver = (SFactorGraphBase)GraphFixtures.createChain(solverFactory, vars, 5).getSolver();
+			try
+			{
+				solver.setConvergenceTolerance(1e-6);
+				fail("expected DimpleException");
+			}
+			catch (DimpleException e)
+			{
+			}
+			assertNull(solver.getConvergenceMonitor());
+		}
+	}
+
+	@Test
+	public void test_loopy()
+	{
+		Discrete [] vars = new Discrete[4];
+		FactorGraph fg = GraphFixtures.createChain(new com.analog.lyric.dimple.solvers.sumproduct.Solver(), vars, 5);
+		fg.addFactor(GraphFixtures.randomTable(new Random(6), vars[3], vars[0]), vars[3], vars[0]);
+		SFactorGraphBase solver = (SFactorGraphBase)fg.getSolver();
+		solver.setNumIterations(3);
+		solver.setConvergenceTolerance(0, ConvergenceMonitor.Norm.L1);
+		fg.solve();
+
+		// Not converged yet, so all of the iterations are run
+		assertEquals(3, solver.getNumIterationsRun());
+		assertTrue(solver.getFinalResidual() > 0);
+		assertFalse(solver.hasConverged());
+
+		// Continuing with a looser tolerance stops after the first iteration
+		solver.setConvergenceTolerance(solver.getFinalResidual() * 10);
+		solver.iterate(10);
+		assertEquals(1, solver.getNumIterationsRun());
+		assertTrue(solver.hasConverged());
+	}
+
+	@Test
+	public void test_gaussian()
+	{
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.gaussian.Solver());
+		Real a = new Real();
+		Real b = new Real();
+		Real c = new Real();
+		a.setInputObject(new double[] {1, 2});
+		b.setInputObject(new double[] {3, 1});
+		fg.addFactor(new Sum(), c, a, b);
+		SFactorGraphBase solver = (SFactorGraphBase)fg.getSolver();
+		solver.setNumIterations(20);
+		solver.setConvergenceTolerance(1e-12);
+		fg.solve();
+
+		assertTrue(solver.hasConverged());
+		assertTrue(solver.getNumIterationsRun() <= 3);
+		assertEquals(4, ((double[])c.getBeliefObject())[0], 1e-12);
+	}
+
+	private void test_tree(IFactorGraphFactory solverFactory)
+	{
+		int numVars = 10;
+		Discrete [] expected = new Discrete[numVars];
+		FactorGraph fg = GraphFixtures.createChain(solverFactory, expected, 1);
+		((SFactorGraphBase)fg.getSolver()).setNumIterations(50);
+		fg.solve();
+
+		Discrete [] vars = new Discrete[numVars];
+		fg = GraphFixtures.createChain(solverFactory, vars, 1);
+		SFactorGraphBase solver = (SFactorGraphBase)fg.getSolver();
+		solver.setNumIterations(50);
+		solver.setConvergenceTolerance(1e-12);
+		fg.solve();
+
+		assertTrue(solver.hasConverged());
+		assertTrue(solver.getFinalResidual() <= 1e-12);
+		assertTrue(solver.getNumIterationsRun() < 50);
+		for (int i = 0; i < numVars; i++)
+			assertArrayEquals(expected[i].getBelief(), vars[i].getBelief(), 1e-10);
+	}
+}
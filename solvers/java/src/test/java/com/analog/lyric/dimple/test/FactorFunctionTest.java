@@ -19,9 +19,21 @@ package com.analog.lyric.dimple.test;
 
 import org.junit.* ;
 
+import com.analog.lyric.dimple.FactorFunctions.Beta;
+import com.analog.lyric.dimple.FactorFunctions.Gamma;
+import com.analog.lyric.dimple.FactorFunctions.InverseGamma;
+import com.analog.lyric.dimple.FactorFunctions.LogNormal;
+import com.analog.lyric.dimple.FactorFunctions.NegativeExpGamma;
 import com.analog.lyric.dimple.FactorFunctions.NopFactorFunction;
+import com.analog.lyric.dimple.FactorFunctions.Normal;
+import com.analog.lyric.dimple.FactorFunctions.Product;
+import com.analog.lyric.dimple.FactorFunctions.Rayleigh;
+import com.analog.lyric.dimple.FactorFunctions.Subtract;
+import com.analog.lyric.dimple.FactorFunctions.Sum;
+import com.analog.lyric.dimple.FactorFunctions.VonMises;
 import com.analog.lyric.dimple.FactorFunctions.XorDelta;
 import com.analog.lyric.dimple.FactorFunctions.core.FactorFunction;
+import com.analog.lyric.dimple.FactorFunctions.core.FactorFunctionWithConstants;
 import com.analog.lyric.dimple.FactorFunctions.core.FactorTable;
 import com.analog.lyric.dimple.FactorFunctions.core.TableFactorFunction;
 import com.analog.lyric.dimple.model.Discrete;
@@ -62,6 +74,61 @@ public class FactorFunctionTest {
 		ff.eval(new Object[]{.5, .5});
 	}
 	
+	@Test
+	public void test_primitiveEvalEnergy()
+	{
+		// The primitive version must give the same energy as the boxed version, with and without an offset
+		// or a scratch array from the caller
+		FactorFunction[] functions = new FactorFunction[] {
+			new Normal(), new Normal(0.2, 3), new LogNormal(), new Gamma(), new Gamma(1, 2), new InverseGamma(),
+			new NegativeExpGamma(), new Rayleigh(), new VonMises(), new Beta(), new Beta(1, 1), new Beta(2, 3),
+			new Sum(), new Sum(0.1), new Subtract(0.1), new Product(0.1),
+			new FactorFunctionWithConstants(new Normal(), new Object[]{1}, new int[]{1})};
+		double[][] argumentSets = new double[][] {{0.7, 2.5, 0.3, 0.9}, {1.5, 0.5, 1, 0.25}, {0.4, 1.2, -0.1, 0.6}};
+
+		for (FactorFunction function : functions)
+		{
+			assertTrue(function.hasPrimitiveEvalEnergy());
+			for (double[] arguments : argumentSets)
+			{
+				Object[] boxedArguments = new Object[arguments.length];
+				double[] paddedArguments = new double[arguments.length + 3];
+				for (int i = 0; i < arguments.length; i++)
+				{
+					boxedArguments[i] = arguments[i];
+					paddedArguments[i + 2] = arguments[i];
+				}
+				double expected = function.evalEnergy(boxedArguments);
+				assertEquals(expected, function.evalEnergy(arguments), 0);
+				assertEquals(expected, function.evalEnergy(paddedArguments, 2, arguments.length), 0);
+				double[] scratch = new double[function.getScratchLength(arguments.length)];
+				assertEquals(expected, function.evalEnergyWithScratch(boxedArguments, scratch), 0);
+				assertEquals(expected, function.evalEnergyWithScratch(arguments, scratch), 0);
+				assertEquals(Math.exp(-expected), function.evalWithScratch(boxedArguments, scratch), 0);
+			}
+		}
+
+		// A scratch array kept by the caller may be longer than the arguments after a longer call
+		Normal normal = new Normal();
+		double mean = 0.5, precision = 2;
+		double expectedNormal = precision/2 * (0.25*0.25 + 1.5*1.5) - 2 * Math.log(precision)/2;
+		assertEquals(expectedNormal, normal.evalEnergy(mean, precision, 0.75, 2), 1e-12);
+		normal.evalEnergy(mean, precision, 0.1, 0.2, 0.3, 0.4, 0.5);
+		assertEquals(expectedNormal, normal.evalEnergy(mean, precision, 0.75, 2), 1e-12);
+		FactorFunctionWithConstants normalWithMean = new FactorFunctionWithConstants(normal, new Object[]{mean}, new int[]{0});
+		normalWithMean.evalEnergy(new double[]{precision, 0.1, 0.2, 0.3, 0.4, 0.5});
+		assertEquals(expectedNormal, normalWithMean.evalEnergy(new double[]{precision, 0.75, 2}), 1e-12);
+		double[] scratch = new double[normalWithMean.getScratchLength(6)];
+		normalWithMean.evalEnergyWithScratch(new double[]{precision, 0.1, 0.2, 0.3, 0.4, 0.5}, scratch);
+		assertEquals(expectedNormal, normalWithMean.evalEnergyWithScratch(new double[]{precision, 0.75, 2}, scratch), 1e-12);
+		assertEquals(expectedNormal, normalWithMean.evalEnergyWithScratch(new Object[]{precision, 0.75, 2}, scratch), 1e-12);
+
+		// Functions without a primitive implementation fall back on the boxed version
+		FactorFunction xor = new XorDelta();
+		assertFalse(xor.hasPrimitiveEvalEnergy());
+		assertEquals(xor.evalEnergy(new Object[]{1.0, 0.0, 1.0}), xor.evalEnergy(new double[]{1, 0, 1}), 0);
+	}
+	
 	@Test
 	public void test_variable_constructor() 
 	{
@@ -0,0 +1,139 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.FactorFunctions.NopFactorFunction;
+import com.analog.lyric.dimple.FactorFunctions.XorDelta;
+import com.analog.lyric.dimple.FactorFunctions.core.FactorFunction;
+import com.analog.lyric.dimple.FactorFunctions.core.FactorTable;
+import com.analog.lyric.dimple.model.Bit;
+import com.analog.lyric.dimple.model.Discrete;
+import com.analog.lyric.dimple.model.DiscreteDomain;
+import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.solvers.sumproduct.FiniteFieldAdd;
+import com.analog.lyric.util.misc.IndexCounter;
+
+public class FiniteFieldAddTest
+{
+	@Test
+	public void test_binaryXor()
+	{
+		Random r = new Random(1);
+		int degree = 8;
+		Discrete [] vars = new Discrete[degree];
+		Discrete [] tableVars = new Discrete[degree];
+		DiscreteDomain [] domains = new DiscreteDomain[degree];
+		for (int i = 0; i < degree; i++)
+		{
+			double [] input = randomInput(r, 2);
+			vars[i] = new Bit();
+			vars[i].setInput(input);
+			tableVars[i] = new Bit();
+			tableVars[i].setInput(input);
+			domains[i] = vars[i].getDiscreteDomain();
+		}
+
+		XorDelta xor = new XorDelta();
+		compare(xor, xor.getFactorTable(domains), vars, tableVars);
+	}
+
+	@Test
+	public void test_finiteFieldAdd()
+	{
+		// Sum of elements of GF(8) is zero
+		Random r = new Random(2);
+		int degree = 5;
+		int size = 8;
+		Object [] elements = new Object[size];
+		for (int i = 0; i < size; i++)
+			elements[i] = i;
+		Discrete [] vars = new Discrete[degree];
+		Discrete [] tableVars = new Discrete[degree];
+		DiscreteDomain [] domains = new DiscreteDomain[degree];
+		int [] domainSizes = new int[degree];
+		for (int i = 0; i < degree; i++)
+		{
+			double [] input = randomInput(r, size);
+			input[r.nextInt(size)] = 0;
+			vars[i] = new Discrete(elements);
+			vars[i].setInput(input);
+			tableVars[i] = new Discrete(elements);
+			tableVars[i].setInput(input);
+			domains[i] = vars[i].getDiscreteDomain();
+			domainSizes[i] = size;
+		}
+
+		ArrayList<int[]> rows = new ArrayList<int[]>();
+		for (int [] indices : new IndexCounter(domainSizes))
+		{
+			int xor = 0;
+			for (int index : indices)
+				xor ^= index;
+			if (xor == 0)
+				rows.add(indices.clone());
+		}
+		int [][] indices = rows.toArray(new int[rows.size()][]);
+		double [] weights = new double[indices.length];
+		for (int i = 0; i < weights.length; i++)
+			weights[i] = 1;
+
+		compare(new NopFactorFunction("finiteFieldAdd"), new FactorTable(indices, weights, domains), vars, tableVars);
+	}
+
+	// Compares beliefs from a single parity check factor to those from the equivalent factor table
+	private void compare(FactorFunction function, FactorTable table, Discrete [] vars, Discrete [] tableVars)
+	{
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		Factor f = fg.addFactor(function, (Object[])vars);
+		assertTrue(f.getSolver() instanceof FiniteFieldAdd);
+		fg.solve();
+
+		FactorGraph tableGraph = new FactorGraph();
+		tableGraph.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		tableGraph.addFactor(table, tableVars);
+		tableGraph.solve();
+
+		for (int i = 0; i < vars.length; i++)
+			assertArrayEquals(tableVars[i].getBelief(), vars[i].getBelief(), 1e-12);
+
+		// Updating a single edge must give the same message as updating the whole factor
+		FiniteFieldAdd sf = (FiniteFieldAdd)f.getSolver();
+		for (int i = 0; i < vars.length; i++)
+		{
+			double [] fullUpdate = ((double[])sf.getOutputMsg(i)).clone();
+			sf.updateEdge(i);
+			assertArrayEquals(fullUpdate, (double[])sf.getOutputMsg(i), 1e-12);
+		}
+	}
+
+	private static double [] randomInput(Random r, int length)
+	{
+		double [] input = new double[length];
+		for (int i = 0; i < length; i++)
+			input[i] = 0.1 + r.nextDouble();
+		return input;
+	}
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.FactorFunctions.Normal;
+import com.analog.lyric.dimple.model.Discrete;
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.model.Real;
+import com.analog.lyric.dimple.solvers.gibbs.SDiscreteVariable;
+import com.analog.lyric.dimple.solvers.gibbs.SFactorGraph;
+import com.analog.lyric.dimple.solvers.gibbs.SRealVariable;
+import com.analog.lyric.dimple.solvers.gibbs.sampleStorage.DoubleSampleBuffer;
+import com.analog.lyric.dimple.solvers.gibbs.sampleStorage.IntSampleBuffer;
+import com.analog.lyric.dimple.solvers.gibbs.sampleStorage.SampleStatistics;
+import com.analog.lyric.dimple.solvers.gibbs.sampleStorage.SampleStorage;
+
+public class GibbsSampleStorageTest
+{
+	@Test
+	public void test_buffers()
+	{
+		Random r = new Random(1);
+		SampleStorage storage = new SampleStorage(3 * SampleStorage.CHUNK_BYTES);
+		int numSamples = 100000;
+		int[] domainSizes = {2, 3, 200, 1 << 20};
+		IntSampleBuffer[] intBuffers = new IntSampleBuffer[domainSizes.length];
+		int[][] expectedInts = new int[domainSizes.length][numSamples];
+		for (int i = 0; i < domainSizes.length; i++)
+			intBuffers[i] = new IntSampleBuffer(domainSizes[i], storage);
+		DoubleSampleBuffer doubleBuffer = new DoubleSampleBuffer(storage);
+		double[] expectedDoubles = new double[numSamples];
+
+		for (int n = 0; n < numSamples; n++)
+		{
+			for (int i = 0; i < domainSizes.length; i++)
+			{
+				expectedInts[i][n] = r.nextInt(domainSizes[i]);
+				intBuffers[i].add(expectedInts[i][n]);
+			}
+			expectedDoubles[n] = r.nextGaussian();
+			doubleBuffer.add(expectedDoubles[n]);
+		}
+
+		// Nearly everything is moved out of memory, and still reads back the same
+		assertTrue(storage.getMemoryInUse() <= (3 + domainSizes.length + 1) * SampleStorage.CHUNK_BYTES);
+		assertTrue(storage.getSpilledBytes() > 0);
+		for (int i = 0; i < domainSizes.length; i++)
+			assertArrayEquals(expectedInts[i], intBuffers[i].toArray());
+		assertArrayEquals(expectedDoubles, doubleBuffer.toArray(), 0);
+		assertEquals(expectedInts[2][12345], intBuffers[2].get(12345));
+
+		// A binary sample takes a single bit
+		IntSampleBuffer bits = new IntSampleBuffer(2);
+		bits.addAll(intBuffers[0]);
+		int samplesPerChunk = 64 * SampleStorage.CHUNK_LENGTH;
+		assertEquals((long)((numSamples + samplesPerChunk - 1) / samplesPerChunk) * SampleStorage.CHUNK_BYTES, bits.getMemoryInUse());
+		assertArrayEquals(expectedInts[0], bits.toArray());
+
+		for (IntSampleBuffer buffer : intBuffers)
+			buffer.clear();
+		doubleBuffer.clear();
+		assertEquals(0, storage.getMemoryInUse());
+		assertEquals(0, storage.getSpilledBytes());
+	}
+
+	@Test
+	public void test_statistics()
+	{
+		Random r = new Random(2);
+		int numSamples = 20000;
+		int maxLag = 5;
+		double[] quantiles = {0.1, 0.5, 0.9};
+		double[] samples = new double[numSamples];
+		SampleStatistics stats = new SampleStatistics(quantiles, maxLag);
+
+		// An autoregressive sequence, so that the autocorrelation is not trivial
+		double x = 100;
+		for (int n = 0; n < numSamples; n++)
+		{
+			x = 100 + 0.8 * (x - 100) + r.nextGaussian();
+			samples[n] = x;
+			stats.add(x);
+		}
+
+		double mean = 0;
+		for (double s : samples)
+			mean += s;
+		mean /= numSamples;
+		double[] covariance = new double[maxLag + 1];
+		for (int k = 0; k <= maxLag; k++)
+			for (int n = k; n < numSamples; n++)
+				covariance[k] += (samples[n] - mean) * (samples[n - k] - mean);
+
+		assertEquals(numSamples, stats.getCount());
+		assertEquals(mean, stats.getMean(), 1e-9);
+		assertEquals(covariance[0] / (numSamples - 1), stats.getVariance(), 1e-9);
+		for (int k = 0; k <= maxLag; k++)
+			assertEquals(covariance[k] / covariance[0], stats.getAutocorrelation(k), 1e-9);
+
+		double[] sorted = samples.clone();
+		Arrays.sort(sorted);
+		for (double p : quantiles)
+			assertEquals(sorted[(int)(p * numSamples)], stats.getQuantile(p), 0.1);
+		assertEquals(sorted[0], stats.getMin(), 0);
+		assertEquals(sorted[numSamples - 1], stats.getMax(), 0);
+
+		// Merging halves gives the moments of the whole
+		SampleStatistics first = new SampleStatistics(quantiles, maxLag);
+		SampleStatistics second = new SampleStatistics(quantiles, maxLag);
+		for (int n = 0; n < numSamples; n++)
+			(n < numSamples / 2 ? first : second).add(samples[n]);
+		first.merge(second);
+		assertEquals(numSamples, first.getCount());
+		assertEquals(stats.getMean(), first.getMean(), 1e-9);
+		assertEquals(stats.getVariance(), first.getVariance(), 1e-9);
+		assertEquals(stats.getAutocorrelation(1), first.getAutocorrelation(1), 0.01);
+	}
+
+	@Test
+	public void test_gibbsSpill()
+	{
+		// With no memory for samples, the saved samples are the same as those kept in memory
+		int[] unlimitedSamples = runDiscrete(Long.MAX_VALUE);
+		int[] spilledSamples = runDiscrete(0);
+		assertEquals(20000, spilledSamples.length);
+		assertArrayEquals(unlimitedSamples, spilledSamples);
+	}
+
+	@Test
+	public void test_gibbsStatistics()
+	{
+		FactorGraph graph = new FactorGraph();
+		graph.setSolverFactory(new com.analog.lyric.dimple.solvers.gibbs.Solver());
+		SFactorGraph solver = (SFactorGraph)graph.getSolver();
+		solver.setNumSamples(5000);
+		solver.setUpdatesPerSample(2);
+		solver.setBurnInUpdates(100);
+		Real a = new Real(new Normal(3, 4));
+		Real b = new Real();
+		graph.addFactor(new Normal(0, 1), a, b);
+
+		solver.setSeed(3);
+		solver.saveAllSamples();
+		solver.saveSampleStatistics();
+		graph.solve();
+
+		SRealVariable sa = (SRealVariable)a.getSolver();
+		double[] samples = sa.getAllSamples();
+		SampleStatistics stats = sa.getSampleStatistics();
+		double sum = 0;
+		for (double s : samples)
+			sum += s;
+		assertEquals(samples.length, stats.getCount());
+		assertEquals(sum / samples.length, stats.getMean(), 1e-9);
+		assertEquals(1, stats.getAutocorrelation(0), 1e-12);
+	}
+
+	private int[] runDiscrete(long memoryLimit)
+	{
+		FactorGraph graph = new FactorGraph();
+		graph.setSolverFactory(new com.analog.lyric.dimple.solvers.gibbs.Solver());
+		SFactorGraph solver = (SFactorGraph)graph.getSolver();
+		solver.setNumSamples(20000);
+		solver.setUpdatesPerSample(1);
+		solver.setBurnInUpdates(10);
+		Discrete a = new Discrete(1, 0);
+		Discrete b = new Discrete(1, 0);
+		a.setInput(0.3, 0.7);
+		graph.addFactor(new GibbsTest.PBA(), b, a);
+
+		solver.setSampleMemoryLimit(memoryLimit);
+		solver.setSeed(4);
+		solver.saveAllSamples();
+		graph.solve();
+		return ((SDiscreteVariable)b.getSolver()).getAllSampleIndices();
+	}
+}
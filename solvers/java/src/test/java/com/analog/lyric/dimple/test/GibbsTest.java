@@ -16,10 +16,16 @@
 
 package com.analog.lyric.dimple.test;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.lang.management.ManagementFactory;
+
+import org.junit.Assume;
 import org.junit.Test;
 
+import com.analog.lyric.dimple.FactorFunctions.And;
 import com.analog.lyric.dimple.FactorFunctions.core.FactorFunction;
 import com.analog.lyric.dimple.model.Discrete;
 import com.analog.lyric.dimple.model.Factor;
@@ -111,6 +117,206 @@ public class GibbsTest
 		assertTrue(nearlyEquals(Math.exp(-totalPotential),0.6));
 	}
 	
+	@Test
+	public void updateDoesNotAllocate()
+	{
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)bean;
+		Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+
+		FactorGraph graph = new FactorGraph();
+		graph.setSolverFactory(new com.analog.lyric.dimple.solvers.gibbs.Solver());
+		SFactorGraph solver = (SFactorGraph)graph.getSolver();
+		solver.setNumSamples(100);
+		solver.setSeed(1);
+
+		// A chain of variables with pairwise factors, plus a deterministic directed factor and a larger domain
+		int numVars = 6;
+		Discrete[] vars = new Discrete[numVars];
+		for (int i = 0; i < numVars; i++)
+			vars[i] = new Discrete(0,1);
+		Discrete big = new Discrete(0,1,2,3,4,5,6);
+		Discrete out = new Discrete(0,1);
+		for (int i = 1; i < numVars; i++)
+			graph.addFactor(new PBA(), vars[i], vars[i-1]);
+		graph.addFactor(new PBig(), big, vars[0]);
+		graph.addFactor(new And(), out, vars[1], vars[2]);
+		graph.solve();
+
+		SDiscreteVariable[] svars = new SDiscreteVariable[numVars + 1];
+		for (int i = 0; i < numVars; i++)
+			svars[i] = (SDiscreteVariable)vars[i].getSolver();
+		svars[numVars] = (SDiscreteVariable)big.getSolver();
+
+		// Warm up, then count the bytes allocated by this thread over many updates
+		int numPasses = 20000;
+		for (int pass = 0; pass < numPasses; pass++)
+			for (SDiscreteVariable svar : svars)
+				svar.update();
+		long threadId = Thread.currentThread().getId();
+		long before = threadBean.getThreadAllocatedBytes(threadId);
+		for (int pass = 0; pass < numPasses; pass++)
+			for (SDiscreteVariable svar : svars)
+				svar.update();
+		long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+		// Any allocation per update would be at least numPasses * 16 bytes
+		assertTrue("Allocated " + allocated + " bytes", allocated < numPasses);
+	}
+	
+	@Test
+	public void seededGraphsAreIndependent() throws InterruptedException
+	{
+		// Each graph has its own random stream, so solving other graphs in between,
+		// or at the same time in other threads, must not change a seeded graph's samples
+		Object[] expected = solveChain(1);
+		solveChain(2);
+		assertArrayEquals(expected, solveChain(1));
+
+		final Object[][] results = new Object[4][];
+		Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++)
+		{
+			final int index = i;
+			threads[i] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					results[index] = solveChain(1);
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		for (Object[] result : results)
+			assertArrayEquals(expected, result);
+	}
+	
+	@Test
+	public void multipleChains()
+	{
+		int numChains = 4;
+		int numSamples = 2000;
+		FactorGraph graph = new FactorGraph();
+		graph.setSolverFactory(new com.analog.lyric.dimple.solvers.gibbs.Solver());
+		SFactorGraph solver = (SFactorGraph)graph.getSolver();
+		solver.setNumSamples(numSamples);
+		solver.setBurnInUpdates(100);
+		solver.setNumChains(numChains);
+		solver.setSeed(1);
+
+		Discrete a = new Discrete(1,0);
+		Discrete b = new Discrete(1,0);
+		graph.addFactor(new PA(), a);
+		graph.addFactor(new PBA(), b, a);
+		solver.saveAllSamples();
+		solver.saveAllScores();
+		graph.solve();
+
+		SDiscreteVariable sa = (SDiscreteVariable)a.getSolver();
+		assertEquals(numChains * numSamples, sa.getAllSamples().length);
+		assertEquals(numChains * numSamples, solver.getAllScores().length);
+		assertEquals(0.2047, a.getBelief()[0], 0.02);
+		assertEquals(0.6115, b.getBelief()[0], 0.02);
+		assertEquals(0, sa.getBestSample());
+		assertEquals(1, solver.getRHat(a), 0.05);
+		assertEquals(1, solver.getScoreRHat(), 0.05);
+
+		// The chains have their own random streams, so running them in parallel gives the same result
+		double[] belief = a.getBelief();
+		double[] scores = solver.getAllScores();
+		solver.setNumThreads(numChains);
+		solver.setSeed(1);
+		graph.solve();
+		assertArrayEquals(belief, a.getBelief(), 0);
+		assertArrayEquals(scores, solver.getAllScores(), 0);
+		solver.setNumThreads(1);
+
+		solver.setNumChains(1);
+		graph.solve();
+		assertEquals(numSamples, solver.getAllScores().length);
+		assertTrue(Double.isNaN(solver.getRHat(a)));
+	}
+	
+	@Test
+	public void multipleChainsReuseCopies()
+	{
+		// The chain copies kept from the first solve give the same result as new ones, and see the changed input
+		Discrete[] vars = new Discrete[2];
+		FactorGraph graph = createChainsGraph(vars);
+		SFactorGraph solver = (SFactorGraph)graph.getSolver();
+		solver.setSeed(1);
+		graph.solve();
+		vars[0].setInput(0.6, 0.4);
+		solver.setSeed(2);
+		graph.solve();
+
+		Discrete[] freshVars = new Discrete[2];
+		FactorGraph fresh = createChainsGraph(freshVars);
+		SFactorGraph freshSolver = (SFactorGraph)fresh.getSolver();
+		freshVars[0].setInput(0.6, 0.4);
+		freshSolver.setSeed(2);
+		fresh.solve();
+
+		assertArrayEquals(freshVars[0].getBelief(), vars[0].getBelief(), 0);
+		assertArrayEquals(freshVars[1].getBelief(), vars[1].getBelief(), 0);
+		assertArrayEquals(freshSolver.getAllScores(), solver.getAllScores(), 0);
+		assertEquals(freshSolver.getScoreRHat(), solver.getScoreRHat(), 0);
+	}
+	
+	private static FactorGraph createChainsGraph(Discrete[] vars)
+	{
+		FactorGraph graph = new FactorGraph();
+		graph.setSolverFactory(new com.analog.lyric.dimple.solvers.gibbs.Solver());
+		SFactorGraph solver = (SFactorGraph)graph.getSolver();
+		solver.setNumSamples(500);
+		solver.setBurnInUpdates(50);
+		solver.setNumChains(3);
+		vars[0] = new Discrete(1,0);
+		vars[1] = new Discrete(1,0);
+		graph.addFactor(new PA(), vars[0]);
+		graph.addFactor(new PBA(), vars[1], vars[0]);
+		solver.saveAllScores();
+		return graph;
+	}
+	
+	private static Object[] solveChain(long seed)
+	{
+		FactorGraph graph = new FactorGraph();
+		graph.setSolverFactory(new com.analog.lyric.dimple.solvers.gibbs.Solver());
+		SFactorGraph solver = (SFactorGraph)graph.getSolver();
+		solver.setNumSamples(2000);
+		solver.setBurnInUpdates(100);
+		solver.setSeed(seed);
+
+		int numVars = 5;
+		Discrete[] vars = new Discrete[numVars];
+		for (int i = 0; i < numVars; i++)
+			vars[i] = new Discrete(0,1);
+		graph.addFactor(new PA(), vars[0]);
+		for (int i = 1; i < numVars; i++)
+			graph.addFactor(new PBA(), vars[i], vars[i-1]);
+		solver.saveAllSamples();
+		graph.solve();
+
+		return ((SDiscreteVariable)vars[numVars - 1].getSolver()).getAllSamples();
+	}
+	
+	public static class PBig extends FactorFunction 
+	{
+		public PBig() {super("PBig");}
+	    public double eval(Object ... input)
+	    {
+	    	int big = (Integer)input[0];
+	    	int a = (Integer)input[1];
+	    	return 1.0 / (1 + big + a);
+	    }
+	}
+	
 	public static class PA extends FactorFunction 
 	{
 		public PA() {super("PA");}
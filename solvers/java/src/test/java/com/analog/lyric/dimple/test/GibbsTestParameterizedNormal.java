@@ -1,5 +1,6 @@
 package com.analog.lyric.dimple.test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Random;
@@ -90,6 +91,49 @@ public class GibbsTestParameterizedNormal
 
 	
 	
+	@Test
+	public void multipleChains()
+	{
+		// Every chain evaluates the same Normal factor function, with its own mean and precision
+		int numChains = 4;
+		FactorGraph graph = new FactorGraph();
+		graph.setSolverFactory(new com.analog.lyric.dimple.solvers.gibbs.Solver());
+		SFactorGraph solver = (SFactorGraph)graph.getSolver();
+		solver.setNumSamples(500);
+		solver.setUpdatesPerSample(10);
+		solver.setBurnInUpdates(200);
+		solver.setNumChains(numChains);
+
+		Random r = new Random(2);
+		Real vModelMean = new Real();
+		Real vModelInverseVariance = new Real(new RealDomain(0, Double.POSITIVE_INFINITY));
+		Object[] vars = new Object[102];
+		vars[0] = vModelMean;
+		vars[1] = vModelInverseVariance;
+		for (int i = 2; i < vars.length; i++)
+			vars[i] = 5*r.nextGaussian() + 10;
+		graph.addFactor(new Normal(), vars);
+		SRealVariable svModelMean = (SRealVariable)vModelMean.getSolver();
+		SRealVariable svModelInverseVariance = (SRealVariable)vModelInverseVariance.getSolver();
+		svModelMean.setProposalStandardDeviation(1);
+		svModelInverseVariance.setProposalStandardDeviation(.01);
+		svModelMean.saveAllSamples();
+		solver.saveAllScores();
+
+		solver.setSeed(1);
+		graph.solve();
+		double[] samples = svModelMean.getAllSamples();
+		double[] scores = solver.getAllScores();
+
+		// Running the chains in parallel must give the same result
+		solver.setNumThreads(numChains);
+		solver.setSeed(1);
+		graph.solve();
+		assertArrayEquals(samples, svModelMean.getAllSamples(), 0);
+		assertArrayEquals(scores, solver.getAllScores(), 0);
+		solver.setNumThreads(1);
+	}
+	
 	private static double TOLLERANCE = 1e-12;
 	private boolean nearlyEquals(double a, double b)
 	{
@@ -0,0 +1,125 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test;
+
+import java.util.Random;
+
+import com.analog.lyric.dimple.FactorFunctions.XorDelta;
+import com.analog.lyric.dimple.FactorFunctions.core.FactorTable;
+import com.analog.lyric.dimple.model.Discrete;
+import com.analog.lyric.dimple.model.DiscreteDomain;
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+
+/*
+ * Small random graphs and factors shared by the solver tests.  Each graph builder fills in the
+ * given array of variables, so a test can build the same graph for two solvers and compare the beliefs.
+ */
+public class GraphFixtures
+{
+	// Ternary variables with random inputs
+	public static void createTernaryVariables(Random r, Discrete [] vars)
+	{
+		for (int i = 0; i < vars.length; i++)
+		{
+			vars[i] = new Discrete(0, 1, 2);
+			vars[i].setInput(0.1 + r.nextDouble(), 0.1 + r.nextDouble(), 0.1 + r.nextDouble());
+		}
+	}
+
+	public static FactorTable randomTable(Random r, Discrete a, Discrete b)
+	{
+		return randomTable(r, 0.1, a, b);
+	}
+
+	// Pairwise table with a random weight of at least minWeight for every pair of values
+	public static FactorTable randomTable(Random r, double minWeight, Discrete a, Discrete b)
+	{
+		DiscreteDomain aDomain = a.getDiscreteDomain();
+		DiscreteDomain bDomain = b.getDiscreteDomain();
+		int [][] indices = new int[aDomain.size() * bDomain.size()][];
+		double [] weights = new double[indices.length];
+		for (int i = 0; i < indices.length; i++)
+		{
+			indices[i] = new int[] {i / bDomain.size(), i % bDomain.size()};
+			weights[i] = minWeight + r.nextDouble();
+		}
+		return new FactorTable(indices, weights, new DiscreteDomain[] {aDomain, bDomain});
+	}
+
+	// Chain of variables with random inputs and random pairwise factors
+	public static FactorGraph createChain(IFactorGraphFactory solverFactory, Discrete [] vars, long seed)
+	{
+		Random r = new Random(seed);
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(solverFactory);
+		createTernaryVariables(r, vars);
+		for (int i = 1; i < vars.length; i++)
+			fg.addFactor(randomTable(r, vars[i - 1], vars[i]), vars[i - 1], vars[i]);
+		return fg;
+	}
+
+	// Variables in a loop, with random inputs and random pairwise factors
+	public static FactorGraph createLoop(IFactorGraphFactory solverFactory, Discrete [] vars, long seed)
+	{
+		Random r = new Random(seed);
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(solverFactory);
+		createTernaryVariables(r, vars);
+		for (int i = 0; i < vars.length; i++)
+		{
+			Discrete a = vars[i];
+			Discrete b = vars[(i + 1) % vars.length];
+			fg.addFactor(randomTable(r, a, b), a, b);
+		}
+		return fg;
+	}
+
+	// Grid of variables with the given number of columns, random inputs and random pairwise factors between neighbors
+	public static FactorGraph createGrid(IFactorGraphFactory solverFactory, Discrete [] vars, int columns, long seed)
+	{
+		Random r = new Random(seed);
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(solverFactory);
+		createTernaryVariables(r, vars);
+		for (int i = 0; i < vars.length; i++)
+		{
+			if (i % columns != columns - 1)
+				fg.addFactor(randomTable(r, vars[i], vars[i + 1]), vars[i], vars[i + 1]);
+			if (i + columns < vars.length)
+				fg.addFactor(randomTable(r, vars[i], vars[i + columns]), vars[i], vars[i + columns]);
+		}
+		return fg;
+	}
+
+	// Two overlapping parity checks over five noisy bits
+	public static FactorGraph createParityChecks(IFactorGraphFactory solverFactory, Discrete [] vars)
+	{
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(solverFactory);
+		double [] p = {0.8, 0.3, 0.6, 0.1, 0.55};
+		for (int i = 0; i < vars.length; i++)
+		{
+			vars[i] = new Discrete(0, 1);
+			vars[i].setInput(1 - p[i], p[i]);
+		}
+		XorDelta xor = new XorDelta();
+		fg.addFactor(xor, vars[0], vars[1], vars[2]);
+		fg.addFactor(xor, vars[2], vars[3], vars[4]);
+		return fg;
+	}
+}
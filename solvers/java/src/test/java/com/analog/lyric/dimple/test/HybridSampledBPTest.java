@@ -0,0 +1,102 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.FactorFunctions.HybridAddFactorFunction;
+import com.analog.lyric.dimple.FactorFunctions.HybridRealFixedPower;
+import com.analog.lyric.dimple.FactorFunctions.core.HybridSampledBPFactorFunction;
+import com.analog.lyric.dimple.model.Discrete;
+import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.model.Real;
+import com.analog.lyric.dimple.solvers.gaussian.HybridSampledGaussianFactor;
+import com.analog.lyric.dimple.solvers.gaussian.SFactorGraph;
+
+public class HybridSampledBPTest
+{
+	@Test
+	public void test_add()
+	{
+		// Sum of a Gaussian and a discrete variable, sampled through the primitive path
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.gaussian.Solver());
+		((SFactorGraph)fg.getSolver()).setNumSamples(20000);
+		Real sum = new Real();
+		Real a = new Real();
+		Discrete b = new Discrete(0, 1, 2);
+		a.setInputObject(new double[] {1, 0.5});
+		b.setInput(0.25, 0.5, 0.25);
+		Factor f = fg.addFactor(new HybridAddFactorFunction(), sum, a, b);
+		assertTrue(f.getSolver() instanceof HybridSampledGaussianFactor);
+		fg.solve();
+
+		double [] belief = (double[])sum.getBeliefObject();
+		assertEquals(2, belief[0], 0.05);
+		assertEquals(Math.sqrt(0.25 + 0.5), belief[1], 0.05);
+	}
+
+	@Test
+	public void test_boxedFallback()
+	{
+		// A factor function without primitive sampling gives the same messages
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.gaussian.Solver());
+		((SFactorGraph)fg.getSolver()).setNumSamples(20000);
+		Real square = new Real();
+		Real x = new Real();
+		x.setInputObject(new double[] {3, 0.1});
+		fg.addFactor(new BoxedOnly(new HybridRealFixedPower(2)), square, x);
+		fg.solve();
+
+		double [] belief = (double[])square.getBeliefObject();
+		assertEquals(9.01, belief[0], 0.05);
+		assertEquals(0.6, belief[1], 0.05);
+	}
+
+	// Forwards only the boxed methods
+	private static class BoxedOnly extends HybridSampledBPFactorFunction
+	{
+		private HybridSampledBPFactorFunction _function;
+
+		public BoxedOnly(HybridSampledBPFactorFunction function)
+		{
+			_function = function;
+		}
+
+		@Override
+		public void attachRandom(java.util.Random random)
+		{
+			_function.attachRandom(random);
+		}
+
+		@Override
+		public double acceptanceRatio(int outPortIndex, Object... inputs)
+		{
+			return _function.acceptanceRatio(outPortIndex, inputs);
+		}
+
+		@Override
+		public Object generateSample(int outPortIndex, Object... inputs)
+		{
+			return _function.generateSample(outPortIndex, inputs);
+		}
+	}
+}
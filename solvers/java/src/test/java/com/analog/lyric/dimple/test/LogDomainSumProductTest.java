@@ -0,0 +1,126 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.FactorFunctions.core.FactorTable;
+import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.Discrete;
+import com.analog.lyric.dimple.model.DiscreteDomain;
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+
+public class LogDomainSumProductTest
+{
+	private final IFactorGraphFactory _linear = new com.analog.lyric.dimple.solvers.sumproduct.Solver();
+	private final IFactorGraphFactory _log = new com.analog.lyric.dimple.solvers.sumproductlog.Solver();
+
+	@Test
+	public void test_compare()
+	{
+		// Loopy grids, the first with a zero input probability
+		for (int seed = 1; seed <= 3; seed++)
+		{
+			Discrete [] expected = new Discrete[9];
+			Discrete [] actual = new Discrete[9];
+			solve(createGrid(_linear, expected, seed));
+			solve(createGrid(_log, actual, seed));
+			assertBeliefsEqual(expected, actual);
+		}
+		
+		// Deterministic factors, whose tables contain zeros
+		Discrete [] expected = new Discrete[5];
+		Discrete [] actual = new Discrete[5];
+		solve(GraphFixtures.createParityChecks(_linear, expected));
+		solve(GraphFixtures.createParityChecks(_log, actual));
+		assertBeliefsEqual(expected, actual);
+	}
+
+	@Test
+	public void test_underflow()
+	{
+		// Every product of a weight and input messages underflows in the linear domain
+		Discrete [] vars = new Discrete[3];
+		FactorGraph fg = createTriple(_linear, vars, Double.MIN_VALUE, 0);
+		try
+		{
+			solve(fg);
+			fail("expected exception");
+		}
+		catch (DimpleException e)
+		{
+		}
+		
+		// Scaling all of the weights makes no difference in the log domain
+		Discrete [] expected = new Discrete[3];
+		Discrete [] actual = new Discrete[3];
+		solve(createTriple(_linear, expected, 1, 0));
+		solve(createTriple(_log, actual, Double.MIN_VALUE, 0));
+		assertBeliefsEqual(expected, actual);
+		solve(createTriple(_linear, expected, 1, 1));
+		solve(createTriple(_log, actual, Double.MIN_VALUE, 1));
+		assertBeliefsEqual(expected, actual);
+	}
+
+	private void solve(FactorGraph fg)
+	{
+		((SFactorGraphBase)fg.getSolver()).setNumIterations(20);
+		fg.solve();
+	}
+
+	private void assertBeliefsEqual(Discrete [] expected, Discrete [] actual)
+	{
+		for (int i = 0; i < expected.length; i++)
+			assertArrayEquals(expected[i].getBelief(), actual[i].getBelief(), 1e-10);
+	}
+
+	// 3x3 grid, with a zero in one input for seed 1
+	private FactorGraph createGrid(IFactorGraphFactory solverFactory, Discrete [] vars, long seed)
+	{
+		FactorGraph fg = GraphFixtures.createGrid(solverFactory, vars, 3, seed);
+		if (seed == 1)
+			vars[4].setInput(0, 0.5, 0.5);
+		return fg;
+	}
+
+	// One factor over three bits, with weights (1 + slope * row) * scale
+	private FactorGraph createTriple(IFactorGraphFactory solverFactory, Discrete [] vars, double scale, int slope)
+	{
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(solverFactory);
+		DiscreteDomain [] domains = new DiscreteDomain[vars.length];
+		for (int i = 0; i < vars.length; i++)
+		{
+			vars[i] = new Discrete(0, 1);
+			vars[i].setInput(0.7 - 0.2 * i, 0.3 + 0.2 * i);
+			domains[i] = vars[i].getDiscreteDomain();
+		}
+		int [][] indices = new int[8][];
+		double [] weights = new double[8];
+		for (int row = 0; row < 8; row++)
+		{
+			indices[row] = new int[] {row >> 2, (row >> 1) & 1, row & 1};
+			weights[row] = (1 + slope * row) * scale;
+		}
+		fg.addFactor(new FactorTable(indices, weights, domains), vars);
+		return fg;
+	}
+}
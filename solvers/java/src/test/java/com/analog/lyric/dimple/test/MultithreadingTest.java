@@ -0,0 +1,330 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.FactorFunctions.core.FactorTable;
+import com.analog.lyric.dimple.FactorFunctions.core.TableFactorFunction;
+import com.analog.lyric.dimple.model.Discrete;
+import com.analog.lyric.dimple.model.DiscreteDomain;
+import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.model.INode;
+import com.analog.lyric.dimple.model.VariableBase;
+import com.analog.lyric.dimple.schedulers.ColoringScheduler;
+import com.analog.lyric.dimple.schedulers.schedule.ColoredSchedule;
+import com.analog.lyric.dimple.solvers.core.multithreading.IRangeTask;
+import com.analog.lyric.dimple.solvers.core.multithreading.SolverThreadPool;
+import com.analog.lyric.dimple.solvers.sumproduct.SFactorGraph;
+import com.analog.lyric.util.test.Helpers;
+
+public class MultithreadingTest
+{
+	@Test
+	public void test_multithreadedMatchesSingleThreaded()
+	{
+		FactorGraph fg = Helpers.MakeTrivialRandomGraph("mt", new com.analog.lyric.dimple.solvers.sumproduct.Solver(), 40, 30, 5, true);
+		SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+		sfg.setNumIterations(5);
+
+		fg.solve();
+		double[][] singleThreaded = Helpers.beliefs(fg);
+
+		sfg.setNumThreads(4);
+		assertEquals(4, sfg.getNumThreads());
+
+		// Run more than once so that the worker threads are reused
+		for (int i = 0; i < 3; i++)
+		{
+			fg.solve();
+			double[][] multiThreaded = Helpers.beliefs(fg);
+			Helpers.compareBeliefs(singleThreaded, multiThreaded, 1e-12);
+		}
+
+		// Iterating in pieces must give the same answer as iterating all at once
+		fg.initialize();
+		sfg.iterate(2);
+		sfg.iterate(3);
+		Helpers.compareBeliefs(singleThreaded, Helpers.beliefs(fg), 1e-12);
+
+		sfg.setNumThreads(1);
+		fg.solve();
+		Helpers.compareBeliefs(singleThreaded, Helpers.beliefs(fg), 1e-12);
+	}
+
+	@Test
+	public void test_errorInTask()
+	{
+		SolverThreadPool pool = new SolverThreadPool(2);
+		final AtomicInteger count = new AtomicInteger();
+		try
+		{
+			// An error thrown by a piece must reach the caller rather than being swallowed
+			try
+			{
+				pool.forkJoin(100, new IRangeTask()
+				{
+					@Override
+					public void run(int start, int end)
+					{
+						if (start <= 50 && 50 < end)
+							throw new AssertionError("piece failed");
+					}
+				});
+				fail("expected AssertionError");
+			}
+			catch (AssertionError e)
+			{
+				assertEquals("piece failed", e.getMessage());
+			}
+
+			// Both workers must have survived it
+			for (int i = 0; i < 10; i++)
+			{
+				pool.forkJoin(100, new IRangeTask()
+				{
+					@Override
+					public void run(int start, int end)
+					{
+						count.addAndGet(end - start);
+					}
+				});
+			}
+			assertEquals(1000, count.get());
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void test_idleTimeout() throws InterruptedException
+	{
+		// Idle workers exit after the timeout, so an undisposed pool doesn't keep its threads, and come back for new work
+		SolverThreadPool pool = new SolverThreadPool(2, 20);
+		final AtomicInteger count = new AtomicInteger();
+		IRangeTask task = new IRangeTask()
+		{
+			@Override
+			public void run(int start, int end)
+			{
+				count.addAndGet(end - start);
+			}
+		};
+		try
+		{
+			pool.forkJoin(100, task);
+			for (int i = 0; i < 500 && pool.getNumLiveThreads() > 0; i++)
+				Thread.sleep(10);
+			assertEquals(0, pool.getNumLiveThreads());
+			assertFalse(pool.isShutdown());
+
+			for (int i = 0; i < 10; i++)
+				pool.forkJoin(100, task);
+			assertEquals(1100, count.get());
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void test_coloringScheduler()
+	{
+		FactorGraph fg = Helpers.MakeTrivialRandomGraph("color", new com.analog.lyric.dimple.solvers.sumproduct.Solver(), 40, 30, 5, true);
+		fg.setScheduler(new ColoringScheduler());
+		ColoredSchedule schedule = (ColoredSchedule)fg.getSchedule();
+
+		// No two nodes in a phase may be neighbors or share a neighbor
+		for (int phase = 0; phase < schedule.getNumPhases(); phase++)
+		{
+			IdentityHashMap<INode,INode> touched = new IdentityHashMap<INode,INode>();
+			ArrayList<INode> nodes = schedule.getPhase(phase);
+			for (INode node : nodes)
+			{
+				assertNull(touched.put(node, node));
+				for (INode sibling : node.getSiblings())
+				{
+					INode previous = touched.put(sibling, node);
+					assertTrue(previous == null || previous == node);
+				}
+			}
+		}
+
+		SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+		sfg.setNumIterations(5);
+		fg.solve();
+		double[][] singleThreaded = Helpers.beliefs(fg);
+
+		sfg.setNumThreads(4);
+		for (int i = 0; i < 2; i++)
+		{
+			fg.solve();
+			Helpers.compareBeliefs(singleThreaded, Helpers.beliefs(fg), 1e-12);
+		}
+		sfg.setNumThreads(1);
+	}
+
+	@Test
+	public void test_coloredScheduleCopy()
+	{
+		// A graph copied from a template keeps the template's phases
+		Random r = new Random(3);
+		Discrete[] vars = new Discrete[5];
+		GraphFixtures.createTernaryVariables(r, vars);
+		FactorGraph template = new FactorGraph(vars[0], vars[4]);
+		for (int i = 0; i < 4; i++)
+			template.addFactor(GraphFixtures.randomTable(r, vars[i], vars[i + 1]), vars[i], vars[i + 1]);
+		template.setScheduler(new ColoringScheduler());
+		ColoredSchedule schedule = (ColoredSchedule)template.getSchedule();
+
+		Discrete a = new Discrete(0, 1, 2);
+		Discrete b = new Discrete(0, 1, 2);
+		FactorGraph fg = new FactorGraph();
+		FactorGraph copy = fg.addGraph(template, a, b);
+		assertTrue(copy.getSchedule() instanceof ColoredSchedule);
+		ColoredSchedule copySchedule = (ColoredSchedule)copy.getSchedule();
+		assertEquals(schedule.getNumPhases(), copySchedule.getNumPhases());
+		for (int phase = 0; phase < schedule.getNumPhases(); phase++)
+		{
+			// The boundary variables are left out of the copy's phases
+			ArrayList<INode> phaseNodes = schedule.getPhase(phase);
+			phaseNodes.remove(vars[0]);
+			phaseNodes.remove(vars[4]);
+			ArrayList<INode> copyNodes = copySchedule.getPhase(phase);
+			assertEquals(phaseNodes.size(), copyNodes.size());
+			for (INode node : copyNodes)
+				assertTrue(copy.getVariables().contains(node) || copy.getNonGraphFactors().contains(node));
+		}
+	}
+
+	@Test
+	public void test_batchConstruction()
+	{
+		// Factors added in a batch, with solver objects created on several threads, solve the same as factors added one at a time
+		int numVars = 200;
+		FactorGraph expected = makeChainGraph(numVars, 1, false);
+		((SFactorGraph)expected.getSolver()).setNumIterations(5);
+		expected.solve();
+
+		for (int numThreads : new int[] {1, 4})
+		{
+			FactorGraph fg = makeChainGraph(numVars, numThreads, true);
+			SFactorGraph sfg = (SFactorGraph)fg.getSolver();
+			sfg.setNumThreads(1);
+			sfg.setNumIterations(5);
+			fg.solve();
+			assertEquals(expected.getNonGraphFactors().size(), fg.getNonGraphFactors().size());
+			Helpers.compareBeliefs(Helpers.beliefs(expected), Helpers.beliefs(fg), 1e-12);
+		}
+	}
+
+	@Test
+	public void test_concurrentConstruction() throws InterruptedException
+	{
+		// Graphs built on several threads at once get distinct ids
+		final Set<UUID> uuids = Collections.synchronizedSet(new HashSet<UUID>());
+		final Set<Integer> ids = Collections.synchronizedSet(new HashSet<Integer>());
+		final int numThreads = 4;
+		final int numVars = 100;
+		Thread[] threads = new Thread[numThreads];
+		final Throwable[] failure = new Throwable[1];
+		for (int t = 0; t < numThreads; t++)
+		{
+			threads[t] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						FactorGraph fg = makeChainGraph(numVars, 1, false);
+						for (VariableBase v : fg.getVariables())
+						{
+							uuids.add(v.getUUID());
+							ids.add(v.getId());
+						}
+						for (Factor f : fg.getNonGraphFactors())
+						{
+							uuids.add(f.getUUID());
+							ids.add(f.getId());
+						}
+					}
+					catch (Throwable e)
+					{
+						failure[0] = e;
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		assertNull(failure[0]);
+		assertEquals(numThreads * (2 * numVars - 1), uuids.size());
+		assertEquals(numThreads * (2 * numVars - 1), ids.size());
+	}
+
+	// A chain of variables with random inputs and pairwise factors that share one table function
+	private static FactorGraph makeChainGraph(int numVars, int numThreads, boolean batch)
+	{
+		Random r = new Random(7);
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		((SFactorGraph)fg.getSolver()).setNumThreads(numThreads);
+		DiscreteDomain domain = new DiscreteDomain(0, 1, 2);
+		Discrete[] vars = new Discrete[numVars];
+		for (int i = 0; i < numVars; i++)
+		{
+			vars[i] = new Discrete(domain);
+			vars[i].setInput(0.1 + r.nextDouble(), 0.1 + r.nextDouble(), 0.1 + r.nextDouble());
+		}
+
+		int[][] indices = new int[9][];
+		double[] weights = new double[9];
+		for (int i = 0; i < 9; i++)
+		{
+			indices[i] = new int[] {i / 3, i % 3};
+			weights[i] = 0.1 + r.nextDouble();
+		}
+		TableFactorFunction function = new TableFactorFunction("pair", new FactorTable(indices, weights, new DiscreteDomain[] {domain, domain}));
+
+		Object[][] arguments = new Object[numVars - 1][];
+		for (int i = 1; i < numVars; i++)
+			arguments[i - 1] = new Object[] {vars[i - 1], vars[i]};
+		if (batch)
+			fg.addFactors(function, arguments);
+		else
+			for (Object[] args : arguments)
+				fg.addFactor(function, args);
+		return fg;
+	}
+}
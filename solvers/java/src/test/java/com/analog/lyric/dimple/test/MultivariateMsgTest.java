@@ -0,0 +1,107 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import Jama.Matrix;
+
+import com.analog.lyric.dimple.solvers.gaussian.MultivariateMsg;
+
+public class MultivariateMsgTest
+{
+	@Test
+	public void test_conversion()
+	{
+		Random r = new Random(42);
+		for (int n = 1; n <= 12; n++)
+		{
+			// Random symmetric positive definite covariance
+			Matrix a = new Matrix(n, n);
+			for (int i = 0; i < n; i++)
+				for (int j = 0; j < n; j++)
+					a.set(i, j, r.nextDouble());
+			Matrix covariance = a.times(a.transpose()).plus(Matrix.identity(n, n).times(0.1));
+			double [] means = new double[n];
+			for (int i = 0; i < n; i++)
+				means[i] = r.nextGaussian();
+			
+			MultivariateMsg msg = new MultivariateMsg(means, covariance.getArray());
+			assertFalse(msg.isInInformationForm());
+			
+			Matrix expectedInformation = covariance.inverse();
+			double [] expectedVector = expectedInformation.times(new Matrix(means, n)).getColumnPackedCopy();
+			assertMatrixEquals(expectedInformation.getArray(), msg.getInformationMatrix(), 1e-8);
+			assertArrayEquals(expectedVector, msg.getInformationVector(), 1e-8);
+			
+			// Both forms are cached
+			assertSame(msg.getInformationMatrixNoCopy(), msg.getInformationMatrixNoCopy());
+			assertSame(msg.getCovarianceNoCopy(), msg.getCovarianceNoCopy());
+			assertMatrixEquals(covariance.getArray(), msg.getCovariance(), 0);
+			
+			// Round trip from information form
+			MultivariateMsg info = new MultivariateMsg();
+			info.setInformation(msg.getInformationVector(), msg.getInformationMatrix());
+			assertTrue(info.isInInformationForm());
+			assertMatrixEquals(covariance.getArray(), info.getCovariance(), 1e-8);
+			assertArrayEquals(means, info.getMeans(), 1e-8);
+			
+			// Setting one form replaces the cached other form
+			info.setMeanAndCovariance(means, Matrix.identity(n, n).times(2).getArray());
+			assertMatrixEquals(Matrix.identity(n, n).times(0.5).getArray(), info.getInformationMatrix(), 1e-12);
+		}
+	}
+	
+	@Test
+	public void test_specialCases()
+	{
+		// Infinite variances give a zero information matrix, and a zero information matrix
+		// gives large (but finite) variances
+		double inf = Double.POSITIVE_INFINITY;
+		MultivariateMsg msg = new MultivariateMsg(new double[] {1, 2}, new double[][] {{inf, 0}, {0, inf}});
+		assertMatrixEquals(new double[][] {{0, 0}, {0, 0}}, msg.getInformationMatrix(), 0);
+		assertArrayEquals(new double[] {0, 0}, msg.getInformationVector(), 0);
+		
+		MultivariateMsg zero = new MultivariateMsg();
+		zero.setInformation(new double[] {0, 0}, new double[][] {{0, 0}, {0, 0}});
+		assertMatrixEquals(new double[][] {{1e7, 0}, {0, 1e7}}, zero.getCovariance(), 1e-3);
+		
+		// Singular covariance: small eigenvalues are clamped, as they were before
+		MultivariateMsg singular = new MultivariateMsg(new double[] {1, 1}, new double[][] {{1, 1}, {1, 1}});
+		double [][] information = singular.getInformationMatrix();
+		for (double [] row : information)
+			for (double value : row)
+				assertFalse(Double.isNaN(value) || Double.isInfinite(value));
+		assertTrue(information[0][0] > 1e6);
+		
+		// Clone keeps the form
+		MultivariateMsg copy = singular.clone();
+		assertFalse(copy.isInInformationForm());
+		assertArrayEquals(new double[] {1, 1}, copy.getMeans(), 0);
+	}
+	
+	private static void assertMatrixEquals(double [][] expected, double [][] actual, double delta)
+	{
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++)
+			assertArrayEquals(expected[i], actual[i], delta);
+	}
+}
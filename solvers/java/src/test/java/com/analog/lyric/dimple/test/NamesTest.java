@@ -889,4 +889,52 @@ public class NamesTest {
 		
 		
 	}
+
+	@Test
+	public void test_templateCopyUUIDs()
+	{
+		// Nodes copied from a template get their UUIDs on demand, but are then found by them as usual
+		Discrete b0 = new Discrete(0, 1);
+		Discrete b1 = new Discrete(0, 1);
+		FactorGraph template = new FactorGraph(b0, b1);
+		Discrete inner = new Discrete(0, 1);
+		inner.setName("inner");
+		template.addFactor(new XorDelta(), b0, inner);
+		template.addFactor(new XorDelta(), inner, b1);
+
+		FactorGraph fg = new FactorGraph();
+		Discrete [] chain = new Discrete[4];
+		for (int i = 0; i < chain.length; i++)
+			chain[i] = new Discrete(0, 1);
+		ArrayList<UUID> uuids = new ArrayList<UUID>();
+		for (int i = 1; i < chain.length; i++)
+		{
+			FactorGraph copy = fg.addGraph(template, chain[i - 1], chain[i]);
+			copy.setName("copy" + i);
+			Discrete innerCopy = (Discrete)copy.getObjectByName("inner");
+			assertTrue(innerCopy != inner);
+			assertEquals(copy, innerCopy.getParentGraph());
+			assertEquals(2, innerCopy.getSiblings().size());
+
+			for (Factor f : copy.getNonGraphFactors())
+			{
+				UUID uuid = f.getUUID();
+				assertFalse(uuids.contains(uuid));
+				uuids.add(uuid);
+				assertEquals(f, copy.getObjectByUUID(uuid));
+				assertEquals(f, fg.getObjectByName("copy" + i + "." + uuid.toString()));
+			}
+			UUID uuid = innerCopy.getUUID();
+			assertFalse(uuids.contains(uuid));
+			uuids.add(uuid);
+			assertEquals(innerCopy, copy.getObjectByUUID(uuid));
+		}
+
+		// A changed template is copied with its new structure
+		Discrete extra = new Discrete(0, 1);
+		template.addFactor(new XorDelta(), inner, extra);
+		FactorGraph copy = fg.addGraph(template, chain[0], chain[3]);
+		assertEquals(3, copy.getNonGraphFactors().size());
+		assertEquals(3, ((Discrete)copy.getObjectByName("inner")).getSiblings().size());
+	}
 }
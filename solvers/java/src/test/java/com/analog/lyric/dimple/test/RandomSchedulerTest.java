@@ -16,8 +16,11 @@
 
 package com.analog.lyric.dimple.test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.IdentityHashMap;
+
 import org.junit.Test;
 
 import com.analog.lyric.dimple.FactorFunctions.XorDelta;
@@ -145,4 +148,48 @@ public class RandomSchedulerTest
 
 	}
 
+	@Test
+	public void test3()
+	{
+		if (debugPrint) System.out.println("== test3 ==");
+
+		// Every iteration reuses the same schedule entries, in a new order
+		FactorGraph g = new FactorGraph();
+		g.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		DiscreteDomain bit = new DiscreteDomain(0.0,1.0);
+		Discrete [] vars = new Discrete[6];
+		for (int v = 0; v < vars.length; v++)
+			vars[v] = new Discrete(bit);
+		for (int v = 2; v < vars.length; v++)
+			g.addFactor(new XorDelta(), vars[v - 2], vars[v - 1], vars[v]);
+
+		RandomWithoutReplacementScheduler scheduler = new RandomWithoutReplacementScheduler();
+		scheduler.setSeed(2);
+		ISchedule schedule = scheduler.createSchedule(g);
+
+		IdentityHashMap<IScheduleEntry,Boolean> firstEntries = new IdentityHashMap<IScheduleEntry,Boolean>();
+		StringBuilder firstOrder = new StringBuilder();
+		for (IScheduleEntry entry : schedule)
+		{
+			firstEntries.put(entry, true);
+			firstOrder.append(entry.toString());
+		}
+		assertEquals(4 * 4, firstEntries.size());
+
+		boolean reordered = false;
+		for (int iteration = 0; iteration < 10; iteration++)
+		{
+			StringBuilder order = new StringBuilder();
+			int count = 0;
+			for (IScheduleEntry entry : schedule)
+			{
+				assertTrue(firstEntries.containsKey(entry));
+				order.append(entry.toString());
+				count++;
+			}
+			assertEquals(4 * 4, count);
+			reordered |= !order.toString().equals(firstOrder.toString());
+		}
+		assertTrue(reordered);
+	}
 }
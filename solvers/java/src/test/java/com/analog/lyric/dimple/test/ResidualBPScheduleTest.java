@@ -0,0 +1,180 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.collect.IndexedDoubleMaxHeap;
+import com.analog.lyric.dimple.FactorFunctions.core.FactorTable;
+import com.analog.lyric.dimple.model.Discrete;
+import com.analog.lyric.dimple.model.DiscreteDomain;
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.schedulers.FloodingScheduler;
+import com.analog.lyric.dimple.schedulers.ResidualBPScheduler;
+import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
+
+public class ResidualBPScheduleTest
+{
+	@Test
+	public void test_heap()
+	{
+		Random r = new Random(1);
+		int capacity = 50;
+		IndexedDoubleMaxHeap heap = new IndexedDoubleMaxHeap(capacity);
+		double [] priorities = new double[capacity];
+		for (int i = 0; i < capacity; i++)
+		{
+			priorities[i] = r.nextDouble();
+			heap.set(i, priorities[i]);
+		}
+
+		// Lower some, raise others, and remove a few
+		for (int i = 0; i < capacity; i += 3)
+		{
+			priorities[i] = r.nextDouble();
+			heap.set(i, priorities[i]);
+		}
+		heap.raise(1, priorities[1] / 2);			// Not raised, since lower
+		heap.raise(2, 5);
+		priorities[2] = 5;
+		assertTrue(heap.remove(4));
+		assertFalse(heap.remove(4));
+		assertFalse(heap.contains(4));
+		assertEquals(capacity - 1, heap.size());
+		assertEquals(2, heap.peek());
+
+		double previous = Double.POSITIVE_INFINITY;
+		while (!heap.isEmpty())
+		{
+			double priority = heap.peekPriority();
+			int index = heap.poll();
+			assertEquals(priorities[index], priority, 0);
+			assertTrue(priority <= previous);
+			assertTrue(index != 4);
+			previous = priority;
+		}
+
+		heap.set(3, 1);
+		heap.clear();
+		assertTrue(heap.isEmpty());
+		assertFalse(heap.contains(3));
+	}
+
+	@Test
+	public void test_tree()
+	{
+		// On a tree, the residual schedule reaches the exact beliefs, and once only rounding
+		// noise remains no node is rescheduled, so the messages stop changing altogether
+		int numVars = 12;
+		Discrete [] expected = new Discrete[numVars];
+		FactorGraph fg = createGraph(expected, false);
+		((SFactorGraphBase)fg.getSolver()).setNumIterations(30);
+		fg.solve();
+
+		Discrete [] vars = new Discrete[numVars];
+		fg = createGraph(vars, false);
+		fg.setScheduler(new ResidualBPScheduler(1, 1e-14));
+		SFactorGraphBase solver = (SFactorGraphBase)fg.getSolver();
+		solver.setNumIterations(30);
+		solver.setConvergenceTolerance(0);
+		fg.solve();
+
+		assertTrue(solver.hasConverged());
+		assertTrue(solver.getNumIterationsRun() < 30);
+		for (int i = 0; i < numVars; i++)
+			assertArrayEquals(expected[i].getBelief(), vars[i].getBelief(), 1e-10);
+	}
+
+	@Test
+	public void test_loopy()
+	{
+		// Sequential and batched residual schedules reach the same fixed point as flooding
+		int numVars = 12;
+		Discrete [] expected = new Discrete[numVars];
+		FactorGraph fg = createGraph(expected, true);
+		((SFactorGraphBase)fg.getSolver()).setNumIterations(200);
+		fg.solve();
+
+		for (int batchSize : new int[] {1, 4})
+		{
+			for (int numThreads : new int[] {1, 2})
+			{
+				Discrete [] vars = new Discrete[numVars];
+				fg = createGraph(vars, true);
+				fg.setScheduler(new ResidualBPScheduler(batchSize));
+				SFactorGraphBase solver = (SFactorGraphBase)fg.getSolver();
+				solver.setNumThreads(numThreads);
+				solver.setNumIterations(200);
+				fg.solve();
+				for (int i = 0; i < numVars; i++)
+					assertArrayEquals(expected[i].getBelief(), vars[i].getBelief(), 1e-6);
+			}
+		}
+	}
+
+	@Test
+	public void test_nestedEdit()
+	{
+		// A factor added inside a nested graph doesn't change the root graph's own version,
+		// but the schedule must still pick it up
+		Discrete [] vars = new Discrete[12];
+		FactorGraph fg = createGraph(vars, false);
+		Discrete x = new Discrete(0, 1, 2);
+		Discrete y = new Discrete(0, 1, 2);
+		FactorGraph template = new FactorGraph(x, y);
+		template.addFactor(GraphFixtures.randomTable(new Random(4), 0.5, x, y), x, y);
+		Discrete w = new Discrete(0, 1, 2);
+		FactorGraph nested = fg.addGraph(template, vars[11], w);
+		fg.setScheduler(new ResidualBPScheduler(1, 1e-14));
+		SFactorGraphBase solver = (SFactorGraphBase)fg.getSolver();
+		solver.setNumIterations(30);
+		fg.solve();
+
+		nested.addFactor(new FactorTable(new int[][] {{0}, {1}, {2}}, new double[] {5, 1, 1},
+			new DiscreteDomain[] {w.getDiscreteDomain()}), w);
+		fg.solve();
+		double [][] beliefs = new double[vars.length + 1][];
+		for (int i = 0; i < vars.length; i++)
+			beliefs[i] = vars[i].getBelief();
+		beliefs[vars.length] = w.getBelief();
+
+		fg.setScheduler(new FloodingScheduler());
+		fg.solve();
+		for (int i = 0; i < vars.length; i++)
+			assertArrayEquals(vars[i].getBelief(), beliefs[i], 1e-10);
+		assertArrayEquals(w.getBelief(), beliefs[vars.length], 1e-10);
+	}
+
+	// Chain of variables with random inputs and pairwise factors, optionally with a few extra loops
+	private FactorGraph createGraph(Discrete [] vars, boolean loopy)
+	{
+		Random r = new Random(3);
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		GraphFixtures.createTernaryVariables(r, vars);
+		for (int i = 1; i < vars.length; i++)
+			fg.addFactor(GraphFixtures.randomTable(r, 0.5, vars[i - 1], vars[i]), vars[i - 1], vars[i]);
+		if (loopy)
+			for (int i = 3; i < vars.length; i += 4)
+				fg.addFactor(GraphFixtures.randomTable(r, 0.5, vars[i - 3], vars[i]), vars[i - 3], vars[i]);
+		return fg;
+	}
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.Discrete;
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.model.Real;
+import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+
+/*
+ * Checks that the single-precision solvers give the same beliefs as the double-precision
+ * ones, to within the precision of a float.
+ */
+public class SinglePrecisionSolverTest
+{
+	private static final double TOLERANCE = 1e-5;
+
+	@Test
+	public void test_sumProduct()
+	{
+		compare(new com.analog.lyric.dimple.solvers.sumproduct.Solver(), new com.analog.lyric.dimple.solvers.sumproductfloat.Solver());
+	}
+
+	@Test
+	public void test_minSum()
+	{
+		compare(new com.analog.lyric.dimple.solvers.minsum.Solver(), new com.analog.lyric.dimple.solvers.minsumfloat.Solver());
+	}
+
+	@Test
+	public void test_messages()
+	{
+		Discrete [] vars = new Discrete[4];
+		FactorGraph fg = GraphFixtures.createGrid(new com.analog.lyric.dimple.solvers.sumproductfloat.Solver(), vars, 2, 1);
+		fg.solve();
+		assertTrue(vars[0].getSolver().getInputMsg(0) instanceof float[]);
+		assertTrue(vars[0].getSolver().getOutputMsg(0) instanceof float[]);
+		
+		// Float messages are seen by the convergence monitor
+		SFactorGraphBase solver = (SFactorGraphBase)fg.getSolver();
+		solver.setNumIterations(100);
+		solver.setConvergenceTolerance(1e-6);
+		fg.solve();
+		assertTrue(solver.hasConverged());
+		assertTrue(solver.getNumIterationsRun() > 2);
+		assertTrue(solver.getNumIterationsRun() < 100);
+		
+		try
+		{
+			fg.addVariables(new Real());
+			fail("expected exception");
+		}
+		catch (DimpleException e)
+		{
+		}
+	}
+
+	private void compare(IFactorGraphFactory doubleSolver, IFactorGraphFactory floatSolver)
+	{
+		// Loopy grid with random inputs and factors
+		for (int seed = 1; seed <= 3; seed++)
+		{
+			Discrete [] expected = new Discrete[12];
+			Discrete [] actual = new Discrete[12];
+			solve(GraphFixtures.createGrid(doubleSolver, expected, 4, seed));
+			solve(GraphFixtures.createGrid(floatSolver, actual, 4, seed));
+			assertBeliefsEqual(expected, actual);
+		}
+		
+		// Deterministic factors, whose tables contain zeros
+		Discrete [] expected = new Discrete[5];
+		Discrete [] actual = new Discrete[5];
+		solve(GraphFixtures.createParityChecks(doubleSolver, expected));
+		solve(GraphFixtures.createParityChecks(floatSolver, actual));
+		assertBeliefsEqual(expected, actual);
+	}
+
+	private void solve(FactorGraph fg)
+	{
+		((SFactorGraphBase)fg.getSolver()).setNumIterations(20);
+		fg.solve();
+	}
+
+	private void assertBeliefsEqual(Discrete [] expected, Discrete [] actual)
+	{
+		for (int i = 0; i < expected.length; i++)
+			assertArrayEquals(expected[i].getBelief(), actual[i].getBelief(), TOLERANCE);
+	}
+}
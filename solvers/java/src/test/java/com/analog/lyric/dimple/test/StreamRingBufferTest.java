@@ -0,0 +1,230 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+package com.analog.lyric.dimple.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.FactorFunctions.core.FactorTable;
+import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.Discrete;
+import com.analog.lyric.dimple.model.DiscreteDomain;
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.model.VariableBase;
+import com.analog.lyric.dimple.model.repeated.DiscreteStream;
+import com.analog.lyric.dimple.model.repeated.DoubleArrayDataSink;
+import com.analog.lyric.dimple.model.repeated.DoubleArrayDataSource;
+import com.analog.lyric.dimple.schedulers.FloodingScheduler;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+
+public class StreamRingBufferTest
+{
+	@Test
+	public void test_hmm()
+	{
+		// One stream, a chain of one blast from the past factor per step
+		compareWithShifting(1, 4, false);
+		compareWithShifting(1, 4, true);
+		compareWithShifting(1, 1, true);
+	}
+	
+	@Test
+	public void test_secondOrder()
+	{
+		// Factors reaching two steps back, so chains of two, and a second stream
+		compareWithShifting(2, 3, false);
+		compareWithShifting(2, 3, true);
+		compareWithShifting(2, 5, false);
+	}
+	
+	@Test
+	public void test_shiftingMatchesUnrolled()
+	{
+		// Factors reaching two steps back with nothing in between, so the graph is a tree and the
+		// blast from the past chains of two must carry exactly the messages of the unrolled graph.
+		// Each chain has to advance oldest first, or its oldest factor takes the message the one
+		// after it has just received rather than the one it had.
+		final int bufferSize = 3;
+		final int numSteps = 4;
+		final int numIterations = 10;
+		Random rand = new Random(11);
+		Discrete state = new Discrete(0, 1, 2);
+		FactorTable pair = GraphFixtures.randomTable(rand, 0, state, state);
+		FactorTable single = new FactorTable(new int[][] {{0}, {1}, {2}}, new double[] {rand.nextDouble(), rand.nextDouble(), rand.nextDouble()},
+			new DiscreteDomain[] {state.getDiscreteDomain()});
+		double [][] inputs = new double[bufferSize + 2 + numSteps][];
+		for (int i = 0; i < inputs.length; i++)
+			inputs[i] = new double[] {rand.nextDouble(), rand.nextDouble(), rand.nextDouble()};
+		
+		FactorGraph graph = new FactorGraph();
+		graph.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		DiscreteStream states = new DiscreteStream(0, 1, 2);
+		Discrete [] s = new Discrete[] {new Discrete(0, 1, 2), new Discrete(0, 1, 2), new Discrete(0, 1, 2)};
+		FactorGraph template = new FactorGraph(s);
+		template.addFactor(pair, s[0], s[2]);
+		template.addFactor(single, s[1]);
+		graph.addRepeatedFactor(template, bufferSize, new Object[] {states.getSlice(0), states.getSlice(1), states.getSlice(2)});
+		graph.setScheduler(new FloodingScheduler());
+		graph.getSolver().setNumIterations(numIterations);
+		states.setDataSource(new DoubleArrayDataSource(inputs));
+		
+		graph.initialize();
+		for (int step = 0; step <= numSteps; step++)
+		{
+			if (step > 0)
+				graph.advance();
+			graph.solveOneStep();
+			
+			// The graph of every window so far, with the variables still in the buffer at the end
+			FactorGraph unrolled = new FactorGraph();
+			unrolled.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+			Discrete [] x = new Discrete[step + bufferSize + 2];
+			for (int i = 0; i < x.length; i++)
+			{
+				x[i] = new Discrete(0, 1, 2);
+				x[i].setInput(inputs[i]);
+			}
+			for (int i = 0; i < step + bufferSize; i++)
+			{
+				unrolled.addFactor(pair, x[i], x[i + 2]);
+				unrolled.addFactor(single, x[i + 1]);
+			}
+			unrolled.setScheduler(new FloodingScheduler());
+			unrolled.getSolver().setNumIterations(x.length);
+			unrolled.solve();
+			
+			VariableBase [] buffered = new VariableBase[bufferSize + 2];
+			System.arraycopy(x, step, buffered, 0, buffered.length);
+			assertBeliefsEqual(buffered, states.getVariables());
+		}
+	}
+	
+	@Test
+	public void test_unsupported()
+	{
+		// Can't switch modes once the graph has advanced
+		Model shifting = new Model(1, 3, 5, false, new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		shifting.graph.solve();
+		try
+		{
+			shifting.graph.setStreamRingBuffer(true);
+			fail("expected DimpleException");
+		}
+		catch (DimpleException e)
+		{
+		}
+		
+		// The Gibbs solver's blast from the past factors hold messages of their own
+		Model gibbs = new Model(1, 3, 5, true, new com.analog.lyric.dimple.solvers.gibbs.Solver());
+		try
+		{
+			gibbs.graph.advance();
+			fail("expected DimpleException");
+		}
+		catch (DimpleException e)
+		{
+		}
+	}
+	
+	private static void compareWithShifting(int order, int bufferSize, boolean flooding)
+	{
+		final int numSteps = 6;
+		Model shifting = new Model(order, bufferSize, numSteps, false, new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		Model ring = new Model(order, bufferSize, numSteps, true, new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		if (flooding)
+		{
+			shifting.graph.setScheduler(new FloodingScheduler());
+			ring.graph.setScheduler(new FloodingScheduler());
+		}
+		
+		shifting.graph.initialize();
+		ring.graph.initialize();
+		for (int step = 0; step <= numSteps; step++)
+		{
+			if (step > 0)
+			{
+				shifting.graph.advance();
+				ring.graph.advance();
+			}
+			shifting.graph.solveOneStep();
+			ring.graph.solveOneStep();
+			
+			assertBeliefsEqual(shifting.states.getVariables(), ring.states.getVariables());
+			assertBeliefsEqual(shifting.observations.getVariables(), ring.observations.getVariables());
+		}
+		
+		double [][] expected = shifting.sink.getArray();
+		double [][] actual = ring.sink.getArray();
+		assertEquals(numSteps, actual.length);
+		for (int i = 0; i < expected.length; i++)
+			assertArrayEquals(expected[i], actual[i], 1e-10);
+	}
+	
+	private static void assertBeliefsEqual(VariableBase [] expected, VariableBase [] actual)
+	{
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++)
+			assertArrayEquals((double[])expected[i].getBeliefObject(), (double[])actual[i].getBeliefObject(), 1e-10);
+	}
+	
+	/*
+	 * A Markov chain of the given order over a stream of states, each state with an observed
+	 * variable from a second stream.  The states get their inputs from a data source, and the
+	 * belief of each state leaving the buffer goes to a data sink.
+	 */
+	private static class Model
+	{
+		final FactorGraph graph = new FactorGraph();
+		final DiscreteStream states = new DiscreteStream(0, 1, 2);
+		final DiscreteStream observations = new DiscreteStream(0, 1);
+		final DoubleArrayDataSink sink = new DoubleArrayDataSink();
+		
+		Model(int order, int bufferSize, int numSteps, boolean ring, IFactorGraphFactory solver)
+		{
+			Random rand = new Random(42);
+			graph.setSolverFactory(solver);
+			
+			Discrete [] s = new Discrete[order + 1];
+			for (int i = 0; i < s.length; i++)
+				s[i] = new Discrete(0, 1, 2);
+			Discrete o = new Discrete(0, 1);
+			VariableBase [] boundary = new VariableBase[s.length + 1];
+			System.arraycopy(s, 0, boundary, 0, s.length);
+			boundary[s.length] = o;
+			FactorGraph template = new FactorGraph(boundary);
+			for (int i = 0; i < order; i++)
+				template.addFactor(GraphFixtures.randomTable(rand, 0, s[i], s[order]), s[i], s[order]);
+			template.addFactor(GraphFixtures.randomTable(rand, 0, s[order], o), s[order], o);
+			
+			Object [] args = new Object[order + 2];
+			for (int i = 0; i <= order; i++)
+				args[i] = states.getSlice(i);
+			args[order + 1] = observations;
+			graph.addRepeatedFactor(template, bufferSize, args);
+			graph.setStreamRingBuffer(ring);
+			
+			double [][] inputs = new double[bufferSize + order + numSteps][];
+			for (int i = 0; i < inputs.length; i++)
+				inputs[i] = new double[] {rand.nextDouble(), rand.nextDouble(), rand.nextDouble()};
+			states.setDataSource(new DoubleArrayDataSource(inputs));
+			states.setDataSink(sink);
+		}
+	}
+	
+}
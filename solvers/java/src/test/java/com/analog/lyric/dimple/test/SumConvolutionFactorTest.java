@@ -0,0 +1,209 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.FactorFunctions.Subtract;
+import com.analog.lyric.dimple.FactorFunctions.Sum;
+import com.analog.lyric.dimple.FactorFunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.DimpleException;
+import com.analog.lyric.dimple.model.Discrete;
+import com.analog.lyric.dimple.model.DiscreteDomain;
+import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.solvers.sumproduct.STableFactor;
+import com.analog.lyric.dimple.solvers.sumproduct.SumConvolutionFactor;
+
+public class SumConvolutionFactorTest
+{
+	@Test
+	public void test_sum()
+	{
+		compareWithTable(new Sum(), new int[][] {range(-4, 12), range(0, 3), range(-2, 2), new int[] {5, 0, 2, 1}}, 1);
+	}
+
+	@Test
+	public void test_subtract()
+	{
+		compareWithTable(new Subtract(), new int[][] {range(-3, 6), range(0, 7), range(-1, 2), new int[] {0, 3, 1}}, 2);
+	}
+
+	@Test
+	public void test_fftConvolution()
+	{
+		// Long enough domains that the convolutions are done with an FFT
+		compareWithTable(new Sum(), new int[][] {range(0, 90), range(0, 39), range(-10, 30), range(5, 44)}, 3);
+	}
+
+	@Test
+	public void test_manyVariables()
+	{
+		// Would need 3^40 table rows
+		Random r = new Random(4);
+		int numSummands = 40;
+		Discrete sum = new Discrete(elements(range(0, 2 * numSummands)));
+		Discrete [] vars = new Discrete[numSummands + 1];
+		vars[0] = sum;
+		double [][] inputs = new double[numSummands][];
+		double [] expected = new double[] {1};
+		for (int i = 0; i < numSummands; i++)
+		{
+			inputs[i] = randomInput(r, 3);
+			vars[i + 1] = new Discrete(elements(range(0, 2)));
+			vars[i + 1].setInput(inputs[i]);
+
+			double [] next = new double[expected.length + 2];
+			for (int j = 0; j < expected.length; j++)
+				for (int k = 0; k < 3; k++)
+					next[j + k] += expected[j] * inputs[i][k];
+			expected = next;
+		}
+
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		Factor f = fg.addFactor(new Sum(), (Object[])vars);
+		assertTrue(f.getSolver() instanceof SumConvolutionFactor);
+		fg.solve();
+
+		assertArrayEquals(normalize(expected), sum.getBelief(), 1e-12);
+
+		// With no information about the sum, the summand beliefs are just their inputs
+		for (int i = 0; i < numSummands; i++)
+			assertArrayEquals(normalize(inputs[i]), vars[i + 1].getBelief(), 1e-12);
+	}
+
+	@Test
+	public void test_incompatible()
+	{
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+
+		// Small factors, non-integer values and smoothed sums use the factor table
+		Object [] values = elements(range(0, 7));
+		Object [] halves = new Object[] {0.0, 0.5, 1.0, 1.5, 2.0, 2.5, 3.0, 3.5};
+		Factor f = fg.addFactor(new Sum(), new Discrete(0, 1, 2), new Discrete(0, 1), new Discrete(0, 1));
+		assertTrue(f.getSolver() instanceof STableFactor);
+		f = fg.addFactor(new Sum(), new Discrete(elements(range(0, 14))), new Discrete(halves), new Discrete(values));
+		assertTrue(f.getSolver() instanceof STableFactor);
+		f = fg.addFactor(new Sum(0.5), new Discrete(elements(range(0, 14))), new Discrete(values), new Discrete(values));
+		assertTrue(f.getSolver() instanceof STableFactor);
+		f = fg.addFactor(new Sum(), new Discrete(elements(range(0, 14))), new Discrete(values), new Discrete(values));
+		assertTrue(f.getSolver() instanceof SumConvolutionFactor);
+	}
+
+	@Test
+	public void test_allZero()
+	{
+		// The sum can't reach any value of the output variable, so every summand message is zero
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		Factor f = fg.addFactor(new Sum(), new Discrete(elements(range(100, 110))),
+			new Discrete(elements(range(0, 9))), new Discrete(elements(range(0, 9))));
+		assertTrue(f.getSolver() instanceof SumConvolutionFactor);
+		try
+		{
+			fg.solve();
+			fail("expected DimpleException");
+		}
+		catch (DimpleException e)
+		{
+		}
+	}
+
+
+	// Compares beliefs from a single factor to those from the equivalent factor table
+	private void compareWithTable(FactorFunction function, int [][] domainValues, long seed)
+	{
+		Random r = new Random(seed);
+		int numVars = domainValues.length;
+		Discrete [] vars = new Discrete[numVars];
+		Discrete [] tableVars = new Discrete[numVars];
+		DiscreteDomain [] domains = new DiscreteDomain[numVars];
+		for (int i = 0; i < numVars; i++)
+		{
+			double [] input = randomInput(r, domainValues[i].length);
+			vars[i] = new Discrete(elements(domainValues[i]));
+			vars[i].setInput(input);
+			tableVars[i] = new Discrete(elements(domainValues[i]));
+			tableVars[i].setInput(input);
+			domains[i] = vars[i].getDiscreteDomain();
+		}
+
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		Factor f = fg.addFactor(function, (Object[])vars);
+		assertTrue(f.getSolver() instanceof SumConvolutionFactor);
+		fg.solve();
+
+		FactorGraph tableGraph = new FactorGraph();
+		tableGraph.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		tableGraph.addFactor(function.getFactorTable(domains), tableVars);
+		tableGraph.solve();
+
+		for (int i = 0; i < numVars; i++)
+			assertArrayEquals(tableVars[i].getBelief(), vars[i].getBelief(), 1e-12);
+
+		// Updating a single edge must give the same message as updating the whole factor
+		SumConvolutionFactor sf = (SumConvolutionFactor)f.getSolver();
+		for (int i = 0; i < numVars; i++)
+		{
+			double [] fullUpdate = ((double[])sf.getOutputMsg(i)).clone();
+			sf.updateEdge(i);
+			assertArrayEquals(fullUpdate, (double[])sf.getOutputMsg(i), 1e-12);
+		}
+	}
+
+	private static int [] range(int lower, int upper)
+	{
+		int [] values = new int[upper - lower + 1];
+		for (int i = 0; i < values.length; i++)
+			values[i] = lower + i;
+		return values;
+	}
+
+	private static Object [] elements(int [] values)
+	{
+		Object [] elements = new Object[values.length];
+		for (int i = 0; i < values.length; i++)
+			elements[i] = (double)values[i];
+		return elements;
+	}
+
+	private static double [] randomInput(Random r, int length)
+	{
+		double [] input = new double[length];
+		for (int i = 0; i < length; i++)
+			input[i] = 0.1 + r.nextDouble();
+		return input;
+	}
+
+	private static double [] normalize(double [] values)
+	{
+		double sum = 0;
+		for (double value : values)
+			sum += value;
+		double [] result = new double[values.length];
+		for (int i = 0; i < values.length; i++)
+			result[i] = values[i] / sum;
+		return result;
+	}
+}
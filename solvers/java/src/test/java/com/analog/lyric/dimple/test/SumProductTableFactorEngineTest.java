@@ -0,0 +1,130 @@
+/*******************************************************************************
+*   Copyright 2013 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.FactorFunctions.core.FactorTable;
+import com.analog.lyric.dimple.model.Discrete;
+import com.analog.lyric.dimple.model.DiscreteDomain;
+import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.solvers.sumproduct.DenseTableFactorEngine;
+import com.analog.lyric.dimple.solvers.sumproduct.STableFactor;
+import com.analog.lyric.util.misc.IndexCounter;
+
+public class SumProductTableFactorEngineTest
+{
+	@Test
+	public void test_denseTable()
+	{
+		testSingleFactor(1.0, 42);
+	}
+
+	@Test
+	public void test_nearlyDenseTable()
+	{
+		testSingleFactor(0.8, 43);
+	}
+
+	@Test
+	public void test_sparseTable()
+	{
+		testSingleFactor(0.2, 44);
+	}
+
+	// Builds a single factor connected to several variables with random inputs,
+	// so that sum-product beliefs are exact and can be compared against brute force.
+	private void testSingleFactor(double density, long seed)
+	{
+		Random r = new Random(seed);
+		int [] domainSizes = new int[] {2, 3, 4, 2};
+		int numVars = domainSizes.length;
+
+		Discrete [] vars = new Discrete[numVars];
+		DiscreteDomain [] domains = new DiscreteDomain[numVars];
+		double [][] inputs = new double[numVars][];
+		for (int i = 0; i < numVars; i++)
+		{
+			Object [] elements = new Object[domainSizes[i]];
+			for (int j = 0; j < elements.length; j++)
+				elements[j] = j;
+			vars[i] = new Discrete(elements);
+			domains[i] = vars[i].getDiscreteDomain();
+			inputs[i] = new double[domainSizes[i]];
+			for (int j = 0; j < inputs[i].length; j++)
+				inputs[i][j] = r.nextDouble();
+			vars[i].setInput(inputs[i]);
+		}
+
+		ArrayList<int[]> rows = new ArrayList<int[]>();
+		for (int [] counter : new IndexCounter(domainSizes))
+			if (r.nextDouble() < density || rows.isEmpty())
+				rows.add(counter.clone());
+		int [][] indices = rows.toArray(new int[rows.size()][]);
+		double [] weights = new double[indices.length];
+		for (int i = 0; i < weights.length; i++)
+			weights[i] = r.nextDouble();
+		FactorTable table = new FactorTable(indices, weights, domains);
+
+		assertEquals(density >= DenseTableFactorEngine.DENSITY_THRESHOLD, DenseTableFactorEngine.isDenseEnough(table));
+
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		Factor f = fg.addFactor(table, vars);
+		fg.solve();
+
+		// Brute force marginals
+		double [][] expected = new double[numVars][];
+		for (int i = 0; i < numVars; i++)
+			expected[i] = new double[domainSizes[i]];
+		for (int row = 0; row < indices.length; row++)
+		{
+			double prob = weights[row];
+			for (int i = 0; i < numVars; i++)
+				prob *= inputs[i][indices[row][i]];
+			for (int i = 0; i < numVars; i++)
+				expected[i][indices[row][i]] += prob;
+		}
+
+		for (int i = 0; i < numVars; i++)
+		{
+			double sum = 0;
+			for (int j = 0; j < expected[i].length; j++)
+				sum += expected[i][j];
+			double [] belief = vars[i].getBelief();
+			for (int j = 0; j < expected[i].length; j++)
+				assertEquals(expected[i][j] / sum, belief[j], 1e-12);
+		}
+
+		// Updating one edge at a time must give the same messages as a full update
+		STableFactor sf = (STableFactor)f.getSolver();
+		double [][] fullUpdate = new double[numVars][];
+		for (int i = 0; i < numVars; i++)
+			fullUpdate[i] = ((double[])sf.getOutputMsg(i)).clone();
+		for (int i = 0; i < numVars; i++)
+		{
+			sf.updateEdge(i);
+			assertArrayEquals(fullUpdate[i], (double[])sf.getOutputMsg(i), 1e-12);
+		}
+	}
+}
@@ -17,15 +17,21 @@
 package com.analog.lyric.dimple.test;
 
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
 import org.junit.*;
 import static org.junit.Assert.* ;
 
 import com.analog.lyric.dimple.FactorFunctions.NopFactorFunction;
+import com.analog.lyric.dimple.FactorFunctions.core.FactorTable;
 import com.analog.lyric.dimple.FactorFunctions.XorDelta;
 import com.analog.lyric.dimple.model.Discrete;
 import com.analog.lyric.dimple.model.DiscreteFactor;
 import com.analog.lyric.dimple.model.Factor;
 import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.util.misc.IndexCounter;
 
 public class TableFactorTest {
 
@@ -97,4 +103,105 @@ public class TableFactorTest {
 	{
 		
 	}
+	
+	@Test
+	public void test_slices() 
+	{
+		Discrete a = new Discrete(0,1,2);
+		Discrete b = new Discrete(0,1);
+		Discrete c = new Discrete(0,1,2,3);
+		int [][] indices = new int[][] {{0,0,0},{1,0,2},{2,1,3},{0,1,1},{2,0,0}};
+		double [] weights = new double[] {0.5,0.25,0.125,1,2};
+		FactorTable table = new FactorTable(indices, weights, a, b, c);
+		double [] potentials = table.getPotentials();
+		double [] densePotentials = table.getDensePotentials();
+		
+		int [] domainSizes = new int[] {3,2,4};
+		for (int [] current : new IndexCounter(domainSizes))
+		{
+			for (int port = 0; port < domainSizes.length; port++)
+			{
+				int [] probe = current.clone();
+				long jointIndex = table.getJointIndexSliceBase(current, port);
+				long stride = table.getJointIndexStride(port);
+				for (int value = 0; value < domainSizes[port]; value++, jointIndex += stride)
+				{
+					probe[port] = value;
+					int weightIndex = table.getWeightIndexFromTableIndices(probe);
+					assertEquals(weightIndex, table.getWeightIndexFromJointIndex(jointIndex));
+					assertEquals(jointIndex, table.getJointIndexFromTableIndices(probe));
+					double expected = weightIndex >= 0 ? potentials[weightIndex] : Double.POSITIVE_INFINITY;
+					assertEquals(expected, densePotentials[(int)jointIndex], 0);
+				}
+			}
+		}
+		
+		// Dense potentials must follow changes to the weights
+		table.set(new int[] {0,1,1}, 0.5);
+		assertEquals(-Math.log(0.5), table.getDensePotentials()[(int)table.getJointIndexFromTableIndices(new int[] {0,1,1})], 1e-15);
+	}
+	
+	@Test
+	public void test_sparseIndex() 
+	{
+		// The Cartesian product of 40 binary variables doesn't fit in an int, so this table must use the sparse index
+		int numVars = 40;
+		int numRows = 200;
+		Random r = new Random(1);
+		Discrete [] vars = new Discrete[numVars];
+		for (int i = 0; i < numVars; i++)
+			vars[i] = new Discrete(0,1);
+		
+		HashSet<String> seen = new HashSet<String>();
+		int [][] indices = new int[numRows][];
+		double [] weights = new double[numRows];
+		for (int row = 0; row < numRows; )
+		{
+			int [] rowIndices = new int[numVars];
+			for (int i = 0; i < numVars; i++)
+				rowIndices[i] = r.nextInt(2);
+			if (seen.add(Arrays.toString(rowIndices)))
+			{
+				indices[row] = rowIndices;
+				weights[row] = r.nextDouble();
+				row++;
+			}
+		}
+		FactorTable table = new FactorTable(indices, weights, vars);
+		
+		assertFalse(table.hasDenseIndex());
+		for (int row = 0; row < numRows; row++)
+			assertEquals(row, table.getWeightIndexFromTableIndices(indices[row]));
+		for (int i = 0; i < 1000; i++)
+		{
+			int [] probe = new int[numVars];
+			for (int j = 0; j < numVars; j++)
+				probe[j] = r.nextInt(2);
+			if (!seen.contains(Arrays.toString(probe)))
+				assertEquals(-1, table.getWeightIndexFromTableIndices(probe));
+		}
+		
+		// Slices work the same way for sparse tables
+		int port = 7;
+		long jointIndex = table.getJointIndexSliceBase(indices[3], port);
+		assertEquals(3, table.getWeightIndexFromJointIndex(jointIndex + indices[3][port] * table.getJointIndexStride(port)));
+		
+		// A small table is dense unless the maximum dense size says otherwise
+		int [][] smallIndices = new int[][] {{0,0},{1,1}};
+		double [] smallWeights = new double[] {1,1};
+		assertTrue(new FactorTable(smallIndices, smallWeights, vars[0], vars[1]).hasDenseIndex());
+		long maxDenseIndexSize = FactorTable.getMaxDenseIndexSize();
+		try
+		{
+			FactorTable.setMaxDenseIndexSize(2);
+			FactorTable small = new FactorTable(smallIndices, smallWeights, vars[0], vars[1]);
+			assertFalse(small.hasDenseIndex());
+			assertEquals(1, small.getWeightIndexFromTableIndices(new int[] {1,1}));
+			assertEquals(-1, small.getWeightIndexFromTableIndices(new int[] {0,1}));
+		}
+		finally
+		{
+			FactorTable.setMaxDenseIndexSize(maxDenseIndexSize);
+		}
+	}
 }
@@ -5,7 +5,9 @@ import static org.junit.Assert.*;
 import org.junit.Test;
 
 import com.analog.lyric.dimple.FactorFunctions.Sum;
+import com.analog.lyric.dimple.FactorFunctions.core.FactorTable;
 import com.analog.lyric.dimple.model.Bit;
+import com.analog.lyric.dimple.model.DiscreteDomain;
 import com.analog.lyric.dimple.model.Factor;
 import com.analog.lyric.dimple.model.FactorGraph;
 import com.analog.lyric.dimple.model.VariableBase;
@@ -59,6 +61,60 @@ public class TestFactorGraph
 		assertNull(sum1.getSolver());
 	}
 
+	@Test
+	public void test_structureVersion()
+	{
+		Bit a = new Bit();
+		Bit b = new Bit();
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		fg.addFactor(coupling(a, b), a, b);
+		a.setInput(0.7, 0.3);
+		
+		Bit x = new Bit();
+		Bit y = new Bit();
+		FactorGraph template = new FactorGraph(x, y);
+		template.addFactor(coupling(x, y), x, y);
+		FactorGraph nested = fg.addGraph(template, a, b);
+		fg.solve();
+		assertEnergyOfFlatNodes(fg);
+		
+		// Editing a nested graph changes the structure version of its parents, but not their version
+		long versionId = fg.getVersionId();
+		long structureVersionId = fg.getStructureVersionId();
+		Bit c = new Bit();
+		c.setInput(0.2, 0.8);
+		Factor added = nested.addFactor(coupling(b, c), b, c);
+		assertEquals(versionId, fg.getVersionId());
+		assertTrue(fg.getStructureVersionId() != structureVersionId);
+		assertEquals(3, fg.getFactorsFlat().size());
+		
+		// So values computed by the root solver from the flattened graph include the new nodes
+		fg.solve();
+		assertEnergyOfFlatNodes(fg);
+		
+		structureVersionId = fg.getStructureVersionId();
+		nested.remove(added);
+		assertTrue(fg.getStructureVersionId() != structureVersionId);
+	}
+
+	private static FactorTable coupling(Bit x, Bit y)
+	{
+		int [][] indices = new int[][] {{0,0}, {0,1}, {1,0}, {1,1}};
+		double [] weights = new double[] {0.8, 0.2, 0.3, 0.7};
+		return new FactorTable(indices, weights, new DiscreteDomain[] {x.getDiscreteDomain(), y.getDiscreteDomain()});
+	}
+	
+	private static void assertEnergyOfFlatNodes(FactorGraph fg)
+	{
+		double energy = 0;
+		for (Factor f : fg.getNonGraphFactorsFlat())
+			energy += f.getInternalEnergy();
+		for (VariableBase v : fg.getVariablesFlat())
+			energy += v.getInternalEnergy();
+		assertEquals(energy, fg.getInternalEnergy(), 1e-12);
+	}
+	
 	public static void assertFactorGraphInvariants(FactorGraph fg)
 	{
 		assertSame(fg, fg.asFactorGraph());
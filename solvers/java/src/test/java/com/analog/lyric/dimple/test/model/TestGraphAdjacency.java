@@ -0,0 +1,119 @@
+package com.analog.lyric.dimple.test.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.FactorFunctions.XorDelta;
+import com.analog.lyric.dimple.model.Bit;
+import com.analog.lyric.dimple.model.Factor;
+import com.analog.lyric.dimple.model.FactorGraph;
+import com.analog.lyric.dimple.model.GraphAdjacency;
+import com.analog.lyric.dimple.model.INode;
+
+public class TestGraphAdjacency
+{
+	@Test
+	public void test()
+	{
+		Bit a = new Bit();
+		Bit b = new Bit();
+		Bit c = new Bit();
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		fg.addFactor(new XorDelta(), a, b, c);
+		fg.addFactor(new XorDelta(), a, a, b);		// Repeated edge
+
+		// A nested graph, connected through its boundary variables
+		Bit x = new Bit();
+		Bit y = new Bit();
+		FactorGraph template = new FactorGraph(x, y);
+		Bit z = new Bit();
+		template.addFactor(new XorDelta(), x, y, z);
+		fg.addGraph(template, b, c);
+
+		GraphAdjacency adjacency = fg.getAdjacency();
+		assertTrue(adjacency.isValid());
+		assertSame(adjacency, fg.getAdjacency());
+		assertEquals(4, adjacency.getNumVariables());
+		assertEquals(4 + 3, adjacency.getNumNodes());
+		assertEquals(2 * 9, adjacency.getNumEdges());
+		assertAdjacencyInvariants(adjacency);
+
+		// Getting the adjacency from a nested graph gives that of the root
+		FactorGraph nested = fg.getNestedGraphs().get(0);
+		assertSame(adjacency, nested.getAdjacency());
+
+		// Changes to the graph or its solver objects make a new one
+		fg.addFactor(new XorDelta(), c, a);
+		assertFalse(adjacency.isValid());
+		adjacency = fg.getAdjacency();
+		assertEquals(2 * 11, adjacency.getNumEdges());
+		assertAdjacencyInvariants(adjacency);
+
+		// Including changes made only to a nested graph
+		Factor added = nested.addFactor(new XorDelta(), b, c);
+		assertFalse(adjacency.isValid());
+		adjacency = fg.getAdjacency();
+		assertEquals(2 * 13, adjacency.getNumEdges());
+		assertAdjacencyInvariants(adjacency);
+		nested.remove(added);
+		assertFalse(adjacency.isValid());
+		adjacency = fg.getAdjacency();
+		assertEquals(2 * 11, adjacency.getNumEdges());
+		assertAdjacencyInvariants(adjacency);
+
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		assertFalse(adjacency.isValid());
+		adjacency = fg.getAdjacency();
+		assertAdjacencyInvariants(adjacency);
+	}
+
+	@Test
+	public void test_siblingPortIndex()
+	{
+		Bit a = new Bit();
+		Bit b = new Bit();
+		FactorGraph fg = new FactorGraph();
+		Factor f1 = fg.addFactor(new XorDelta(), b, a);
+		Factor f2 = fg.addFactor(new XorDelta(), a, b);
+
+		// Asking for a later port first must not leave the earlier ones wrong
+		assertEquals(0, a.getSiblingPortIndex(1));
+		assertEquals(1, a.getSiblingPortIndex(0));
+		assertSame(f1, a.getSiblings().get(0));
+		assertSame(f2, a.getSiblings().get(1));
+	}
+
+	public static void assertAdjacencyInvariants(GraphAdjacency adjacency)
+	{
+		int[] neighbors = adjacency.getNeighbors();
+		int[] neighborPorts = adjacency.getNeighborPorts();
+		for (int i = 0; i < adjacency.getNumNodes(); i++)
+		{
+			INode node = adjacency.getNode(i);
+			assertEquals(i, adjacency.getIndex(node));
+			assertSame(node.getSolver(), adjacency.getSolver(i));
+			assertEquals(i < adjacency.getNumVariables(), !(node instanceof Factor));
+
+			ArrayList<INode> siblings = node.getSiblings();
+			int offset = adjacency.getEdgeOffset(i);
+			assertEquals(siblings.size(), adjacency.getEdgeOffset(i + 1) - offset);
+			for (int port = 0; port < siblings.size(); port++)
+			{
+				int edge = offset + port;
+				INode neighbor = adjacency.getNode(neighbors[edge]);
+				assertSame(siblings.get(port), neighbor);
+				assertSame(neighbor.getSolver(), adjacency.getNeighborSolvers()[edge]);
+
+				// Following the edge back leads to the same port
+				int backEdge = adjacency.getEdgeOffset(neighbors[edge]) + neighborPorts[edge];
+				assertSame(node, neighbor.getSiblings().get(neighborPorts[edge]));
+				assertEquals(i, neighbors[backEdge]);
+				assertEquals(port, neighborPorts[backEdge]);
+			}
+		}
+	}
+}